@@ -0,0 +1,139 @@
+package com.mrsnottypants.nihpubmed;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The author counting stores alone: one operation counts one author, drawn from a Zipf distribution of names.
+ * The stores are the AuthorCountTable that counts everyone, the same counts in an OffHeapAuthorCountTable, the
+ * WatchlistCounts of a small watchlist, and, as a baseline, a HashMap keyed on Author - which builds two strings
+ * and an Author for every author counted.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthorCountsBenchmark {
+
+    // authors counted per invocation
+    private static final int BATCH = 64 * 1024;
+
+    // authors on the watchlist, the most popular authors of the corpus
+    private static final int WATCHED = 16;
+
+    // counting store: table, off-heap table, watchlist or map
+    @Param({"table", "offheap", "watchlist", "map"})
+    public String store;
+
+    // distinct authors the names are drawn from
+    @Param({"1000000"})
+    public int distinctAuthors;
+
+    // names of the authors we count, in the order we count them
+    private char[][] firstNames;
+    private char[][] lastNames;
+
+    // where we count them
+    private AuthorCounts counts;
+
+    /**
+     * Draw the names and build the store
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        SyntheticPubMed corpus = SyntheticPubMed.newInstance(7, distinctAuthors);
+        firstNames = new char[BATCH][];
+        lastNames = new char[BATCH][];
+        for (int i = 0; i < BATCH; i++) {
+            int author = corpus.nextAuthor();
+            firstNames[i] = corpus.getFirstName(author).toCharArray();
+            lastNames[i] = corpus.getLastName(author).toCharArray();
+        }
+
+        switch (store) {
+            case "table":
+                counts = new AuthorCountTable();
+                break;
+            case "offheap":
+                counts = new OffHeapAuthorCountTable();
+                break;
+            case "watchlist":
+                List<Author> watched = new ArrayList<>();
+                for (int author = 0; author < WATCHED; author++) {
+                    watched.add(Author.of(corpus.getFirstName(author), corpus.getLastName(author)));
+                }
+                counts = Watchlist.of(watched).newCounts();
+                break;
+            case "map":
+                counts = new MapCounts();
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("unknown store %s", store));
+        }
+    }
+
+    /**
+     * Count a batch of authors
+     * @return store, so the work isn't optimized away
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public AuthorCounts increment() {
+        for (int i = 0; i < BATCH; i++) {
+            char[] first = firstNames[i];
+            char[] last = lastNames[i];
+            counts.increment(first, 0, first.length, last, 0, last.length);
+        }
+        return counts;
+    }
+
+    // counts authors in a map, as the handler did before it had AuthorCountTable
+    //
+    private static class MapCounts implements AuthorCounts {
+
+        private final Map<Author, Integer> counts = new HashMap<>();
+
+        @Override
+        public void increment(char[] first, int firstOffset, int firstLength,
+                              char[] last, int lastOffset, int lastLength) {
+            Author author = Author.of(new String(first, firstOffset, firstLength),
+                    new String(last, lastOffset, lastLength));
+            counts.merge(author, 1, Integer::sum);
+        }
+
+        @Override
+        public int getAuthorCount(Author author) {
+            return counts.getOrDefault(author, 0);
+        }
+
+        @Override
+        public void merge(AuthorCounts other) {
+            if (!(other instanceof MapCounts)) {
+                throw new IllegalArgumentException("can only merge another MapCounts");
+            }
+            ((MapCounts)other).counts.forEach((author, count) -> counts.merge(author, count, Integer::sum));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.mrsnottypants.nihpubmed;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Usage: java -jar .\benchmarks\target\benchmarks.jar [jmh options] [benchmark regex]
+ *
+ * Runs the benchmarks with the GC profiler, so allocation rates are reported next to throughput,
+ * and writes the results as JSON, so runs of different releases can be compared.
+ * Any JMH command-line option may be given, and overrides these defaults.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class Benchmarks {
+
+    // where the results are written, unless -rff says otherwise
+    private static final String RESULT_FILE = "jmh-result.json";
+
+    /**
+     * Usage: java -jar .\benchmarks\target\benchmarks.jar [jmh options] [benchmark regex]
+     * @param args JMH command-line options
+     * @throws CommandLineOptionException if the options are not valid
+     * @throws RunnerException if a benchmark fails
+     */
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(commandLine.getResultFormat().orElse(ResultFormatType.JSON))
+                .result(commandLine.getResult().orElse(RESULT_FILE))
+                .build();
+        new Runner(options).run();
+    }
+
+    // no reason to instantiate this class
+    private Benchmarks() {}
+}
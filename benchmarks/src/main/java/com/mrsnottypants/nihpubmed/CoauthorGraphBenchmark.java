@@ -0,0 +1,83 @@
+package com.mrsnottypants.nihpubmed;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Neighbour queries on a co-author graph: one operation looks up each of 16 authors of interest, and finds their
+ * three most frequent co-authors.  The 16 are the most popular authors of the corpus, so have the most neighbours.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CoauthorGraphBenchmark {
+
+    // authors of interest
+    private static final int WATCHED = 16;
+
+    // articles in the corpus the graph is built from
+    @Param({"200000"})
+    public long articles;
+
+    // the graph, and the authors we query it for
+    private CoauthorGraph graph;
+    private Author[] watched;
+
+    /**
+     * Build the graph from a synthetic corpus
+     * @throws IOException if the corpus cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SyntheticPubMed corpus = SyntheticPubMed.newInstance(7, 1000000);
+        Path path = Files.createTempFile("coauthors", ".xml");
+        try {
+            corpus.write(path, articles);
+            graph = CoauthorGraphBuilder.build(Collections.singletonList(path), 1, PubMedEngine.STAX,
+                    CoauthorGraphBuilder.DEFAULT_MAX_AUTHORS);
+        } finally {
+            Files.delete(path);
+        }
+        watched = new Author[WATCHED];
+        for (int author = 0; author < WATCHED; author++) {
+            watched[author] = Author.of(corpus.getFirstName(author), corpus.getLastName(author));
+        }
+    }
+
+    /**
+     * Find the three most frequent co-authors of each author of interest
+     * @return sum of the co-author ids, so the work isn't optimized away
+     */
+    @Benchmark
+    public long topNeighbors() {
+        long sum = 0;
+        for (Author author : watched) {
+            int id = graph.find(author);
+            for (int neighbor : graph.getTopNeighbors(id, 3)) {
+                sum += neighbor;
+            }
+        }
+        return sum;
+    }
+}
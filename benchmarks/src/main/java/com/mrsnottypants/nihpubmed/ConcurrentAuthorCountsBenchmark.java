@@ -0,0 +1,133 @@
+package com.mrsnottypants.nihpubmed;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Threads counting into one result at the same time: one operation counts one author, drawn from a Zipf
+ * distribution of names, and an invocation counts a chunk's worth of authors into the shared result.
+ * The strategies are a table per chunk merged into a shared table under a lock, as PubMedBatch does with
+ * AuthorCountTable, a ConcurrentAuthorCounts counted into through a batch per thread, and the same store counted
+ * into directly, taking a shard lock per author.  Run with -t to change the number of threads.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentAuthorCountsBenchmark {
+
+    // authors counted per invocation, a chunk's worth
+    private static final int CHUNK = 64 * 1024;
+
+    // how threads count: merged tables, a batched store, or the store directly
+    @Param({"merged", "batched", "locked"})
+    public String strategy;
+
+    // distinct authors the names are drawn from
+    @Param({"1000000"})
+    public int distinctAuthors;
+
+    // names of the authors we count, shared by every thread
+    private char[][] firstNames;
+    private char[][] lastNames;
+
+    // the shared result: a table, guarded by its own monitor, or a store
+    private AuthorCountTable table;
+    private ConcurrentAuthorCounts store;
+
+    /**
+     * Each thread's own counts, and where in the names it starts, so threads don't count the same authors in step
+     */
+    @State(Scope.Thread)
+    public static class Worker {
+
+        private AuthorCounts counts;
+        private int start;
+
+        /**
+         * Set up the thread's counts for the strategy
+         * @param benchmark shared state
+         * @param threadParams which thread we are
+         */
+        @Setup(Level.Trial)
+        public void setUp(ConcurrentAuthorCountsBenchmark benchmark, ThreadParams threadParams) {
+            start = threadParams.getThreadIndex() * CHUNK / threadParams.getThreadCount();
+            switch (benchmark.strategy) {
+                case "merged":
+                    break;
+                case "batched":
+                    counts = benchmark.store.newBatch();
+                    break;
+                case "locked":
+                    counts = benchmark.store;
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format("unknown strategy %s", benchmark.strategy));
+            }
+        }
+    }
+
+    /**
+     * Draw the names and build the shared result
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticPubMed corpus = SyntheticPubMed.newInstance(7, distinctAuthors);
+        firstNames = new char[CHUNK][];
+        lastNames = new char[CHUNK][];
+        for (int i = 0; i < CHUNK; i++) {
+            int author = corpus.nextAuthor();
+            firstNames[i] = corpus.getFirstName(author).toCharArray();
+            lastNames[i] = corpus.getLastName(author).toCharArray();
+        }
+        table = new AuthorCountTable();
+        store = new ConcurrentAuthorCounts();
+    }
+
+    /**
+     * Count a chunk of authors into the shared result
+     * @param worker thread's own counts
+     * @return thread's counts, so the work isn't optimized away
+     */
+    @Benchmark
+    @OperationsPerInvocation(CHUNK)
+    public AuthorCounts count(Worker worker) {
+
+        // a table per chunk, like a worker's handler, merged when the chunk is done
+        AuthorCounts counts = worker.counts == null ? new AuthorCountTable() : worker.counts;
+        for (int i = 0; i < CHUNK; i++) {
+            int j = (worker.start + i) % CHUNK;
+            char[] first = firstNames[j];
+            char[] last = lastNames[j];
+            counts.increment(first, 0, first.length, last, 0, last.length);
+        }
+        if (worker.counts == null) {
+            synchronized (table) {
+                table.merge(counts);
+            }
+        } else {
+            store.merge(counts);
+        }
+        return counts;
+    }
+}
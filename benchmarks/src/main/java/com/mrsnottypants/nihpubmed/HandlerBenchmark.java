@@ -0,0 +1,154 @@
+package com.mrsnottypants.nihpubmed;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The author-count handler alone, without a parser: the SAX events of a synthetic corpus are recorded once,
+ * and each operation replays them into a new handler.
+ * Besides operations per second, JMH reports the events and articles handled per second.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandlerBenchmark {
+
+    // kinds of recorded event
+    private static final byte START = 0;
+    private static final byte END = 1;
+    private static final byte CHARACTERS = 2;
+
+    // articles in the synthetic corpus
+    @Param({"20000"})
+    public int articles;
+
+    // recorded events: kind, element name for start and end, characters for character data
+    private byte[] kinds;
+    private String[] names;
+    private char[][] characters;
+    private long articleCount;
+
+    /**
+     * Events and articles handled, reported by JMH as rates
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Handled {
+        public long events;
+        public long articles;
+    }
+
+    /**
+     * Write a synthetic corpus and record the events the SAX parser produces for it
+     * @throws IOException if the corpus cannot be written or read
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path path = Files.createTempFile("pubmed", ".xml");
+        try {
+            SyntheticPubMed.newInstance(7, articles).write(path, articles);
+            Recorder recorder = new Recorder();
+            try (InputStream inputStream = PubMedInput.open(path)) {
+                PubMedResult.parse(inputStream, recorder);
+            }
+            kinds = new byte[recorder.kinds.size()];
+            for (int i = 0; i < kinds.length; i++) {
+                kinds[i] = recorder.kinds.get(i);
+            }
+            names = recorder.names.toArray(new String[0]);
+            characters = recorder.characters.toArray(new char[0][]);
+            articleCount = recorder.articles;
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Replay the recorded events into a new handler
+     * @param handled events and articles handled
+     * @return handler, so the work isn't optimized away
+     */
+    @Benchmark
+    public PubMedAuthorCountHandler replay(Handled handled) {
+        PubMedAuthorCountHandler handler = PubMedAuthorCountHandler.newInstance();
+        for (int i = 0; i < kinds.length; i++) {
+            switch (kinds[i]) {
+                case START:
+                    handler.startElement("", "", names[i], null);
+                    break;
+                case END:
+                    handler.endElement("", "", names[i]);
+                    break;
+                default:
+                    handler.characters(characters[i], 0, characters[i].length);
+                    break;
+            }
+        }
+        handled.events += kinds.length;
+        handled.articles += articleCount;
+        return handler;
+    }
+
+    // records the events of a parse
+    // element names are kept as the parser passed them, so replayed names are shared just as parsed names are
+    //
+    private static class Recorder extends DefaultHandler {
+
+        private final List<Byte> kinds = new ArrayList<>();
+        private final List<String> names = new ArrayList<>();
+        private final List<char[]> characters = new ArrayList<>();
+        private long articles;
+
+        @Override
+        public void startElement(String uri, String localName, String qualifiedName, Attributes attributes) {
+            record(START, qualifiedName, null);
+            if (Element.ARTICLE.isName(qualifiedName)) {
+                articles++;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qualifiedName) {
+            record(END, qualifiedName, null);
+        }
+
+        @Override
+        public void characters(char[] chars, int start, int length) {
+            char[] copy = new char[length];
+            System.arraycopy(chars, start, copy, 0, length);
+            record(CHARACTERS, null, copy);
+        }
+
+        private void record(byte kind, String name, char[] chars) {
+            kinds.add(kind);
+            names.add(name);
+            characters.add(chars);
+        }
+    }
+}
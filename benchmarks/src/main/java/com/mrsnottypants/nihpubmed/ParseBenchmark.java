@@ -0,0 +1,142 @@
+package com.mrsnottypants.nihpubmed;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end parse throughput: one operation parses a whole file and counts its authors, on a single thread.
+ * Besides operations per second, JMH reports the megabytes and articles parsed per second.
+ *
+ * By default the file is a synthetic corpus.  Pass -p file=path/to/pubmed.xml to parse a real PubMed file.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    // parse engine
+    @Param({"SAX", "STAX", "SCAN"})
+    public PubMedEngine engine;
+
+    // file to parse, empty for a synthetic corpus
+    @Param({""})
+    public String file;
+
+    // articles in the synthetic corpus
+    @Param({"20000"})
+    public int articles;
+
+    // the file we parse, its size in megabytes, and the number of articles in it
+    private Path path;
+    private boolean temporary;
+    private double megabytes;
+    private long articleCount;
+
+    /**
+     * Megabytes and articles parsed, reported by JMH as rates
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Parsed {
+        public double megabytes;
+        public long articles;
+    }
+
+    /**
+     * Write the synthetic corpus, or find the real file, and count its articles
+     * @throws IOException if the file cannot be written or read
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        temporary = file.isEmpty();
+        if (temporary) {
+            path = Files.createTempFile("pubmed", ".xml");
+            SyntheticPubMed.newInstance(7, articles).write(path, articles);
+        } else {
+            path = Paths.get(file);
+        }
+        megabytes = Files.size(path) / (1024.0 * 1024.0);
+        articleCount = countArticles();
+    }
+
+    /**
+     * Remove the synthetic corpus
+     * @throws IOException if it cannot be removed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (temporary) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Parse the file and count its authors
+     * @param parsed megabytes and articles parsed
+     * @return handler, so the work isn't optimized away
+     * @throws IOException if the file cannot be read
+     */
+    @Benchmark
+    public PubMedAuthorCountHandler parse(Parsed parsed) throws IOException {
+        PubMedAuthorCountHandler handler = PubMedAuthorCountHandler.newInstance();
+        for (PubMedSplitter.Chunk chunk : PubMedSplitter.split(path, 1, Long.MAX_VALUE)) {
+            engine.parse(chunk, handler);
+        }
+        parsed.megabytes += megabytes;
+        parsed.articles += articleCount;
+        return handler;
+    }
+
+    /**
+     * Count the articles in the file
+     * @return number of articles
+     * @throws IOException if the file cannot be read
+     */
+    private long countArticles() throws IOException {
+        ArticleCounter counter = new ArticleCounter();
+        try (InputStream inputStream = PubMedInput.open(path)) {
+            PubMedResult.parse(inputStream, counter);
+        }
+        return counter.articles;
+    }
+
+    // counts Article elements
+    //
+    private static class ArticleCounter extends DefaultHandler {
+
+        private long articles;
+
+        @Override
+        public void startElement(String uri, String localName, String qualifiedName, Attributes attributes) {
+            if (Element.ARTICLE.isName(qualifiedName)) {
+                articles++;
+            }
+        }
+    }
+}
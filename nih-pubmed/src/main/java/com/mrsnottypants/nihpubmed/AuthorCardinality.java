@@ -0,0 +1,229 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Estimates how many distinct authors, and distinct pairs of co-authors, the records it is given have - overall,
+ * per publication year, and per file - without keeping any names.
+ *
+ * Each estimate is a HyperLogLog of a few kilobytes.  An author is hashed from their names, so the same author
+ * has the same hash in every instance, and instances filled from different files, or different parts of a file,
+ * merge into the estimates of all of them.  A pair of co-authors is hashed from the two author hashes, in either
+ * order, so each pair of authors listed together is counted once however often, and in whatever order, they are.
+ * An article with n authors has n(n-1)/2 pairs.
+ *
+ * Records without a year are counted overall and per file, but not per year.
+ * This class is not thread-safe.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class AuthorCardinality implements PubMedAggregator {
+
+    /**
+     * Return a new, empty, instance whose estimators have the default precision
+     * @return new instance
+     */
+    public static AuthorCardinality newInstance() {
+        return new AuthorCardinality(HyperLogLog.DEFAULT_PRECISION);
+    }
+
+    /**
+     * Return a new, empty, instance
+     * @param precision precision of each estimator, see HyperLogLog
+     * @return new instance
+     * @throws IllegalArgumentException if precision is out of range
+     */
+    public static AuthorCardinality newInstance(int precision) {
+        return new AuthorCardinality(precision);
+    }
+
+    // precision of every estimator
+    private final int precision;
+
+    // distinct authors and co-author pairs, overall
+    private final HyperLogLog authors;
+    private final HyperLogLog coauthors;
+
+    // distinct authors per year, and per file
+    private final Map<Integer, HyperLogLog> years = new TreeMap<>();
+    private final Map<Path, HyperLogLog> files = new TreeMap<>();
+
+    // distinct authors of the file records are coming from, null if we aren't told
+    private HyperLogLog fileAuthors;
+
+    // hashes of the current record's authors, reused for every record
+    private long[] hashes = new long[16];
+
+    // number of records seen
+    private long recordCount;
+
+    // construct an empty instance
+    //
+    private AuthorCardinality(int precision) {
+        this.precision = precision;
+        authors = HyperLogLog.newInstance(precision);
+        coauthors = HyperLogLog.newInstance(precision);
+    }
+
+    /**
+     * Attribute the records that follow to a file
+     * @param file file the records come from
+     */
+    @Override
+    public void startFile(Path file) {
+        fileAuthors = files.computeIfAbsent(file, f -> HyperLogLog.newInstance(precision));
+    }
+
+    /**
+     * Add a record's authors, and its co-author pairs
+     * @param record parsed record
+     */
+    @Override
+    public void record(PubMedRecord record) {
+
+        recordCount++;
+        int authorCount = record.getAuthorCount();
+        if (authorCount > hashes.length) {
+            hashes = new long[Math.max(authorCount, hashes.length * 2)];
+        }
+        HyperLogLog yearAuthors = record.getYear() < 0 ? null :
+                years.computeIfAbsent(record.getYear(), y -> HyperLogLog.newInstance(precision));
+
+        char[] names = record.getNames();
+        for (int i = 0; i < authorCount; i++) {
+            long hash = hash(names, record.getFirstNameOffset(i), record.getFirstNameLength(i),
+                    names, record.getLastNameOffset(i), record.getLastNameLength(i));
+            hashes[i] = hash;
+            authors.add(hash);
+            if (yearAuthors != null) {
+                yearAuthors.add(hash);
+            }
+            if (fileAuthors != null) {
+                fileAuthors.add(hash);
+            }
+        }
+
+        // each pair once, whatever order they're listed in, an author listed twice isn't their own co-author
+        for (int i = 0; i < authorCount; i++) {
+            for (int j = i + 1; j < authorCount; j++) {
+                long a = Math.min(hashes[i], hashes[j]);
+                long b = Math.max(hashes[i], hashes[j]);
+                if (a != b) {
+                    coauthors.add(HyperLogLog.mix(a * 0x9e3779b97f4a7c15L + b));
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the estimates of another instance to ours
+     * @param other instance with the same precision
+     * @throws IllegalArgumentException if the precisions differ
+     */
+    public void merge(AuthorCardinality other) {
+        authors.merge(other.authors);
+        coauthors.merge(other.coauthors);
+        for (Map.Entry<Integer, HyperLogLog> entry : other.years.entrySet()) {
+            years.computeIfAbsent(entry.getKey(), y -> HyperLogLog.newInstance(precision)).merge(entry.getValue());
+        }
+        for (Map.Entry<Path, HyperLogLog> entry : other.files.entrySet()) {
+            files.computeIfAbsent(entry.getKey(), f -> HyperLogLog.newInstance(precision)).merge(entry.getValue());
+        }
+        recordCount += other.recordCount;
+    }
+
+    /**
+     * Add the estimates of another instance to ours
+     * @param other instance with the same precision
+     * @throws IllegalArgumentException if the other isn't an AuthorCardinality, or the precisions differ
+     */
+    @Override
+    public void merge(PubMedAggregator other) {
+        if (!(other instanceof AuthorCardinality)) {
+            throw new IllegalArgumentException("can only merge another AuthorCardinality");
+        }
+        merge((AuthorCardinality)other);
+    }
+
+    /**
+     * Return the estimated number of distinct authors
+     * @return estimate
+     */
+    public long getDistinctAuthors() {
+        return authors.estimate();
+    }
+
+    /**
+     * Return the estimated number of distinct authors of articles published in a year
+     * @param year year
+     * @return estimate, zero if no article was published that year
+     */
+    public long getDistinctAuthors(int year) {
+        HyperLogLog estimator = years.get(year);
+        return estimator == null ? 0 : estimator.estimate();
+    }
+
+    /**
+     * Return the estimated number of distinct authors in a file
+     * @param file file, as passed to startFile
+     * @return estimate, zero if we saw nothing from the file
+     */
+    public long getDistinctAuthors(Path file) {
+        HyperLogLog estimator = files.get(file);
+        return estimator == null ? 0 : estimator.estimate();
+    }
+
+    /**
+     * Return the estimated number of distinct pairs of authors listed together
+     * @return estimate
+     */
+    public long getDistinctCoauthors() {
+        return coauthors.estimate();
+    }
+
+    /**
+     * Return the years articles were published in
+     * @return years, ascending
+     */
+    public SortedSet<Integer> getYears() {
+        return Collections.unmodifiableSortedSet(new TreeSet<>(years.keySet()));
+    }
+
+    /**
+     * Return the files records came from
+     * @return files, in name order
+     */
+    public SortedSet<Path> getFiles() {
+        return Collections.unmodifiableSortedSet(new TreeSet<>(files.keySet()));
+    }
+
+    /**
+     * Return the number of records seen
+     * @return number of records
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Hash an author's names, held in buffers, into 64 well-mixed bits
+     */
+    static long hash(char[] first, int firstOffset, int firstLength, char[] last, int lastOffset, int lastLength) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < firstLength; i++) {
+            hash = (hash ^ first[firstOffset + i]) * 0x100000001b3L;
+        }
+
+        // a name can't hold this char, so it separates the names
+        hash = (hash ^ 0xffff) * 0x100000001b3L;
+        for (int i = 0; i < lastLength; i++) {
+            hash = (hash ^ last[lastOffset + i]) * 0x100000001b3L;
+        }
+        return HyperLogLog.mix(hash);
+    }
+}
@@ -0,0 +1,75 @@
+package com.mrsnottypants.nihpubmed;
+
+/**
+ * Counts how often authors are listed, as PubMedAuthorCountHandler does, but from the records of a PubMedPipeline,
+ * so authors can be counted in the same pass as other reports.
+ * Authors are counted into an AuthorCounts - every author, only those on a watchlist, or the variants of their
+ * names a NameMatcher finds.
+ * This class is not thread-safe, each thread needs an aggregator of its own.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class AuthorCountAggregator implements PubMedAggregator {
+
+    /**
+     * Return a new aggregator that counts into the given counts
+     * @param counts where we count authors, not to be shared with another aggregator
+     * @return new instance
+     */
+    public static AuthorCountAggregator of(AuthorCounts counts) {
+        return new AuthorCountAggregator(counts);
+    }
+
+    // where we count authors
+    private final AuthorCounts counts;
+
+    // construct an aggregator
+    //
+    private AuthorCountAggregator(AuthorCounts counts) {
+        this.counts = counts;
+    }
+
+    /**
+     * Count each author in a record's author list
+     * @param record parsed record
+     */
+    @Override
+    public void record(PubMedRecord record) {
+        char[] names = record.getNames();
+        for (int i = 0; i < record.getAuthorCount(); i++) {
+            counts.increment(names, record.getFirstNameOffset(i), record.getFirstNameLength(i),
+                    names, record.getLastNameOffset(i), record.getLastNameLength(i),
+                    names, record.getInitialsOffset(i), record.getInitialsLength(i));
+        }
+    }
+
+    /**
+     * Return how often the author was counted
+     * @param author author of interest
+     * @return count
+     */
+    public int getAuthorCount(Author author) {
+        return counts.getAuthorCount(author);
+    }
+
+    /**
+     * Return the counts the authors are counted into
+     * @return counts, of the kind the aggregator was created with
+     */
+    public AuthorCounts getCounts() {
+        return counts;
+    }
+
+    /**
+     * Add the counts of another aggregator to ours
+     * @param other aggregator to add
+     * @throws IllegalArgumentException if the other isn't an AuthorCountAggregator with the same kind of counts
+     */
+    @Override
+    public void merge(PubMedAggregator other) {
+        if (!(other instanceof AuthorCountAggregator)) {
+            throw new IllegalArgumentException("can only merge another AuthorCountAggregator");
+        }
+        counts.merge(((AuthorCountAggregator)other).counts);
+    }
+}
@@ -0,0 +1,561 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.util.Arrays;
+
+/**
+ * Counts authors by first and last name, without allocating anything per occurrence.
+ *
+ * Each distinct author is interned into a dense int id, the first time we see them.
+ * Their names are copied, back to back, into a single char array; their counts live in a primitive int array.
+ * An open-addressed table of ids, probed linearly, maps names to ids.
+ * Names are passed in as ranges of char arrays, so callers can pass reusable buffers.
+ *
+ * Like Author, a missing name is the same as an empty name.
+ * This class is not thread-safe for writes.  Reads are safe once writes are done.
+ *
+ * As AuthorCounts, this table counts every author it is given.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class AuthorCountTable implements AuthorCounts {
+
+    // table slots hold id + 1, so zero is an empty slot
+    private static final int EMPTY = 0;
+
+    // we grow the table when it is this full
+    private static final float LOAD_FACTOR = 0.5f;
+
+    // open-addressed table of ids, size is a power of two
+    private int[] slots;
+
+    // all names, back to back - an author's first name is followed by their last name
+    private char[] names;
+    private int namesLength;
+
+    // per id: where the names start, their lengths, hash and count
+    private int[] nameOffsets;
+    private int[] firstLengths;
+    private int[] lastLengths;
+    private int[] hashes;
+    private int[] counts;
+    private int size;
+
+    /**
+     * Construct an empty table
+     */
+    public AuthorCountTable() {
+        this(16);
+    }
+
+    /**
+     * Construct an empty table, with room for some authors before it grows
+     * @param expectedAuthors number of distinct authors we expect
+     */
+    public AuthorCountTable(int expectedAuthors) {
+        int capacity = Math.max(16, expectedAuthors);
+        slots = new int[tableSize(capacity)];
+        names = new char[capacity * 16];
+        nameOffsets = new int[capacity];
+        firstLengths = new int[capacity];
+        lastLengths = new int[capacity];
+        hashes = new int[capacity];
+        counts = new int[capacity];
+    }
+
+    /**
+     * Add one to the author's count
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     * @return author's id
+     */
+    public int add(char[] first, int firstOffset, int firstLength, char[] last, int lastOffset, int lastLength) {
+        return add(first, firstOffset, firstLength, last, lastOffset, lastLength, 1);
+    }
+
+    /**
+     * Add to the author's count
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     * @param count how much to add
+     * @return author's id
+     */
+    public int add(char[] first, int firstOffset, int firstLength, char[] last, int lastOffset, int lastLength,
+                   int count) {
+        int id = intern(first, firstOffset, firstLength, last, lastOffset, lastLength);
+        counts[id] += count;
+        return id;
+    }
+
+    /**
+     * Add one to the author's count
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     */
+    @Override
+    public void increment(char[] first, int firstOffset, int firstLength,
+                          char[] last, int lastOffset, int lastLength) {
+        add(first, firstOffset, firstLength, last, lastOffset, lastLength, 1);
+    }
+
+    /**
+     * Add one to the author's count
+     * @param firstName first name, may be null
+     * @param lastName last name, may be null
+     * @return author's id
+     */
+    public int add(String firstName, String lastName) {
+        return add(firstName, lastName, 1);
+    }
+
+    /**
+     * Add to the author's count
+     * @param firstName first name, may be null
+     * @param lastName last name, may be null
+     * @param count how much to add
+     * @return author's id
+     */
+    public int add(String firstName, String lastName, int count) {
+
+        // an author we've seen before costs a lookup, nothing more
+        int id = find(firstName, lastName);
+        if (id >= 0) {
+            counts[id] += count;
+            return id;
+        }
+        char[] first = chars(firstName);
+        char[] last = chars(lastName);
+        return add(first, 0, first.length, last, 0, last.length, count);
+    }
+
+    /**
+     * Return the author's id, adding them with a count of zero if we haven't seen them
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     * @return author's id
+     */
+    public int intern(char[] first, int firstOffset, int firstLength, char[] last, int lastOffset, int lastLength) {
+        return intern(hash(first, firstOffset, firstLength, last, lastOffset, lastLength),
+                first, firstOffset, firstLength, last, lastOffset, lastLength);
+    }
+
+    /**
+     * Return the author's id, adding them with a count of zero if we haven't seen them
+     * @param hash hash of the names, as hash returns it
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     * @return author's id
+     */
+    private int intern(int hash, char[] first, int firstOffset, int firstLength,
+                       char[] last, int lastOffset, int lastLength) {
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                id = newId(hash, first, firstOffset, firstLength, last, lastOffset, lastLength);
+                slots[slot] = id + 1;
+                if (size > slots.length * LOAD_FACTOR) {
+                    rehash(slots.length * 2);
+                }
+                return id;
+            }
+            if (hashes[id] == hash && equals(id, first, firstOffset, firstLength, last, lastOffset, lastLength)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Return the author's id, or -1 if we haven't seen them
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     * @return author's id, or -1
+     */
+    public int find(char[] first, int firstOffset, int firstLength, char[] last, int lastOffset, int lastLength) {
+        int hash = hash(first, firstOffset, firstLength, last, lastOffset, lastLength);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                return -1;
+            }
+            if (hashes[id] == hash && equals(id, first, firstOffset, firstLength, last, lastOffset, lastLength)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Return the author's id, or -1 if we haven't seen them
+     * @param firstName first name, may be null
+     * @param lastName last name, may be null
+     * @return author's id, or -1
+     */
+    public int find(String firstName, String lastName) {
+        String first = firstName == null ? "" : firstName;
+        String last = lastName == null ? "" : lastName;
+        int hash = hash(first, last);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                return -1;
+            }
+            if (hashes[id] == hash && equals(id, first, last)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Return the author's id, or -1 if we haven't seen them
+     * @param author author
+     * @return author's id, or -1
+     */
+    public int find(Author author) {
+        return find(author.getFirstName(), author.getLastName());
+    }
+
+    /**
+     * Return how often we added the author
+     * @param author author of interest
+     * @return count, zero if we've never seen the author
+     */
+    @Override
+    public int getAuthorCount(Author author) {
+        int id = find(author);
+        return id < 0 ? 0 : counts[id];
+    }
+
+    /**
+     * Add to the count for an id
+     * @param id author's id
+     * @param count how much to add, may be negative
+     */
+    public void addCount(int id, int count) {
+        counts[id] += count;
+    }
+
+    /**
+     * Return the count for an id
+     * @param id author's id
+     * @return count
+     */
+    public int getCount(int id) {
+        return counts[id];
+    }
+
+    /**
+     * Return the first name for an id
+     * @param id author's id
+     * @return first name, empty if none
+     */
+    public String getFirstName(int id) {
+        return new String(names, nameOffsets[id], firstLengths[id]);
+    }
+
+    /**
+     * Return the last name for an id
+     * @param id author's id
+     * @return last name, empty if none
+     */
+    public String getLastName(int id) {
+        return new String(names, nameOffsets[id] + firstLengths[id], lastLengths[id]);
+    }
+
+    /**
+     * Return the author for an id
+     * @param id author's id
+     * @return author
+     */
+    public Author getAuthor(int id) {
+        return Author.of(getFirstName(id), getLastName(id));
+    }
+
+    /**
+     * Return the number of distinct authors, ids run from zero to size - 1
+     * @return number of distinct authors
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Add another table's counts to ours
+     * @param other table whose counts we add
+     */
+    public void merge(AuthorCountTable other) {
+        for (int id = 0; id < other.size; id++) {
+            add(other, id);
+        }
+    }
+
+    /**
+     * Add one of another table's authors, and their count, to ours - without hashing their names again
+     * @param other table holding the author
+     * @param id author's id in the other table
+     * @return author's id in ours
+     */
+    int add(AuthorCountTable other, int id) {
+        int offset = other.nameOffsets[id];
+        int firstLength = other.firstLengths[id];
+        int ourId = intern(other.hashes[id], other.names, offset, firstLength,
+                other.names, offset + firstLength, other.lastLengths[id]);
+        counts[ourId] += other.counts[id];
+        return ourId;
+    }
+
+    /**
+     * Return the hash of an id's names, the same for the same names in any table
+     * @param id author's id
+     * @return hash
+     */
+    int getHash(int id) {
+        return hashes[id];
+    }
+
+    /**
+     * Compare two ids by name, first names then last names, in the order String.compareTo puts the same names
+     * @param id author's id
+     * @param other other author's id
+     * @return negative, zero or positive as the id's names sort before, with or after the other's
+     */
+    int compare(int id, int other) {
+        int result = compare(nameOffsets[id], firstLengths[id], nameOffsets[other], firstLengths[other]);
+        if (result != 0) {
+            return result;
+        }
+        return compare(nameOffsets[id] + firstLengths[id], lastLengths[id],
+                nameOffsets[other] + firstLengths[other], lastLengths[other]);
+    }
+
+    /**
+     * Forget every author, keeping the room we have grown, so the table can be filled again without allocating
+     */
+    void clear() {
+        Arrays.fill(slots, EMPTY);
+        namesLength = 0;
+        size = 0;
+    }
+
+    /**
+     * Add another table's counts to ours
+     * @param other table whose counts we add
+     * @throws IllegalArgumentException if the other counts aren't a table
+     */
+    @Override
+    public void merge(AuthorCounts other) {
+        if (!(other instanceof AuthorCountTable)) {
+            throw new IllegalArgumentException("can only merge another AuthorCountTable");
+        }
+        merge((AuthorCountTable)other);
+    }
+
+    /**
+     * Return a copy of this table, so the copy can keep being read while this table changes
+     * @return copy
+     */
+    public AuthorCountTable copy() {
+        AuthorCountTable copy = new AuthorCountTable(size);
+        copy.merge(this);
+        return copy;
+    }
+
+    /**
+     * Hash names held in buffers
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     * @return hash
+     */
+    static int hash(char[] first, int firstOffset, int firstLength,
+                    char[] last, int lastOffset, int lastLength) {
+        int hash = 17;
+        for (int i = 0; i < firstLength; i++) {
+            hash = 31 * hash + first[firstOffset + i];
+        }
+        hash = 31 * hash + firstLength;
+        for (int i = 0; i < lastLength; i++) {
+            hash = 31 * hash + last[lastOffset + i];
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Hash names held in strings, the same as the same names held in buffers
+     * @param first first name, not null
+     * @param last last name, not null
+     * @return hash
+     */
+    static int hash(String first, String last) {
+        int hash = 17;
+        for (int i = 0; i < first.length(); i++) {
+            hash = 31 * hash + first.charAt(i);
+        }
+        hash = 31 * hash + first.length();
+        for (int i = 0; i < last.length(); i++) {
+            hash = 31 * hash + last.charAt(i);
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Spread the hash bits, so the low bits we index the table with depend on every character
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Return true if the id's names match names held in buffers
+     */
+    private boolean equals(int id, char[] first, int firstOffset, int firstLength,
+                           char[] last, int lastOffset, int lastLength) {
+        if (firstLengths[id] != firstLength || lastLengths[id] != lastLength) {
+            return false;
+        }
+        int offset = nameOffsets[id];
+        for (int i = 0; i < firstLength; i++) {
+            if (names[offset + i] != first[firstOffset + i]) {
+                return false;
+            }
+        }
+        offset += firstLength;
+        for (int i = 0; i < lastLength; i++) {
+            if (names[offset + i] != last[lastOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return true if the id's names match names held in strings
+     */
+    private boolean equals(int id, String first, String last) {
+        if (firstLengths[id] != first.length() || lastLengths[id] != last.length()) {
+            return false;
+        }
+        int offset = nameOffsets[id];
+        for (int i = 0; i < first.length(); i++) {
+            if (names[offset + i] != first.charAt(i)) {
+                return false;
+            }
+        }
+        offset += first.length();
+        for (int i = 0; i < last.length(); i++) {
+            if (names[offset + i] != last.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Assign the next id to new names, copying the names
+     */
+    private int newId(int hash, char[] first, int firstOffset, int firstLength,
+                      char[] last, int lastOffset, int lastLength) {
+
+        // grow the per-id arrays
+        if (size == counts.length) {
+            int capacity = counts.length * 2;
+            nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+            firstLengths = Arrays.copyOf(firstLengths, capacity);
+            lastLengths = Arrays.copyOf(lastLengths, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+
+        // grow the names
+        int length = firstLength + lastLength;
+        if (namesLength + length > names.length) {
+            names = Arrays.copyOf(names, Math.max(names.length * 2, namesLength + length));
+        }
+        System.arraycopy(first, firstOffset, names, namesLength, firstLength);
+        System.arraycopy(last, lastOffset, names, namesLength + firstLength, lastLength);
+
+        int id = size++;
+        nameOffsets[id] = namesLength;
+        firstLengths[id] = firstLength;
+        lastLengths[id] = lastLength;
+        hashes[id] = hash;
+        counts[id] = 0;
+        namesLength += length;
+        return id;
+    }
+
+    /**
+     * Compare two names held in our names, char by char, a name that is a prefix of the other sorts first
+     */
+    private int compare(int offset, int length, int otherOffset, int otherLength) {
+        int common = Math.min(length, otherLength);
+        for (int i = 0; i < common; i++) {
+            int result = names[offset + i] - names[otherOffset + i];
+            if (result != 0) {
+                return result;
+            }
+        }
+        return length - otherLength;
+    }
+
+    /**
+     * Rebuild the table of ids at a new size
+     */
+    private void rehash(int tableSize) {
+        slots = new int[tableSize];
+        int mask = tableSize - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Return the table size for a number of authors, a power of two
+     */
+    private static int tableSize(int authors) {
+        int tableSize = Integer.highestOneBit(Math.max(2, (int)(authors / LOAD_FACTOR)) - 1) << 1;
+        return Math.max(16, tableSize);
+    }
+
+    /**
+     * Return a name's characters, no characters if there is no name
+     */
+    private static char[] chars(String name) {
+        return name == null ? new char[0] : name.toCharArray();
+    }
+}
@@ -0,0 +1,55 @@
+package com.mrsnottypants.nihpubmed;
+
+/**
+ * Where PubMedAuthorCountHandler counts the authors it sees.
+ * Names are passed as ranges of the handler's reusable buffers, so implementations must copy what they keep.
+ * A missing name is passed as an empty range.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public interface AuthorCounts {
+
+    /**
+     * Add one to the author's count
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     */
+    void increment(char[] first, int firstOffset, int firstLength, char[] last, int lastOffset, int lastLength);
+
+    /**
+     * Add one to the author's count, given their initials as well.
+     * Counts that don't match authors by their initials ignore them.
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     * @param initials buffer holding the initials
+     * @param initialsOffset where the initials start
+     * @param initialsLength initials length
+     */
+    default void increment(char[] first, int firstOffset, int firstLength,
+                           char[] last, int lastOffset, int lastLength,
+                           char[] initials, int initialsOffset, int initialsLength) {
+        increment(first, firstOffset, firstLength, last, lastOffset, lastLength);
+    }
+
+    /**
+     * Return how often the author was counted
+     * @param author author of interest
+     * @return count, zero if the author was never counted
+     */
+    int getAuthorCount(Author author);
+
+    /**
+     * Add the counts of another instance, of the same kind, to ours
+     * @param other counts to add
+     * @throws IllegalArgumentException if the other counts are a different kind
+     */
+    void merge(AuthorCounts other);
+}
@@ -0,0 +1,426 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A persistent index from author to the articles they are listed in, built once by AuthorIndexWriter while
+ * parsing, and memory-mapped when opened, so questions are answered without parsing any XML.
+ *
+ * An index is a directory of files:
+ *   authors.idx   header, then an open-addressed hash table of author ids, then a fixed-size entry per author:
+ *                 where its names are, its count, and where its postings are
+ *   names.dat     author names, UTF-8, first name then last name
+ *   postings.dat  per author, the PMIDs of the articles they are listed in, ascending, as varint deltas
+ *   records.idx   header, then an entry per article, sorted by PMID: source file, where its bytes are in
+ *                 records.dat, and their length stored and raw
+ *   records.dat   the raw XML of each article, each deflated on its own
+ *   files.txt     the source files, one per line
+ *
+ * Articles are copied into the index, so reading one back inflates that article alone, even if its source file is
+ * compressed, and doesn't need the source file at all.
+ * Each file but records.dat, which is read rather than mapped, must be under 2GB, which holds for the full PubMed
+ * baseline.
+ * An index can be read by any number of threads at the same time.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class AuthorIndex {
+
+    // file names within the index directory
+    static final String AUTHORS_FILE = "authors.idx";
+    static final String NAMES_FILE = "names.dat";
+    static final String POSTINGS_FILE = "postings.dat";
+    static final String RECORDS_FILE = "records.idx";
+    static final String RECORD_DATA_FILE = "records.dat";
+    static final String FILES_FILE = "files.txt";
+
+    // header of authors.idx and records.idx: magic, version, and two counts
+    static final int AUTHORS_MAGIC = 0x50414958;
+    static final int RECORDS_MAGIC = 0x50524958;
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 16;
+
+    // bytes per author entry: names offset (long), first and last name bytes, count, postings count (ints),
+    // postings offset (long)
+    static final int ENTRY_BYTES = 32;
+
+    // bytes per record entry: PMID (long), offset in records.dat (long), file, raw length, stored length (ints),
+    // and an unused int
+    static final int RECORD_BYTES = 32;
+
+    /**
+     * Open an index, memory-mapping its files
+     * @param directory index directory, written by AuthorIndexWriter
+     * @return index
+     * @throws IOException if the index cannot be read, or is not an index
+     */
+    public static AuthorIndex open(Path directory) throws IOException {
+        return new AuthorIndex(directory);
+    }
+
+    // mapped files
+    private final ByteBuffer authors;
+    private final ByteBuffer names;
+    private final ByteBuffer postings;
+    private final ByteBuffer records;
+
+    // the records' bytes, read rather than mapped
+    private final Path recordData;
+
+    // source files, by file id
+    private final List<Path> files;
+
+    // sizes from the headers
+    private final int authorCount;
+    private final int tableSize;
+    private final int recordCount;
+
+    // map the files and check their headers
+    //
+    private AuthorIndex(Path directory) throws IOException {
+
+        authors = map(directory.resolve(AUTHORS_FILE));
+        names = map(directory.resolve(NAMES_FILE));
+        postings = map(directory.resolve(POSTINGS_FILE));
+        records = map(directory.resolve(RECORDS_FILE));
+        recordData = directory.resolve(RECORD_DATA_FILE);
+
+        checkHeader(authors, AUTHORS_MAGIC, directory.resolve(AUTHORS_FILE));
+        authorCount = authors.getInt(8);
+        tableSize = authors.getInt(12);
+        checkHeader(records, RECORDS_MAGIC, directory.resolve(RECORDS_FILE));
+        recordCount = records.getInt(8);
+
+        files = new ArrayList<>();
+        for (String line : Files.readAllLines(directory.resolve(FILES_FILE), StandardCharsets.UTF_8)) {
+            files.add(Paths.get(line));
+        }
+    }
+
+    /**
+     * Return the number of distinct authors in the index
+     * @return number of authors
+     */
+    public int size() {
+        return authorCount;
+    }
+
+    /**
+     * Return the number of articles in the index
+     * @return number of articles
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Return the id of an author
+     * @param author author
+     * @return id, or -1 if the author isn't in the index
+     */
+    public int find(Author author) {
+
+        byte[] first = author.getFirstName().getBytes(StandardCharsets.UTF_8);
+        byte[] last = author.getLastName().getBytes(StandardCharsets.UTF_8);
+        int mask = tableSize - 1;
+        for (int slot = hash(first, last) & mask; ; slot = (slot + 1) & mask) {
+            int id = authors.getInt(HEADER_BYTES + slot * 4) - 1;
+            if (id < 0) {
+                return -1;
+            }
+            if (equals(id, first, last)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Return a count of how often this author appears in an article's author list.
+     * @param author author of interest
+     * @return count, zero if the author isn't in the index
+     */
+    public int getAuthorCount(Author author) {
+        int id = find(author);
+        return id < 0 ? 0 : getCount(id);
+    }
+
+    /**
+     * Return how often the author with the given id appears in an article's author list
+     * @param id author id, from 0 to size() - 1
+     * @return count
+     */
+    public int getCount(int id) {
+        return authors.getInt(entry(id) + 16);
+    }
+
+    /**
+     * Return the author with the given id
+     * @param id author id, from 0 to size() - 1
+     * @return author
+     */
+    public Author getAuthor(int id) {
+        int entry = entry(id);
+        int offset = (int)authors.getLong(entry);
+        int firstBytes = authors.getInt(entry + 8);
+        int lastBytes = authors.getInt(entry + 12);
+        return Author.of(string(offset, firstBytes), string(offset + firstBytes, lastBytes));
+    }
+
+    /**
+     * Return the PMIDs of the articles the author is listed in
+     * @param author author of interest
+     * @return PMIDs, ascending, empty if the author isn't in the index
+     */
+    public long[] getPmids(Author author) {
+        int id = find(author);
+        return id < 0 ? new long[0] : getPmids(id);
+    }
+
+    /**
+     * Return the PMIDs of the articles the author with the given id is listed in
+     * @param id author id, from 0 to size() - 1
+     * @return PMIDs, ascending
+     */
+    public long[] getPmids(int id) {
+        int entry = entry(id);
+        long[] pmids = new long[authors.getInt(entry + 20)];
+        int position = (int)authors.getLong(entry + 24);
+        long pmid = 0;
+        for (int i = 0; i < pmids.length; i++) {
+
+            // varint, seven bits at a time, low bits first
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = postings.get(position++);
+                delta |= (long)(b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            pmid += delta;
+            pmids[i] = pmid;
+        }
+        return pmids;
+    }
+
+    /**
+     * Return the raw XML of an article, its PubmedArticle element, as copied into the index
+     * @param pmid article's PMID
+     * @return article's bytes, empty if the PMID isn't in the index
+     * @throws IOException if records.dat cannot be read
+     */
+    public Optional<byte[]> getRecord(long pmid) throws IOException {
+        int record = findRecord(pmid);
+        if (record < 0) {
+            return Optional.empty();
+        }
+        return Optional.of(read(records.getLong(record + 8), records.getInt(record + 24),
+                records.getInt(record + 20)));
+    }
+
+    /**
+     * Return the source file an article was indexed from
+     * @param pmid article's PMID
+     * @return source file, empty if the PMID isn't in the index
+     */
+    public Optional<Path> getSourceFile(long pmid) {
+        int record = findRecord(pmid);
+        return record < 0 ? Optional.empty() : Optional.of(files.get(records.getInt(record + 16)));
+    }
+
+    /**
+     * Binary search the records, which are sorted by PMID
+     * @param pmid article's PMID
+     * @return offset of the article's entry in records.idx, or -1 if the PMID isn't in the index
+     */
+    private int findRecord(long pmid) {
+        int low = 0;
+        int high = recordCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int record = HEADER_BYTES + middle * RECORD_BYTES;
+            long middlePmid = records.getLong(record);
+            if (middlePmid < pmid) {
+                low = middle + 1;
+            } else if (middlePmid > pmid) {
+                high = middle - 1;
+            } else {
+                return record;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Hash an author's UTF-8 names, the writer and the reader must agree on this
+     * @param first first name bytes
+     * @param last last name bytes
+     * @return hash
+     */
+    static int hash(byte[] first, byte[] last) {
+        return hash(first, 0, first.length, last, 0, last.length);
+    }
+
+    /**
+     * Hash an author's UTF-8 names held in buffers, the same as the same names held in arrays of their own
+     * @param first buffer holding the first name bytes
+     * @param firstOffset where the first name starts
+     * @param firstLength first name bytes
+     * @param last buffer holding the last name bytes
+     * @param lastOffset where the last name starts
+     * @param lastLength last name bytes
+     * @return hash
+     */
+    static int hash(byte[] first, int firstOffset, int firstLength, byte[] last, int lastOffset, int lastLength) {
+        int hash = 0x811c9dc5;
+        for (int i = firstOffset; i < firstOffset + firstLength; i++) {
+            hash = (hash ^ (first[i] & 0xff)) * 0x01000193;
+        }
+
+        // 0xff never appears in UTF-8, so it separates the names
+        hash = (hash ^ 0xff) * 0x01000193;
+        for (int i = lastOffset; i < lastOffset + lastLength; i++) {
+            hash = (hash ^ (last[i] & 0xff)) * 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    /**
+     * Return the offset of an author's entry in authors.idx
+     * @param id author id
+     * @return offset
+     */
+    private int entry(int id) {
+        if (id < 0 || id >= authorCount) {
+            throw new IndexOutOfBoundsException(String.format("no author %d", id));
+        }
+        return HEADER_BYTES + tableSize * 4 + id * ENTRY_BYTES;
+    }
+
+    /**
+     * Return true if the author with the given id has these names
+     * @param id author id
+     * @param first first name bytes
+     * @param last last name bytes
+     * @return true if the names match
+     */
+    private boolean equals(int id, byte[] first, byte[] last) {
+        int entry = entry(id);
+        if (authors.getInt(entry + 8) != first.length || authors.getInt(entry + 12) != last.length) {
+            return false;
+        }
+        int offset = (int)authors.getLong(entry);
+        for (byte b : first) {
+            if (names.get(offset++) != b) {
+                return false;
+            }
+        }
+        for (byte b : last) {
+            if (names.get(offset++) != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode a name from names.dat
+     * @param offset where the name starts
+     * @param length name bytes
+     * @return name
+     */
+    private String string(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = names.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read an article's bytes from records.dat, and inflate them
+     * @param offset where the article's deflated bytes start
+     * @param storedLength number of deflated bytes
+     * @param length number of bytes inflated
+     * @return article's bytes
+     * @throws IOException if records.dat cannot be read, or is corrupt
+     */
+    private byte[] read(long offset, int storedLength, int length) throws IOException {
+
+        // one byte more than we read, the inflater wants a byte past the end of raw deflate data
+        byte[] stored = new byte[storedLength + 1];
+        try (FileChannel channel = FileChannel.open(recordData, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(stored, 0, storedLength);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException(String.format("%s is shorter than the index expects", recordData));
+                }
+            }
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(stored);
+            byte[] bytes = new byte[length];
+            for (int inflated = 0; inflated < length; ) {
+                int n = inflater.inflate(bytes, inflated, length - inflated);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException(String.format("%s is shorter than the index expects", recordData));
+                }
+                inflated += n;
+            }
+            return bytes;
+        } catch (DataFormatException ex) {
+            throw new IOException(String.format("%s is corrupt", recordData), ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Memory-map a whole file, read-only
+     * @param path file
+     * @return mapped file
+     * @throws IOException if the file cannot be mapped
+     */
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(String.format("%s is too large to map", path));
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Check the magic number and version of a mapped file
+     * @param buffer mapped file
+     * @param magic expected magic number
+     * @param path file, for the message
+     * @throws IOException if the header isn't what we expect
+     */
+    private static void checkHeader(ByteBuffer buffer, int magic, Path path) throws IOException {
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != magic) {
+            throw new IOException(String.format("%s is not an author index file", path));
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException(String.format("%s has version %d, expected %d", path, buffer.getInt(4), VERSION));
+        }
+    }
+}
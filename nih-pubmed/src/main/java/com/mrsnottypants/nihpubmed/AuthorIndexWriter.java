@@ -0,0 +1,423 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Builds an AuthorIndex while parsing PubMed files.  See AuthorIndex for the format.
+ *
+ * Each file is read twice: once scanning its bytes for where each PubmedArticle starts and ends, and once parsing
+ * it into PubMedRecords.  The k-th record parsed is the k-th record found by the scan.  As the parse reads each
+ * record's bytes they are deflated, on their own, into records.dat, so a record is read back without inflating
+ * its source file.
+ * Authors are interned into an AuthorCountTable, and each (author, PMID) pair is kept as a single long, so the
+ * postings are built with one primitive sort at the end.  Memory is about 8 bytes per author listing plus the
+ * author dictionary.
+ *
+ * If a PMID appears in more than one file, the record table points at its last appearance.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class AuthorIndexWriter implements PubMedRecordListener {
+
+    // PMIDs above this don't fit in the low half of a posting
+    private static final long MAX_PMID = Integer.MAX_VALUE;
+
+    /**
+     * Parse the files and write an index of them to the directory, which is created if it doesn't exist
+     * @param paths files to index
+     * @param directory index directory
+     * @throws IOException if a file cannot be read, or the index cannot be written
+     */
+    public static void build(List<Path> paths, Path directory) throws IOException {
+
+        Files.createDirectories(directory);
+        try (DataOutputStream recordData = open(directory.resolve(AuthorIndex.RECORD_DATA_FILE))) {
+            AuthorIndexWriter writer = new AuthorIndexWriter(recordData);
+            try {
+                for (int file = 0; file < paths.size(); file++) {
+                    Path path = paths.get(file);
+
+                    // where each record is
+                    try (InputStream inputStream = PubMedInput.open(path)) {
+                        writer.startFile(file, PubMedSplitter.findRecords(inputStream));
+                    }
+
+                    // what each record holds, copying each record's bytes as the parser reads them
+                    try (InputStream inputStream = new RecordCopyingInputStream(PubMedInput.open(path), writer)) {
+                        PubMedEngine.STAX.parse(inputStream, PubMedRecordHandler.newInstance(writer));
+                    }
+                    if (writer.fileRecords * 2 != writer.ranges.length) {
+                        throw new PubMedResultException(String.format("found %d records in %s but parsed %d",
+                                writer.ranges.length / 2, path, writer.fileRecords));
+                    }
+                }
+            } finally {
+                writer.deflater.end();
+            }
+            writer.write(paths, directory);
+        }
+    }
+
+    // authors, interned into ids, with their counts
+    private final AuthorCountTable authors = new AuthorCountTable();
+
+    // author id in the high half, PMID in the low half, one per author listing
+    private long[] postings = new long[1024];
+    private int postingCount;
+
+    // per record: PMID, source file, offset in records.dat, raw and stored length
+    private long[] recordPmids = new long[1024];
+    private int[] recordFiles = new int[1024];
+    private long[] recordOffsets = new long[1024];
+    private int[] recordLengths = new int[1024];
+    private int[] recordStoredLengths = new int[1024];
+    private int recordCount;
+
+    // the file being parsed, its record ranges, and how many of its records we've seen
+    private int file;
+    private long[] ranges;
+    private int fileRecords;
+
+    // where we copy each record's bytes, deflated, and how many bytes we've written
+    private final DataOutputStream recordData;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    private final byte[] deflated = new byte[64 * 1024];
+    private long recordDataSize;
+
+    // where each record of the file being parsed was copied to, and how many we've copied
+    private long[] fileOffsets;
+    private int[] fileStoredLengths;
+    private int fileCopies;
+
+    // use build
+    //
+    private AuthorIndexWriter(DataOutputStream recordData) {
+        this.recordData = recordData;
+    }
+
+    // gets ready for the records of the next file
+    //
+    private void startFile(int file, long[] ranges) {
+        this.file = file;
+        this.ranges = ranges;
+        fileRecords = 0;
+        fileOffsets = new long[ranges.length / 2];
+        fileStoredLengths = new int[ranges.length / 2];
+        fileCopies = 0;
+    }
+
+    /**
+     * Deflate the bytes of the next record of the file being parsed into records.dat
+     * @param bytes buffer holding the record's bytes
+     * @param length number of bytes
+     * @throws IOException if records.dat cannot be written
+     */
+    private void copyRecord(byte[] bytes, int length) throws IOException {
+        deflater.reset();
+        deflater.setInput(bytes, 0, length);
+        deflater.finish();
+        int stored = 0;
+        while (!deflater.finished()) {
+            int n = deflater.deflate(deflated);
+            recordData.write(deflated, 0, n);
+            stored += n;
+        }
+        fileOffsets[fileCopies] = recordDataSize;
+        fileStoredLengths[fileCopies] = stored;
+        fileCopies++;
+        recordDataSize += stored;
+    }
+
+    /**
+     * Count the record's authors, and keep its postings and location
+     * @param record parsed record
+     */
+    @Override
+    public void record(PubMedRecord record) {
+
+        // sanity check, the parser has read a record's end tag, so its bytes were copied, by the time it's parsed
+        if (fileRecords * 2 >= ranges.length) {
+            throw new PubMedResultException("parsed more records than were found");
+        }
+        if (fileRecords >= fileCopies) {
+            throw new PubMedResultException("parsed a record before its bytes were read");
+        }
+        long offset = fileOffsets[fileRecords];
+        int stored = fileStoredLengths[fileRecords];
+        long start = ranges[fileRecords * 2];
+        long end = ranges[fileRecords * 2 + 1];
+        fileRecords++;
+
+        long pmid = record.getPmid();
+        boolean indexed = pmid >= 0 && pmid <= MAX_PMID;
+        char[] names = record.getNames();
+        for (int i = 0; i < record.getAuthorCount(); i++) {
+            int id = authors.add(names, record.getFirstNameOffset(i), record.getFirstNameLength(i),
+                    names, record.getLastNameOffset(i), record.getLastNameLength(i));
+            if (indexed) {
+                if (postingCount == postings.length) {
+                    postings = Arrays.copyOf(postings, postings.length * 2);
+                }
+                postings[postingCount++] = ((long)id << 32) | pmid;
+            }
+        }
+
+        if (indexed) {
+            if (recordCount == recordPmids.length) {
+                int length = recordCount * 2;
+                recordPmids = Arrays.copyOf(recordPmids, length);
+                recordFiles = Arrays.copyOf(recordFiles, length);
+                recordOffsets = Arrays.copyOf(recordOffsets, length);
+                recordLengths = Arrays.copyOf(recordLengths, length);
+                recordStoredLengths = Arrays.copyOf(recordStoredLengths, length);
+            }
+            recordPmids[recordCount] = pmid;
+            recordFiles[recordCount] = file;
+            recordOffsets[recordCount] = offset;
+            recordLengths[recordCount] = (int)(end - start);
+            recordStoredLengths[recordCount] = stored;
+            recordCount++;
+        }
+    }
+
+    /**
+     * Write the index files
+     * @param paths source files
+     * @param directory index directory
+     * @throws IOException if the index cannot be written
+     */
+    private void write(List<Path> paths, Path directory) throws IOException {
+
+        int size = authors.size();
+        long[] postingsOffsets = new long[size];
+        int[] postingsCounts = new int[size];
+        writePostings(directory.resolve(AuthorIndex.POSTINGS_FILE), postingsOffsets, postingsCounts);
+
+        // names, remembering where each author's names are
+        long[] namesOffsets = new long[size];
+        int[] firstBytes = new int[size];
+        int[] lastBytes = new int[size];
+        int[] hashes = new int[size];
+        try (DataOutputStream output = open(directory.resolve(AuthorIndex.NAMES_FILE))) {
+            for (int id = 0; id < size; id++) {
+                byte[] first = authors.getFirstName(id).getBytes(StandardCharsets.UTF_8);
+                byte[] last = authors.getLastName(id).getBytes(StandardCharsets.UTF_8);
+                namesOffsets[id] = output.size();
+                firstBytes[id] = first.length;
+                lastBytes[id] = last.length;
+                hashes[id] = AuthorIndex.hash(first, last);
+                output.write(first);
+                output.write(last);
+            }
+        }
+
+        // hash table of ids, then the entries
+        int tableSize = 16;
+        while (tableSize < size * 2) {
+            tableSize <<= 1;
+        }
+        int[] slots = new int[tableSize];
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & (tableSize - 1);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (tableSize - 1);
+            }
+            slots[slot] = id + 1;
+        }
+        try (DataOutputStream output = open(directory.resolve(AuthorIndex.AUTHORS_FILE))) {
+            output.writeInt(AuthorIndex.AUTHORS_MAGIC);
+            output.writeInt(AuthorIndex.VERSION);
+            output.writeInt(size);
+            output.writeInt(tableSize);
+            for (int slot : slots) {
+                output.writeInt(slot);
+            }
+            for (int id = 0; id < size; id++) {
+                output.writeLong(namesOffsets[id]);
+                output.writeInt(firstBytes[id]);
+                output.writeInt(lastBytes[id]);
+                output.writeInt(authors.getCount(id));
+                output.writeInt(postingsCounts[id]);
+                output.writeLong(postingsOffsets[id]);
+            }
+        }
+
+        writeRecords(directory.resolve(AuthorIndex.RECORDS_FILE));
+
+        List<String> lines = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            lines.add(path.toAbsolutePath().toString());
+        }
+        Files.write(directory.resolve(AuthorIndex.FILES_FILE), lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sort the postings by author and PMID, and write each author's distinct PMIDs as varint deltas
+     * @param path postings file
+     * @param offsets set to where each author's postings start
+     * @param counts set to how many postings each author has
+     * @throws IOException if the file cannot be written
+     */
+    private void writePostings(Path path, long[] offsets, int[] counts) throws IOException {
+        Arrays.sort(postings, 0, postingCount);
+        try (DataOutputStream output = open(path)) {
+            int author = -1;
+            long previous = 0;
+            for (int i = 0; i < postingCount; i++) {
+                if (i > 0 && postings[i] == postings[i - 1]) {
+                    continue;
+                }
+                int id = (int)(postings[i] >>> 32);
+                long pmid = postings[i] & 0xffffffffL;
+                if (id != author) {
+                    author = id;
+                    offsets[id] = output.size();
+                    previous = 0;
+                }
+                for (long delta = pmid - previous; ; delta >>>= 7) {
+                    if (delta < 0x80) {
+                        output.writeByte((int)delta);
+                        break;
+                    }
+                    output.writeByte((int)(delta & 0x7f) | 0x80);
+                }
+                previous = pmid;
+                counts[id]++;
+            }
+        }
+    }
+
+    /**
+     * Sort the records by PMID, and write them, keeping the last appearance of each PMID
+     * @param path records file
+     * @throws IOException if the file cannot be written
+     */
+    private void writeRecords(Path path) throws IOException {
+
+        // PMID in the high half, record number in the low half
+        long[] order = new long[recordCount];
+        for (int i = 0; i < recordCount; i++) {
+            order[i] = (recordPmids[i] << 32) | i;
+        }
+        Arrays.sort(order);
+        int distinct = 0;
+        for (int i = 0; i < recordCount; i++) {
+            if (i + 1 == recordCount || order[i] >>> 32 != order[i + 1] >>> 32) {
+                order[distinct++] = order[i];
+            }
+        }
+
+        try (DataOutputStream output = open(path)) {
+            output.writeInt(AuthorIndex.RECORDS_MAGIC);
+            output.writeInt(AuthorIndex.VERSION);
+            output.writeInt(distinct);
+            output.writeInt(0);
+            for (int i = 0; i < distinct; i++) {
+                int record = (int)order[i];
+                output.writeLong(recordPmids[record]);
+                output.writeLong(recordOffsets[record]);
+                output.writeInt(recordFiles[record]);
+                output.writeInt(recordLengths[record]);
+                output.writeInt(recordStoredLengths[record]);
+                output.writeInt(0);
+            }
+        }
+    }
+
+    /**
+     * Open a buffered output stream on a file
+     * @param path file
+     * @return stream
+     * @throws IOException if the file cannot be created
+     */
+    private static DataOutputStream open(Path path) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024));
+    }
+
+    /**
+     * Stream that hands the writer the bytes of each record of the file being parsed, as they are read
+     */
+    private static final class RecordCopyingInputStream extends FilterInputStream {
+
+        // where we hand the records, and where the records are
+        private final AuthorIndexWriter writer;
+        private final long[] ranges;
+
+        // offset of the next byte read, index into ranges of the next record, and its bytes so far
+        private long position;
+        private int range;
+        private byte[] record = new byte[16 * 1024];
+        private int recordLength;
+
+        // scratch room for single bytes and skips
+        private final byte[] scratch = new byte[8 * 1024];
+
+        // construct a stream over the file being parsed, after startFile
+        //
+        private RecordCopyingInputStream(InputStream inputStream, AuthorIndexWriter writer) {
+            super(inputStream);
+            this.writer = writer;
+            ranges = writer.ranges;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = read(scratch, 0, 1);
+            return read < 0 ? -1 : scratch[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = in.read(bytes, offset, length);
+            if (read > 0) {
+                copy(bytes, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            int read = read(scratch, 0, (int)Math.min(n, scratch.length));
+            return Math.max(0, read);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        // keeps the bytes that are part of a record, and hands each record over once we have all of it
+        //
+        private void copy(byte[] bytes, int offset, int length) throws IOException {
+            long end = position + length;
+            while (range < ranges.length && ranges[range] < end) {
+                long from = Math.max(position, ranges[range]);
+                long to = Math.min(end, ranges[range + 1]);
+                int count = (int)(to - from);
+                if (recordLength + count > record.length) {
+                    record = Arrays.copyOf(record, Math.max(recordLength + count, record.length * 2));
+                }
+                System.arraycopy(bytes, offset + (int)(from - position), record, recordLength, count);
+                recordLength += count;
+                if (to < ranges[range + 1]) {
+                    break;
+                }
+                writer.copyRecord(record, recordLength);
+                recordLength = 0;
+                range += 2;
+            }
+            position = end;
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Author counts that can be kept up to date with PubMed's daily update files, without parsing the baseline again.
+ *
+ * Besides each author's count, a snapshot remembers which authors each PMID contributed.  Applying a file adds
+ * the authors of each of its citations; a citation we have seen before is a revision, so its old authors are
+ * subtracted first.  The PMIDs in a DeleteCitation have their authors subtracted and are forgotten.
+ * The baseline is applied the same way as the updates, one file at a time, in file name order.
+ *
+ * A snapshot is saved as a checkpoint file in a directory, named by its version, which goes up by one with each
+ * save.  Checkpoints are written to a temporary file and renamed, so a crash never leaves a partial checkpoint.
+ * The names of the files applied are saved with the counts, so a file is never applied twice.
+ *
+ * Citations without a PMID are counted, but can't be revised or deleted.
+ * Contributions are kept in an open-addressed table keyed by PMID, pointing into a single int array of author
+ * ids, so the baseline costs about 4 bytes per author listing plus 32 to 64 bytes per citation.
+ * This class is not thread-safe.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class AuthorSnapshot implements PubMedRecordListener {
+
+    // checkpoint file names are the prefix, the version, and the suffix
+    static final String CHECKPOINT_PREFIX = "snapshot-";
+    static final String CHECKPOINT_SUFFIX = ".dat";
+
+    // header of a checkpoint: magic, then format version
+    static final int MAGIC = 0x50534e50;
+    static final int FORMAT = 1;
+
+    // lengths of empty and deleted slots in the PMID table
+    private static final int EMPTY = -2;
+    private static final int DELETED = -1;
+
+    // we grow the PMID table when it is this full
+    private static final float LOAD_FACTOR = 0.5f;
+
+    /**
+     * Return an empty snapshot, version zero
+     * @return new instance
+     */
+    public static AuthorSnapshot newInstance() {
+        return new AuthorSnapshot(16, 16);
+    }
+
+    /**
+     * Load the latest checkpoint in a directory
+     * @param directory checkpoint directory
+     * @return latest snapshot, or an empty snapshot if the directory has no checkpoints
+     * @throws IOException if the checkpoint cannot be read, or is not a checkpoint
+     */
+    public static AuthorSnapshot load(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return newInstance();
+        }
+        List<Path> checkpoints = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(
+                directory, CHECKPOINT_PREFIX + "*" + CHECKPOINT_SUFFIX)) {
+            for (Path entry : entries) {
+                checkpoints.add(entry);
+            }
+        }
+
+        // versions are zero-padded, so the latest sorts last
+        if (checkpoints.isEmpty()) {
+            return newInstance();
+        }
+        return read(Collections.max(checkpoints));
+    }
+
+    /**
+     * Read a checkpoint file
+     * @param path checkpoint file
+     * @return snapshot
+     * @throws IOException if the checkpoint cannot be read, or is not a checkpoint
+     */
+    public static AuthorSnapshot read(Path path) throws IOException {
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 64 * 1024))) {
+
+            if (input.readInt() != MAGIC) {
+                throw new IOException(String.format("%s is not a snapshot checkpoint", path));
+            }
+            int format = input.readInt();
+            if (format != FORMAT) {
+                throw new IOException(String.format("%s has format %d, expected %d", path, format, FORMAT));
+            }
+            long version = input.readLong();
+
+            // files applied
+            int fileCount = input.readInt();
+            List<String> files = new ArrayList<>(fileCount);
+            for (int i = 0; i < fileCount; i++) {
+                files.add(input.readUTF());
+            }
+
+            // authors, in id order
+            int authorCount = input.readInt();
+            int recordCount = input.readInt();
+            int listingCount = input.readInt();
+            AuthorSnapshot snapshot = new AuthorSnapshot(authorCount, recordCount);
+            snapshot.version = version;
+            snapshot.files.addAll(files);
+            for (int id = 0; id < authorCount; id++) {
+                snapshot.authors.add(input.readUTF(), input.readUTF(), input.readInt());
+            }
+
+            // contributions of each PMID
+            snapshot.ids = new int[Math.max(16, listingCount)];
+            for (int i = 0; i < recordCount; i++) {
+                int slot = snapshot.slot(input.readLong());
+                int length = input.readInt();
+                snapshot.starts[slot] = snapshot.idsLength;
+                snapshot.lengths[slot] = length;
+                for (int j = 0; j < length; j++) {
+                    snapshot.ids[snapshot.idsLength++] = input.readInt();
+                }
+                snapshot.recordCount++;
+            }
+            return snapshot;
+        }
+    }
+
+    // authors and their counts
+    private final AuthorCountTable authors;
+
+    // open-addressed table keyed by PMID, size is a power of two
+    // per slot: where its author ids start, and how many there are, EMPTY or DELETED
+    private long[] pmids;
+    private int[] starts;
+    private int[] lengths;
+    private int used;
+
+    // author ids of every PMID, back to back - revised PMIDs leave their old ids behind until the next save
+    private int[] ids;
+    private int idsLength;
+
+    // number of PMIDs that have contributions
+    private int recordCount;
+
+    // checkpoint version, and the names of the files applied so far
+    private long version;
+    private final List<String> files = new ArrayList<>();
+
+    // construct an empty snapshot
+    //
+    private AuthorSnapshot(int expectedAuthors, int expectedRecords) {
+        authors = new AuthorCountTable(expectedAuthors);
+        resize(tableSize(expectedRecords));
+        ids = new int[16];
+    }
+
+    /**
+     * Apply a PubMed file: add its citations, replace the ones we've seen before, and remove its deletions.
+     * A file is known by its name, so a file with the same name as one applied before is not applied again.
+     * @param path baseline or update file, plain or compressed
+     * @return true if the file was applied, false if it was applied before
+     * @throws IOException if the file cannot be read
+     * @throws PubMedResultException if the file cannot be parsed
+     */
+    public boolean apply(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        if (files.contains(name)) {
+            return false;
+        }
+        try (InputStream inputStream = PubMedInput.open(path)) {
+            PubMedEngine.STAX.parse(inputStream, PubMedRecordHandler.newInstance(this));
+        }
+        files.add(name);
+        return true;
+    }
+
+    /**
+     * Save the snapshot as a new checkpoint in a directory, which is created if it doesn't exist
+     * @param directory checkpoint directory
+     * @return checkpoint file
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public Path save(Path directory) throws IOException {
+
+        Files.createDirectories(directory);
+        long next = version + 1;
+        Path path = directory.resolve(String.format("%s%08d%s", CHECKPOINT_PREFIX, next, CHECKPOINT_SUFFIX));
+        Path temporary = Files.createTempFile(directory, CHECKPOINT_PREFIX, ".tmp");
+        try {
+            write(temporary, next);
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        version = next;
+        return path;
+    }
+
+    /**
+     * Get the snapshot's version, the version of the checkpoint it was loaded from or last saved to
+     * @return version, zero if never saved
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the names of the files applied, in the order they were applied
+     * @return file names
+     */
+    public List<String> getAppliedFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * Get the number of PMIDs whose authors are counted
+     * @return number of citations
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Return a count of how often this author appears in an article's author list.
+     * @param author author of interest
+     * @return count, zero if the author isn't in the snapshot
+     */
+    public int getAuthorCount(Author author) {
+        return authors.getAuthorCount(author);
+    }
+
+    /**
+     * Return the authors a PMID contributed, in author list order
+     * @param pmid PMID
+     * @return authors, empty if the PMID isn't counted
+     */
+    public List<Author> getAuthors(long pmid) {
+        int slot = find(pmid);
+        if (slot < 0 || lengths[slot] < 0) {
+            return Collections.emptyList();
+        }
+        List<Author> result = new ArrayList<>(lengths[slot]);
+        for (int i = 0; i < lengths[slot]; i++) {
+            result.add(authors.getAuthor(ids[starts[slot] + i]));
+        }
+        return result;
+    }
+
+    /**
+     * Add a citation's authors, subtracting the authors of any earlier version of it
+     * @param record parsed citation
+     */
+    @Override
+    public void record(PubMedRecord record) {
+
+        // a citation without a PMID can only be counted
+        char[] names = record.getNames();
+        long pmid = record.getPmid();
+        if (pmid < 0) {
+            for (int i = 0; i < record.getAuthorCount(); i++) {
+                authors.add(names, record.getFirstNameOffset(i), record.getFirstNameLength(i),
+                        names, record.getLastNameOffset(i), record.getLastNameLength(i));
+            }
+            return;
+        }
+
+        int slot = slot(pmid);
+        subtract(slot);
+        if (idsLength + record.getAuthorCount() > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(idsLength + record.getAuthorCount(), ids.length * 2));
+        }
+        starts[slot] = idsLength;
+        lengths[slot] = record.getAuthorCount();
+        for (int i = 0; i < record.getAuthorCount(); i++) {
+            ids[idsLength++] = authors.add(names, record.getFirstNameOffset(i), record.getFirstNameLength(i),
+                    names, record.getLastNameOffset(i), record.getLastNameLength(i));
+        }
+        recordCount++;
+    }
+
+    /**
+     * Subtract a deleted citation's authors, and forget it
+     * @param pmid PMID of the deleted citation
+     */
+    @Override
+    public void delete(long pmid) {
+        int slot = find(pmid);
+        if (slot >= 0) {
+            subtract(slot);
+        }
+    }
+
+    /**
+     * Subtract the authors a slot's PMID contributed, if it has any, and mark it deleted
+     * @param slot slot in the PMID table
+     */
+    private void subtract(int slot) {
+        if (lengths[slot] >= 0) {
+            for (int i = 0; i < lengths[slot]; i++) {
+                authors.addCount(ids[starts[slot] + i], -1);
+            }
+            lengths[slot] = DELETED;
+            recordCount--;
+        }
+    }
+
+    /**
+     * Return a PMID's slot
+     * @param pmid PMID
+     * @return slot, or -1 if the PMID has never been seen
+     */
+    private int find(long pmid) {
+        int mask = pmids.length - 1;
+        for (int slot = hash(pmid) & mask; lengths[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (pmids[slot] == pmid) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return a PMID's slot, adding it as deleted if it has never been seen
+     * @param pmid PMID
+     * @return slot
+     */
+    private int slot(long pmid) {
+        int found = find(pmid);
+        if (found >= 0) {
+            return found;
+        }
+        if (used + 1 > pmids.length * LOAD_FACTOR) {
+            resize(pmids.length * 2);
+        }
+        int mask = pmids.length - 1;
+        int slot = hash(pmid) & mask;
+        while (lengths[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        pmids[slot] = pmid;
+        lengths[slot] = DELETED;
+        used++;
+        return slot;
+    }
+
+    /**
+     * Move the PMID table to a new size, dropping deleted PMIDs
+     * @param tableSize new size, a power of two
+     */
+    private void resize(int tableSize) {
+        long[] oldPmids = pmids;
+        int[] oldStarts = starts;
+        int[] oldLengths = lengths;
+        pmids = new long[tableSize];
+        starts = new int[tableSize];
+        lengths = new int[tableSize];
+        Arrays.fill(lengths, EMPTY);
+        used = 0;
+        if (oldPmids == null) {
+            return;
+        }
+        int mask = tableSize - 1;
+        for (int i = 0; i < oldPmids.length; i++) {
+            if (oldLengths[i] >= 0) {
+                int slot = hash(oldPmids[i]) & mask;
+                while (lengths[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                pmids[slot] = oldPmids[i];
+                starts[slot] = oldStarts[i];
+                lengths[slot] = oldLengths[i];
+                used++;
+            }
+        }
+    }
+
+    /**
+     * Write a checkpoint, leaving out authors no longer counted, and the ids revisions left behind
+     * @param path checkpoint file
+     * @param version checkpoint version
+     * @throws IOException if the file cannot be written
+     */
+    private void write(Path path, long version) throws IOException {
+
+        // authors still counted get new, dense ids
+        int[] remap = new int[authors.size()];
+        int authorCount = 0;
+        for (int id = 0; id < authors.size(); id++) {
+            remap[id] = authors.getCount(id) == 0 ? -1 : authorCount++;
+        }
+        int listingCount = 0;
+        for (int slot = 0; slot < pmids.length; slot++) {
+            listingCount += Math.max(0, lengths[slot]);
+        }
+
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT);
+            output.writeLong(version);
+            output.writeInt(files.size());
+            for (String file : files) {
+                output.writeUTF(file);
+            }
+            output.writeInt(authorCount);
+            output.writeInt(recordCount);
+            output.writeInt(listingCount);
+            for (int id = 0; id < authors.size(); id++) {
+                if (remap[id] >= 0) {
+                    output.writeUTF(authors.getFirstName(id));
+                    output.writeUTF(authors.getLastName(id));
+                    output.writeInt(authors.getCount(id));
+                }
+            }
+            for (int slot = 0; slot < pmids.length; slot++) {
+                if (lengths[slot] >= 0) {
+                    output.writeLong(pmids[slot]);
+                    output.writeInt(lengths[slot]);
+                    for (int i = 0; i < lengths[slot]; i++) {
+                        output.writeInt(remap[ids[starts[slot] + i]]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Spread a PMID's bits, so sequential PMIDs don't cluster in the table
+     * @param pmid PMID
+     * @return hash
+     */
+    private static int hash(long pmid) {
+        long hash = pmid * 0x9e3779b97f4a7c15L;
+        return (int)(hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Return a power-of-two table size with room for some PMIDs
+     * @param records expected number of PMIDs
+     * @return table size
+     */
+    private static int tableSize(int records) {
+        int tableSize = 16;
+        while (tableSize * LOAD_FACTOR < records) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+}
@@ -0,0 +1,255 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Counts how often each author is listed in each year, so an author's output over time, or over a range of years,
+ * can be answered without parsing again.
+ *
+ * Authors are interned in an AuthorCountTable, which also keeps each author's count over every year.  Each author's
+ * years are a block in a single int pool: one int per year the author was listed in, the year in the high bits and
+ * the count in the low bits, sorted by year.  Most authors are listed in a year or two, so most blocks hold an int
+ * or two, and no author costs an object.  A block doubles, moving to the end of the pool, when it is full - the
+ * space it leaves is only reclaimed by merging into new counts.  Years are found in a block by binary search.
+ *
+ * Years from FIRST_YEAR up to LAST_YEAR are counted.  Articles without a year, or with a year outside the range,
+ * count towards an author's total only.
+ * This class is not thread-safe, each thread needs counts of its own.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class AuthorYears implements PubMedAggregator {
+
+    /**
+     * Earliest year counted
+     */
+    public static final int FIRST_YEAR = 1700;
+
+    /**
+     * Latest year counted
+     */
+    public static final int LAST_YEAR = FIRST_YEAR + (1 << 9) - 1;
+
+    // an entry is the year, less FIRST_YEAR, in the high 9 bits, and the count in the low 23
+    private static final int COUNT_BITS = 23;
+    private static final int COUNT_MASK = (1 << COUNT_BITS) - 1;
+
+    // entries in a new block
+    private static final int FIRST_BLOCK = 2;
+
+    /**
+     * Return new, empty, counts
+     * @return new instance
+     */
+    public static AuthorYears newInstance() {
+        return new AuthorYears();
+    }
+
+    // authors, and their counts over every year
+    private final AuthorCountTable table = new AuthorCountTable();
+
+    // where each author's block starts in the pool, and how many entries it holds, indexed by author id
+    // a block's capacity is its size rounded up to a power of two, at least FIRST_BLOCK
+    private int[] blockStarts = new int[1024];
+    private int[] blockSizes = new int[1024];
+
+    // every author's entries, and the end of the last block
+    private int[] pool = new int[4096];
+    private int poolSize;
+
+    // construct empty counts
+    //
+    private AuthorYears() {
+    }
+
+    /**
+     * Count each author in a record's author list, against the year the record was published
+     * @param record parsed record
+     * @throws IllegalStateException if an author is listed more often in one year than we can count
+     */
+    @Override
+    public void record(PubMedRecord record) {
+        int year = record.getYear();
+        boolean dated = year >= FIRST_YEAR && year <= LAST_YEAR;
+        char[] names = record.getNames();
+        for (int i = 0; i < record.getAuthorCount(); i++) {
+            int id = table.add(names, record.getFirstNameOffset(i), record.getFirstNameLength(i),
+                    names, record.getLastNameOffset(i), record.getLastNameLength(i));
+            if (dated) {
+                add(id, year - FIRST_YEAR, 1);
+            }
+        }
+    }
+
+    /**
+     * Return how often the author was listed, in any year or none
+     * @param author author of interest
+     * @return count, zero if we've never seen the author
+     */
+    public int getCount(Author author) {
+        return table.getAuthorCount(author);
+    }
+
+    /**
+     * Return how often the author was listed in a range of years
+     * @param author author of interest
+     * @param fromYear earliest year of the range
+     * @param toYear latest year of the range, inclusive
+     * @return count, zero if we've never seen the author in the range
+     */
+    public int getCount(Author author, int fromYear, int toYear) {
+        int id = table.find(author);
+        int from = Math.max(fromYear, FIRST_YEAR) - FIRST_YEAR;
+        int to = Math.min(toYear, LAST_YEAR) - FIRST_YEAR;
+        if (id < 0 || from > to) {
+            return 0;
+        }
+        // the range starts at the first year, or where it would be if the author wasn't listed in it
+        int start = blockStarts[id];
+        int end = start + blockSizes[id];
+        int first = find(start, end, from);
+        int count = 0;
+        for (int i = first < 0 ? -first - 1 : first; i < end && pool[i] >>> COUNT_BITS <= to; i++) {
+            count += pool[i] & COUNT_MASK;
+        }
+        return count;
+    }
+
+    /**
+     * Return how often the author was listed in each year
+     * @param author author of interest
+     * @return count per year, only years the author was listed in
+     */
+    public SortedMap<Integer, Integer> getYears(Author author) {
+        SortedMap<Integer, Integer> years = new TreeMap<>();
+        int id = table.find(author);
+        if (id >= 0) {
+            int start = blockStarts[id];
+            for (int i = start; i < start + blockSizes[id]; i++) {
+                years.put(FIRST_YEAR + (pool[i] >>> COUNT_BITS), pool[i] & COUNT_MASK);
+            }
+        }
+        return years;
+    }
+
+    /**
+     * Return the number of authors counted
+     * @return number of authors
+     */
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * Return the number of ints the years take, including space left behind by blocks that moved
+     * @return ints in use
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Add the counts of another instance to ours
+     * @param other counts to add
+     * @throws IllegalArgumentException if the other isn't an AuthorYears
+     * @throws IllegalStateException if an author is listed more often in one year than we can count
+     */
+    @Override
+    public void merge(PubMedAggregator other) {
+        if (!(other instanceof AuthorYears)) {
+            throw new IllegalArgumentException("can only merge another AuthorYears");
+        }
+        AuthorYears years = (AuthorYears)other;
+        for (int otherId = 0; otherId < years.table.size(); otherId++) {
+            int id = table.add(years.table, otherId);
+            int start = years.blockStarts[otherId];
+            for (int i = start; i < start + years.blockSizes[otherId]; i++) {
+                add(id, years.pool[i] >>> COUNT_BITS, years.pool[i] & COUNT_MASK);
+            }
+        }
+    }
+
+    /**
+     * Add to an author's count in a year, making room for the year in the author's block if it's new
+     * @param id author's id
+     * @param year year, less FIRST_YEAR
+     * @param count how much to add
+     */
+    private void add(int id, int year, int count) {
+
+        // an author we haven't seen before has an empty block
+        if (id >= blockStarts.length) {
+            blockStarts = Arrays.copyOf(blockStarts, blockStarts.length * 2);
+            blockSizes = Arrays.copyOf(blockSizes, blockSizes.length * 2);
+        }
+        int size = blockSizes[id];
+        if (size == 0) {
+            blockStarts[id] = allocate(FIRST_BLOCK);
+        }
+
+        // a year we've seen before costs a search
+        int start = blockStarts[id];
+        int index = find(start, start + size, year);
+        if (index >= 0) {
+            if ((pool[index] & COUNT_MASK) + count > COUNT_MASK) {
+                throw new IllegalStateException(String.format("more than %d listings of %s in %d",
+                        COUNT_MASK, table.getAuthor(id), FIRST_YEAR + year));
+            }
+            pool[index] += count;
+            return;
+        }
+
+        // a new year is inserted in order, moving the block to a bigger one if it is full
+        index = -index - 1;
+        if (size >= FIRST_BLOCK && Integer.bitCount(size) == 1) {
+            int moved = allocate(size * 2);
+            System.arraycopy(pool, start, pool, moved, size);
+            index += moved - start;
+            start = moved;
+            blockStarts[id] = start;
+        }
+        System.arraycopy(pool, index, pool, index + 1, start + size - index);
+        pool[index] = year << COUNT_BITS | count;
+        blockSizes[id] = size + 1;
+    }
+
+    /**
+     * Find a year in a block
+     * @param start first entry of the block
+     * @param end one past the last entry of the block
+     * @param year year, less FIRST_YEAR
+     * @return the year's entry, or -(insertion point) - 1 if the block doesn't hold it
+     */
+    private int find(int start, int end, int year) {
+        int low = start;
+        int high = end - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleYear = pool[middle] >>> COUNT_BITS;
+            if (middleYear < year) {
+                low = middle + 1;
+            } else if (middleYear > year) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -low - 1;
+    }
+
+    /**
+     * Allocate a block at the end of the pool, growing it if it's full
+     * @param capacity entries in the block
+     * @return where the block starts
+     */
+    private int allocate(int capacity) {
+        if (poolSize + capacity > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + capacity));
+        }
+        int start = poolSize;
+        poolSize += capacity;
+        return start;
+    }
+}
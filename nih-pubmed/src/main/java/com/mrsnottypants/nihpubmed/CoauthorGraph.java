@@ -0,0 +1,244 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A weighted, undirected co-authorship graph: authors are vertices, and two authors listed on the same article
+ * share an edge, weighted by the number of articles they share.  Build one with CoauthorGraphBuilder.
+ *
+ * Authors are dense int ids, interned in an AuthorCountTable whose counts are the number of articles each author
+ * is listed on.  Edges are held in compressed sparse row form: the neighbours of author id are
+ * neighbors[offsets[id]] to neighbors[offsets[id + 1] - 1], ascending, with their weights alongside.
+ * So a neighbour query is a hash lookup and an array slice, and the whole graph is three primitive arrays.
+ * Each edge is held twice, once in each direction, so the graph holds fewer than 2^30 edges.
+ *
+ * A graph is read-only, and can be read by any number of threads at the same time.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class CoauthorGraph {
+
+    // header of a graph file: magic, then format version
+    static final int MAGIC = 0x50434f47;
+    static final int FORMAT = 1;
+
+    /**
+     * Read a graph written by write
+     * @param path graph file
+     * @return graph
+     * @throws IOException if the file cannot be read, or is not a graph
+     */
+    public static CoauthorGraph read(Path path) throws IOException {
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 64 * 1024))) {
+
+            if (input.readInt() != MAGIC) {
+                throw new IOException(String.format("%s is not a co-author graph", path));
+            }
+            int format = input.readInt();
+            if (format != FORMAT) {
+                throw new IOException(String.format("%s has format %d, expected %d", path, format, FORMAT));
+            }
+
+            int size = input.readInt();
+            AuthorCountTable authors = new AuthorCountTable(size);
+            for (int id = 0; id < size; id++) {
+                authors.add(input.readUTF(), input.readUTF(), input.readInt());
+            }
+            int[] offsets = readInts(input, size + 1);
+            int[] neighbors = readInts(input, offsets[size]);
+            int[] weights = readInts(input, offsets[size]);
+            return new CoauthorGraph(authors, offsets, neighbors, weights);
+        }
+    }
+
+    // authors, and the number of articles each is listed on
+    private final AuthorCountTable authors;
+
+    // compressed sparse rows: where each author's neighbours start, the neighbours, and the edge weights
+    private final int[] offsets;
+    private final int[] neighbors;
+    private final int[] weights;
+
+    /**
+     * Construct a graph from its rows
+     * @param authors authors, by id, with their article counts
+     * @param offsets where each author's neighbours start, one more entry than there are authors
+     * @param neighbors neighbours of each author, ascending
+     * @param weights weight of each edge, alongside the neighbours
+     */
+    CoauthorGraph(AuthorCountTable authors, int[] offsets, int[] neighbors, int[] weights) {
+        this.authors = authors;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.weights = weights;
+    }
+
+    /**
+     * Return the number of authors
+     * @return number of authors, ids run from zero to size - 1
+     */
+    public int size() {
+        return authors.size();
+    }
+
+    /**
+     * Return the number of edges, each pair of co-authors counted once
+     * @return number of edges
+     */
+    public int getEdgeCount() {
+        return neighbors.length / 2;
+    }
+
+    /**
+     * Return the id of an author
+     * @param author author
+     * @return id, or -1 if the author isn't in the graph
+     */
+    public int find(Author author) {
+        return authors.find(author);
+    }
+
+    /**
+     * Return the author with the given id
+     * @param id author id
+     * @return author
+     */
+    public Author getAuthor(int id) {
+        return authors.getAuthor(id);
+    }
+
+    /**
+     * Return the number of articles an author is listed on
+     * @param id author id
+     * @return number of articles
+     */
+    public int getArticleCount(int id) {
+        return authors.getCount(id);
+    }
+
+    /**
+     * Return the number of distinct co-authors an author has
+     * @param id author id
+     * @return degree
+     */
+    public int getDegree(int id) {
+        return offsets[id + 1] - offsets[id];
+    }
+
+    /**
+     * Return one of an author's co-authors
+     * @param id author id
+     * @param i neighbour index, from 0 to getDegree(id) - 1, in ascending id order
+     * @return co-author's id
+     */
+    public int getNeighbor(int id, int i) {
+        return neighbors[offsets[id] + i];
+    }
+
+    /**
+     * Return the number of articles an author shares with one of their co-authors
+     * @param id author id
+     * @param i neighbour index, from 0 to getDegree(id) - 1
+     * @return edge weight
+     */
+    public int getWeight(int id, int i) {
+        return weights[offsets[id] + i];
+    }
+
+    /**
+     * Return the number of articles two authors share
+     * @param id author id
+     * @param other other author's id
+     * @return edge weight, zero if they share none
+     */
+    public int getWeightBetween(int id, int other) {
+        int i = Arrays.binarySearch(neighbors, offsets[id], offsets[id + 1], other);
+        return i < 0 ? 0 : weights[i];
+    }
+
+    /**
+     * Return an author's co-authors, most shared articles first, then by id
+     * @param id author id
+     * @param k most co-authors wanted
+     * @return up to k co-author ids
+     */
+    public int[] getTopNeighbors(int id, int k) {
+
+        // one pass over the row, keeping the best so far in order - ties keep the smaller id, which comes first
+        int[] top = new int[Math.max(0, Math.min(k, getDegree(id)))];
+        int[] topWeights = new int[top.length];
+        int count = 0;
+        for (int i = offsets[id]; i < offsets[id + 1] && top.length > 0; i++) {
+            int weight = weights[i];
+            if (count == top.length && weight <= topWeights[count - 1]) {
+                continue;
+            }
+            int j = count < top.length ? count++ : count - 1;
+            while (j > 0 && topWeights[j - 1] < weight) {
+                top[j] = top[j - 1];
+                topWeights[j] = topWeights[j - 1];
+                j--;
+            }
+            top[j] = neighbors[i];
+            topWeights[j] = weight;
+        }
+        return top;
+    }
+
+    /**
+     * Write the graph to a file
+     * @param path graph file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path path) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT);
+            output.writeInt(authors.size());
+            for (int id = 0; id < authors.size(); id++) {
+                output.writeUTF(authors.getFirstName(id));
+                output.writeUTF(authors.getLastName(id));
+                output.writeInt(authors.getCount(id));
+            }
+            writeInts(output, offsets);
+            writeInts(output, neighbors);
+            writeInts(output, weights);
+        }
+    }
+
+    /**
+     * Write an array of ints
+     * @param output where we write
+     * @param values ints to write
+     * @throws IOException if the ints cannot be written
+     */
+    private static void writeInts(DataOutputStream output, int[] values) throws IOException {
+        for (int value : values) {
+            output.writeInt(value);
+        }
+    }
+
+    /**
+     * Read an array of ints
+     * @param input where we read
+     * @param length number of ints
+     * @return ints
+     * @throws IOException if the ints cannot be read
+     */
+    private static int[] readInts(DataInputStream input, int length) throws IOException {
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = input.readInt();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,343 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds a CoauthorGraph from the records of a PubMedRecordHandler.
+ *
+ * Each article's authors are interned into ids, and each pair of them is appended to a buffer as a single long,
+ * lower id in the high half.  When the buffer fills, it is sorted and its distinct pairs, with their weights,
+ * become a sorted run, so memory grows with the number of distinct pairs, not the number of articles.  Runs are
+ * merged as they come whenever a run is no less than half the one before it, so runs halve in length from the
+ * oldest, each pair is merged about log(runs) times, and the runs left are merged once at the end.  The rows of
+ * the graph are laid out from the distinct pairs in one pass.
+ *
+ * As a PubMedAggregator, files and chunks of files are parsed into builders of their own on several threads,
+ * see build, and merged: the other builder's authors are interned into ours, and its runs, in our ids, become
+ * runs of ours.
+ *
+ * An article with n authors has n(n-1)/2 pairs, so consortium papers with thousands of authors would swamp the
+ * graph with edges that say little about who works with whom.  Articles with more authors than a cap still count
+ * towards their authors' article counts, but add no edges.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class CoauthorGraphBuilder implements PubMedAggregator {
+
+    // articles with more authors than this add no edges, unless we're told otherwise
+    static final int DEFAULT_MAX_AUTHORS = 100;
+
+    // pairs we buffer before sorting them into a run
+    static final int BUFFER_PAIRS = 1 << 22;
+
+    /**
+     * Parse the files and build their co-author graph.
+     * Files, and chunks of large files, are parsed concurrently, each into a builder of its own, and the builders
+     * are merged.
+     * @param paths files to parse
+     * @param threads maximum number of files, or chunks of files, to parse at the same time
+     * @param engine parse engine, sax or stax
+     * @param maxAuthors articles with more authors than this add no edges
+     * @return graph
+     * @throws IllegalArgumentException if the engine is scan, which only passes on author lists
+     * @throws PubMedResultException if a file cannot be read or parsed
+     */
+    public static CoauthorGraph build(List<Path> paths, int threads, PubMedEngine engine, int maxAuthors) {
+        PubMedPipeline pipeline = PubMedBatch.aggregate(paths, threads, engine,
+                () -> PubMedPipeline.of(newInstance(maxAuthors)));
+        return ((CoauthorGraphBuilder)pipeline.get(0)).toGraph();
+    }
+
+    /**
+     * Return a new builder
+     * @param maxAuthors articles with more authors than this add no edges
+     * @return new instance
+     * @throws IllegalArgumentException if maxAuthors is less than two
+     */
+    public static CoauthorGraphBuilder newInstance(int maxAuthors) {
+        return newInstance(maxAuthors, BUFFER_PAIRS);
+    }
+
+    /**
+     * Return a new builder
+     * @param maxAuthors articles with more authors than this add no edges
+     * @param bufferPairs pairs we buffer before sorting them into a run
+     * @return new instance
+     * @throws IllegalArgumentException if maxAuthors is less than two
+     */
+    static CoauthorGraphBuilder newInstance(int maxAuthors, int bufferPairs) {
+        if (maxAuthors < 2) {
+            throw new IllegalArgumentException(String.format("maxAuthors must be at least 2: %d", maxAuthors));
+        }
+        return new CoauthorGraphBuilder(maxAuthors, bufferPairs);
+    }
+
+    /**
+     * Distinct pairs, ascending, and the number of articles each pair shares
+     */
+    private static final class Run {
+
+        private final long[] pairs;
+        private final int[] weights;
+
+        // construct a run
+        //
+        private Run(long[] pairs, int[] weights) {
+            this.pairs = pairs;
+            this.weights = weights;
+        }
+    }
+
+    // articles with more authors than this add no edges
+    private final int maxAuthors;
+
+    // pairs we buffer before sorting them into a run
+    private final int bufferPairs;
+
+    // authors, and the number of articles each is listed on
+    private final AuthorCountTable authors = new AuthorCountTable();
+
+    // pairs not yet in a run, lower id in the high half
+    private long[] buffer = new long[16];
+    private int bufferLength;
+
+    // sorted runs, oldest first, each less than half as long as the one before it once it is pushed
+    private final List<Run> runs = new ArrayList<>();
+
+    // ids of the current article's authors, reused for every article
+    private int[] ids = new int[16];
+
+    // number of articles whose pairs were left out
+    private long cappedCount;
+
+    // construct an empty builder
+    //
+    private CoauthorGraphBuilder(int maxAuthors, int bufferPairs) {
+        this.maxAuthors = maxAuthors;
+        this.bufferPairs = bufferPairs;
+    }
+
+    /**
+     * Add an article's authors, and its co-author pairs if it doesn't have too many authors
+     * @param record parsed record
+     */
+    @Override
+    public void record(PubMedRecord record) {
+
+        // each author once per article, even if listed twice
+        int authorCount = record.getAuthorCount();
+        if (authorCount > ids.length) {
+            ids = new int[Math.max(authorCount, ids.length * 2)];
+        }
+        char[] names = record.getNames();
+        int distinct = 0;
+        for (int i = 0; i < authorCount; i++) {
+            int id = authors.intern(names, record.getFirstNameOffset(i), record.getFirstNameLength(i),
+                    names, record.getLastNameOffset(i), record.getLastNameLength(i));
+            if (!contains(ids, distinct, id)) {
+                ids[distinct++] = id;
+                authors.addCount(id, 1);
+            }
+        }
+
+        if (distinct > maxAuthors) {
+            cappedCount++;
+            return;
+        }
+        for (int i = 0; i < distinct; i++) {
+            for (int j = i + 1; j < distinct; j++) {
+                if (bufferLength == buffer.length) {
+                    if (bufferLength < bufferPairs) {
+                        buffer = Arrays.copyOf(buffer, Math.min(bufferLength * 2, bufferPairs));
+                    } else {
+                        flush();
+                    }
+                }
+                buffer[bufferLength++] = pair(ids[i], ids[j]);
+            }
+        }
+    }
+
+    /**
+     * Return the number of articles with too many authors to add edges for
+     * @return number of capped articles
+     */
+    public long getCappedCount() {
+        return cappedCount;
+    }
+
+    /**
+     * Add the authors and pairs of another builder to ours
+     * @param other builder to add, which is left without its buffered pairs
+     * @throws IllegalArgumentException if the other aggregator isn't a CoauthorGraphBuilder
+     */
+    @Override
+    public void merge(PubMedAggregator other) {
+        if (!(other instanceof CoauthorGraphBuilder)) {
+            throw new IllegalArgumentException("can only merge another CoauthorGraphBuilder");
+        }
+        CoauthorGraphBuilder that = (CoauthorGraphBuilder)other;
+        cappedCount += that.cappedCount;
+
+        // their ids in ours, with their article counts
+        int[] ourIds = new int[that.authors.size()];
+        for (int id = 0; id < ourIds.length; id++) {
+            ourIds[id] = authors.add(that.authors, id);
+        }
+
+        // each of their runs in our ids, sorted again - a pair's weight goes where the pair lands, and since ids
+        // map one to one, the pairs of a run stay distinct
+        that.flush();
+        for (Run run : that.runs) {
+            long[] mapped = new long[run.pairs.length];
+            for (int i = 0; i < mapped.length; i++) {
+                mapped[i] = pair(ourIds[(int)(run.pairs[i] >>> 32)], ourIds[(int)run.pairs[i]]);
+            }
+            long[] sorted = mapped.clone();
+            Arrays.sort(sorted);
+            int[] weights = new int[sorted.length];
+            for (int i = 0; i < mapped.length; i++) {
+                weights[Arrays.binarySearch(sorted, mapped[i])] = run.weights[i];
+            }
+            push(new Run(sorted, weights));
+        }
+    }
+
+    /**
+     * Lay out the graph of everything added so far
+     * @return graph
+     * @throws PubMedResultException if the graph has too many edges to hold
+     */
+    public CoauthorGraph toGraph() {
+
+        // one run of every distinct pair
+        flush();
+        while (runs.size() > 1) {
+            mergeLastRuns();
+        }
+        long[] pairs = runs.isEmpty() ? new long[0] : runs.get(0).pairs;
+        int[] pairWeights = runs.isEmpty() ? new int[0] : runs.get(0).weights;
+        if (pairs.length > Integer.MAX_VALUE / 2) {
+            throw new PubMedResultException(String.format("%d edges are too many for a graph", pairs.length));
+        }
+
+        // each author's row is as long as their degree
+        int size = authors.size();
+        int[] offsets = new int[size + 1];
+        for (long pair : pairs) {
+            offsets[(int)(pair >>> 32) + 1]++;
+            offsets[(int)pair + 1]++;
+        }
+        for (int id = 0; id < size; id++) {
+            offsets[id + 1] += offsets[id];
+        }
+
+        // pairs are ascending by lower id, then higher id, so each row fills in ascending order
+        int[] next = Arrays.copyOf(offsets, size);
+        int[] neighbors = new int[pairs.length * 2];
+        int[] weights = new int[pairs.length * 2];
+        for (int i = 0; i < pairs.length; i++) {
+            int low = (int)(pairs[i] >>> 32);
+            int high = (int)pairs[i];
+            neighbors[next[low]] = high;
+            weights[next[low]++] = pairWeights[i];
+            neighbors[next[high]] = low;
+            weights[next[high]++] = pairWeights[i];
+        }
+        return new CoauthorGraph(authors.copy(), offsets, neighbors, weights);
+    }
+
+    /**
+     * Sort the buffered pairs into a run of distinct pairs, and push it
+     */
+    private void flush() {
+        if (bufferLength == 0) {
+            return;
+        }
+        Arrays.sort(buffer, 0, bufferLength);
+        long[] pairs = new long[bufferLength];
+        int[] weights = new int[bufferLength];
+        int length = 0;
+        for (int i = 0; i < bufferLength; i++) {
+            if (length > 0 && pairs[length - 1] == buffer[i]) {
+                weights[length - 1]++;
+            } else {
+                pairs[length] = buffer[i];
+                weights[length++] = 1;
+            }
+        }
+        bufferLength = 0;
+        push(new Run(Arrays.copyOf(pairs, length), Arrays.copyOf(weights, length)));
+    }
+
+    /**
+     * Add a run, then merge the newest runs for as long as the newest is at least half the one before it
+     * @param run sorted run of distinct pairs
+     */
+    private void push(Run run) {
+        runs.add(run);
+        while (runs.size() > 1 &&
+                runs.get(runs.size() - 1).pairs.length * 2L >= runs.get(runs.size() - 2).pairs.length) {
+            mergeLastRuns();
+        }
+    }
+
+    /**
+     * Merge the two newest runs into one, adding the weights of pairs in both
+     */
+    private void mergeLastRuns() {
+        Run newer = runs.remove(runs.size() - 1);
+        Run older = runs.remove(runs.size() - 1);
+        long[] merged = new long[older.pairs.length + newer.pairs.length];
+        int[] mergedWeights = new int[merged.length];
+        int length = 0;
+        int i = 0;
+        int j = 0;
+        while (i < older.pairs.length || j < newer.pairs.length) {
+
+            // take the smaller of the next pairs of the two runs
+            long pair;
+            int weight;
+            if (j == newer.pairs.length || (i < older.pairs.length && older.pairs[i] <= newer.pairs[j])) {
+                pair = older.pairs[i];
+                weight = older.weights[i++];
+            } else {
+                pair = newer.pairs[j];
+                weight = newer.weights[j++];
+            }
+
+            if (length > 0 && merged[length - 1] == pair) {
+                mergedWeights[length - 1] += weight;
+            } else {
+                merged[length] = pair;
+                mergedWeights[length++] = weight;
+            }
+        }
+        runs.add(new Run(Arrays.copyOf(merged, length), Arrays.copyOf(mergedWeights, length)));
+    }
+
+    /**
+     * Return two ids as a pair, lower id in the high half
+     * @param id one id
+     * @param other another id
+     * @return pair
+     */
+    private static long pair(int id, int other) {
+        return ((long)Math.min(id, other) << 32) | Math.max(id, other);
+    }
+
+    /**
+     * Return true if the first values of an array contain a value
+     */
+    private static boolean contains(int[] values, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,320 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Counts every author, like AuthorCountTable, in a single store that any number of threads count into at the same
+ * time - so parsing in parallel needs one store, rather than a table per thread merged at the end.
+ *
+ * Authors are spread over shards by the high bits of their hash, each shard an AuthorCountTable guarded by a lock
+ * of its own, so threads counting different authors rarely wait for each other.  The low bits of the hash still
+ * place an author within their shard.  Taking a lock per author is still costly when many threads count, so each
+ * thread counts into a Batch, which gathers its increments in a small table of its own and flushes them to the
+ * store every BATCH_AUTHORS distinct authors, taking each shard's lock once per flush.
+ *
+ * A snapshot is a consistent copy of the counts: it holds every flush, and every unbatched increment, either
+ * completely or not at all.  Flushes share a read lock, which a snapshot takes exclusively, and unbatched
+ * increments are held off by the snapshot taking every shard's lock.
+ *
+ * PubMedBatch.countAuthors counts every author this way, passing store::newBatch as the counts of each worker.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class ConcurrentAuthorCounts implements AuthorCounts {
+
+    /**
+     * Shards a store has unless told otherwise, enough that a few dozen threads rarely want the same one
+     */
+    public static final int DEFAULT_SHARDS = 64;
+
+    /**
+     * Distinct authors a batch gathers before it flushes them to the store
+     */
+    public static final int BATCH_AUTHORS = 4096;
+
+    // the shards, and the lock that guards each one
+    private final AuthorCountTable[] shards;
+    private final ReentrantLock[] locks;
+
+    // an author's shard is the top bits of their hash
+    private final int shift;
+    private final int mask;
+
+    // flushes share the read lock, snapshots take the write lock
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+
+    /**
+     * Construct an empty store, with the default number of shards
+     */
+    public ConcurrentAuthorCounts() {
+        this(DEFAULT_SHARDS);
+    }
+
+    /**
+     * Construct an empty store
+     * @param shards number of shards, a power of two
+     * @throws IllegalArgumentException if shards isn't a positive power of two
+     */
+    public ConcurrentAuthorCounts(int shards) {
+        if (shards < 1 || Integer.bitCount(shards) != 1) {
+            throw new IllegalArgumentException(String.format("shards must be a power of two: %d", shards));
+        }
+        this.shards = new AuthorCountTable[shards];
+        locks = new ReentrantLock[shards];
+        for (int shard = 0; shard < shards; shard++) {
+            this.shards[shard] = new AuthorCountTable();
+            locks[shard] = new ReentrantLock();
+        }
+        shift = 32 - Integer.numberOfTrailingZeros(shards);
+        mask = shards - 1;
+    }
+
+    /**
+     * Return new, empty, batch of increments for this store.
+     * Each thread needs a batch of its own, the store itself is shared.
+     * @return batch
+     */
+    public Batch newBatch() {
+        return new Batch(this);
+    }
+
+    /**
+     * Add one to the author's count, straight into the store.
+     * This takes the author's shard lock, a batch is cheaper when many threads count at once.
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     */
+    @Override
+    public void increment(char[] first, int firstOffset, int firstLength,
+                          char[] last, int lastOffset, int lastLength) {
+        int shard = shardOf(AuthorCountTable.hash(first, firstOffset, firstLength, last, lastOffset, lastLength));
+        locks[shard].lock();
+        try {
+            shards[shard].add(first, firstOffset, firstLength, last, lastOffset, lastLength, 1);
+        } finally {
+            locks[shard].unlock();
+        }
+    }
+
+    /**
+     * Return how often the author has been counted so far, increments still held in a batch aren't included
+     * @param author author of interest
+     * @return count, zero if we've never seen the author
+     */
+    @Override
+    public int getAuthorCount(Author author) {
+        int shard = shardOf(AuthorCountTable.hash(author.getFirstName(), author.getLastName()));
+        locks[shard].lock();
+        try {
+            return shards[shard].getAuthorCount(author);
+        } finally {
+            locks[shard].unlock();
+        }
+    }
+
+    /**
+     * Add counts to the store: a batch of this store is flushed, a table is added as a single flush.
+     * Merging the store into itself does nothing, so workers that count straight into the store can be merged.
+     * @param other counts to add
+     * @throws IllegalArgumentException if the other counts are neither a batch of this store nor a table
+     */
+    @Override
+    public void merge(AuthorCounts other) {
+        if (other == this) {
+            return;
+        }
+        if (other instanceof Batch && ((Batch)other).store == this) {
+            ((Batch)other).flush();
+        } else if (other instanceof AuthorCountTable) {
+            AuthorCountTable table = (AuthorCountTable)other;
+            flush(table, new int[table.size()], new int[shards.length + 1]);
+        } else {
+            throw new IllegalArgumentException("can only merge a batch of this store, or an AuthorCountTable");
+        }
+    }
+
+    /**
+     * Return a consistent copy of every count in the store, waiting for flushes in progress to finish.
+     * The copy is ours alone, so it can be read by any number of threads while the store keeps counting.
+     * @return copy of the counts
+     */
+    public AuthorCountTable snapshot() {
+        flushLock.writeLock().lock();
+        try {
+            for (ReentrantLock lock : locks) {
+                lock.lock();
+            }
+            try {
+                int size = 0;
+                for (AuthorCountTable shard : shards) {
+                    size += shard.size();
+                }
+                AuthorCountTable snapshot = new AuthorCountTable(size);
+                for (AuthorCountTable shard : shards) {
+                    snapshot.merge(shard);
+                }
+                return snapshot;
+            } finally {
+                for (ReentrantLock lock : locks) {
+                    lock.unlock();
+                }
+            }
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Return the number of shards
+     * @return number of shards
+     */
+    public int getShards() {
+        return shards.length;
+    }
+
+    /**
+     * Return the shard an author's hash belongs to
+     * @param hash hash of the author's names
+     * @return shard
+     */
+    private int shardOf(int hash) {
+        return (hash >>> shift) & mask;
+    }
+
+    /**
+     * Add a table's counts to the store, as one flush: the authors are grouped by shard, and each shard's lock is
+     * taken once for all of its authors
+     * @param table counts to add
+     * @param order scratch room for at least as many ids as the table has authors
+     * @param starts scratch room for one more int than there are shards
+     */
+    private void flush(AuthorCountTable table, int[] order, int[] starts) {
+
+        // count each shard's authors, then turn the counts into where each shard's ids start
+        int size = table.size();
+        for (int shard = 0; shard <= shards.length; shard++) {
+            starts[shard] = 0;
+        }
+        for (int id = 0; id < size; id++) {
+            starts[shardOf(table.getHash(id)) + 1]++;
+        }
+        for (int shard = 0; shard < shards.length; shard++) {
+            starts[shard + 1] += starts[shard];
+        }
+
+        // place the ids, which moves each shard's start to where the next shard starts
+        for (int id = 0; id < size; id++) {
+            order[starts[shardOf(table.getHash(id))]++] = id;
+        }
+
+        // add each shard's authors under its lock
+        flushLock.readLock().lock();
+        try {
+            int start = 0;
+            for (int shard = 0; shard < shards.length; shard++) {
+                int end = starts[shard];
+                if (start < end) {
+                    locks[shard].lock();
+                    try {
+                        for (int i = start; i < end; i++) {
+                            shards[shard].add(table, order[i]);
+                        }
+                    } finally {
+                        locks[shard].unlock();
+                    }
+                }
+                start = end;
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Increments from one thread, gathered and flushed to the store a shard at a time.
+     * A batch is not thread-safe, each thread needs a batch of its own.  See newBatch.
+     */
+    public static final class Batch implements AuthorCounts {
+
+        // where we flush to
+        private final ConcurrentAuthorCounts store;
+
+        // increments not flushed yet, and scratch room for flushing them
+        private final AuthorCountTable pending = new AuthorCountTable(BATCH_AUTHORS);
+        private final int[] order = new int[BATCH_AUTHORS];
+        private final int[] starts;
+
+        // construct an empty batch, use ConcurrentAuthorCounts.newBatch
+        //
+        private Batch(ConcurrentAuthorCounts store) {
+            this.store = store;
+            starts = new int[store.shards.length + 1];
+        }
+
+        /**
+         * Add one to the author's count, flushing to the store if the batch is full
+         * @param first buffer holding the first name
+         * @param firstOffset where the first name starts
+         * @param firstLength first name length
+         * @param last buffer holding the last name
+         * @param lastOffset where the last name starts
+         * @param lastLength last name length
+         */
+        @Override
+        public void increment(char[] first, int firstOffset, int firstLength,
+                              char[] last, int lastOffset, int lastLength) {
+            pending.add(first, firstOffset, firstLength, last, lastOffset, lastLength, 1);
+            if (pending.size() >= BATCH_AUTHORS) {
+                flush();
+            }
+        }
+
+        /**
+         * Return how often the author has been counted, in the store and in this batch
+         * @param author author of interest
+         * @return count, zero if we've never seen the author
+         */
+        @Override
+        public int getAuthorCount(Author author) {
+            return store.getAuthorCount(author) + pending.getAuthorCount(author);
+        }
+
+        /**
+         * Flush another batch of the same store, and this one, so both their counts are in the store
+         * @param other batch to flush
+         * @throws IllegalArgumentException if the other counts aren't a batch of the same store
+         */
+        @Override
+        public void merge(AuthorCounts other) {
+            if (!(other instanceof Batch) || ((Batch)other).store != store) {
+                throw new IllegalArgumentException("can only merge a batch of the same store");
+            }
+            ((Batch)other).flush();
+            flush();
+        }
+
+        /**
+         * Add the increments gathered so far to the store, and start gathering again
+         */
+        public void flush() {
+            if (pending.size() > 0) {
+                store.flush(pending, order, starts);
+                pending.clear();
+            }
+        }
+
+        /**
+         * Return the store we flush to
+         * @return store
+         */
+        public ConcurrentAuthorCounts getStore() {
+            return store;
+        }
+    }
+}
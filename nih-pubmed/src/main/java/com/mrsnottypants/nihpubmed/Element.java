@@ -1,17 +1,20 @@
 package com.mrsnottypants.nihpubmed;
 
 /**
- * XML element names we care about
+ * XML element names the splitter and scanner look for in the raw bytes of a file, and the scanner passes on.
+ * Handlers declare the elements they care about as paths instead - see PathAutomaton.
  *
  * Created by Eric on 7/11/2016.
  */
 public enum Element {
 
+    PUBMED_ARTICLE("PubmedArticle"),
     ARTICLE("Article"),
     AUTHOR_LIST("AuthorList"),
     AUTHOR("Author"),
     LAST_NAME("LastName"),
-    FIRST_NAME("ForeName")
+    FIRST_NAME("ForeName"),
+    INITIALS("Initials")
     ;
 
     private final String name;
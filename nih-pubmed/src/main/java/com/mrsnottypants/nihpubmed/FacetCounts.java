@@ -0,0 +1,457 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Counts how often each watched author is listed in articles of each journal, MeSH descriptor and publication
+ * type - a sparse cube of author, facet and value - in the same pass as any other report.
+ *
+ * Only authors on the watchlist are counted, and a record without a watched author costs no more than looking its
+ * authors up in the watchlist - exactly, or under the variants of their names a NameMatcher finds, so facets count
+ * the same authors as the NameMatchCounts of the same run.  The values of each facet are dictionary-encoded,
+ * interned in an AuthorCountTable with an empty first name, and only values of articles by watched authors are
+ * interned.  Cells are a primitive open-addressing table from a packed long key - author id, facet and value id -
+ * to an int count, so memory is bounded by the watchlist and the values its authors publish under, not by the
+ * corpus.
+ *
+ * A journal is counted under its ISO abbreviation, or under its title if it has none.
+ * This class is not thread-safe, each thread needs counts of its own.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class FacetCounts implements PubMedAggregator {
+
+    /**
+     * Dimensions we count watched authors over
+     */
+    public enum Facet {
+
+        JOURNAL("journal"),
+        MESH("mesh"),
+        PUBLICATION_TYPE("type");
+
+        private final String name;
+
+        // construct facet
+        //
+        Facet(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Return the facet's name, as used on the command line and in exports
+         * @return name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Return the facet with the given name
+         * @param name facet name
+         * @return facet
+         * @throws IllegalArgumentException if no facet has the name
+         */
+        public static Facet of(String name) {
+            for (Facet facet : values()) {
+                if (facet.name.equals(name)) {
+                    return facet;
+                }
+            }
+            throw new IllegalArgumentException(String.format("no facet named %s", name));
+        }
+    }
+
+    /**
+     * Receives the cells of the cube
+     */
+    @FunctionalInterface
+    public interface CellConsumer {
+
+        /**
+         * Called once for each cell
+         * @param author watched author
+         * @param facet facet
+         * @param value facet value
+         * @param count how often the author was listed in articles with the value
+         */
+        void accept(Author author, Facet facet, String value, int count);
+    }
+
+    // a key is the author id in the high 32 bits, then the facet, then the value id in the low VALUE_BITS
+    private static final int VALUE_BITS = 30;
+    private static final long VALUE_MASK = (1L << VALUE_BITS) - 1;
+    private static final int FACET_MASK = 3;
+
+    // slots in a new table, and how full we let it get
+    private static final int FIRST_SLOTS = 1024;
+    private static final double LOAD_FACTOR = 0.5;
+
+    // facets by ordinal
+    private static final Facet[] FACETS = Facet.values();
+
+    // first name every value is interned under
+    private static final char[] NO_CHARS = new char[0];
+
+    /**
+     * Return new, empty, counts of the authors on a watchlist
+     * @param watchlist authors to count, shared by every thread's counts
+     * @return new instance
+     */
+    public static FacetCounts of(Watchlist watchlist) {
+        return new FacetCounts(watchlist, null);
+    }
+
+    /**
+     * Return new, empty, counts of the authors on a matcher's watchlist, under any of the names it matches them by
+     * @param matcher matches authors to the watchlist, shared by every thread's counts
+     * @return new instance
+     */
+    public static FacetCounts of(NameMatcher matcher) {
+        return new FacetCounts(matcher.getWatchlist(), matcher);
+    }
+
+    // authors we count, their ids are the author ids of our keys
+    private final Watchlist watchlist;
+
+    // how we match names to watched authors, null to match them exactly, and our own buffers for matching
+    private final NameMatcher matcher;
+    private final NameMatchCounts matches;
+
+    // values of each facet, indexed by facet ordinal, their ids are the value ids of our keys
+    private final AuthorCountTable[] values = new AuthorCountTable[FACETS.length];
+
+    // cells, key and count in the same slot, keys of empty slots are -1
+    private long[] keys;
+    private int[] counts;
+    private int size;
+
+    // ids of the watched authors of the record being counted
+    private int[] watched = new int[16];
+
+    // construct empty counts
+    //
+    private FacetCounts(Watchlist watchlist, NameMatcher matcher) {
+        this.watchlist = watchlist;
+        this.matcher = matcher;
+        matches = matcher == null ? null : matcher.newCounts();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new AuthorCountTable();
+        }
+        keys = new long[FIRST_SLOTS];
+        Arrays.fill(keys, -1);
+        counts = new int[FIRST_SLOTS];
+    }
+
+    /**
+     * We count facets, so the handler needs to collect them
+     * @return true
+     */
+    @Override
+    public boolean wantsFacets() {
+        return true;
+    }
+
+    /**
+     * Count each watched author in a record's author list, against each of the record's facet values
+     * @param record parsed record
+     */
+    @Override
+    public void record(PubMedRecord record) {
+
+        // most records have no watched author, and cost nothing more
+        char[] names = record.getNames();
+        int watchedCount = 0;
+        for (int i = 0; i < record.getAuthorCount(); i++) {
+            int id = matches == null ?
+                    watchlist.find(names, record.getFirstNameOffset(i), record.getFirstNameLength(i),
+                            names, record.getLastNameOffset(i), record.getLastNameLength(i)) :
+                    matches.find(names, record.getFirstNameOffset(i), record.getFirstNameLength(i),
+                            names, record.getLastNameOffset(i), record.getLastNameLength(i),
+                            names, record.getInitialsOffset(i), record.getInitialsLength(i));
+            if (id >= 0) {
+                if (watchedCount == watched.length) {
+                    watched = Arrays.copyOf(watched, watched.length * 2);
+                }
+                watched[watchedCount++] = id;
+            }
+        }
+        if (watchedCount == 0) {
+            return;
+        }
+
+        // the journal, by abbreviation if it has one
+        if (record.getJournalAbbreviationLength() > 0) {
+            add(watchedCount, Facet.JOURNAL,
+                    record.getJournalAbbreviation(), 0, record.getJournalAbbreviationLength());
+        } else if (record.getJournalLength() > 0) {
+            add(watchedCount, Facet.JOURNAL, record.getJournal(), 0, record.getJournalLength());
+        }
+
+        // the MeSH descriptors and publication types
+        char[] terms = record.getTerms();
+        for (int i = 0; i < record.getDescriptorCount(); i++) {
+            add(watchedCount, Facet.MESH, terms, record.getDescriptorOffset(i), record.getDescriptorLength(i));
+        }
+        for (int i = 0; i < record.getPublicationTypeCount(); i++) {
+            add(watchedCount, Facet.PUBLICATION_TYPE,
+                    terms, record.getPublicationTypeOffset(i), record.getPublicationTypeLength(i));
+        }
+    }
+
+    /**
+     * Return how often an author was listed in articles with a facet value
+     * @param author author of interest
+     * @param facet facet
+     * @param value facet value, such as a journal's ISO abbreviation
+     * @return count, zero if the author isn't watched or was never listed with the value
+     */
+    public int getCount(Author author, Facet facet, String value) {
+        int id = find(author);
+        int valueId = values[facet.ordinal()].find("", value);
+        if (id < 0 || valueId < 0) {
+            return 0;
+        }
+        int slot = find(key(id, facet.ordinal(), valueId));
+        return keys[slot] < 0 ? 0 : counts[slot];
+    }
+
+    /**
+     * Return how often an author was listed in articles with each value of a facet
+     * @param author author of interest
+     * @param facet facet
+     * @return count per value, most often first, then by value - only values the author was listed with
+     */
+    public Map<String, Integer> getCounts(Author author, Facet facet) {
+        Map<String, Integer> counted = new LinkedHashMap<>();
+        int id = find(author);
+        if (id >= 0) {
+            for (int slot : sortedSlots(EnumSet.of(facet), 1)) {
+                if (keys[slot] >>> 32 == id) {
+                    counted.put(getValue(slot), counts[slot]);
+                }
+            }
+        }
+        return counted;
+    }
+
+    /**
+     * Pass every cell of some facets, with at least a given count, to a consumer.
+     * Cells are passed by author, in watchlist order, then by facet, then most often first, then by value.
+     * @param facets facets of interest
+     * @param minCount least count of interest
+     * @param action receives each cell
+     */
+    public void forEach(Collection<Facet> facets, int minCount, CellConsumer action) {
+        for (int slot : sortedSlots(facets, minCount)) {
+            action.accept(watchlist.getAuthor((int)(keys[slot] >>> 32)), getFacet(slot), getValue(slot),
+                    counts[slot]);
+        }
+    }
+
+    /**
+     * Write every cell of some facets, with at least a given count, as tab-separated lines of first name, last
+     * name, facet name, value and count, in the order forEach passes them
+     * @param out where we write
+     * @param facets facets of interest
+     * @param minCount least count of interest
+     * @return number of cells written
+     * @throws IOException if a line cannot be written
+     */
+    public int export(Appendable out, Collection<Facet> facets, int minCount) throws IOException {
+        List<Integer> slots = sortedSlots(facets, minCount);
+        for (int slot : slots) {
+            Author author = watchlist.getAuthor((int)(keys[slot] >>> 32));
+            out.append(author.getFirstName()).append('\t').append(author.getLastName()).append('\t')
+                    .append(getFacet(slot).getName()).append('\t').append(getValue(slot)).append('\t')
+                    .append(Integer.toString(counts[slot])).append('\n');
+        }
+        return slots.size();
+    }
+
+    /**
+     * Return the number of cells, pairs of a watched author and a facet value they were listed with
+     * @return number of cells
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the number of distinct values of a facet we interned
+     * @param facet facet
+     * @return number of values
+     */
+    public int getValueCount(Facet facet) {
+        return values[facet.ordinal()].size();
+    }
+
+    /**
+     * Add the counts of another instance, of the same watchlist and matcher, to ours
+     * @param other counts to add
+     * @throws IllegalArgumentException if the other isn't a FacetCounts of the same watchlist and matcher
+     */
+    @Override
+    public void merge(PubMedAggregator other) {
+        if (!(other instanceof FacetCounts) || ((FacetCounts)other).watchlist != watchlist ||
+                ((FacetCounts)other).matcher != matcher) {
+            throw new IllegalArgumentException("can only merge another FacetCounts of the same watchlist and matcher");
+        }
+        FacetCounts facets = (FacetCounts)other;
+
+        // the other's value ids, as ours
+        int[][] valueIds = new int[values.length][];
+        for (int facet = 0; facet < values.length; facet++) {
+            valueIds[facet] = new int[facets.values[facet].size()];
+            for (int valueId = 0; valueId < valueIds[facet].length; valueId++) {
+                valueIds[facet][valueId] = values[facet].add(facets.values[facet], valueId);
+            }
+        }
+        for (int slot = 0; slot < facets.keys.length; slot++) {
+            long key = facets.keys[slot];
+            if (key >= 0) {
+                int facet = (int)(key >>> VALUE_BITS) & FACET_MASK;
+                add(key(key >>> 32, facet, valueIds[facet][(int)(key & VALUE_MASK)]), facets.counts[slot]);
+            }
+        }
+    }
+
+    /**
+     * Return the id an author's cells are kept under
+     * @param author author of interest
+     * @return watchlist id, of the first watched author with the same names when matching variants, -1 if unwatched
+     */
+    private int find(Author author) {
+        int id = watchlist.find(author);
+        return id < 0 || matcher == null ? id : matcher.getCanonical(id);
+    }
+
+    /**
+     * Count each watched author of the record being counted against a facet value
+     * @param watchedCount number of watched authors
+     * @param facet facet
+     * @param chars buffer holding the value
+     * @param offset where the value starts
+     * @param length value length
+     * @throws IllegalStateException if there are more values of the facet than a key can hold
+     */
+    private void add(int watchedCount, Facet facet, char[] chars, int offset, int length) {
+        int valueId = values[facet.ordinal()].intern(NO_CHARS, 0, 0, chars, offset, length);
+        if (valueId > VALUE_MASK) {
+            throw new IllegalStateException(String.format("more than %d values of %s", VALUE_MASK, facet.getName()));
+        }
+        for (int i = 0; i < watchedCount; i++) {
+            add(key(watched[i], facet.ordinal(), valueId), 1);
+        }
+    }
+
+    /**
+     * Add to a cell's count, adding the cell if it's new
+     * @param key cell key
+     * @param count how much to add
+     */
+    private void add(long key, int count) {
+        int slot = find(key);
+        if (keys[slot] < 0) {
+            keys[slot] = key;
+            if (++size > keys.length * LOAD_FACTOR) {
+                rehash(keys.length * 2);
+            }
+            slot = find(key);
+        }
+        counts[slot] += count;
+    }
+
+    /**
+     * Return a cell's slot, or the empty slot it would go in
+     * @param key cell key
+     * @return slot
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        long hash = key * 0x9E3779B97F4A7C15L;
+        for (int slot = (int)(hash ^ hash >>> 32) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] < 0 || keys[slot] == key) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Move every cell into a table of a new size
+     * @param slots new number of slots, a power of two
+     */
+    private void rehash(int slots) {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[slots];
+        Arrays.fill(keys, -1);
+        counts = new int[slots];
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] >= 0) {
+                int newSlot = find(oldKeys[slot]);
+                keys[newSlot] = oldKeys[slot];
+                counts[newSlot] = oldCounts[slot];
+            }
+        }
+    }
+
+    /**
+     * Return the slots of every cell of some facets, with at least a given count, by author, facet, most often
+     * first, then by value
+     * @param facets facets of interest
+     * @param minCount least count of interest
+     * @return slots
+     */
+    private List<Integer> sortedSlots(Collection<Facet> facets, int minCount) {
+        Set<Facet> wanted = facets.isEmpty() ? EnumSet.noneOf(Facet.class) : EnumSet.copyOf(facets);
+        List<Integer> slots = new ArrayList<>();
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] >= 0 && counts[slot] >= minCount && wanted.contains(getFacet(slot))) {
+                slots.add(slot);
+            }
+        }
+        slots.sort(Comparator.<Integer>comparingLong(slot -> keys[slot] >>> VALUE_BITS)
+                .thenComparingInt(slot -> -counts[slot])
+                .thenComparing(this::getValue));
+        return slots;
+    }
+
+    /**
+     * Return the facet of the cell in a slot
+     * @param slot slot holding a cell
+     * @return facet
+     */
+    private Facet getFacet(int slot) {
+        return FACETS[(int)(keys[slot] >>> VALUE_BITS) & FACET_MASK];
+    }
+
+    /**
+     * Return the value of the cell in a slot
+     * @param slot slot holding a cell
+     * @return value
+     */
+    private String getValue(int slot) {
+        return values[(int)(keys[slot] >>> VALUE_BITS) & FACET_MASK].getLastName((int)(keys[slot] & VALUE_MASK));
+    }
+
+    /**
+     * Pack a cell's key
+     * @param author author id
+     * @param facet facet ordinal
+     * @param valueId value id
+     * @return key
+     */
+    private static long key(long author, int facet, int valueId) {
+        return author << 32 | (long)facet << VALUE_BITS | valueId;
+    }
+}
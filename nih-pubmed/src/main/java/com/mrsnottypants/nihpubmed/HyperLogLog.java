@@ -0,0 +1,150 @@
+package com.mrsnottypants.nihpubmed;
+
+/**
+ * Estimates how many distinct items it has seen, in a few kilobytes, using the HyperLogLog algorithm.
+ *
+ * Items are added as 64-bit hashes.  The top bits of a hash pick one of 2^precision registers, and each register
+ * keeps the longest run of leading zeros seen in the rest of the hashes it was given.  The estimate is a bias
+ * corrected harmonic mean of the registers, with linear counting for small cardinalities.
+ * The relative standard error is about 1.04 / sqrt(2^precision) - 1.6% at the default precision of 12,
+ * which takes 4KB.
+ *
+ * Two estimators with the same precision merge by keeping the larger of each register, so estimators filled on
+ * different threads, or from different files, combine into the estimate of everything they saw.
+ * This class is not thread-safe.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class HyperLogLog {
+
+    // precision used unless another is asked for
+    static final int DEFAULT_PRECISION = 12;
+
+    // precisions we support, 16 bytes to 64KB of registers
+    static final int MIN_PRECISION = 4;
+    static final int MAX_PRECISION = 16;
+
+    /**
+     * Return a new, empty, estimator with the default precision
+     * @return new instance
+     */
+    public static HyperLogLog newInstance() {
+        return new HyperLogLog(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Return a new, empty, estimator
+     * @param precision number of index bits, from 4 to 16, there are 2^precision registers
+     * @return new instance
+     * @throws IllegalArgumentException if precision is out of range
+     */
+    public static HyperLogLog newInstance(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException(String.format("precision must be from %d to %d: %d",
+                    MIN_PRECISION, MAX_PRECISION, precision));
+        }
+        return new HyperLogLog(precision);
+    }
+
+    // number of index bits, and a register per index
+    private final int precision;
+    private final byte[] registers;
+
+    // construct an empty estimator
+    //
+    private HyperLogLog(int precision) {
+        this.precision = precision;
+        registers = new byte[1 << precision];
+    }
+
+    /**
+     * Add an item, by its hash.  Hashes must be well mixed across all 64 bits.
+     * @param hash item's hash
+     */
+    public void add(long hash) {
+        int index = (int)(hash >>> (64 - precision));
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte)rank;
+        }
+    }
+
+    /**
+     * Return the estimated number of distinct items added
+     * @return estimate
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+
+        // small cardinalities are estimated better by how many registers are still empty
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double)m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Add the items another estimator has seen to ours
+     * @param other estimator with the same precision
+     * @throws IllegalArgumentException if the precisions differ
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException(String.format("cannot merge precision %d into precision %d",
+                    other.precision, precision));
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Return the number of index bits
+     * @return precision
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Spread a 64-bit value's bits across all 64 bits, the finalizer of MurmurHash3
+     * @param value value
+     * @return mixed value
+     */
+    static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb93fe53e1a87L;
+        return value ^ (value >>> 33);
+    }
+
+    /**
+     * Return the bias correction for a number of registers
+     * @param m number of registers
+     * @return correction
+     */
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Counts the articles published in each journal, by journal title.
+ *
+ * Titles are interned into an AuthorCountTable as last names with no first name, so counting an article costs a
+ * hash lookup on the record's title buffer, and allocates nothing once the journal has been seen.
+ * Articles without a journal title are not counted.
+ * This class is not thread-safe, each thread needs counts of its own.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class JournalCounts implements PubMedAggregator {
+
+    /**
+     * Return new, empty, counts
+     * @return new instance
+     */
+    public static JournalCounts newInstance() {
+        return new JournalCounts();
+    }
+
+    // articles per journal, the title is the last name
+    private final AuthorCountTable journals = new AuthorCountTable();
+
+    // construct empty counts
+    //
+    private JournalCounts() {
+    }
+
+    /**
+     * Count a record's article against its journal
+     * @param record parsed record
+     */
+    @Override
+    public void record(PubMedRecord record) {
+        if (record.getJournalLength() > 0) {
+            journals.add(record.getJournal(), 0, 0, record.getJournal(), 0, record.getJournalLength(), 1);
+        }
+    }
+
+    /**
+     * Return the number of articles published in a journal
+     * @param title journal title
+     * @return number of articles, zero if we saw none
+     */
+    public int getCount(String title) {
+        int id = journals.find("", title);
+        return id < 0 ? 0 : journals.getCount(id);
+    }
+
+    /**
+     * Return the journals with the most articles
+     * @param k most journals wanted
+     * @return up to k journal titles, most articles first, then by title
+     */
+    public List<String> getTop(int k) {
+        List<Integer> ids = new ArrayList<>(journals.size());
+        for (int id = 0; id < journals.size(); id++) {
+            ids.add(id);
+        }
+        ids.sort(Comparator.comparingInt((Integer id) -> -journals.getCount(id))
+                .thenComparing(journals::getLastName));
+        List<String> top = new ArrayList<>(Math.min(k, ids.size()));
+        for (int id : ids.subList(0, Math.min(k, ids.size()))) {
+            top.add(journals.getLastName(id));
+        }
+        return top;
+    }
+
+    /**
+     * Return the number of journals seen
+     * @return number of journals
+     */
+    public int size() {
+        return journals.size();
+    }
+
+    /**
+     * Add the counts of another instance to ours
+     * @param other counts to add
+     * @throws IllegalArgumentException if the other isn't a JournalCounts
+     */
+    @Override
+    public void merge(PubMedAggregator other) {
+        if (!(other instanceof JournalCounts)) {
+            throw new IllegalArgumentException("can only merge another JournalCounts");
+        }
+        journals.merge(((JournalCounts)other).journals);
+    }
+}
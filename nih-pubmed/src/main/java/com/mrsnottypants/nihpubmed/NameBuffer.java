@@ -0,0 +1,116 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.util.Arrays;
+
+/**
+ * A growable character buffer, reused for every name a handler collects.
+ * A parser may split one text node over several characters() calls, so text is appended until the element ends.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+class NameBuffer {
+
+    // characters collected so far, the text is chars[start, end)
+    private char[] chars = new char[64];
+    private int start;
+    private int end;
+
+    /**
+     * Empty the buffer
+     */
+    void clear() {
+        start = 0;
+        end = 0;
+    }
+
+    /**
+     * Append characters, growing the buffer if needed
+     * @param source characters to append
+     * @param offset where they start
+     * @param length how many there are
+     */
+    void append(char[] source, int offset, int length) {
+        if (end + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(end + length, chars.length * 2));
+        }
+        System.arraycopy(source, offset, chars, end, length);
+        end += length;
+    }
+
+    /**
+     * Drop leading and trailing whitespace, as String.trim() sees it
+     */
+    void trim() {
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+    }
+
+    /**
+     * Return the text as a non-negative number, ignoring surrounding whitespace
+     * @return number, or -1 if the text isn't a number
+     */
+    long parseLong() {
+        trim();
+        if (start == end || end - start > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Return the year the text starts with, ignoring surrounding whitespace.
+     * A PubDate has either a Year, or a free-text MedlineDate such as "1998 Dec-1999 Jan".
+     * @return year, or -1 if the text doesn't start with four digits
+     */
+    int parseYear() {
+        trim();
+        if (end - start < 4 || (end - start > 4 && Character.isDigit(chars[start + 4]))) {
+            return -1;
+        }
+        int year = 0;
+        for (int i = start; i < start + 4; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            year = year * 10 + (c - '0');
+        }
+        return year;
+    }
+
+    /**
+     * Get the buffer, only chars[getStart(), getStart() + getLength()) is text
+     * @return buffer
+     */
+    char[] getChars() {
+        return chars;
+    }
+
+    /**
+     * Get where the text starts
+     * @return start offset
+     */
+    int getStart() {
+        return start;
+    }
+
+    /**
+     * Get the text length
+     * @return length
+     */
+    int getLength() {
+        return end - start;
+    }
+}
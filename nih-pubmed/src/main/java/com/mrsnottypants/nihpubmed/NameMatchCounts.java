@@ -0,0 +1,195 @@
+package com.mrsnottypants.nihpubmed;
+
+/**
+ * Counts the authors on a watchlist under any of the names a NameMatcher matches them by, everyone else is ignored.
+ * Each parsed author counts for at most one watched author, so a watched author's count is the total of all their
+ * variants.  Names are folded into buffers we reuse for every author, so counting allocates nothing.
+ * This class is not thread-safe, each thread needs counts of its own.  See NameMatcher.newCounts.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class NameMatchCounts implements AuthorCounts {
+
+    // how we match names to watched authors
+    private final NameMatcher matcher;
+
+    // count of each author, indexed by the watchlist id they are counted under
+    private final int[] counts;
+
+    // folded names, the first name and initials one char in, to leave room for the mark of a variant key
+    private char[] last = new char[64];
+    private char[] first = new char[64];
+    private char[] initials = new char[64];
+
+    // construct empty counts, use NameMatcher.newCounts
+    //
+    NameMatchCounts(NameMatcher matcher) {
+        this.matcher = matcher;
+        counts = new int[matcher.getWatchlist().size()];
+    }
+
+    /**
+     * Add one to the count of the watched author the names match, if any
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     */
+    @Override
+    public void increment(char[] first, int firstOffset, int firstLength,
+                          char[] last, int lastOffset, int lastLength) {
+        increment(first, firstOffset, firstLength, last, lastOffset, lastLength, first, firstOffset, 0);
+    }
+
+    /**
+     * Add one to the count of the watched author the names match, if any
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     * @param initials buffer holding the initials
+     * @param initialsOffset where the initials start
+     * @param initialsLength initials length, zero to take them from the first name
+     */
+    @Override
+    public void increment(char[] first, int firstOffset, int firstLength,
+                          char[] last, int lastOffset, int lastLength,
+                          char[] initials, int initialsOffset, int initialsLength) {
+        int id = find(first, firstOffset, firstLength, last, lastOffset, lastLength,
+                initials, initialsOffset, initialsLength);
+        if (id >= 0) {
+            counts[id]++;
+        }
+    }
+
+    /**
+     * Return how often the author was counted, under any of their names
+     * @param author author of interest
+     * @return count, zero if the author isn't on the watchlist
+     */
+    @Override
+    public int getAuthorCount(Author author) {
+        int id = matcher.getWatchlist().find(author);
+        return id < 0 ? 0 : getCount(id);
+    }
+
+    /**
+     * Return the count of the author with the given watchlist id
+     * @param id watchlist id
+     * @return count
+     */
+    public int getCount(int id) {
+        return counts[matcher.getCanonical(id)];
+    }
+
+    /**
+     * Return the matcher we count with
+     * @return matcher
+     */
+    public NameMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * Add the counts of another instance, for the same matcher, to ours
+     * @param other counts to add
+     * @throws IllegalArgumentException if the other counts are not for the same matcher
+     */
+    @Override
+    public void merge(AuthorCounts other) {
+        if (!(other instanceof NameMatchCounts) || ((NameMatchCounts)other).matcher != matcher) {
+            throw new IllegalArgumentException("can only merge counts of the same matcher");
+        }
+        int[] otherCounts = ((NameMatchCounts)other).counts;
+        for (int id = 0; id < counts.length; id++) {
+            counts[id] += otherCounts[id];
+        }
+    }
+
+    /**
+     * Return the watched author the names match, probing the matcher's keys from the most to the least exact.
+     * This counts nothing, so FacetCounts can look authors up with the buffers of counts of its own.
+     * @param firstName buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param lastName buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     * @param initialsName buffer holding the initials
+     * @param initialsOffset where the initials start
+     * @param initialsLength initials length, zero to take them from the first name
+     * @return watchlist id they are counted under, or -1 if they match nobody
+     */
+    int find(char[] firstName, int firstOffset, int firstLength,
+                     char[] lastName, int lastOffset, int lastLength,
+                     char[] initialsName, int initialsOffset, int initialsLength) {
+
+        // nobody watched has the last name, the usual case
+        if (last.length < lastLength * 2) {
+            last = new char[lastLength * 2];
+        }
+        int lastKey = NameMatcher.fold(lastName, lastOffset, lastLength, last, 0);
+        if (!matcher.hasLastName(last, 0, lastKey)) {
+            return -1;
+        }
+
+        // the whole first name, as a watched author's first name, then as one without leading initials
+        if (first.length < firstLength * 2 + 1) {
+            first = new char[firstLength * 2 + 1];
+        }
+        int firstKey = NameMatcher.fold(firstName, firstOffset, firstLength, first, 1);
+        int id = matcher.find(first, 1, firstKey, last, 0, lastKey);
+        if (id >= 0) {
+            return id;
+        }
+        first[0] = NameMatcher.VARIANT;
+        id = matcher.find(first, 0, firstKey + 1, last, 0, lastKey);
+        if (id >= 0) {
+            return id;
+        }
+
+        // the first name without its own leading initials
+        int start = NameMatcher.skipInitials(first, 1, firstKey);
+        if (start > 1) {
+            id = matcher.find(first, start, firstKey + 1 - start, last, 0, lastKey);
+            if (id >= 0) {
+                return id;
+            }
+        }
+
+        // initials, if that's all we have
+        if (!NameMatcher.isInitials(first, 1, firstKey)) {
+            return -1;
+        }
+        if (initials.length < Math.max(initialsLength * 2, firstKey) + 1) {
+            initials = new char[Math.max(initialsLength * 2, firstKey) + 1];
+        }
+        initials[0] = NameMatcher.INITIALS;
+        int initialsKey;
+        if (initialsLength > 0) {
+            initialsKey = NameMatcher.fold(initialsName, initialsOffset, initialsLength, initials, 1);
+            initialsKey = removeSpaces(initials, 1, initialsKey);
+        } else {
+            initialsKey = NameMatcher.initials(first, 1, firstKey, initials, 1);
+        }
+        return initialsKey == 0 ? -1 : matcher.find(initials, 0, initialsKey + 1, last, 0, lastKey);
+    }
+
+    /**
+     * Remove the spaces from folded initials, so "S. V." and "SV" are the same
+     * @return length without spaces
+     */
+    private static int removeSpaces(char[] chars, int offset, int length) {
+        int end = offset;
+        for (int i = offset; i < offset + length; i++) {
+            if (chars[i] != ' ') {
+                chars[end++] = chars[i];
+            }
+        }
+        return end - offset;
+    }
+}
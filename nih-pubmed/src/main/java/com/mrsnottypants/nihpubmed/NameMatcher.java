@@ -0,0 +1,349 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Matches the names of parsed authors to a watchlist despite differences in case, accents, hyphens, middle names
+ * and initials - so "S Vincent Rajkumar", "Vincent Rajkumar" and "SV Rajkumar" all count for a watched
+ * "Vincent Rajkumar", and "Maria Victoria Mateos" counts for a watched "María-Victoria Mateos".
+ *
+ * Names are folded into keys: lower case, accents stripped, ligatures spelled out, apostrophes dropped, and words
+ * separated by a single space whatever separated them - hyphens, dashes, periods or spaces.  Every key of every
+ * watched author is interned once, when the matcher is built, so a parsed author is matched by folding their
+ * names into reusable buffers and probing a few keys, with no strings built and no candidates compared.
+ *
+ * The keys of a watched author, in the order they are probed, are:
+ *   - their folded first and last names
+ *   - their first name without leading initials, so a watched "S Vincent" matches a parsed "Vincent"
+ *   - their initials, for parsed authors known only by their initials
+ * A parsed first name with leading initials is probed without them too, so a parsed "S Vincent" matches a
+ * watched "Vincent".  Initials are only probed if the parsed author has no first name, or only initials, so
+ * "Sam Brown" never counts for a watched "Steve Brown".  A key that belongs to two watched authors matches neither,
+ * except that watched authors whose names fold to the same key are one author, counted under the first of them.
+ *
+ * Folded last names form blocking buckets: most parsed authors share a last name with no watched author, and are
+ * rejected after one probe.  The matcher never changes once built, so it can be shared by any number of threads;
+ * each thread counts into its own NameMatchCounts.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class NameMatcher {
+
+    // marks a key holding a first name without its leading initials, and a key holding initials
+    // folding never produces either char, so these keys can't collide with a folded first name
+    static final char VARIANT = '+';
+    static final char INITIALS = '#';
+
+    // a key shared by more than one watched author
+    private static final int AMBIGUOUS = -1;
+
+    // how each char below the table size folds: a string to append, SEPARATOR, or DROP
+    // the table covers the Latin, Greek and Cyrillic alphabets and general punctuation, chars above it are only
+    // lower-cased
+    private static final int FOLD_TABLE_SIZE = 0x2100;
+    private static final String SEPARATOR = " ";
+    private static final String DROP = "";
+    private static final String[] FOLD = new String[FOLD_TABLE_SIZE];
+    static {
+        for (char c = 0; c < FOLD_TABLE_SIZE; c++) {
+            FOLD[c] = fold(c);
+        }
+    }
+
+    /**
+     * Return a matcher for the authors of a watchlist
+     * @param watchlist authors to match
+     * @return matcher
+     */
+    public static NameMatcher of(Watchlist watchlist) {
+        return new NameMatcher(watchlist);
+    }
+
+    // the authors we match
+    private final Watchlist watchlist;
+
+    // every folded last name of a watched author, with an empty first name
+    private final AuthorCountTable lastNames = new AuthorCountTable();
+
+    // every key of every watched author, as first and last name, and the watchlist id each key matches
+    private final AuthorCountTable keys = new AuthorCountTable();
+    private int[] targets = new int[16];
+
+    // watchlist id each watched author is counted under
+    private final int[] canonical;
+
+    // fold every watched author's names into their keys
+    //
+    private NameMatcher(Watchlist watchlist) {
+
+        this.watchlist = watchlist;
+        canonical = new int[watchlist.size()];
+        char[] buffer = new char[64];
+        for (int id = 0; id < watchlist.size(); id++) {
+            Author author = watchlist.getAuthor(id);
+            String last = fold(author.getLastName());
+            String first = fold(author.getFirstName());
+            lastNames.add("", last, 0);
+
+            // names that fold alike are the same author, counted under whoever was watched first
+            int size = keys.size();
+            int keyId = keys.add(first, last, 0);
+            if (keyId == size) {
+                setTarget(keyId, id);
+            }
+            canonical[id] = targets[keyId];
+
+            char[] chars = first.toCharArray();
+            int start = skipInitials(chars, 0, chars.length);
+            if (start > 0) {
+                addKey(VARIANT + first.substring(start), last, canonical[id]);
+            }
+            if (buffer.length < chars.length + 1) {
+                buffer = new char[chars.length * 2 + 1];
+            }
+            int length = initials(chars, 0, chars.length, buffer, 0);
+            if (length > 0) {
+                addKey(INITIALS + new String(buffer, 0, length), last, canonical[id]);
+            }
+        }
+    }
+
+    /**
+     * Return the watchlist we match
+     * @return watchlist
+     */
+    public Watchlist getWatchlist() {
+        return watchlist;
+    }
+
+    /**
+     * Return new, empty, counts for this matcher.
+     * Each thread needs counts of its own, the matcher itself can be shared.
+     * @return counts of watched authors, under any of their names
+     */
+    public NameMatchCounts newCounts() {
+        return new NameMatchCounts(this);
+    }
+
+    /**
+     * Return the watchlist id a watched author is counted under
+     * @param id watchlist id
+     * @return id of the first watched author whose names fold to the same key, usually id itself
+     */
+    int getCanonical(int id) {
+        return canonical[id];
+    }
+
+    /**
+     * Return true if a watched author has the folded last name
+     * @param last buffer holding the folded last name
+     * @param offset where it starts
+     * @param length its length
+     * @return true if the last name's bucket is not empty
+     */
+    boolean hasLastName(char[] last, int offset, int length) {
+        return lastNames.find(last, 0, 0, last, offset, length) >= 0;
+    }
+
+    /**
+     * Return the watched author a key matches
+     * @param first buffer holding the key's first name
+     * @param firstOffset where it starts
+     * @param firstLength its length
+     * @param last buffer holding the folded last name
+     * @param lastOffset where it starts
+     * @param lastLength its length
+     * @return watchlist id, or -1 if the key matches no watched author, or more than one
+     */
+    int find(char[] first, int firstOffset, int firstLength, char[] last, int lastOffset, int lastLength) {
+        int keyId = keys.find(first, firstOffset, firstLength, last, lastOffset, lastLength);
+        return keyId < 0 ? -1 : targets[keyId];
+    }
+
+    /**
+     * Fold a name into a key: lower case, without accents or apostrophes, words separated by single spaces
+     * @param source buffer holding the name
+     * @param offset where the name starts
+     * @param length name length
+     * @param target where the key is written, with room for twice the name's length
+     * @param targetOffset where the key starts
+     * @return key length
+     */
+    static int fold(char[] source, int offset, int length, char[] target, int targetOffset) {
+        int end = targetOffset;
+        for (int i = offset; i < offset + length; i++) {
+            char c = source[i];
+            if (c >= FOLD_TABLE_SIZE) {
+                if (Character.isLetterOrDigit(c)) {
+                    target[end++] = Character.toLowerCase(c);
+                } else if (Character.getType(c) != Character.NON_SPACING_MARK && end > targetOffset &&
+                        target[end - 1] != ' ') {
+                    target[end++] = ' ';
+                }
+                continue;
+            }
+            String folded = FOLD[c];
+            if (folded == SEPARATOR) {
+                if (end > targetOffset && target[end - 1] != ' ') {
+                    target[end++] = ' ';
+                }
+            } else {
+                for (int j = 0; j < folded.length(); j++) {
+                    target[end++] = folded.charAt(j);
+                }
+            }
+        }
+        if (end > targetOffset && target[end - 1] == ' ') {
+            end--;
+        }
+        return end - targetOffset;
+    }
+
+    /**
+     * Return where a folded first name starts once its leading initials are skipped.
+     * "s v vincent" starts at "vincent", the last word is never skipped.
+     * @param chars buffer holding the folded first name
+     * @param offset where it starts
+     * @param length its length
+     * @return index of the first word that isn't an initial
+     */
+    static int skipInitials(char[] chars, int offset, int length) {
+        int start = offset;
+        while (start + 1 < offset + length && chars[start + 1] == ' ') {
+            start += 2;
+        }
+        return start;
+    }
+
+    /**
+     * Return true if a folded first name is nothing but initials, or empty
+     * @param chars buffer holding the folded first name
+     * @param offset where it starts
+     * @param length its length
+     * @return true if every word is a single letter
+     */
+    static boolean isInitials(char[] chars, int offset, int length) {
+        for (int i = offset; i < offset + length; i += 2) {
+            if (i + 1 < offset + length && chars[i + 1] != ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the initials of a folded first name, the first letter of each word
+     * @param chars buffer holding the folded first name
+     * @param offset where it starts
+     * @param length its length
+     * @param target where the initials are written
+     * @param targetOffset where the initials start
+     * @return number of initials
+     */
+    static int initials(char[] chars, int offset, int length, char[] target, int targetOffset) {
+        int end = targetOffset;
+        for (int i = offset; i < offset + length; i++) {
+            if (i == offset || chars[i - 1] == ' ') {
+                target[end++] = chars[i];
+            }
+        }
+        return end - targetOffset;
+    }
+
+    /**
+     * Fold a name into a key
+     * @param name name, may be empty
+     * @return key
+     */
+    static String fold(String name) {
+        char[] chars = name.toCharArray();
+        char[] key = new char[chars.length * 2];
+        return new String(key, 0, fold(chars, 0, chars.length, key, 0));
+    }
+
+    /**
+     * Add a key of a watched author, marking it ambiguous if it's also a key of another
+     * @param first key's first name
+     * @param last folded last name
+     * @param id watchlist id the key matches
+     */
+    private void addKey(String first, String last, int id) {
+        int size = keys.size();
+        int keyId = keys.add(first, last, 0);
+        if (keyId == size) {
+            setTarget(keyId, id);
+        } else if (targets[keyId] != id) {
+            targets[keyId] = AMBIGUOUS;
+        }
+    }
+
+    /**
+     * Set the watchlist id a new key matches, growing the targets if needed
+     * @param keyId key's id
+     * @param id watchlist id
+     */
+    private void setTarget(int keyId, int id) {
+        if (keyId == targets.length) {
+            int[] grown = new int[targets.length * 2];
+            System.arraycopy(targets, 0, grown, 0, targets.length);
+            targets = grown;
+        }
+        targets[keyId] = id;
+    }
+
+    /**
+     * Return how a char folds: the string it becomes, SEPARATOR if it separates words, or DROP
+     * @param c char
+     * @return folded string
+     */
+    private static String fold(char c) {
+
+        // O'Brien is OBrien, however the apostrophe is written
+        if (c == '\'' || c == '`' || c == '‘' || c == '’' || c == 'ʼ') {
+            return DROP;
+        }
+        // accents may come as combining marks after the letter
+        if (Character.getType(c) == Character.NON_SPACING_MARK) {
+            return DROP;
+        }
+        if (!Character.isLetterOrDigit(c)) {
+            return SEPARATOR;
+        }
+
+        // letters that don't decompose into a base letter and an accent are spelled out
+        String lower = String.valueOf(c).toLowerCase(Locale.ROOT);
+        switch (lower) {
+            case "ß":
+                return "ss";
+            case "æ":
+                return "ae";
+            case "œ":
+                return "oe";
+            case "þ":
+                return "th";
+            case "ø":
+                return "o";
+            case "ł":
+                return "l";
+            case "đ":
+            case "ð":
+                return "d";
+            case "ħ":
+                return "h";
+            case "ı":
+                return "i";
+            case "ŧ":
+                return "t";
+            default:
+                break;
+        }
+        StringBuilder base = new StringBuilder();
+        for (char d : Normalizer.normalize(lower, Normalizer.Form.NFD).toCharArray()) {
+            if (Character.getType(d) != Character.NON_SPACING_MARK) {
+                base.append(d);
+            }
+        }
+        return base.length() == 0 ? lower : base.toString();
+    }
+}
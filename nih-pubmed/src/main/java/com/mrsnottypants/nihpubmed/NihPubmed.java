@@ -0,0 +1,629 @@
+package com.mrsnottypants.nihpubmed;
+
+import javax.management.JMException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Usage: java -jar .\target\nih-pubmed-0.0.1-SNAPSHOT.jar [options] .\pubmed_result.xml
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class NihPubmed {
+
+    // co-authors shown for each author of interest
+    private static final int TOP_COAUTHORS = 3;
+
+    // journals shown by the journals report
+    private static final int TOP_JOURNALS = 10;
+
+    // file in the spill directory that every author's count is written to
+    static final String SPILL_COUNTS_FILE = "authors.tsv";
+
+    // authors we are interested in, unless a watchlist file is given
+    static final List<Author> AUTHORS = Arrays.asList(
+            Author.of("William", "Bensinger"),
+            Author.of("Leif", "Bergsagel"),
+            Author.of("Adam", "Cohen"),
+            Author.of("Hermann", "Einsele"),
+            Author.of("Amrita", "Krishnan"),
+            Author.of("Edward", "Libby"),
+            Author.of("Sagar", "Lonial"),
+            Author.of("Heinz", "Ludwig"),
+            Author.of("María-Victoria", "Mateos"),
+            Author.of("Philip", "McCarthy"),
+            Author.of("Vincent", "Rajkumar"),
+            Author.of("Paul", "Richardson"),
+            Author.of("Jatin", "Shah"),
+            Author.of("Saad", "Usmani"),
+            Author.of("David", "Vesole"),
+            Author.of("Ravi", "Vij")
+    );
+
+    /**
+     * Usage: java -jar .\target\nih-pubmed-0.0.1-SNAPSHOT.jar [options] .\pubmed_result.xml
+     * The input may be plain or gzip-compressed XML.
+     * It may also be a directory, in which case all its .xml and .xml.gz files are parsed,
+     * or a glob such as .\baseline\*.xml.gz
+     * @param args expected to have options followed by one entry, the input file, directory or glob
+     */
+	public static void main(String[] args) {
+
+        // sanity check
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.out.println(ex.getMessage());
+            usage();
+            return;
+        }
+
+        // metrics, if we're asked to report progress as we go
+        startMetrics(options);
+
+        // a resident server, answering counts until it is stopped
+        if (options.getServe() > 0) {
+            serve(options);
+            return;
+        }
+
+        // the most listed authors, instead of the authors of interest
+        if (options.getTop() > 0) {
+            findTopAuthors(options);
+            return;
+        }
+
+        // the number of distinct authors, instead of the authors of interest
+        if (options.isDistinct()) {
+            estimateDistinct(options);
+            return;
+        }
+
+        // the authors of interest, from the watchlist file if there is one
+        Watchlist watchlist;
+        try {
+            watchlist = options.getWatchlist().isPresent() ?
+                    Watchlist.load(Paths.get(options.getWatchlist().get())) : Watchlist.of(AUTHORS);
+        } catch (IOException ex) {
+            System.out.println(
+                    String.format("Cannot access %s : %s", options.getWatchlist().get(), ex.getMessage()));
+            return;
+        }
+
+        // with an index, build it from the input if there is one, and answer from the index
+        if (options.getIndex().isPresent()) {
+            countAuthors(options, watchlist, Paths.get(options.getIndex().get()));
+            return;
+        }
+
+        // with a graph, build it from the input if there is one, and show co-authors from the graph
+        if (options.getGraph().isPresent()) {
+            showCoauthors(options, watchlist, Paths.get(options.getGraph().get()));
+            return;
+        }
+
+        // with a snapshot, apply the input to the latest checkpoint, and answer from the snapshot
+        if (options.getSnapshot().isPresent()) {
+            applyUpdates(options, watchlist, Paths.get(options.getSnapshot().get()));
+            return;
+        }
+
+        // with reports, build every report in a single pass
+        if (!options.getReports().isEmpty()) {
+            report(options, watchlist);
+            return;
+        }
+
+        // with a spill directory, count every author in fixed memory, and answer from the counts
+        if (options.getSpill().isPresent()) {
+            spill(options, watchlist, Paths.get(options.getSpill().get()));
+            return;
+        }
+
+        try {
+
+            // find the files to parse
+            List<Path> paths = PubMedBatch.listFiles(options.getInput());
+
+            // count how often authors of interest are listed in the author list of an article
+            // files are parsed concurrently, each with its own handler, and the counts merged
+            // only authors on the watchlist are counted, everyone else is rejected before any counting is done
+            PubMedAuthorCountHandler handler = PubMedBatch.countAuthors(
+                    paths, options.getThreads(), options.getEngine(), newCounts(options, watchlist));
+
+            // display count for each author of interest
+            display(watchlist, handler::getAuthorCount);
+
+        } catch (IOException ex) {
+            System.out.println(
+                    String.format("Cannot access %s : %s", options.getInput(), ex.getMessage()));
+        } catch (PubMedResultException ex) {
+            System.out.println(
+                    String.format("Cannot parse %s : %s", options.getInput(), describe(ex)));
+        }
+	}
+
+    /**
+     * Start metrics if asked to, printing progress lines to System.err and publishing them over JMX.
+     * Metrics are sampled on a daemon thread, so they stop when we're done.
+     * @param options command-line options
+     */
+    private static void startMetrics(Options options) {
+        if (!options.isMetrics()) {
+            return;
+        }
+        PubMedMetrics metrics = PubMedMetrics.start();
+        if (options.isJmx()) {
+            try {
+                metrics.register();
+            } catch (JMException ex) {
+                System.out.println(String.format("Cannot register %s : %s", PubMedMetrics.OBJECT_NAME,
+                        ex.getMessage()));
+            }
+        }
+        if (options.getProgress() > 0) {
+            metrics.startProgress(options.getProgress(), System.err);
+        }
+
+        // what we expect to read, a server adds the files it ingests as it ingests them
+        if (options.hasInput() && options.getServe() == 0) {
+            try {
+                PubMedMetrics.expect(PubMedBatch.listFiles(options.getInput()));
+            } catch (IOException ex) {
+                // reported when the input is read
+            }
+        }
+    }
+
+    /**
+     * Display the most listed authors, found in a fixed amount of memory, and counted exactly if asked to
+     * @param options command-line options
+     */
+    private static void findTopAuthors(Options options) {
+        try {
+            List<Path> paths = PubMedBatch.listFiles(options.getInput());
+            List<TopAuthors.Entry> entries = options.isExact() ?
+                    PubMedBatch.findTopAuthorsExactly(paths, options.getThreads(), options.getEngine(),
+                            options.getTopCapacity(), options.getTop()) :
+                    PubMedBatch.findTopAuthors(paths, options.getThreads(), options.getEngine(),
+                            options.getTopCapacity()).getTop(options.getTop());
+            for (TopAuthors.Entry entry : entries) {
+                System.out.println(options.isExact() ?
+                        String.format("%s : %s", entry.getAuthor(), entry.getCount()) : entry.toString());
+            }
+        } catch (IOException ex) {
+            System.out.println(
+                    String.format("Cannot access %s : %s", options.getInput(), ex.getMessage()));
+        } catch (PubMedResultException ex) {
+            System.out.println(
+                    String.format("Cannot parse %s : %s", options.getInput(), describe(ex)));
+        }
+    }
+
+    /**
+     * Start a server that answers author counts, ingesting the input first if there is any.
+     * The server's threads keep running after we return.
+     * @param options command-line options
+     */
+    private static void serve(Options options) {
+        PubMedServer server = PubMedServer.newInstance(options.getThreads(), options.getEngine(),
+                options.isOffHeap());
+        if (options.hasInput()) {
+            try {
+                server.ingest(PubMedBatch.listFiles(options.getInput()));
+            } catch (IOException ex) {
+                System.out.println(
+                        String.format("Cannot access %s : %s", options.getInput(), ex.getMessage()));
+                return;
+            } catch (PubMedResultException ex) {
+                System.out.println(
+                        String.format("Cannot parse %s : %s", options.getInput(), describe(ex)));
+                return;
+            }
+        }
+        try {
+            server.start(options.getServe());
+            System.out.println(String.format("Serving %d authors on http://localhost:%d/",
+                    server.getSnapshot().size(), server.getPort()));
+        } catch (IOException ex) {
+            System.out.println(String.format("Cannot serve on port %d : %s", options.getServe(), ex.getMessage()));
+        }
+    }
+
+    /**
+     * Display the estimated number of distinct authors and co-authors, overall, per year and per file
+     * @param options command-line options
+     */
+    private static void estimateDistinct(Options options) {
+        try {
+            List<Path> paths = PubMedBatch.listFiles(options.getInput());
+            display(PubMedBatch.estimateDistinct(paths, options.getThreads(), options.getEngine()));
+        } catch (IOException ex) {
+            System.out.println(
+                    String.format("Cannot access %s : %s", options.getInput(), ex.getMessage()));
+        } catch (PubMedResultException ex) {
+            System.out.println(
+                    String.format("Cannot parse %s : %s", options.getInput(), describe(ex)));
+        }
+    }
+
+    /**
+     * Build the reports asked for in a single pass over the input, and display each in turn
+     * @param options command-line options
+     * @param watchlist authors of interest
+     */
+    private static void report(Options options, Watchlist watchlist) {
+        Supplier<AuthorCounts> counts = newCounts(options, watchlist);
+        Supplier<FacetCounts> facets = newFacets(options, watchlist);
+        Supplier<PubMedPipeline> pipelines = () -> {
+            List<PubMedAggregator> aggregators = new ArrayList<>();
+            for (String report : options.getReports()) {
+                switch (report) {
+                    case "authors":
+                        aggregators.add(AuthorCountAggregator.of(counts.get()));
+                        break;
+                    case "journals":
+                        aggregators.add(JournalCounts.newInstance());
+                        break;
+                    case "years":
+                        aggregators.add(PublicationYears.newInstance());
+                        break;
+                    case "history":
+                        aggregators.add(AuthorYears.newInstance());
+                        break;
+                    case "facets":
+                        aggregators.add(facets.get());
+                        break;
+                    default:
+                        aggregators.add(AuthorCardinality.newInstance());
+                        break;
+                }
+            }
+            return PubMedPipeline.of(aggregators);
+        };
+
+        try {
+            List<Path> paths = PubMedBatch.listFiles(options.getInput());
+            PubMedPipeline pipeline = PubMedBatch.aggregate(
+                    paths, options.getThreads(), options.getEngine(), pipelines);
+            System.out.println(String.format("articles : %d", pipeline.getRecordCount()));
+            for (PubMedAggregator aggregator : pipeline.getAggregators()) {
+                if (aggregator instanceof AuthorCountAggregator) {
+                    display(watchlist, ((AuthorCountAggregator)aggregator)::getAuthorCount);
+                } else if (aggregator instanceof JournalCounts) {
+                    JournalCounts journals = (JournalCounts)aggregator;
+                    for (String journal : journals.getTop(TOP_JOURNALS)) {
+                        System.out.println(String.format("%s : %d", journal, journals.getCount(journal)));
+                    }
+                } else if (aggregator instanceof PublicationYears) {
+                    PublicationYears years = (PublicationYears)aggregator;
+                    System.out.println(String.format("years : %d - %d", years.getEarliest(), years.getLatest()));
+                    for (Map.Entry<Integer, Long> entry : years.getCounts().entrySet()) {
+                        System.out.println(String.format("%d : %d", entry.getKey(), entry.getValue()));
+                    }
+                    System.out.println(String.format("undated : %d", years.getUndated()));
+                } else if (aggregator instanceof AuthorYears) {
+                    display(watchlist, (AuthorYears)aggregator, options.getYears());
+                } else if (aggregator instanceof FacetCounts) {
+                    display(options, watchlist, (FacetCounts)aggregator);
+                } else {
+                    display((AuthorCardinality)aggregator);
+                }
+            }
+        } catch (IOException ex) {
+            System.out.println(
+                    String.format("Cannot access %s : %s", options.getInput(), ex.getMessage()));
+        } catch (PubMedResultException ex) {
+            System.out.println(
+                    String.format("Cannot parse %s : %s", options.getInput(), describe(ex)));
+        }
+    }
+
+    /**
+     * Count every author in fixed memory, spilling to a directory, write every author's count to a file in the
+     * directory, in name order, and display the counts of the authors of interest
+     * @param options command-line options
+     * @param watchlist authors of interest
+     * @param directory spill directory
+     */
+    private static void spill(Options options, Watchlist watchlist, Path directory) {
+        int[] counts = new int[watchlist.size()];
+        Path output = directory.resolve(SPILL_COUNTS_FILE);
+        try {
+            List<Path> paths = PubMedBatch.listFiles(options.getInput());
+            Files.createDirectories(directory);
+            int authors;
+            try (SpillingAuthorCounts spilled = PubMedBatch.countAuthors(paths, options.getThreads(),
+                    options.getEngine(), directory, options.getSpillAuthors());
+                 PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))) {
+                int[] written = new int[1];
+                spilled.forEach((author, count) -> {
+                    int id = watchlist.find(author);
+                    if (id >= 0) {
+                        counts[id] = count;
+                    }
+                    writer.println(String.format("%s\t%s\t%d", author.getFirstName(), author.getLastName(), count));
+                    written[0]++;
+                });
+                if (writer.checkError()) {
+                    throw new IOException(String.format("cannot write %s", output));
+                }
+                authors = written[0];
+            }
+            display(watchlist, author -> counts[watchlist.find(author)]);
+            System.out.println(String.format("%d authors written to %s", authors, output));
+        } catch (IOException ex) {
+            System.out.println(String.format("Cannot access %s : %s", directory, ex.getMessage()));
+        } catch (PubMedResultException ex) {
+            System.out.println(String.format("Cannot parse %s : %s", options.getInput(), describe(ex)));
+        }
+    }
+
+    /**
+     * Display the counts of the authors of interest from an index, building it first if there is input
+     * @param options command-line options
+     * @param watchlist authors of interest
+     * @param directory index directory
+     */
+    private static void countAuthors(Options options, Watchlist watchlist, Path directory) {
+        try {
+            if (options.hasInput()) {
+                AuthorIndexWriter.build(PubMedBatch.listFiles(options.getInput()), directory);
+            }
+            AuthorIndex index = AuthorIndex.open(directory);
+            display(watchlist, index::getAuthorCount);
+        } catch (IOException ex) {
+            System.out.println(String.format("Cannot access %s : %s", directory, ex.getMessage()));
+        } catch (PubMedResultException ex) {
+            System.out.println(String.format("Cannot parse %s : %s", options.getInput(), describe(ex)));
+        }
+    }
+
+    /**
+     * Display the articles, co-author count and most frequent co-authors of the authors of interest from a graph,
+     * building it first if there is input
+     * @param options command-line options
+     * @param watchlist authors of interest
+     * @param path graph file
+     */
+    private static void showCoauthors(Options options, Watchlist watchlist, Path path) {
+        try {
+            CoauthorGraph graph;
+            if (options.hasInput()) {
+                graph = CoauthorGraphBuilder.build(PubMedBatch.listFiles(options.getInput()), options.getThreads(),
+                        options.getEngine(), options.getMaxAuthors());
+                graph.write(path);
+            } else {
+                graph = CoauthorGraph.read(path);
+            }
+            for (int i = 0; i < watchlist.size(); i++) {
+                Author author = watchlist.getAuthor(i);
+                int id = graph.find(author);
+                if (id < 0) {
+                    System.out.println(String.format("%s : 0", author));
+                    continue;
+                }
+                StringBuilder top = new StringBuilder();
+                for (int neighbor : graph.getTopNeighbors(id, TOP_COAUTHORS)) {
+                    top.append(top.length() == 0 ? ", most often with " : ", ")
+                            .append(graph.getAuthor(neighbor))
+                            .append(String.format(" (%d)", graph.getWeightBetween(id, neighbor)));
+                }
+                System.out.println(String.format("%s : %d, with %d co-authors%s",
+                        author, graph.getArticleCount(id), graph.getDegree(id), top));
+            }
+        } catch (IOException ex) {
+            System.out.println(String.format("Cannot access %s : %s", path, ex.getMessage()));
+        } catch (PubMedResultException ex) {
+            System.out.println(String.format("Cannot parse %s : %s", options.getInput(), describe(ex)));
+        }
+    }
+
+    /**
+     * Display the counts of the authors of interest from the latest snapshot, after applying any input files it
+     * hasn't seen, and saving the result as a new checkpoint
+     * @param options command-line options
+     * @param watchlist authors of interest
+     * @param directory checkpoint directory
+     */
+    private static void applyUpdates(Options options, Watchlist watchlist, Path directory) {
+        try {
+            AuthorSnapshot snapshot = AuthorSnapshot.load(directory);
+            if (options.hasInput()) {
+                boolean applied = false;
+                for (Path path : PubMedBatch.listFiles(options.getInput())) {
+                    applied |= snapshot.apply(path);
+                }
+                if (applied) {
+                    snapshot.save(directory);
+                }
+            }
+            display(watchlist, snapshot::getAuthorCount);
+        } catch (IOException ex) {
+            System.out.println(String.format("Cannot access %s : %s", directory, ex.getMessage()));
+        } catch (PubMedResultException ex) {
+            System.out.println(String.format("Cannot parse %s : %s", options.getInput(), describe(ex)));
+        }
+    }
+
+    /**
+     * Display the count of each author of interest
+     * @param watchlist authors of interest
+     * @param counts returns an author's count
+     */
+    private static void display(Watchlist watchlist, ToIntFunction<Author> counts) {
+        for (int id = 0; id < watchlist.size(); id++) {
+            Author author = watchlist.getAuthor(id);
+            System.out.println(String.format("%s : %s", author, counts.applyAsInt(author)));
+        }
+    }
+
+    /**
+     * Display how often each author of interest was listed in each year, or in a range of years
+     * @param watchlist authors of interest
+     * @param years every author's years
+     * @param range earliest and latest year of the range, empty for every year
+     */
+    private static void display(Watchlist watchlist, AuthorYears years, Optional<int[]> range) {
+        for (int id = 0; id < watchlist.size(); id++) {
+            Author author = watchlist.getAuthor(id);
+            if (range.isPresent()) {
+                System.out.println(String.format("%s %d-%d : %d", author, range.get()[0], range.get()[1],
+                        years.getCount(author, range.get()[0], range.get()[1])));
+            } else {
+                System.out.println(String.format("%s : %s", author, years.getYears(author)));
+            }
+        }
+    }
+
+    /**
+     * Display how often each author of interest was listed with the values of each facet asked for, most often
+     * first, and export every cell shown to a file if asked to
+     * @param options command-line options
+     * @param watchlist authors of interest
+     * @param facets every author's facet counts
+     * @throws IOException if the cells cannot be exported
+     */
+    private static void display(Options options, Watchlist watchlist, FacetCounts facets) throws IOException {
+        for (int id = 0; id < watchlist.size(); id++) {
+            Author author = watchlist.getAuthor(id);
+            for (FacetCounts.Facet facet : options.getFacets()) {
+                StringBuilder values = new StringBuilder();
+                for (Map.Entry<String, Integer> entry : facets.getCounts(author, facet).entrySet()) {
+                    if (entry.getValue() >= options.getFacetMin()) {
+                        values.append(values.length() == 0 ? "" : ", ")
+                                .append(String.format("%s (%d)", entry.getKey(), entry.getValue()));
+                    }
+                }
+                System.out.println(String.format("%s %s : %s", author, facet.getName(), values));
+            }
+        }
+        if (options.getFacetExport().isPresent()) {
+            Path output = Paths.get(options.getFacetExport().get());
+            int cells;
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))) {
+                cells = facets.export(writer, options.getFacets(), options.getFacetMin());
+                if (writer.checkError()) {
+                    throw new IOException(String.format("cannot write %s", output));
+                }
+            }
+            System.out.println(String.format("%d cells written to %s", cells, output));
+        }
+    }
+
+    /**
+     * Display the estimated number of distinct authors and co-authors, overall, per year and per file
+     * @param cardinality estimates
+     */
+    private static void display(AuthorCardinality cardinality) {
+        System.out.println(String.format("distinct authors : %d", cardinality.getDistinctAuthors()));
+        System.out.println(String.format("distinct co-authors : %d", cardinality.getDistinctCoauthors()));
+        for (int year : cardinality.getYears()) {
+            System.out.println(String.format("%d : %d", year, cardinality.getDistinctAuthors(year)));
+        }
+        for (Path path : cardinality.getFiles()) {
+            System.out.println(String.format("%s : %d", path, cardinality.getDistinctAuthors(path)));
+        }
+    }
+
+    /**
+     * Return a supplier of new counts of the authors of interest, each for one thread
+     * @param options command-line options
+     * @param watchlist authors of interest
+     * @return counts of the watched authors, under variants of their names too if asked for
+     */
+    private static Supplier<AuthorCounts> newCounts(Options options, Watchlist watchlist) {
+        if (options.isVariants()) {
+            NameMatcher matcher = NameMatcher.of(watchlist);
+            return matcher::newCounts;
+        }
+        return watchlist::newCounts;
+    }
+
+    /**
+     * Return a supplier of new facet counts of the authors of interest, each for one thread
+     * @param options command-line options
+     * @param watchlist authors of interest
+     * @return facet counts of the watched authors, under variants of their names too if asked for
+     */
+    private static Supplier<FacetCounts> newFacets(Options options, Watchlist watchlist) {
+        if (options.isVariants()) {
+            NameMatcher matcher = NameMatcher.of(watchlist);
+            return () -> FacetCounts.of(matcher);
+        }
+        return () -> FacetCounts.of(watchlist);
+    }
+
+    /**
+     * Describe an exception, including its cause
+     * @param ex exception
+     * @return human-readable description
+     */
+    private static String describe(Exception ex) {
+        return ex.getCause() == null ?
+                ex.getMessage() : String.format("%s (%s)", ex.getMessage(), ex.getCause().getMessage());
+    }
+
+    /**
+     * Display usage
+     */
+    private static void usage() {
+        System.out.println("usage: nih-pubmed-0.0.1-SNAPSHOT [options] [pubmed_result.xml|directory|glob]");
+        System.out.println("  --threads n        parse at most n files, or chunks of files, at the same time");
+        System.out.println("  --engine sax|stax|scan");
+        System.out.println("                     parse engine, stax skips parts of each record we don't need,");
+        System.out.println("                     scan looks for author names in the raw bytes of the file");
+        System.out.println("  --watchlist file   count the authors in the file, one per line, first and last name");
+        System.out.println("                     separated by a tab, instead of the built-in authors");
+        System.out.println("  --report list      build the comma-separated reports in one pass over the input,");
+        System.out.println("                     any of authors, journals, years, distinct, history, which");
+        System.out.println("                     shows how often each author was listed in each year, and facets,");
+        System.out.println("                     which shows how often with each journal, MeSH descriptor and");
+        System.out.println("                     publication type");
+        System.out.println("  --years from-to    show the history report's counts over a range of years, such as");
+        System.out.println("                     2010-2016");
+        System.out.println("  --facets list      show the comma-separated facets of journal, mesh and type only");
+        System.out.println("  --facet-min n      show the facet values an author was listed with n times or more");
+        System.out.println("  --facet-export file");
+        System.out.println("                     write the facets shown to the file, tab-separated");
+        System.out.println("  --variants true    count the authors under variants of their names as well, ignoring");
+        System.out.println("                     case, accents, hyphens and leading initials, or by initials alone");
+        System.out.println("  --index directory  build an index of the input in the directory, and count from it,");
+        System.out.println("                     without input count from an index built earlier");
+        System.out.println("  --top k            display the k most listed authors, not the authors of interest,");
+        System.out.println("                     found in fixed memory, counts may be over by up to the error");
+        System.out.println("  --top-capacity n   find them with n counters, ten per author wanted by default");
+        System.out.println("  --exact true       count the most listed authors exactly, in a second pass");
+        System.out.println("  --distinct true    estimate the number of distinct authors, and pairs of co-authors,");
+        System.out.println("                     overall, per year and per file, instead of counting authors");
+        System.out.println("  --graph file       build a co-author graph of the input in the file, and show the");
+        System.out.println("                     co-authors of each author, without input use a graph built earlier");
+        System.out.println("  --max-authors n    articles with more than n authors add no co-authors, default 100");
+        System.out.println("  --serve port       count the input, if any, and answer counts over HTTP on the port");
+        System.out.println("                     until stopped, POST /ingest?path=... adds files");
+        System.out.println("  --off-heap true    keep the served counts outside the Java heap");
+        System.out.println("  --spill directory  count every author in fixed memory, spilling sorted runs to the");
+        System.out.println("                     directory, and write every author's count to authors.tsv there");
+        System.out.println("  --spill-authors n  authors each thread holds in memory before spilling, default");
+        System.out.println("                     1000000");
+        System.out.println("  --progress seconds print bytes, articles, rates and an estimate of the time left to");
+        System.out.println("                     stderr every so many seconds");
+        System.out.println("  --jmx true         publish the same metrics over JMX, as " + PubMedMetrics.OBJECT_NAME);
+        System.out.println("  --snapshot directory");
+        System.out.println("                     apply the input files to the latest checkpoint in the directory,");
+        System.out.println("                     skipping files applied before, save a new checkpoint, and count");
+        System.out.println("                     from it, without input count from the latest checkpoint");
+    }
+}
@@ -0,0 +1,577 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Counts authors by first and last name, like AuthorCountTable, but outside the Java heap - so tens of millions of
+ * distinct authors cost neither heap nor garbage collection time, and the heap stays the same size however large
+ * the corpus grows.
+ *
+ * Everything lives in three buffers, either direct buffers or, given a directory, memory-mapped files:
+ *   slots    open-addressed table, probed linearly: per slot, id + 1 (zero for an empty slot) and the id's hash
+ *   entries  per id: where its names start, first and last name bytes, count and hash
+ *   names    every author's names, UTF-8, first name then last name, back to back
+ * There is no Java object per author.  Buffers double when they fill, by copying a direct buffer, or by mapping
+ * more of a file.  Each buffer must stay under 2GB, which holds about 100 million authors.
+ *
+ * Names are looked up the same as in AuthorCountTable: a missing name is the same as an empty name, and names
+ * passed in as ranges of char arrays are the same as the same names passed in as strings.  Names given as chars are
+ * encoded into a buffer we reuse, so counting allocates nothing per occurrence.
+ * This class is not thread-safe for writes.  Reads by Author, or by strings, are safe once writes are done.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class OffHeapAuthorCountTable implements AuthorCounts, Closeable {
+
+    // we grow the table when it is this full
+    private static final float LOAD_FACTOR = 0.5f;
+
+    // bytes per slot: id + 1, hash
+    private static final int SLOT_BYTES = 8;
+
+    // bytes per entry: names offset, first name bytes, last name bytes, count, hash
+    private static final int ENTRY_BYTES = 20;
+    private static final int NAMES_OFFSET = 0;
+    private static final int FIRST_LENGTH = 4;
+    private static final int LAST_LENGTH = 8;
+    private static final int COUNT = 12;
+    private static final int HASH = 16;
+
+    // bytes of names we start with, per author
+    private static final int NAME_BYTES_PER_AUTHOR = 16;
+
+    // file names within the directory, when the buffers are memory-mapped
+    static final String SLOTS_FILE = "slots.bin";
+    static final String ENTRIES_FILE = "entries.bin";
+    static final String NAMES_FILE = "names.bin";
+
+    // directory of the mapped files, null for direct buffers
+    private final Path directory;
+
+    // the buffers
+    private ByteBuffer slots;
+    private ByteBuffer entries;
+    private ByteBuffer names;
+
+    // number of slots, a power of two
+    private int tableSize;
+
+    // bytes of names used, and number of distinct authors
+    private int namesLength;
+    private int size;
+
+    // names encoded as UTF-8, first name then last name, reused for every author counted
+    private byte[] encoded = new byte[256];
+
+    /**
+     * Construct an empty table in direct buffers
+     */
+    public OffHeapAuthorCountTable() {
+        this(16);
+    }
+
+    /**
+     * Construct an empty table in direct buffers, with room for some authors before it grows
+     * @param expectedAuthors number of distinct authors we expect
+     */
+    public OffHeapAuthorCountTable(int expectedAuthors) {
+        directory = null;
+        allocate(expectedAuthors);
+    }
+
+    /**
+     * Construct an empty table in memory-mapped files, with room for some authors before it grows.
+     * The files are replaced if they exist, and deleted when the table is closed.
+     * @param expectedAuthors number of distinct authors we expect
+     * @param directory existing directory the files are written to
+     * @throws IOException if the files cannot be created
+     */
+    public OffHeapAuthorCountTable(int expectedAuthors, Path directory) throws IOException {
+        this.directory = directory;
+        for (String file : new String[] {SLOTS_FILE, ENTRIES_FILE, NAMES_FILE}) {
+            Files.deleteIfExists(directory.resolve(file));
+        }
+        try {
+            allocate(expectedAuthors);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Add one to the author's count
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     * @return author's id
+     */
+    public int add(char[] first, int firstOffset, int firstLength, char[] last, int lastOffset, int lastLength) {
+        return add(first, firstOffset, firstLength, last, lastOffset, lastLength, 1);
+    }
+
+    /**
+     * Add to the author's count
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     * @param count how much to add
+     * @return author's id
+     */
+    public int add(char[] first, int firstOffset, int firstLength, char[] last, int lastOffset, int lastLength,
+                   int count) {
+        int firstBytes = encode(first, firstOffset, firstLength, 0);
+        int lastBytes = encode(last, lastOffset, lastLength, firstBytes) - firstBytes;
+        int id = intern(encoded, firstBytes, lastBytes);
+        addCount(id, count);
+        return id;
+    }
+
+    /**
+     * Add one to the author's count
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     */
+    @Override
+    public void increment(char[] first, int firstOffset, int firstLength,
+                          char[] last, int lastOffset, int lastLength) {
+        add(first, firstOffset, firstLength, last, lastOffset, lastLength, 1);
+    }
+
+    /**
+     * Add one to the author's count
+     * @param firstName first name, may be null
+     * @param lastName last name, may be null
+     * @return author's id
+     */
+    public int add(String firstName, String lastName) {
+        return add(firstName, lastName, 1);
+    }
+
+    /**
+     * Add to the author's count
+     * @param firstName first name, may be null
+     * @param lastName last name, may be null
+     * @param count how much to add
+     * @return author's id
+     */
+    public int add(String firstName, String lastName, int count) {
+        byte[] first = bytes(firstName);
+        byte[] last = bytes(lastName);
+        if (encoded.length < first.length + last.length) {
+            encoded = new byte[(first.length + last.length) * 2];
+        }
+        System.arraycopy(first, 0, encoded, 0, first.length);
+        System.arraycopy(last, 0, encoded, first.length, last.length);
+        int id = intern(encoded, first.length, last.length);
+        addCount(id, count);
+        return id;
+    }
+
+    /**
+     * Return the author's id, or -1 if we haven't seen them
+     * @param firstName first name, may be null
+     * @param lastName last name, may be null
+     * @return author's id, or -1
+     */
+    public int find(String firstName, String lastName) {
+        byte[] first = bytes(firstName);
+        byte[] last = bytes(lastName);
+        int hash = AuthorIndex.hash(first, last);
+        int mask = tableSize - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots.getInt(slot * SLOT_BYTES) - 1;
+            if (id < 0) {
+                return -1;
+            }
+            if (slots.getInt(slot * SLOT_BYTES + 4) == hash && equals(id, first, 0, first.length, last, 0,
+                    last.length)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Return the author's id, or -1 if we haven't seen them
+     * @param author author
+     * @return author's id, or -1
+     */
+    public int find(Author author) {
+        return find(author.getFirstName(), author.getLastName());
+    }
+
+    /**
+     * Return how often we added the author
+     * @param author author of interest
+     * @return count, zero if we've never seen the author
+     */
+    @Override
+    public int getAuthorCount(Author author) {
+        int id = find(author);
+        return id < 0 ? 0 : getCount(id);
+    }
+
+    /**
+     * Add to the count for an id
+     * @param id author's id
+     * @param count how much to add, may be negative
+     */
+    public void addCount(int id, int count) {
+        int entry = id * ENTRY_BYTES + COUNT;
+        entries.putInt(entry, entries.getInt(entry) + count);
+    }
+
+    /**
+     * Return the count for an id
+     * @param id author's id
+     * @return count
+     */
+    public int getCount(int id) {
+        return entries.getInt(id * ENTRY_BYTES + COUNT);
+    }
+
+    /**
+     * Return the first name for an id
+     * @param id author's id
+     * @return first name, empty if none
+     */
+    public String getFirstName(int id) {
+        int entry = id * ENTRY_BYTES;
+        return string(entries.getInt(entry + NAMES_OFFSET), entries.getInt(entry + FIRST_LENGTH));
+    }
+
+    /**
+     * Return the last name for an id
+     * @param id author's id
+     * @return last name, empty if none
+     */
+    public String getLastName(int id) {
+        int entry = id * ENTRY_BYTES;
+        return string(entries.getInt(entry + NAMES_OFFSET) + entries.getInt(entry + FIRST_LENGTH),
+                entries.getInt(entry + LAST_LENGTH));
+    }
+
+    /**
+     * Return the author for an id
+     * @param id author's id
+     * @return author
+     */
+    public Author getAuthor(int id) {
+        return Author.of(getFirstName(id), getLastName(id));
+    }
+
+    /**
+     * Return the number of distinct authors, ids run from zero to size - 1
+     * @return number of distinct authors
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the bytes the buffers hold, all of it outside the heap
+     * @return bytes
+     */
+    public long getCapacityBytes() {
+        return (long)slots.capacity() + entries.capacity() + names.capacity();
+    }
+
+    /**
+     * Add another table's counts to ours, either kind of table
+     * @param other table whose counts we add
+     * @throws IllegalArgumentException if the other counts aren't a table
+     */
+    @Override
+    public void merge(AuthorCounts other) {
+        if (other instanceof OffHeapAuthorCountTable) {
+            OffHeapAuthorCountTable table = (OffHeapAuthorCountTable)other;
+            for (int id = 0; id < table.size; id++) {
+                int entry = id * ENTRY_BYTES;
+                int offset = table.entries.getInt(entry + NAMES_OFFSET);
+                int firstBytes = table.entries.getInt(entry + FIRST_LENGTH);
+                int length = firstBytes + table.entries.getInt(entry + LAST_LENGTH);
+                if (encoded.length < length) {
+                    encoded = new byte[length * 2];
+                }
+                for (int i = 0; i < length; i++) {
+                    encoded[i] = table.names.get(offset + i);
+                }
+                addCount(intern(encoded, firstBytes, length - firstBytes), table.getCount(id));
+            }
+        } else if (other instanceof AuthorCountTable) {
+            AuthorCountTable table = (AuthorCountTable)other;
+            for (int id = 0; id < table.size(); id++) {
+                add(table.getFirstName(id), table.getLastName(id), table.getCount(id));
+            }
+        } else {
+            throw new IllegalArgumentException(
+                    "can only merge another OffHeapAuthorCountTable, or an AuthorCountTable");
+        }
+    }
+
+    /**
+     * Return a copy of this table in direct buffers, so the copy can keep being read while this table changes
+     * @return copy
+     */
+    public OffHeapAuthorCountTable copy() {
+        OffHeapAuthorCountTable copy = new OffHeapAuthorCountTable(size);
+        copy.merge(this);
+        return copy;
+    }
+
+    /**
+     * Let go of the buffers, and delete the mapped files if there are any.
+     * The table can't be used once closed.  A mapped file that can't be deleted while mapped, as on Windows,
+     * is deleted when the JVM exits.
+     */
+    @Override
+    public void close() {
+        slots = null;
+        entries = null;
+        names = null;
+        if (directory != null) {
+            for (String file : new String[] {SLOTS_FILE, ENTRIES_FILE, NAMES_FILE}) {
+                Path path = directory.resolve(file);
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException ex) {
+                    path.toFile().deleteOnExit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the author's id, adding them with a count of zero if we haven't seen them
+     * @param bytes buffer holding the UTF-8 first name, then the last name, from the start
+     * @param firstBytes first name bytes
+     * @param lastBytes last name bytes
+     * @return author's id
+     */
+    private int intern(byte[] bytes, int firstBytes, int lastBytes) {
+        int hash = AuthorIndex.hash(bytes, 0, firstBytes, bytes, firstBytes, lastBytes);
+        int mask = tableSize - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots.getInt(slot * SLOT_BYTES) - 1;
+            if (id < 0) {
+                id = newId(hash, bytes, firstBytes, lastBytes);
+                slots.putInt(slot * SLOT_BYTES, id + 1);
+                slots.putInt(slot * SLOT_BYTES + 4, hash);
+                if (size > tableSize * LOAD_FACTOR) {
+                    rehash(tableSize * 2);
+                }
+                return id;
+            }
+            if (slots.getInt(slot * SLOT_BYTES + 4) == hash && equals(id, bytes, 0, firstBytes, bytes, firstBytes,
+                    lastBytes)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Assign the next id to new names, copying the names
+     */
+    private int newId(int hash, byte[] bytes, int firstBytes, int lastBytes) {
+
+        // grow the entries, and the names
+        if ((size + 1) * (long)ENTRY_BYTES > entries.capacity()) {
+            entries = resize(ENTRIES_FILE, entries, grow(entries.capacity(), (size + 1) * (long)ENTRY_BYTES), true);
+        }
+        int length = firstBytes + lastBytes;
+        if (namesLength + (long)length > names.capacity()) {
+            names = resize(NAMES_FILE, names, grow(names.capacity(), namesLength + (long)length), true);
+        }
+        for (int i = 0; i < length; i++) {
+            names.put(namesLength + i, bytes[i]);
+        }
+
+        int id = size++;
+        int entry = id * ENTRY_BYTES;
+        entries.putInt(entry + NAMES_OFFSET, namesLength);
+        entries.putInt(entry + FIRST_LENGTH, firstBytes);
+        entries.putInt(entry + LAST_LENGTH, lastBytes);
+        entries.putInt(entry + COUNT, 0);
+        entries.putInt(entry + HASH, hash);
+        namesLength += length;
+        return id;
+    }
+
+    /**
+     * Return true if the id's names match UTF-8 names held in buffers
+     */
+    private boolean equals(int id, byte[] first, int firstOffset, int firstLength,
+                           byte[] last, int lastOffset, int lastLength) {
+        int entry = id * ENTRY_BYTES;
+        if (entries.getInt(entry + FIRST_LENGTH) != firstLength || entries.getInt(entry + LAST_LENGTH) != lastLength) {
+            return false;
+        }
+        int offset = entries.getInt(entry + NAMES_OFFSET);
+        for (int i = 0; i < firstLength; i++) {
+            if (names.get(offset + i) != first[firstOffset + i]) {
+                return false;
+            }
+        }
+        offset += firstLength;
+        for (int i = 0; i < lastLength; i++) {
+            if (names.get(offset + i) != last[lastOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rebuild the table of ids at a new size, from the hashes kept in the entries
+     */
+    private void rehash(int newTableSize) {
+        slots = resize(SLOTS_FILE, slots, (long)newTableSize * SLOT_BYTES, false);
+        tableSize = newTableSize;
+        int mask = tableSize - 1;
+        for (int id = 0; id < size; id++) {
+            int hash = entries.getInt(id * ENTRY_BYTES + HASH);
+            int slot = hash & mask;
+            while (slots.getInt(slot * SLOT_BYTES) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots.putInt(slot * SLOT_BYTES, id + 1);
+            slots.putInt(slot * SLOT_BYTES + 4, hash);
+        }
+    }
+
+    /**
+     * Allocate the buffers, with room for some authors
+     */
+    private void allocate(int expectedAuthors) {
+        int capacity = Math.max(16, expectedAuthors);
+        tableSize = Math.max(16, Integer.highestOneBit((int)(capacity / LOAD_FACTOR) - 1) << 1);
+        slots = resize(SLOTS_FILE, null, (long)tableSize * SLOT_BYTES, false);
+        entries = resize(ENTRIES_FILE, null, (long)capacity * ENTRY_BYTES, false);
+        names = resize(NAMES_FILE, null, (long)capacity * NAME_BYTES_PER_AUTHOR, false);
+    }
+
+    /**
+     * Return a buffer of a new size: a new direct buffer, or more of the file mapped
+     * @param file file name, if the buffers are mapped
+     * @param buffer current buffer, null if there is none yet
+     * @param bytes new size
+     * @param keep true to keep the buffer's contents, false for a buffer of zeros
+     * @return buffer
+     * @throws IllegalStateException if the buffer would reach 2GB
+     * @throws UncheckedIOException if the file cannot be mapped
+     */
+    private ByteBuffer resize(String file, ByteBuffer buffer, long bytes, boolean keep) {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException(String.format("off-heap table full: %d authors", size));
+        }
+        if (directory == null) {
+            ByteBuffer resized = ByteBuffer.allocateDirect((int)bytes);
+            if (keep && buffer != null) {
+                ByteBuffer contents = buffer.duplicate();
+                contents.clear();
+                resized.put(contents);
+                resized.clear();
+            }
+            return resized;
+        }
+
+        // mapping past the end of the file grows it, with zeros
+        try (FileChannel channel = FileChannel.open(directory.resolve(file),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer resized = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            if (!keep && buffer != null) {
+                for (int i = 0; i < buffer.capacity(); i += 8) {
+                    resized.putLong(i, 0L);
+                }
+            }
+            return resized;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(String.format("cannot map %s", directory.resolve(file)), ex);
+        }
+    }
+
+    /**
+     * Return a buffer size, doubled until it holds what we need, but under 2GB if what we need is
+     */
+    private static long grow(int capacity, long needed) {
+        long grown = Math.max((long)capacity * 2, needed);
+        return needed <= Integer.MAX_VALUE ? Math.min(grown, Integer.MAX_VALUE) : grown;
+    }
+
+    /**
+     * Encode chars as UTF-8 into the reused buffer, the same as String.getBytes would
+     * @param chars buffer holding the name
+     * @param offset where the name starts
+     * @param length name length
+     * @param at where the encoded name starts
+     * @return where the encoded name ends
+     */
+    private int encode(char[] chars, int offset, int length, int at) {
+        if (encoded.length < at + length * 3) {
+            byte[] grown = new byte[(at + length * 3) * 2];
+            System.arraycopy(encoded, 0, grown, 0, at);
+            encoded = grown;
+        }
+        int end = at;
+        for (int i = offset; i < offset + length; i++) {
+            char c = chars[i];
+            if (c < 0x80) {
+                encoded[end++] = (byte)c;
+            } else if (c < 0x800) {
+                encoded[end++] = (byte)(0xc0 | (c >> 6));
+                encoded[end++] = (byte)(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < offset + length &&
+                    Character.isLowSurrogate(chars[i + 1])) {
+                int codePoint = Character.toCodePoint(c, chars[++i]);
+                encoded[end++] = (byte)(0xf0 | (codePoint >> 18));
+                encoded[end++] = (byte)(0x80 | ((codePoint >> 12) & 0x3f));
+                encoded[end++] = (byte)(0x80 | ((codePoint >> 6) & 0x3f));
+                encoded[end++] = (byte)(0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+
+                // a surrogate without its pair can't be encoded, String.getBytes writes '?' instead
+                encoded[end++] = '?';
+            } else {
+                encoded[end++] = (byte)(0xe0 | (c >> 12));
+                encoded[end++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+                encoded[end++] = (byte)(0x80 | (c & 0x3f));
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Decode UTF-8 names
+     */
+    private String string(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = names.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Return a name's UTF-8 bytes, no bytes if there is no name
+     */
+    private static byte[] bytes(String name) {
+        return name == null ? new byte[0] : name.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,564 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Command-line options for NihPubmed.
+ * Options come first, in the form --name value, followed by the single input argument.
+ * The input argument may be left out if an existing index is given with --index, checkpoints with --snapshot,
+ * or a graph with --graph, or if counts are served with --serve.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+class Options {
+
+    // reports that can be built in a single pass with --report
+    static final List<String> REPORTS = Collections.unmodifiableList(
+            Arrays.asList("authors", "journals", "years", "distinct", "history", "facets"));
+
+    /**
+     * Parse the command-line arguments
+     * @param args command-line arguments
+     * @return parsed options
+     * @throws IllegalArgumentException if the arguments are not valid
+     */
+    static Options parse(String[] args) {
+
+        Options options = new Options();
+        int i = 0;
+        while (i < args.length && args[i].startsWith("--")) {
+
+            // every option takes a value
+            String name = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException(String.format("missing value for %s", name));
+            }
+            String value = args[i + 1];
+            i += 2;
+
+            switch (name) {
+                case "--threads":
+                    options.threads = parsePositive(name, value);
+                    break;
+                case "--engine":
+                    options.engine = PubMedEngine.of(value);
+                    break;
+                case "--watchlist":
+                    options.watchlist = Optional.of(value);
+                    break;
+                case "--index":
+                    options.index = Optional.of(value);
+                    break;
+                case "--snapshot":
+                    options.snapshot = Optional.of(value);
+                    break;
+                case "--top":
+                    options.top = parsePositive(name, value);
+                    break;
+                case "--top-capacity":
+                    options.topCapacity = parsePositive(name, value);
+                    break;
+                case "--exact":
+                    options.exact = parseBoolean(name, value);
+                    break;
+                case "--distinct":
+                    options.distinct = parseBoolean(name, value);
+                    break;
+                case "--graph":
+                    options.graph = Optional.of(value);
+                    break;
+                case "--max-authors":
+                    options.maxAuthors = parsePositive(name, value);
+                    break;
+                case "--variants":
+                    options.variants = parseBoolean(name, value);
+                    break;
+                case "--report":
+                    options.reports = parseReports(name, value);
+                    break;
+                case "--serve":
+                    options.serve = parsePositive(name, value);
+                    break;
+                case "--off-heap":
+                    options.offHeap = parseBoolean(name, value);
+                    break;
+                case "--spill":
+                    options.spill = Optional.of(value);
+                    break;
+                case "--spill-authors":
+                    options.spillAuthors = parsePositive(name, value);
+                    break;
+                case "--years":
+                    options.years = parseYears(name, value);
+                    break;
+                case "--facets":
+                    options.facets = parseFacets(name, value);
+                    break;
+                case "--facet-min":
+                    options.facetMin = parsePositive(name, value);
+                    break;
+                case "--facet-export":
+                    options.facetExport = Optional.of(value);
+                    break;
+                case "--progress":
+                    options.progress = parsePositive(name, value);
+                    break;
+                case "--jmx":
+                    options.jmx = parseBoolean(name, value);
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format("unknown option %s", name));
+            }
+        }
+
+        // counts come from the input, an index, or a snapshot, not more than one
+        if (options.index.isPresent() && options.snapshot.isPresent()) {
+            throw new IllegalArgumentException("--index and --snapshot can't be used together");
+        }
+        if (options.top > 0 && (options.index.isPresent() || options.snapshot.isPresent())) {
+            throw new IllegalArgumentException("--top can't be used with --index or --snapshot");
+        }
+        if (options.distinct && (options.top > 0 || options.index.isPresent() || options.snapshot.isPresent())) {
+            throw new IllegalArgumentException("--distinct can't be used with --top, --index or --snapshot");
+        }
+        if (options.graph.isPresent() && (options.distinct || options.top > 0 || options.index.isPresent() ||
+                options.snapshot.isPresent())) {
+            throw new IllegalArgumentException("--graph can't be used with --distinct, --top, --index or --snapshot");
+        }
+        if (options.variants && (options.distinct || options.top > 0 || options.index.isPresent() ||
+                options.snapshot.isPresent() || options.graph.isPresent())) {
+            throw new IllegalArgumentException(
+                    "--variants can't be used with --distinct, --top, --index, --snapshot or --graph");
+        }
+        if (!options.reports.isEmpty() && (options.distinct || options.top > 0 || options.index.isPresent() ||
+                options.snapshot.isPresent() || options.graph.isPresent())) {
+            throw new IllegalArgumentException(
+                    "--report can't be used with --distinct, --top, --index, --snapshot or --graph");
+        }
+        if (options.years != null && !options.reports.contains("history")) {
+            throw new IllegalArgumentException("--years needs --report history");
+        }
+        if ((options.facets != null || options.facetMin > 1 || options.facetExport.isPresent()) &&
+                !options.reports.contains("facets")) {
+            throw new IllegalArgumentException("--facets, --facet-min and --facet-export need --report facets");
+        }
+        if (!options.reports.isEmpty() && options.engine == PubMedEngine.SCAN) {
+            throw new IllegalArgumentException("--report needs the sax or stax engine");
+        }
+        if (options.serve > 0 && (options.distinct || options.top > 0 || options.index.isPresent() ||
+                options.snapshot.isPresent() || options.graph.isPresent() || !options.reports.isEmpty() ||
+                options.variants)) {
+            throw new IllegalArgumentException("--serve can't be used with --distinct, --top, --index, --snapshot, " +
+                    "--graph, --report or --variants");
+        }
+        if (options.spill.isPresent() && (options.distinct || options.top > 0 || options.index.isPresent() ||
+                options.snapshot.isPresent() || options.graph.isPresent() || !options.reports.isEmpty() ||
+                options.variants || options.serve > 0)) {
+            throw new IllegalArgumentException("--spill can't be used with --distinct, --top, --index, --snapshot, " +
+                    "--graph, --report, --variants or --serve");
+        }
+        if (options.spillAuthors != SpillingAuthorCounts.DEFAULT_MAX_AUTHORS && !options.spill.isPresent()) {
+            throw new IllegalArgumentException("--spill-authors needs --spill");
+        }
+        if (options.offHeap && options.serve == 0) {
+            throw new IllegalArgumentException("--off-heap needs --serve");
+        }
+        if (options.distinct && options.engine == PubMedEngine.SCAN) {
+            throw new IllegalArgumentException("--distinct needs the sax or stax engine");
+        }
+        if (options.graph.isPresent() && options.engine == PubMedEngine.SCAN) {
+            throw new IllegalArgumentException("--graph needs the sax or stax engine");
+        }
+
+        // an existing index, snapshot or graph can be used without an input argument, and a server can start empty
+        if (i == args.length && (options.index.isPresent() || options.snapshot.isPresent() ||
+                options.graph.isPresent() || options.serve > 0)) {
+            return options;
+        }
+
+        // otherwise exactly one input argument follows the options
+        if (i != args.length - 1) {
+            throw new IllegalArgumentException("expected a single file, directory or glob");
+        }
+        options.input = args[i];
+        return options;
+    }
+
+    // file, directory or glob to parse, null if we only use an existing index, snapshot or graph
+    private String input;
+
+    // maximum number of files to parse at the same time
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    // parse engine
+    private PubMedEngine engine = PubMedEngine.SAX;
+
+    // file of authors to count, instead of the built-in authors
+    private Optional<String> watchlist = Optional.empty();
+
+    // index directory, built from the input if there is one
+    private Optional<String> index = Optional.empty();
+
+    // snapshot checkpoint directory, the input is applied to the latest checkpoint if there is one
+    private Optional<String> snapshot = Optional.empty();
+
+    // number of most listed authors to find, zero to count the authors of interest instead
+    private int top;
+
+    // number of counters to find them with, zero for ten per author wanted
+    private int topCapacity;
+
+    // whether to count the most listed authors exactly, in a second pass
+    private boolean exact;
+
+    // whether to estimate the number of distinct authors, instead of counting authors
+    private boolean distinct;
+
+    // co-author graph file, built from the input if there is one
+    private Optional<String> graph = Optional.empty();
+
+    // articles with more authors than this add no co-author edges
+    private int maxAuthors = CoauthorGraphBuilder.DEFAULT_MAX_AUTHORS;
+
+    // whether to count the authors of interest under variants of their names as well
+    private boolean variants;
+
+    // reports to build in a single pass, empty to count the authors of interest as usual
+    private List<String> reports = Collections.emptyList();
+
+    // port to serve counts on, zero to count once and exit
+    private int serve;
+
+    // whether served counts are kept off the heap
+    private boolean offHeap;
+
+    // directory to spill counts to, when every author is counted in fixed memory
+    private Optional<String> spill = Optional.empty();
+
+    // authors each thread holds in memory before spilling
+    private int spillAuthors = SpillingAuthorCounts.DEFAULT_MAX_AUTHORS;
+
+    // earliest and latest year the history report counts, null to show every year
+    private int[] years;
+
+    // facets the facets report shows and exports, null for every facet
+    private List<FacetCounts.Facet> facets;
+
+    // least count the facets report shows and exports
+    private int facetMin = 1;
+
+    // file the facets report exports its cells to
+    private Optional<String> facetExport = Optional.empty();
+
+    // seconds between progress lines, zero for none
+    private int progress;
+
+    // whether metrics are published over JMX
+    private boolean jmx;
+
+    /**
+     * Get the file, directory or glob to parse
+     * @return input argument, null if there is none
+     */
+    String getInput() {
+        return input;
+    }
+
+    /**
+     * Return true if there is an input argument
+     * @return true if there is input to parse
+     */
+    boolean hasInput() {
+        return input != null;
+    }
+
+    /**
+     * Get the maximum number of worker threads
+     * @return thread count
+     */
+    int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Get the parse engine
+     * @return engine
+     */
+    PubMedEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Get the watchlist file, if there is one
+     * @return watchlist file
+     */
+    Optional<String> getWatchlist() {
+        return watchlist;
+    }
+
+    /**
+     * Get the index directory, if there is one
+     * @return index directory
+     */
+    Optional<String> getIndex() {
+        return index;
+    }
+
+    /**
+     * Get the snapshot checkpoint directory, if there is one
+     * @return checkpoint directory
+     */
+    Optional<String> getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Get the number of most listed authors to find
+     * @return number of authors, zero to count the authors of interest instead
+     */
+    int getTop() {
+        return top;
+    }
+
+    /**
+     * Get the number of counters to find the most listed authors with
+     * @return number of counters
+     */
+    int getTopCapacity() {
+        return topCapacity > 0 ? topCapacity : top * 10;
+    }
+
+    /**
+     * Return true if the most listed authors are to be counted exactly, in a second pass
+     * @return true for a second pass
+     */
+    boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Return true if the number of distinct authors is to be estimated, instead of counting authors
+     * @return true to estimate distinct authors
+     */
+    boolean isDistinct() {
+        return distinct;
+    }
+
+    /**
+     * Get the co-author graph file, if there is one
+     * @return graph file
+     */
+    Optional<String> getGraph() {
+        return graph;
+    }
+
+    /**
+     * Get the most authors an article can have and still add co-author edges
+     * @return most authors
+     */
+    int getMaxAuthors() {
+        return maxAuthors;
+    }
+
+    /**
+     * Return true if the authors of interest are to be counted under variants of their names as well
+     * @return true to match name variants
+     */
+    boolean isVariants() {
+        return variants;
+    }
+
+    /**
+     * Get the reports to build in a single pass
+     * @return reports, in the order given, empty if there are none
+     */
+    List<String> getReports() {
+        return reports;
+    }
+
+    /**
+     * Get the port to serve counts on
+     * @return port, zero to count once and exit
+     */
+    int getServe() {
+        return serve;
+    }
+
+    /**
+     * Return true if served counts are to be kept off the heap
+     * @return true for off-heap counts
+     */
+    boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Get the directory to spill counts to
+     * @return directory, empty to count in memory as usual
+     */
+    Optional<String> getSpill() {
+        return spill;
+    }
+
+    /**
+     * Get the number of authors each thread holds in memory before spilling
+     * @return authors
+     */
+    int getSpillAuthors() {
+        return spillAuthors;
+    }
+
+    /**
+     * Get the range of years the history report counts
+     * @return earliest and latest year, inclusive, empty to show every year
+     */
+    Optional<int[]> getYears() {
+        return Optional.ofNullable(years);
+    }
+
+    /**
+     * Get the facets the facets report shows and exports
+     * @return facets, in the order given, every facet by default
+     */
+    List<FacetCounts.Facet> getFacets() {
+        return facets == null ? Arrays.asList(FacetCounts.Facet.values()) : facets;
+    }
+
+    /**
+     * Get the least count the facets report shows and exports
+     * @return least count, one by default
+     */
+    int getFacetMin() {
+        return facetMin;
+    }
+
+    /**
+     * Get the file the facets report exports its cells to
+     * @return file, empty to not export
+     */
+    Optional<String> getFacetExport() {
+        return facetExport;
+    }
+
+    /**
+     * Get the number of seconds between progress lines
+     * @return seconds, zero for no progress lines
+     */
+    int getProgress() {
+        return progress;
+    }
+
+    /**
+     * Return true if metrics are to be published over JMX
+     * @return true to register the metrics MBean
+     */
+    boolean isJmx() {
+        return jmx;
+    }
+
+    /**
+     * Return true if metrics are to be kept, for progress lines or JMX
+     * @return true to start metrics
+     */
+    boolean isMetrics() {
+        return progress > 0 || jmx;
+    }
+
+    /**
+     * Parse a positive integer option value
+     * @param name option name
+     * @param value option value
+     * @return positive integer
+     */
+    private static int parsePositive(String name, String value) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException ex) {
+            // fall through
+        }
+        throw new IllegalArgumentException(String.format("%s expects a positive number: %s", name, value));
+    }
+
+    /**
+     * Parse a true or false option value
+     * @param name option name
+     * @param value option value
+     * @return true or false
+     */
+    private static boolean parseBoolean(String name, String value) {
+        switch (value) {
+            case "true":
+                return true;
+            case "false":
+                return false;
+            default:
+                throw new IllegalArgumentException(String.format("%s expects true or false: %s", name, value));
+        }
+    }
+
+    /**
+     * Parse a comma-separated list of reports
+     * @param name option name
+     * @param value option value
+     * @return reports, in the order given
+     */
+    private static List<String> parseReports(String name, String value) {
+        List<String> reports = Arrays.asList(value.split(","));
+        for (String report : reports) {
+            if (!REPORTS.contains(report)) {
+                throw new IllegalArgumentException(String.format("%s expects some of %s: %s",
+                        name, String.join(",", REPORTS), report));
+            }
+        }
+        return Collections.unmodifiableList(reports);
+    }
+
+    /**
+     * Parse a comma-separated list of facets
+     * @param name option name
+     * @param value option value, such as journal,mesh
+     * @return facets, in the order given
+     */
+    private static List<FacetCounts.Facet> parseFacets(String name, String value) {
+        List<FacetCounts.Facet> facets = new ArrayList<>();
+        for (String facet : value.split(",")) {
+            try {
+                facets.add(FacetCounts.Facet.of(facet));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException(String.format("%s expects some of journal,mesh,type: %s",
+                        name, facet));
+            }
+        }
+        return Collections.unmodifiableList(facets);
+    }
+
+    /**
+     * Parse a year, or a range of years
+     * @param name option name
+     * @param value option value, such as 2012 or 2010-2016
+     * @return earliest and latest year, inclusive
+     */
+    private static int[] parseYears(String name, String value) {
+        String[] parts = value.split("-", 2);
+        try {
+            int from = Integer.parseInt(parts[0]);
+            int to = parts.length > 1 ? Integer.parseInt(parts[1]) : from;
+            if (from >= 0 && from <= to) {
+                return new int[] { from, to };
+            }
+        } catch (NumberFormatException ex) {
+            // fall through
+        }
+        throw new IllegalArgumentException(String.format("%s expects a year or a range of years: %s", name, value));
+    }
+
+    // use parse
+    private Options() {}
+}
@@ -0,0 +1,365 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The element paths a handler extracts, such as PubmedArticle/MedlineCitation/PMID, compiled into a table-driven
+ * state machine.
+ *
+ * Each path is declared with a field - a small int the handler chooses - and is either structural, reported as it
+ * starts and ends, or text, whose character data is collected as well.  Several paths may share a field.  The
+ * paths are compiled once into a trie: each state is a path prefix, element names are interned as ids, and a
+ * transition is a lookup in an array of states by element id.  Adding a field is adding a path, and a handler
+ * extracting many fields costs about the same per event as one extracting one.
+ *
+ * A path's first element matches wherever it starts outside every other path - at the root of a document, or
+ * inside elements no path names.  Every later element must be a child of the one before it.  Inside a path,
+ * anything no path continues into is of no use, so the automaton skips its subtree.  Outside every path it
+ * can't tell, unless it is told which subtrees never hold the start of a path.
+ *
+ * The automaton is immutable and shared.  Each handler follows its position in a document with a Cursor of its
+ * own, which also collects the text of each text field, in a buffer per field.  A field's text is cleared when its
+ * path starts, and when any path it lies inside that has a field of its own starts - so the names of an author are
+ * cleared as each author starts, whether or not the author has them.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+class PathAutomaton {
+
+    // the state outside every path
+    private static final int ROOT = 0;
+
+    /**
+     * Return a builder, to declare paths with
+     * @return new builder
+     */
+    static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Declares paths, and compiles them into an automaton.
+     * A builder can go on declaring paths after building, and build again, so automatons that extract more
+     * fields than others can share the declarations of those they have in common.
+     */
+    static final class Builder {
+
+        // interned element names, every path prefix in the order declared, the field of each declared path,
+        // the paths that collect text, and subtrees to skip
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> paths = new ArrayList<>();
+        private final Map<String, Integer> fields = new HashMap<>();
+        private final Set<String> texts = new HashSet<>();
+        private final Set<String> skipped = new HashSet<>();
+
+        // use PathAutomaton.builder
+        //
+        private Builder() {
+        }
+
+        /**
+         * Declare a structural path, reported as it starts and ends
+         * @param field field reported for the path, zero or more
+         * @param path element names separated by slashes, such as PubmedArticle/MedlineCitation/Article
+         * @return this builder
+         * @throws IllegalArgumentException if the field is negative, the path is empty or was declared before
+         */
+        Builder path(int field, String path) {
+            if (field < 0) {
+                throw new IllegalArgumentException(String.format("negative field for %s", path));
+            }
+            String[] names = path.split("/");
+            if (path.isEmpty() || Arrays.asList(names).contains("") || fields.containsKey(path)) {
+                throw new IllegalArgumentException(String.format("empty or repeated path %s", path));
+            }
+            StringBuilder prefix = new StringBuilder();
+            for (String name : names) {
+                ids.putIfAbsent(name, ids.size());
+                prefix.append(prefix.length() == 0 ? "" : "/").append(name);
+                if (!paths.contains(prefix.toString())) {
+                    paths.add(prefix.toString());
+                }
+            }
+            fields.put(path, field);
+            return this;
+        }
+
+        /**
+         * Declare a text path, reported as it starts and ends, whose character data is collected
+         * @param field field reported for the path, and whose text is collected, zero or more
+         * @param path element names separated by slashes, such as PubmedArticle/MedlineCitation/PMID
+         * @return this builder
+         * @throws IllegalArgumentException if the field is negative, the path is empty or was declared before
+         */
+        Builder text(int field, String path) {
+            path(field, path);
+            texts.add(path);
+            return this;
+        }
+
+        /**
+         * Declare elements whose subtrees, outside every path, never hold the start of a path.
+         * Elements that start a path are never skipped.
+         * @param elements element names
+         * @return this builder
+         */
+        Builder skipping(Collection<String> elements) {
+            skipped.addAll(elements);
+            return this;
+        }
+
+        /**
+         * Compile the paths declared so far
+         * @return new automaton
+         */
+        PathAutomaton build() {
+            return new PathAutomaton(this);
+        }
+    }
+
+    // interned element names, and the number of them
+    private final Map<String, Integer> ids;
+    private final int width;
+
+    // the path of each state, its parent, and the state an element id leads to from it, at state * width + id
+    private final String[] names;
+    private final int[] parents;
+    private final int[] transitions;
+
+    // each state's field, and text field, -1 if it has none
+    private final int[] fields;
+    private final int[] textFields;
+
+    // text fields each state with a field clears as it starts
+    private final int[][] clears;
+
+    // number of fields, one more than the largest
+    private final int fieldCount;
+
+    // subtrees outside every path that are of no use
+    private final Set<String> skipped;
+
+    // compile a builder's paths
+    //
+    private PathAutomaton(Builder builder) {
+        ids = Collections.unmodifiableMap(new HashMap<>(builder.ids));
+        width = ids.size();
+
+        // a state per prefix, parents before their children, the root first
+        int states = builder.paths.size() + 1;
+        names = new String[states];
+        parents = new int[states];
+        transitions = new int[states * width];
+        fields = new int[states];
+        textFields = new int[states];
+        Arrays.fill(transitions, -1);
+        Arrays.fill(fields, -1);
+        Arrays.fill(textFields, -1);
+        names[ROOT] = "/";
+        Map<String, Integer> statesByPath = new HashMap<>();
+        int largest = -1;
+        for (int state = 1; state < states; state++) {
+            String path = builder.paths.get(state - 1);
+            int slash = path.lastIndexOf('/');
+            names[state] = path;
+            parents[state] = slash < 0 ? ROOT : statesByPath.get(path.substring(0, slash));
+            transitions[parents[state] * width + ids.get(path.substring(slash + 1))] = state;
+            statesByPath.put(path, state);
+            Integer field = builder.fields.get(path);
+            if (field != null) {
+                fields[state] = field;
+                textFields[state] = builder.texts.contains(path) ? field : -1;
+                largest = Math.max(largest, field);
+            }
+        }
+        fieldCount = largest + 1;
+
+        // a state with a field clears the text fields at and below it
+        clears = new int[states][];
+        for (int state = 1; state < states; state++) {
+            Set<Integer> cleared = new HashSet<>();
+            if (fields[state] >= 0) {
+                for (int below = state; below < states; below++) {
+                    if (textFields[below] >= 0 && isWithin(below, state)) {
+                        cleared.add(textFields[below]);
+                    }
+                }
+            }
+            clears[state] = cleared.stream().mapToInt(Integer::intValue).sorted().toArray();
+        }
+
+        // nothing that starts a path is skipped
+        Set<String> skipped = new HashSet<>(builder.skipped);
+        for (int state = 1; state < states; state++) {
+            if (parents[state] == ROOT) {
+                skipped.remove(names[state]);
+            }
+        }
+        this.skipped = Collections.unmodifiableSet(skipped);
+    }
+
+    /**
+     * Return a new cursor, at the root of a document
+     * @return new cursor
+     */
+    Cursor newCursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Return the path of each state, the root's first
+     * @return paths, indexed by state, "/" for the root
+     */
+    String[] getStateNames() {
+        return names.clone();
+    }
+
+    /**
+     * Return the number of fields, one more than the largest field declared
+     * @return number of fields
+     */
+    int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Return true if a state lies at or below another
+     * @param state state
+     * @param ancestor possible ancestor
+     * @return true if it does
+     */
+    private boolean isWithin(int state, int ancestor) {
+        for (int at = state; at != ROOT; at = parents[at]) {
+            if (at == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Follows one handler's position in a document, reporting the fields that start and end, and collecting the
+     * text of text fields.  A cursor is not thread-safe.
+     */
+    final class Cursor {
+
+        // the state we are in, and how deep we are in elements it has no transition for
+        private int state = ROOT;
+        private int depth;
+
+        // text of each text field, indexed by field
+        private final NameBuffer[] texts = new NameBuffer[fieldCount];
+
+        // use PathAutomaton.newCursor
+        //
+        private Cursor() {
+            for (int field = 0; field < fieldCount; field++) {
+                texts[field] = new NameBuffer();
+            }
+        }
+
+        /**
+         * Go back to the root, as a new document starts
+         */
+        void reset() {
+            state = ROOT;
+            depth = 0;
+        }
+
+        /**
+         * Follow an element as it starts
+         * @param element qualified name of the element
+         * @return field of the path that started, or -1 if none did
+         */
+        int start(String element) {
+            if (depth > 0) {
+                depth++;
+                return -1;
+            }
+            Integer id = ids.get(element);
+            int next = id == null ? -1 : transitions[state * width + id];
+            if (next < 0) {
+                if (state != ROOT) {
+                    depth++;
+                }
+                return -1;
+            }
+            state = next;
+            for (int field : clears[next]) {
+                texts[field].clear();
+            }
+            return fields[next];
+        }
+
+        /**
+         * Follow an element as it ends
+         * @return field of the path that ended, or -1 if none did
+         */
+        int end() {
+            if (depth > 0) {
+                depth--;
+                return -1;
+            }
+            if (state == ROOT) {
+                return -1;
+            }
+            int field = fields[state];
+            state = parents[state];
+            return field;
+        }
+
+        /**
+         * Collect character data, if we are in a text field - including any elements inside it
+         * @param chars character data
+         * @param start where our data starts
+         * @param length length of our data
+         */
+        void characters(char[] chars, int start, int length) {
+            int field = textFields[state];
+            if (field >= 0) {
+                texts[field].append(chars, start, length);
+            }
+        }
+
+        /**
+         * Return true if the element that is starting, and everything inside it, is of no use
+         * @param element qualified name of the element
+         * @return true if the whole subtree can be skipped
+         */
+        boolean skipsSubtree(String element) {
+            if (state == ROOT) {
+                return skipped.contains(element);
+            }
+            if (depth > 0) {
+                return textFields[state] < 0;
+            }
+            Integer id = ids.get(element);
+            return textFields[state] < 0 && (id == null || transitions[state * width + id] < 0);
+        }
+
+        /**
+         * Return the text collected for a text field since it, or a path it lies inside, last started
+         * @param field text field
+         * @return text, in a buffer reused for the field
+         */
+        NameBuffer getText(int field) {
+            return texts[field];
+        }
+
+        /**
+         * Return the state we are in
+         * @return state, an index into getStateNames()
+         */
+        int getState() {
+            return state;
+        }
+    }
+}
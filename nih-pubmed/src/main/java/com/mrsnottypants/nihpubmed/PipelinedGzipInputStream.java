@@ -0,0 +1,217 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decompresses a gzip stream on a background thread, so inflating and parsing overlap.
+ *
+ * The inflater thread fills fixed-size blocks and hands them to the reader through a bounded queue.
+ * When every block is full and waiting to be read the inflater blocks, so it never runs more than a few blocks
+ * ahead of the reader.  Blocks are handed back once read and reused, so steady state allocates nothing.
+ * If inflating fails, the reader sees the exception once it has read every block inflated before the failure.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class PipelinedGzipInputStream extends InputStream {
+
+    // size of each block of inflated bytes
+    private static final int BLOCK_SIZE = 256 * 1024;
+
+    // number of blocks, so how far the inflater may run ahead of the reader
+    private static final int BLOCKS = 8;
+
+    // size of the buffer the gzip stream reads compressed bytes into
+    private static final int COMPRESSED_BUFFER_SIZE = 64 * 1024;
+
+    // a block of inflated bytes
+    //
+    private static final class Block {
+        private final byte[] bytes;
+        private int length;
+
+        private Block(int size) {
+            bytes = new byte[size];
+        }
+    }
+
+    // marks the end of the inflated stream
+    private static final Block END = new Block(0);
+
+    // blocks waiting to be read, and blocks waiting to be filled
+    private final BlockingQueue<Block> full;
+    private final BlockingQueue<Block> free;
+
+    // background thread inflating into free blocks
+    private final Thread inflater;
+
+    // set if the inflater failed
+    private volatile IOException failure;
+
+    // set once the reader closes the stream
+    private volatile boolean closed;
+
+    // block being read, and our position in it
+    private Block current;
+    private int position;
+
+    // set once the reader has seen the end
+    private boolean ended;
+
+    /**
+     * Construct a stream that inflates the compressed stream on a background thread.
+     * The compressed stream is closed when inflating ends, or when this stream is closed.
+     * @param compressed gzip-compressed stream
+     * @throws IOException if the stream does not start with a gzip header
+     */
+    public PipelinedGzipInputStream(InputStream compressed) throws IOException {
+        this(compressed, BLOCK_SIZE, BLOCKS);
+    }
+
+    /**
+     * Construct a stream that inflates the compressed stream on a background thread
+     * @param compressed gzip-compressed stream
+     * @param blockSize size of each block of inflated bytes
+     * @param blocks number of blocks
+     * @throws IOException if the stream does not start with a gzip header
+     */
+    PipelinedGzipInputStream(InputStream compressed, int blockSize, int blocks) throws IOException {
+
+        // read the header now, so a stream that isn't gzip fails here rather than on the first read
+        GZIPInputStream gzip;
+        try {
+            gzip = new GZIPInputStream(compressed, COMPRESSED_BUFFER_SIZE);
+        } catch (IOException ex) {
+            compressed.close();
+            throw ex;
+        }
+
+        // room for every block plus the end marker, so the inflater never blocks putting the end marker
+        full = new ArrayBlockingQueue<>(blocks + 1);
+        free = new ArrayBlockingQueue<>(blocks);
+        for (int i = 0; i < blocks; i++) {
+            free.add(new Block(blockSize));
+        }
+
+        inflater = new Thread(() -> inflate(gzip), "gzip-inflater");
+        inflater.setDaemon(true);
+        inflater.start();
+    }
+
+    /**
+     * Inflate into free blocks until the end of the stream, a failure, or the reader closes the stream.
+     * Runs on the inflater thread.
+     * @param gzip stream to inflate
+     */
+    private void inflate(GZIPInputStream gzip) {
+        try (InputStream inputStream = gzip) {
+            while (!closed) {
+
+                // fill a free block, waiting for the reader to hand one back if there are none
+                Block block = free.take();
+                block.length = 0;
+                int read = 0;
+                while (block.length < block.bytes.length &&
+                        (read = inputStream.read(block.bytes, block.length, block.bytes.length - block.length)) > 0) {
+                    block.length += read;
+                }
+                if (block.length > 0) {
+                    full.put(block);
+                }
+                if (read < 0) {
+                    break;
+                }
+            }
+        } catch (IOException ex) {
+            failure = ex;
+        } catch (InterruptedException ex) {
+            // the reader closed the stream
+        } finally {
+            full.offer(END);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock()) {
+            return -1;
+        }
+        return current.bytes[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextBlock()) {
+            return -1;
+        }
+        int read = Math.min(length, current.length - position);
+        System.arraycopy(current.bytes, position, bytes, offset, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length - position;
+    }
+
+    /**
+     * Make sure we have a block with bytes left to read, handing back the block we finished
+     * @return false at the end of the stream
+     * @throws IOException if the stream is closed, inflating failed, or we are interrupted
+     */
+    private boolean nextBlock() throws IOException {
+
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+        if (current != null && position < current.length) {
+            return true;
+        }
+        if (ended) {
+            return false;
+        }
+
+        // hand back the block we finished, then wait for the next one
+        if (current != null) {
+            free.add(current);
+            current = null;
+        }
+        Block next;
+        try {
+            next = full.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for the inflater");
+        }
+
+        if (next == END) {
+            ended = true;
+            if (failure != null) {
+                throw new IOException("cannot inflate", failure);
+            }
+            return false;
+        }
+        current = next;
+        position = 0;
+        return true;
+    }
+
+    /**
+     * Close the stream, stopping the inflater and closing the compressed stream
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            inflater.interrupt();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.nio.file.Path;
+
+/**
+ * A report built from the records of a single parse, one of any number a PubMedPipeline passes each record to.
+ *
+ * Files, and chunks of files, are parsed on several threads, each into aggregators of its own, and the
+ * aggregators of each thread are then merged into one.  So an aggregator holds only what it was given, and
+ * merging two of them must give the same result as one given everything both were.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public interface PubMedAggregator extends PubMedRecordListener {
+
+    /**
+     * Called before the records of a file, or a chunk of a file, for aggregators that report per file
+     * @param file file the records that follow come from
+     */
+    default void startFile(Path file) {}
+
+    /**
+     * Add the results of another aggregator, of the same kind, to ours
+     * @param other aggregator to add
+     * @throws IllegalArgumentException if the other aggregator is a different kind
+     */
+    void merge(PubMedAggregator other);
+}
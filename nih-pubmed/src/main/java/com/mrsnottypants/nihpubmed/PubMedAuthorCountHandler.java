@@ -0,0 +1,214 @@
+package com.mrsnottypants.nihpubmed;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.*;
+
+/**
+ * This handler counts how often each author is referenced in an article's author list.
+ * Authors outside an article's author list (if there are any) are ignored.
+ *
+ * The names we want are declared as element paths, from the Article down, compiled once into a PathAutomaton.
+ * The automaton follows where we are in the document, and collects each author's first and last names in buffers
+ * of its own.  When we see the 'Author' element end, we increment the count for the collected author.
+ * Initials are collected too, for counts that match authors known only by their initials.
+ * In steady state nothing is allocated per event: element names are looked up without allocating,
+ * transitions are array lookups, and names are collected in reusable buffers.
+ * The counts themselves are kept by an AuthorCounts - every author by default, or only those on a watchlist.
+ * Events per state, articles and authors are counted in plain fields, and published to PubMedMetrics if it is on.
+ *
+ * This handler is also a SubtreeFilter, so engines that can skip ahead (such as the StAX engine) don't pass us
+ * the Abstract, MeshHeadingList, ReferenceList and so on.  Inside an article, anything no path leads into is
+ * skipped.  Outside one, we skip the elements that, in the PubMed DTD, never contain an article.
+ *
+ * This handler answers one question per parse.  To count authors in the same pass as other reports, use an
+ * AuthorCountAggregator in a PubMedPipeline, behind a PubMedRecordHandler, instead.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedAuthorCountHandler extends DefaultHandler implements SubtreeFilter {
+
+    // subtrees outside an article that never contain an article
+    static final Set<String> SKIP_OUTSIDE_ARTICLE = new HashSet<>(Arrays.asList(
+            "PubmedData", "PubmedBookData", "BookDocument", "DeleteCitation", "MedlineJournalInfo",
+            "ChemicalList", "SupplMeshList", "MeshHeadingList", "CommentsCorrectionsList", "GeneSymbolList",
+            "PersonalNameSubjectList", "OtherID", "OtherAbstract", "KeywordList", "InvestigatorList", "GeneralNote",
+            "DateCreated", "DateCompleted", "DateRevised", "CitationSubset"));
+
+    /**
+     * Return a new instance of the PubMedResultHandler.
+     * Note - we don't return a DefaultHandler since we expect the caller will need the getAuthorCount method.
+     * @return new instance
+     */
+    public static PubMedAuthorCountHandler newInstance() {
+        return new PubMedAuthorCountHandler(new AuthorCountTable());
+    }
+
+    /**
+     * Return a new instance of the PubMedResultHandler that counts authors into the given counts,
+     * for example the WatchlistCounts of a watchlist, to count only the authors we are interested in.
+     * @param counts where we count authors, not to be shared with another handler
+     * @return new instance
+     */
+    public static PubMedAuthorCountHandler newInstance(AuthorCounts counts) {
+        return new PubMedAuthorCountHandler(counts);
+    }
+
+    /**
+     * Return a count of how often this author appears in an article's author list.
+     * @param author author of interest
+     * @return count of how often author appears in an article's author list
+     */
+    public int getAuthorCount(Author author) {
+        return counts.getAuthorCount(author);
+    }
+
+    /**
+     * Return the counts the authors are counted into
+     * @return counts, of the kind the handler was created with
+     */
+    public AuthorCounts getCounts() {
+        return counts;
+    }
+
+    /**
+     * Return true if we have no use for the element that is starting, nor for anything inside it.
+     * @param element qualified name of the element that is starting
+     * @return true if the whole subtree can be skipped
+     */
+    @Override
+    public boolean skipsSubtree(String element) {
+        return cursor.skipsSubtree(element);
+    }
+
+    /**
+     * Add the counts collected by another handler to our counts.
+     * Used to combine handlers that parsed different files, or different parts of a file.
+     * @param other handler whose counts we add
+     * @throws IllegalArgumentException if the other handler keeps a different kind of counts
+     */
+    public void merge(PubMedAuthorCountHandler other) {
+        counts.merge(other.counts);
+    }
+
+    // fields we extract
+    private static final int ARTICLE = 0;
+    private static final int AUTHOR = 1;
+    private static final int FIRST_NAME = 2;
+    private static final int LAST_NAME = 3;
+    private static final int INITIALS = 4;
+
+    // the paths of the authors of every article, which the SCAN engine also passes us
+    private static final PathAutomaton AUTHOR_PATHS = PathAutomaton.builder()
+            .path(ARTICLE, "Article")
+            .path(AUTHOR, "Article/AuthorList/Author")
+            .text(FIRST_NAME, "Article/AuthorList/Author/ForeName")
+            .text(LAST_NAME, "Article/AuthorList/Author/LastName")
+            .text(INITIALS, "Article/AuthorList/Author/Initials")
+            .skipping(SKIP_OUTSIDE_ARTICLE)
+            .build();
+
+    /**
+     * Called each time an element starts.
+     * The cursor follows the element - a field starting needs nothing more from us.
+     *
+     * @param uri not used
+     * @param localName not used
+     * @param qualifiedName element name
+     * @param attributes not used
+     */
+    @Override
+    public void startElement(String uri, String localName, String qualifiedName, Attributes attributes) {
+        eventCount++;
+        int state = cursor.getState();
+        cursor.start(qualifiedName);
+        if (cursor.getState() != state) {
+            counters.leave(state, eventCount);
+        }
+    }
+
+    /**
+     * Called each time an element ends.
+     * The cursor follows the element, and if it ends an author, we count the author's names.
+     *
+     * @param uri not used
+     * @param localName not used
+     * @param qualifiedName element name
+     */
+    @Override
+    public void endElement(String uri, String localName, String qualifiedName) {
+        eventCount++;
+        int state = cursor.getState();
+        int field = cursor.end();
+        if (cursor.getState() != state) {
+            counters.leave(state, eventCount);
+        }
+        if (field == AUTHOR) {
+            NameBuffer firstName = cursor.getText(FIRST_NAME);
+            NameBuffer lastName = cursor.getText(LAST_NAME);
+            NameBuffer initials = cursor.getText(INITIALS);
+            firstName.trim();
+            lastName.trim();
+            initials.trim();
+            counts.increment(firstName.getChars(), firstName.getStart(), firstName.getLength(),
+                    lastName.getChars(), lastName.getStart(), lastName.getLength(),
+                    initials.getChars(), initials.getStart(), initials.getLength());
+            counters.author();
+        } else if (field == ARTICLE) {
+            counters.article();
+        }
+    }
+
+    /**
+     * Called when a document starts.
+     * Whatever the handler parsed before, the document starts outside every path.
+     */
+    @Override
+    public void startDocument() {
+        cursor.reset();
+    }
+
+    /**
+     * Called when the document ends.
+     * We publish whatever we counted since we last published, so metrics are complete at the end of a file.
+     */
+    @Override
+    public void endDocument() {
+        counters.leave(cursor.getState(), eventCount);
+        counters.publish();
+    }
+
+    /**
+     * Called when there is character data available.
+     * If we are in a name, the cursor appends the character data to it, without forming a string.
+     * The parser may split one text node over several calls, the cursor collects all of them.
+     *
+     * @param chars character data
+     * @param start index within chars where our data starts
+     * @param length length of our data
+     */
+    @Override
+    public void characters(char[] chars, int start, int length) {
+        cursor.characters(chars, start, length);
+    }
+
+    // counts how often each author appears in an article's author list
+    private final AuthorCounts counts;
+
+    // follows where we are, and collects the names of each author
+    private final PathAutomaton.Cursor cursor = AUTHOR_PATHS.newCursor();
+
+    // events handled so far, settled into the counts of each state as we leave it
+    private long eventCount;
+
+    // counts events, articles and authors for PubMedMetrics
+    private final PubMedMetrics.HandlerCounters counters =
+            new PubMedMetrics.HandlerCounters(PubMedAuthorCountHandler.class, AUTHOR_PATHS.getStateNames());
+
+    // construct a new handler
+    //
+    private PubMedAuthorCountHandler(AuthorCounts counts) {
+        this.counts = counts;
+    }
+}
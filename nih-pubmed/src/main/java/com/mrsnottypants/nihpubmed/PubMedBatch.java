@@ -0,0 +1,444 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Counts authors across many PubMed files, such as a full PubMed baseline directory.
+ *
+ * The files are parsed concurrently on a bounded pool of worker threads.
+ * Large files are split into chunks at record boundaries by PubMedSplitter, and the chunks parsed concurrently too,
+ * so a single huge file also scales with the number of cores.  Compressed files can't be split, and are parsed
+ * whole, inflating on a thread of their own.
+ * Each worker runs its own PubMedAuthorCountHandler, so no handler is ever shared between threads.
+ * When all the files are parsed, the per-file counts are merged into a single handler.
+ * By default every author is counted, with every worker counting into one ConcurrentAuthorCounts through a batch
+ * of its own, so memory holds one table of authors rather than one per worker.  Pass a watchlist's counts to count
+ * only the authors on the watchlist.
+ * To find the most listed authors without counting every author, use findTopAuthors, then confirmTopAuthors -
+ * or findTopAuthorsExactly, which makes sure the confirmed authors are the most listed.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedBatch {
+
+    // characters that mark the last part of a path as a glob pattern
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    // files are split into chunks no smaller than this
+    static final long MIN_CHUNK_BYTES = 32L * 1024 * 1024;
+
+    // files are split into at most this many chunks per thread, so uneven chunks still balance out
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Return the files named by the given argument, in name order.
+     * The argument may be a single file, a directory (all its .xml and .xml.gz files), or a glob such as
+     * baseline/*.xml.gz
+     * The glob pattern may only appear in the last part of the path.
+     * @param fileOrDirectoryOrGlob file, directory or glob
+     * @return files to parse
+     * @throws IOException if a directory cannot be listed
+     */
+    public static List<Path> listFiles(String fileOrDirectoryOrGlob) throws IOException {
+
+        // split the argument into a directory and a file name, which may be a glob
+        int separator = Math.max(fileOrDirectoryOrGlob.lastIndexOf('/'), fileOrDirectoryOrGlob.lastIndexOf('\\'));
+        String fileName = fileOrDirectoryOrGlob.substring(separator + 1);
+
+        // a glob - list the matching files in the glob's directory
+        if (isGlob(fileName)) {
+            Path directory = Paths.get(separator < 0 ? "." : fileOrDirectoryOrGlob.substring(0, separator + 1));
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + fileName);
+            return listFiles(directory, path -> matcher.matches(path.getFileName()));
+        }
+
+        // a directory - list its plain and compressed xml files
+        Path path = Paths.get(fileOrDirectoryOrGlob);
+        if (Files.isDirectory(path)) {
+            return listFiles(path, PubMedInput::isPubMedFile);
+        }
+
+        // a single file
+        return Collections.singletonList(path);
+    }
+
+    /**
+     * Count how often each author appears in an article's author list, across all the given files.
+     * @param paths files to parse
+     * @param threads maximum number of files, or chunks of files, to parse at the same time
+     * @return handler holding the merged counts of all the files
+     */
+    public static PubMedAuthorCountHandler countAuthors(List<Path> paths, int threads) {
+        return countAuthors(paths, threads, PubMedEngine.SAX);
+    }
+
+    /**
+     * Count how often each author appears in an article's author list, across all the given files.
+     * @param paths files to parse
+     * @param threads maximum number of files, or chunks of files, to parse at the same time
+     * @param engine parse engine
+     * @return handler holding the merged counts of all the files
+     */
+    public static PubMedAuthorCountHandler countAuthors(List<Path> paths, int threads, PubMedEngine engine) {
+        return countAuthors(paths, threads, engine, MIN_CHUNK_BYTES);
+    }
+
+    /**
+     * Count how often the authors of interest appear in an article's author list, across all the given files.
+     * @param paths files to parse
+     * @param threads maximum number of files, or chunks of files, to parse at the same time
+     * @param engine parse engine
+     * @param counts supplies new, empty, counts for each worker, and for the merged result,
+     *               such as Watchlist::newCounts
+     * @return handler holding the merged counts of all the files
+     */
+    public static PubMedAuthorCountHandler countAuthors(List<Path> paths, int threads, PubMedEngine engine,
+                                                        Supplier<? extends AuthorCounts> counts) {
+        return countAuthors(paths, threads, engine, counts, MIN_CHUNK_BYTES);
+    }
+
+    /**
+     * Count how often each author appears in an article's author list, across all the given files, in a fixed
+     * amount of memory: each worker holds at most maxAuthors authors, and spills the rest to runs in a directory.
+     * @param paths files to parse
+     * @param threads maximum number of files, or chunks of files, to parse at the same time
+     * @param engine parse engine
+     * @param directory existing directory to spill runs to
+     * @param maxAuthors most authors each worker holds in memory
+     * @return counts of every author, close them to delete their runs
+     */
+    public static SpillingAuthorCounts countAuthors(List<Path> paths, int threads, PubMedEngine engine,
+                                                    Path directory, int maxAuthors) {
+        return (SpillingAuthorCounts)countAuthors(paths, threads, engine,
+                () -> new SpillingAuthorCounts(directory, maxAuthors)).getCounts();
+    }
+
+    /**
+     * Count how often each author appears in an article's author list, across all the given files.
+     * Every worker counts into the same store, a batch at a time, and the result is a copy of the store.
+     * @param paths files to parse
+     * @param threads maximum number of chunks to parse at the same time
+     * @param engine parse engine
+     * @param minChunkBytes files are split into chunks no smaller than this
+     * @return handler holding the counts of all the files, in an AuthorCountTable
+     */
+    static PubMedAuthorCountHandler countAuthors(List<Path> paths, int threads, PubMedEngine engine,
+                                                 long minChunkBytes) {
+        ConcurrentAuthorCounts store = new ConcurrentAuthorCounts();
+        countAuthors(paths, threads, engine, store::newBatch, minChunkBytes);
+        return PubMedAuthorCountHandler.newInstance(store.snapshot());
+    }
+
+    /**
+     * Count how often each author appears in an article's author list, across all the given files.
+     * @param paths files to parse
+     * @param threads maximum number of chunks to parse at the same time
+     * @param engine parse engine
+     * @param counts supplies new, empty, counts for each worker, and for the merged result
+     * @param minChunkBytes files are split into chunks no smaller than this
+     * @return handler holding the merged counts of all the files
+     */
+    static PubMedAuthorCountHandler countAuthors(List<Path> paths, int threads, PubMedEngine engine,
+                                                 Supplier<? extends AuthorCounts> counts, long minChunkBytes) {
+
+        // one task per chunk, each with its own handler
+        List<Callable<PubMedAuthorCountHandler>> tasks = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            for (PubMedSplitter.Chunk chunk : split(path, threads, minChunkBytes)) {
+                tasks.add(() -> countAuthors(chunk, engine, PubMedAuthorCountHandler.newInstance(counts.get())));
+            }
+        }
+        return run(tasks, threads, () -> PubMedAuthorCountHandler.newInstance(counts.get()));
+    }
+
+    /**
+     * Find the most listed authors across all the given files, in a fixed amount of memory.
+     * Counts are upper bounds, see TopAuthors.
+     * @param paths files to parse
+     * @param threads maximum number of files, or chunks of files, to parse at the same time
+     * @param engine parse engine
+     * @param capacity number of counters each worker keeps
+     * @return counters merged across all the files
+     */
+    public static TopAuthors findTopAuthors(List<Path> paths, int threads, PubMedEngine engine, int capacity) {
+        return (TopAuthors)countAuthors(paths, threads, engine, () -> TopAuthors.newInstance(capacity)).getCounts();
+    }
+
+    /**
+     * Count the candidates for the k most listed authors exactly, in a second pass over the same files.
+     * The result is the k most listed authors only if the k-th count is larger than the first pass's threshold,
+     * as no author the first pass didn't monitor can have been listed more often than that - check it with
+     * TopAuthors.isConfirmedBy, or use findTopAuthorsExactly.
+     * @param paths files parsed by the first pass
+     * @param threads maximum number of files, or chunks of files, to parse at the same time
+     * @param engine parse engine
+     * @param top result of the first pass
+     * @param k number of authors wanted
+     * @return up to k entries with exact counts, most listed first
+     */
+    public static List<TopAuthors.Entry> confirmTopAuthors(List<Path> paths, int threads, PubMedEngine engine,
+                                                          TopAuthors top, int k) {
+        Watchlist candidates = Watchlist.of(top.getCandidates(k));
+        PubMedAuthorCountHandler handler = countAuthors(paths, threads, engine, candidates::newCounts);
+        List<TopAuthors.Entry> entries = new ArrayList<>(candidates.size());
+        for (int id = 0; id < candidates.size(); id++) {
+            Author author = candidates.getAuthor(id);
+            entries.add(new TopAuthors.Entry(author, handler.getAuthorCount(author), 0));
+        }
+        entries.sort(TopAuthors.BY_COUNT);
+        return new ArrayList<>(entries.subList(0, Math.min(k, entries.size())));
+    }
+
+    /**
+     * Find the k most listed authors with exact counts: find candidates in a fixed amount of memory, then count
+     * them exactly.  If the exact counts don't prove the candidates are the k most listed, see
+     * TopAuthors.isConfirmedBy, both passes are run again with twice as many counters, until they do.
+     * Every pass reads the files again, so each pass after the first adds them to the bytes metrics expect.
+     * @param paths files to parse
+     * @param threads maximum number of files, or chunks of files, to parse at the same time
+     * @param engine parse engine
+     * @param capacity number of counters each worker keeps at first
+     * @param k number of authors wanted
+     * @return up to k entries with exact counts, most listed first
+     */
+    public static List<TopAuthors.Entry> findTopAuthorsExactly(List<Path> paths, int threads, PubMedEngine engine,
+                                                              int capacity, int k) {
+        for (int counters = capacity; ; counters = Math.multiplyExact(counters, 2)) {
+            TopAuthors top = findTopAuthors(paths, threads, engine, counters);
+            PubMedMetrics.expect(paths);
+            List<TopAuthors.Entry> entries = confirmTopAuthors(paths, threads, engine, top, k);
+            if (top.isConfirmedBy(entries, k)) {
+                return entries;
+            }
+            PubMedMetrics.expect(paths);
+        }
+    }
+
+    /**
+     * Estimate the number of distinct authors and co-authors across all the given files, overall, per year and
+     * per file, in a few kilobytes per estimate.
+     * @param paths files to parse
+     * @param threads maximum number of files, or chunks of files, to parse at the same time
+     * @param engine parse engine, SAX or STAX - the SCAN engine only sees author lists
+     * @return estimates merged across all the files
+     * @throws IllegalArgumentException if the engine is SCAN
+     */
+    public static AuthorCardinality estimateDistinct(List<Path> paths, int threads, PubMedEngine engine) {
+        if (engine == PubMedEngine.SCAN) {
+            throw new IllegalArgumentException("distinct authors need the sax or stax engine");
+        }
+        PubMedPipeline pipeline = aggregate(paths, threads, engine,
+                () -> PubMedPipeline.of(AuthorCardinality.newInstance()));
+        return (AuthorCardinality)pipeline.get(0);
+    }
+
+    /**
+     * Parse the given files once, passing every record to the aggregators of a pipeline.
+     * Files, and chunks of large files, are parsed concurrently, each into a pipeline of its own, and the pipelines
+     * are merged.
+     * @param paths files to parse
+     * @param threads maximum number of files, or chunks of files, to parse at the same time
+     * @param engine parse engine, sax or stax
+     * @param pipelines supplies new pipelines, with new, empty, aggregators of the same kinds in the same order
+     * @return pipeline holding the merged results of all the files
+     * @throws IllegalArgumentException if the engine is scan, which only passes on author lists
+     */
+    public static PubMedPipeline aggregate(List<Path> paths, int threads, PubMedEngine engine,
+                                           Supplier<PubMedPipeline> pipelines) {
+        if (engine == PubMedEngine.SCAN) {
+            throw new IllegalArgumentException("a pipeline needs the sax or stax engine");
+        }
+        List<Callable<PubMedPipeline>> tasks = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            for (PubMedSplitter.Chunk chunk : split(path, threads, MIN_CHUNK_BYTES)) {
+                tasks.add(() -> {
+                    PubMedPipeline pipeline = pipelines.get();
+                    pipeline.startFile(path);
+                    try {
+                        engine.parse(chunk, PubMedRecordHandler.newInstance(pipeline));
+                    } catch (IOException ex) {
+                        throw new PubMedResultException(String.format("cannot access %s", chunk.getPath()), ex);
+                    }
+                    return pipeline;
+                });
+            }
+        }
+        return run(tasks, threads, pipelines, PubMedPipeline::merge);
+    }
+
+    /**
+     * Count how often each author appears in an article's author list, in a chunk of a file.
+     * @param chunk chunk to parse
+     * @param engine parse engine
+     * @param handler new handler that counts the chunk's authors
+     * @return handler holding the chunk's counts
+     */
+    private static PubMedAuthorCountHandler countAuthors(PubMedSplitter.Chunk chunk, PubMedEngine engine,
+                                                         PubMedAuthorCountHandler handler) {
+        try {
+            engine.parse(chunk, handler);
+            return handler;
+        } catch (IOException ex) {
+            throw new PubMedResultException(String.format("cannot access %s", chunk.getPath()), ex);
+        }
+    }
+
+    /**
+     * Split a file into chunks, or return it as a single chunk if it isn't worth splitting
+     * @param path file to split
+     * @param threads number of worker threads
+     * @param minChunkBytes minimum chunk size
+     * @return chunks
+     */
+    private static List<PubMedSplitter.Chunk> split(Path path, int threads, long minChunkBytes) {
+        try {
+            return PubMedSplitter.split(path, threads * CHUNKS_PER_THREAD, minChunkBytes);
+        } catch (IOException ex) {
+            throw new PubMedResultException(String.format("cannot access %s", path), ex);
+        }
+    }
+
+    /**
+     * Runs the tasks on a bounded pool of worker threads, merging their handlers into a single handler.
+     * Handlers are merged in the order their tasks complete.
+     * @param tasks tasks to run, each returns its own handler
+     * @param threads maximum number of tasks to run at the same time
+     * @param result new, empty, handler that the task handlers are merged into
+     * @return handler holding the merged counts
+     */
+    static PubMedAuthorCountHandler run(List<Callable<PubMedAuthorCountHandler>> tasks, int threads,
+                                        Supplier<PubMedAuthorCountHandler> result) {
+        return run(tasks, threads, result, PubMedAuthorCountHandler::merge);
+    }
+
+    /**
+     * Runs the tasks on a bounded pool of worker threads, merging their results into a single result.
+     * Results are merged in the order their tasks complete, so a slow task doesn't hold up merging, and letting go
+     * of, the results of the tasks that finish after it.
+     * @param tasks tasks to run, each returns its own result
+     * @param threads maximum number of tasks to run at the same time
+     * @param result new, empty, result that the task results are merged into
+     * @param merge merges a task result into the result
+     * @param <T> kind of result
+     * @return merged result
+     */
+    static <T> T run(List<Callable<T>> tasks, int threads, Supplier<T> result, BiConsumer<T, T> merge) {
+
+        // sanity check
+        if (threads < 1) {
+            throw new IllegalArgumentException(String.format("threads must be positive: %d", threads));
+        }
+
+        // no point in having more threads than tasks
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())));
+        try {
+
+            // start every task, the pool bounds how many run at the same time
+            CompletionService<T> completions = new ExecutorCompletionService<>(executor);
+            for (Callable<T> task : tasks) {
+                completions.submit(task);
+            }
+
+            // merge each result as soon as its task is done, whichever task that is, then let it go
+            T merged = result.get();
+            for (int i = 0; i < tasks.size(); i++) {
+                merge.accept(merged, get(take(completions)));
+            }
+            return merged;
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Wait for the next task to complete
+     * @param completions service the tasks were submitted to
+     * @param <T> kind of result
+     * @return completed task's future
+     */
+    private static <T> Future<T> take(CompletionService<T> completions) {
+        try {
+            return completions.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new PubMedResultException("interrupted", ex);
+        }
+    }
+
+    /**
+     * Wait for a task's result, unwrapping the task's exception if it failed
+     * @param future task's future
+     * @param <T> kind of result
+     * @return task's result
+     */
+    private static <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new PubMedResultException("interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof PubMedResultException) {
+                throw (PubMedResultException)ex.getCause();
+            }
+            throw new PubMedResultException("cannot parse", ex.getCause());
+        }
+    }
+
+    /**
+     * Return true if the file name contains glob characters
+     * @param fileName file name
+     * @return true if a glob
+     */
+    private static boolean isGlob(String fileName) {
+        for (int i = 0; i < fileName.length(); i++) {
+            if (GLOB_CHARACTERS.indexOf(fileName.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the regular files in the directory that pass the filter, in name order
+     * @param directory directory to list
+     * @param filter decides which files we keep
+     * @return files
+     * @throws IOException if the directory cannot be listed
+     */
+    private static List<Path> listFiles(Path directory, DirectoryStream.Filter<Path> filter) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, filter)) {
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry)) {
+                    paths.add(entry);
+                }
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    // no reason to instantiate this class
+    private PubMedBatch() {}
+}
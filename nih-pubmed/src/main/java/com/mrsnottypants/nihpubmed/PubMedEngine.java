@@ -0,0 +1,100 @@
+package com.mrsnottypants.nihpubmed;
+
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parse engines we can use to drive a handler.
+ * Every engine passes the same events to the handler, so handlers produce the same results with any engine.
+ * The exception is the SCAN engine, which only passes the events PubMedAuthorCountHandler needs.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public enum PubMedEngine {
+
+    // SAX parser, pushes every event to the handler
+    SAX {
+        @Override
+        public void parse(InputStream inputStream, DefaultHandler handler) {
+            PubMedResult.parse(inputStream, handler);
+        }
+    },
+    // StAX pull parser, skips subtrees the handler has no use for
+    STAX {
+        @Override
+        public void parse(InputStream inputStream, DefaultHandler handler) {
+            PubMedStaxResult.parse(inputStream, handler);
+        }
+    },
+    // byte-level scanner over a memory-mapped file, for counting authors only
+    // streams and compressed files can't be mapped, so they are parsed with SAX
+    SCAN {
+        @Override
+        public void parse(InputStream inputStream, DefaultHandler handler) {
+            PubMedResult.parse(inputStream, handler);
+        }
+        @Override
+        public void parse(PubMedSplitter.Chunk chunk, DefaultHandler handler) throws IOException {
+            if (PubMedInput.isCompressed(chunk.getPath())) {
+                super.parse(chunk, handler);
+                return;
+            }
+
+            // a mapped file isn't read through a stream, so its bytes are counted once it is scanned
+            PubMedMetrics metrics = PubMedMetrics.current();
+            long start = System.nanoTime();
+            if (chunk.isWholeFile()) {
+                PubMedScanner.parse(chunk.getPath(), handler);
+            } else {
+                PubMedScanner.parse(chunk.getPath(), chunk.getStart(), chunk.getEnd(), handler);
+            }
+            if (metrics != null) {
+                metrics.addBytesRead(chunk.getEnd() - chunk.getStart());
+                metrics.addElapsed(System.nanoTime() - start);
+            }
+        }
+    }
+    ;
+
+    /**
+     * Use the given handler to parse the contents provided by the input stream
+     * @param inputStream provides contents to parse
+     * @param handler parses contents
+     */
+    public abstract void parse(InputStream inputStream, DefaultHandler handler);
+
+    /**
+     * Use the given handler to parse a file, or a chunk of a file.
+     * If metrics are on, the time spent on it is counted, so it can be split into waiting for input and parsing.
+     * @param chunk chunk to parse, which may be the whole file
+     * @param handler parses contents
+     * @throws IOException if the file cannot be read
+     */
+    public void parse(PubMedSplitter.Chunk chunk, DefaultHandler handler) throws IOException {
+        PubMedMetrics metrics = PubMedMetrics.current();
+        long start = System.nanoTime();
+        try (InputStream inputStream = chunk.isWholeFile() ? PubMedInput.open(chunk.getPath()) : chunk.open()) {
+            parse(inputStream, handler);
+        }
+        if (metrics != null) {
+            metrics.addElapsed(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Return the engine with the given name, ignoring case
+     * @param name engine name, such as 'sax' or 'stax'
+     * @return engine
+     * @throws IllegalArgumentException if there is no such engine
+     */
+    public static PubMedEngine of(String name) {
+        for (PubMedEngine engine : values()) {
+            if (engine.name().equalsIgnoreCase(name)) {
+                return engine;
+            }
+        }
+        throw new IllegalArgumentException(String.format("unknown engine %s", name));
+    }
+}
@@ -0,0 +1,57 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Opens PubMed files, which may be plain XML or gzip-compressed XML (.xml.gz, as PubMed ships them).
+ * Compressed files are inflated on a background thread as they are read, so nothing is decompressed to disk.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedInput {
+
+    // file name suffix of plain PubMed files
+    static final String XML_SUFFIX = ".xml";
+
+    // file name suffix of compressed PubMed files
+    static final String GZIP_SUFFIX = ".gz";
+
+    /**
+     * Open an auto-closing stream on the file's XML contents, inflating it if it is compressed.
+     * The caller is responsible for closing the stream.
+     * If metrics are on, the bytes read from the file, and the time spent waiting for its XML, are counted.
+     * @param path plain or compressed file
+     * @return stream of XML
+     * @throws IOException if the file cannot be opened
+     */
+    public static InputStream open(Path path) throws IOException {
+        InputStream inputStream = PubMedMetrics.meter(Files.newInputStream(path), true, false);
+        return PubMedMetrics.meter(isCompressed(path) ? new PipelinedGzipInputStream(inputStream) : inputStream,
+                false, true);
+    }
+
+    /**
+     * Return true if the file is gzip-compressed, going by its name
+     * @param path file
+     * @return true if compressed
+     */
+    public static boolean isCompressed(Path path) {
+        return path.getFileName().toString().endsWith(GZIP_SUFFIX);
+    }
+
+    /**
+     * Return true if the file looks like a PubMed file, plain or compressed, going by its name
+     * @param path file
+     * @return true if .xml or .xml.gz
+     */
+    public static boolean isPubMedFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(XML_SUFFIX) || name.endsWith(XML_SUFFIX + GZIP_SUFFIX);
+    }
+
+    // no reason to instantiate this class
+    private PubMedInput() {}
+}
@@ -0,0 +1,467 @@
+package com.mrsnottypants.nihpubmed;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what a run has done so far - bytes read, articles and authors seen, events per handler state - so a long
+ * run can be watched while it works, through JMX or a progress line printed every few seconds.
+ *
+ * Metrics are off unless started, and at most one instance is current.  While none is, the hot path costs nothing
+ * more than it did: streams are opened unwrapped, and handlers count into plain fields of their own, which they
+ * publish every PUBLISH_ARTICLES articles and at the end of a document only if an instance is current.
+ * Bytes are counted as the input is read, so a stalled disk shows as a stalled byte count.  Time spent waiting on
+ * the input is kept apart from the time spent parsing it.  For compressed files, waiting on the input includes
+ * inflating it, and files scanned by the SCAN engine are mapped, so their page faults count as parsing.
+ * Rates are over the last WINDOW_SECONDS seconds, sampled once a second on a daemon thread.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedMetrics implements PubMedMetricsMXBean {
+
+    /**
+     * Name the metrics are registered under on the platform MBean server
+     */
+    public static final String OBJECT_NAME = "com.mrsnottypants.nihpubmed:type=PubMedMetrics";
+
+    // seconds the rates are measured over
+    static final int WINDOW_SECONDS = 10;
+
+    // handlers publish their counts every this many articles, a power of two
+    static final int PUBLISH_ARTICLES = 64;
+
+    // the instance streams and handlers report to, null while metrics are off
+    private static volatile PubMedMetrics current;
+
+    // totals
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder expectedBytes = new LongAdder();
+    private final LongAdder articles = new LongAdder();
+    private final LongAdder authors = new LongAdder();
+    private final LongAdder ioNanos = new LongAdder();
+    private final LongAdder wallNanos = new LongAdder();
+    private final Map<String, LongAdder> stateEvents = new ConcurrentHashMap<>();
+
+    // when we started
+    private final long startNanos = System.nanoTime();
+
+    // a ring of samples taken once a second, the oldest is overwritten by the newest
+    private final long[] sampleNanos = new long[WINDOW_SECONDS + 1];
+    private final long[] sampleBytes = new long[WINDOW_SECONDS + 1];
+    private final long[] sampleArticles = new long[WINDOW_SECONDS + 1];
+    private final long[] sampleAllocated = new long[WINDOW_SECONDS + 1];
+    private long samples;
+
+    // takes samples and prints progress
+    private final ScheduledExecutorService scheduler;
+
+    // whether we are registered with the platform MBean server
+    private boolean registered;
+
+    /**
+     * Start counting, replacing the current metrics if there are any
+     * @return metrics, now current
+     */
+    public static PubMedMetrics start() {
+        PubMedMetrics metrics = new PubMedMetrics();
+        PubMedMetrics previous = current;
+        if (previous != null) {
+            previous.stop();
+        }
+        current = metrics;
+        return metrics;
+    }
+
+    /**
+     * Return the metrics streams and handlers report to
+     * @return current metrics, null if metrics are off
+     */
+    public static PubMedMetrics current() {
+        return current;
+    }
+
+    /**
+     * Stop counting: no longer current, no longer sampled, and unregistered
+     */
+    public synchronized void stop() {
+        if (current == this) {
+            current = null;
+        }
+        scheduler.shutdownNow();
+        if (registered) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+            } catch (JMException ex) {
+                // somebody else unregistered us
+            }
+            registered = false;
+        }
+    }
+
+    /**
+     * Register with the platform MBean server under OBJECT_NAME, replacing whatever was registered there
+     * @throws JMException if we cannot be registered
+     */
+    public synchronized void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+        registered = true;
+    }
+
+    /**
+     * Print a progress line every so often, until we are stopped
+     * @param seconds seconds between lines
+     * @param out where to print, such as System.err so results on System.out aren't mixed with progress
+     */
+    public void startProgress(int seconds, PrintStream out) {
+        scheduler.scheduleAtFixedRate(() -> out.println(getProgressLine()), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Return a line describing the progress so far
+     * @return progress line
+     */
+    public String getProgressLine() {
+        long expected = getExpectedBytes();
+        long read = getBytesRead();
+        long eta = getEtaSeconds();
+        double wall = wallNanos.sum();
+        return String.format("%s MB read%s | %,d articles, %,d authors | %.1f MB/s, %.0f articles/s | " +
+                        "io %.0f%% | heap %,d MB, alloc %.1f MB/s | elapsed %s, eta %s",
+                String.format("%,.1f", read / 1e6),
+                expected > 0 ? String.format(" of %,.1f (%.1f%%)", expected / 1e6, 100.0 * read / expected) : "",
+                getArticles(), getAuthors(), getMegabytesPerSecond(), getArticlesPerSecond(),
+                wall > 0 ? 100 * ioNanos.sum() / wall : 0.0, getHeapUsedBytes() >> 20,
+                getAllocationBytesPerSecond() / 1e6, formatSeconds(getElapsedSeconds()),
+                eta < 0 ? "unknown" : formatSeconds(eta));
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getExpectedBytes() {
+        return expectedBytes.sum();
+    }
+
+    @Override
+    public long getArticles() {
+        return articles.sum();
+    }
+
+    @Override
+    public long getAuthors() {
+        return authors.sum();
+    }
+
+    @Override
+    public Map<String, Long> getStateEvents() {
+        Map<String, Long> result = new TreeMap<>();
+        stateEvents.forEach((state, count) -> result.put(state, count.sum()));
+        return result;
+    }
+
+    @Override
+    public synchronized double getMegabytesPerSecond() {
+        return rate(sampleBytes) / 1e6;
+    }
+
+    @Override
+    public synchronized double getArticlesPerSecond() {
+        return rate(sampleArticles);
+    }
+
+    @Override
+    public double getIoSeconds() {
+        return ioNanos.sum() / 1e9;
+    }
+
+    @Override
+    public double getParseSeconds() {
+        return Math.max(0, wallNanos.sum() - ioNanos.sum()) / 1e9;
+    }
+
+    @Override
+    public long getHeapUsedBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @Override
+    public synchronized double getAllocationBytesPerSecond() {
+        return rate(sampleAllocated);
+    }
+
+    @Override
+    public long getEtaSeconds() {
+        long remaining = getExpectedBytes() - getBytesRead();
+        double rate = getMegabytesPerSecond() * 1e6;
+        if (getExpectedBytes() == 0 || rate <= 0) {
+            return -1;
+        }
+        return remaining <= 0 ? 0 : (long)Math.ceil(remaining / rate);
+    }
+
+    @Override
+    public long getElapsedSeconds() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Add the size of files we are about to read to the bytes we expect, if metrics are on
+     * @param paths files to be read
+     */
+    static void expect(List<Path> paths) {
+        PubMedMetrics metrics = current;
+        if (metrics == null) {
+            return;
+        }
+        for (Path path : paths) {
+            try {
+                metrics.expectedBytes.add(Files.size(path));
+            } catch (IOException ex) {
+                // the file will fail when it is read, and be reported then
+            }
+        }
+    }
+
+    /**
+     * Wrap a stream so what is read from it is counted, if metrics are on
+     * @param inputStream stream to wrap
+     * @param countBytes whether to count the bytes read
+     * @param countTime whether to count the time spent waiting for reads
+     * @return wrapped stream, or the stream itself if metrics are off
+     */
+    static InputStream meter(InputStream inputStream, boolean countBytes, boolean countTime) {
+        PubMedMetrics metrics = current;
+        return metrics == null ? inputStream : new MeteredInputStream(inputStream, metrics, countBytes, countTime);
+    }
+
+    /**
+     * Add bytes read without a stream, such as those of a mapped file
+     * @param bytes bytes read
+     */
+    void addBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    /**
+     * Add the time a thread spent on a file or chunk, waiting for input and parsing it
+     * @param nanos elapsed time
+     */
+    void addElapsed(long nanos) {
+        wallNanos.add(nanos);
+    }
+
+    /**
+     * Take a sample for the rates
+     */
+    synchronized void sample() {
+        int index = (int)(samples % sampleNanos.length);
+        sampleNanos[index] = System.nanoTime();
+        sampleBytes[index] = bytesRead.sum();
+        sampleArticles[index] = articles.sum();
+        sampleAllocated[index] = allocatedBytes();
+        samples++;
+    }
+
+    /**
+     * Return the rate a sampled total grew at, between the oldest and newest samples in the ring
+     * @param values sampled totals
+     * @return growth per second, zero until there are two samples
+     */
+    private double rate(long[] values) {
+        if (samples < 2) {
+            return 0;
+        }
+        int newest = (int)((samples - 1) % sampleNanos.length);
+        int oldest = samples > sampleNanos.length ? (int)(samples % sampleNanos.length) : 0;
+        long nanos = sampleNanos[newest] - sampleNanos[oldest];
+        return nanos <= 0 ? 0 : Math.max(0, values[newest] - values[oldest]) * 1e9 / nanos;
+    }
+
+    /**
+     * Return the bytes allocated by live threads so far, zero if the JVM can't tell.
+     * Threads that end take their allocations with them, so this can go down.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        long total = 0;
+        for (long bytes : ((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(
+                threads.getAllThreadIds())) {
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+
+    /**
+     * Format seconds as hours, minutes and seconds
+     */
+    private static String formatSeconds(long seconds) {
+        return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
+    // counts kept by a handler, in plain fields only its parsing thread touches, and published now and then
+    // the handler counts every event in a field of its own, and we settle them into the count of the state
+    // that handled them when it leaves the state, so counting an event costs the handler one increment
+    //
+    static final class HandlerCounters {
+
+        // metric names of the states, and their events, counted and published so far
+        private final String[] names;
+        private final long[] events;
+        private final long[] publishedEvents;
+
+        // the handler's count of every event when it entered its current state
+        private long entered;
+
+        // articles and authors, counted and published so far
+        private long articleCount;
+        private long authorCount;
+        private long publishedArticles;
+        private long publishedAuthors;
+
+        // counters for the handler, with a name for each of its states, in order
+        //
+        HandlerCounters(Class<?> handler, String[] states) {
+            names = new String[states.length];
+            for (int state = 0; state < states.length; state++) {
+                names[state] = handler.getSimpleName() + "." + states[state];
+            }
+            events = new long[states.length];
+            publishedEvents = new long[states.length];
+        }
+
+        // settle the events a state handled, given the handler's count of every event, as the handler leaves it
+        //
+        void leave(int state, long eventCount) {
+            events[state] += eventCount - entered;
+            entered = eventCount;
+        }
+
+        // count an article, publishing every so often
+        //
+        void article() {
+            if ((++articleCount & (PUBLISH_ARTICLES - 1)) == 0) {
+                publish();
+            }
+        }
+
+        // count an author
+        //
+        void author() {
+            authorCount++;
+        }
+
+        // add what was counted since we last published to the current metrics, if there are any
+        //
+        void publish() {
+            PubMedMetrics metrics = current;
+            if (metrics == null) {
+                return;
+            }
+            metrics.articles.add(articleCount - publishedArticles);
+            metrics.authors.add(authorCount - publishedAuthors);
+            publishedArticles = articleCount;
+            publishedAuthors = authorCount;
+            for (int state = 0; state < events.length; state++) {
+                if (events[state] != publishedEvents[state]) {
+                    metrics.stateEvents.computeIfAbsent(names[state], name -> new LongAdder())
+                            .add(events[state] - publishedEvents[state]);
+                    publishedEvents[state] = events[state];
+                }
+            }
+        }
+    }
+
+    // counts the bytes read through it, and the time spent waiting for them
+    //
+    private static final class MeteredInputStream extends FilterInputStream {
+
+        private final PubMedMetrics metrics;
+        private final boolean countBytes;
+        private final boolean countTime;
+
+        // wrap a stream
+        //
+        private MeteredInputStream(InputStream inputStream, PubMedMetrics metrics, boolean countBytes,
+                                   boolean countTime) {
+            super(inputStream);
+            this.metrics = metrics;
+            this.countBytes = countBytes;
+            this.countTime = countTime;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = countTime ? System.nanoTime() : 0;
+            int result = in.read();
+            count(start, result < 0 ? 0 : 1);
+            return result;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            long start = countTime ? System.nanoTime() : 0;
+            int result = in.read(bytes, offset, length);
+            count(start, Math.max(0, result));
+            return result;
+        }
+
+        @Override
+        public long skip(long length) throws IOException {
+            long start = countTime ? System.nanoTime() : 0;
+            long result = in.skip(length);
+            count(start, Math.max(0, result));
+            return result;
+        }
+
+        // count a read that started at the given time
+        //
+        private void count(long start, long bytes) {
+            if (countTime) {
+                metrics.ioNanos.add(System.nanoTime() - start);
+            }
+            if (countBytes) {
+                metrics.bytesRead.add(bytes);
+            }
+        }
+    }
+
+    // construct metrics, sampled once a second
+    //
+    private PubMedMetrics() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pubmed-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sample();
+        scheduler.scheduleAtFixedRate(this::sample, 1, 1, TimeUnit.SECONDS);
+    }
+}
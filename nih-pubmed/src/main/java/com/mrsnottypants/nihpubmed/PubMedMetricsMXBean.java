@@ -0,0 +1,90 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.util.Map;
+
+/**
+ * What a run of NihPubmed has done so far, as published over JMX by PubMedMetrics.
+ * Rates are over the last few seconds, totals since the metrics were started.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public interface PubMedMetricsMXBean {
+
+    /**
+     * Return the number of input bytes read, as stored - compressed files count their compressed bytes
+     * @return bytes read
+     */
+    long getBytesRead();
+
+    /**
+     * Return the number of input bytes we expect to read, the size of every file given to us
+     * @return expected bytes, zero if unknown
+     */
+    long getExpectedBytes();
+
+    /**
+     * Return the number of articles seen by our handlers
+     * @return articles
+     */
+    long getArticles();
+
+    /**
+     * Return the number of authors seen by our handlers
+     * @return authors
+     */
+    long getAuthors();
+
+    /**
+     * Return the number of element events each handler state has handled, by handler and state name
+     * @return events, such as PubMedAuthorCountHandler.Article/AuthorList/Author to its count
+     */
+    Map<String, Long> getStateEvents();
+
+    /**
+     * Return the input read per second
+     * @return megabytes per second
+     */
+    double getMegabytesPerSecond();
+
+    /**
+     * Return the articles seen per second
+     * @return articles per second
+     */
+    double getArticlesPerSecond();
+
+    /**
+     * Return the time parsing threads spent waiting for input, summed over threads
+     * @return seconds
+     */
+    double getIoSeconds();
+
+    /**
+     * Return the time parsing threads spent parsing, not waiting for input, summed over threads
+     * @return seconds
+     */
+    double getParseSeconds();
+
+    /**
+     * Return the heap in use
+     * @return bytes
+     */
+    long getHeapUsedBytes();
+
+    /**
+     * Return the rate the live threads allocate at
+     * @return bytes per second, zero if the JVM can't tell
+     */
+    double getAllocationBytesPerSecond();
+
+    /**
+     * Return the time left to read the rest of the expected bytes, at the current rate
+     * @return seconds, -1 if unknown
+     */
+    long getEtaSeconds();
+
+    /**
+     * Return the time since the metrics were started
+     * @return seconds
+     */
+    long getElapsedSeconds();
+}
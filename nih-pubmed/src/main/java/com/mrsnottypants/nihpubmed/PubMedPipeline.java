@@ -0,0 +1,140 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Passes each record of a single parse to any number of aggregators, so every report is built in one pass over
+ * the files instead of one pass per report.
+ *
+ * The PubMedRecordHandler in front of the pipeline keeps the state of the article being parsed - where we are in
+ * it, its PMID, journal, year and authors - once for all the aggregators, each of which only sees the finished
+ * record.  A record is passed to the aggregators in the order they were given.
+ *
+ * A pipeline is not thread-safe.  Each thread parses into a pipeline of its own, and the pipelines are merged,
+ * aggregator by aggregator.  See PubMedBatch.aggregate.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedPipeline implements PubMedRecordListener {
+
+    /**
+     * Return a pipeline that passes each record to the given aggregators
+     * @param aggregators aggregators, in the order records are passed to them
+     * @return new instance
+     */
+    public static PubMedPipeline of(PubMedAggregator... aggregators) {
+        return new PubMedPipeline(Arrays.asList(aggregators));
+    }
+
+    /**
+     * Return a pipeline that passes each record to the given aggregators
+     * @param aggregators aggregators, in the order records are passed to them
+     * @return new instance
+     */
+    public static PubMedPipeline of(List<? extends PubMedAggregator> aggregators) {
+        return new PubMedPipeline(aggregators);
+    }
+
+    // where we pass each record, as an array so passing a record allocates nothing
+    private final PubMedAggregator[] aggregators;
+
+    // number of records passed on
+    private long recordCount;
+
+    // construct a pipeline
+    //
+    private PubMedPipeline(List<? extends PubMedAggregator> aggregators) {
+        this.aggregators = aggregators.toArray(new PubMedAggregator[aggregators.size()]);
+    }
+
+    /**
+     * Tell every aggregator which file the records that follow come from
+     * @param file file being parsed
+     */
+    public void startFile(Path file) {
+        for (PubMedAggregator aggregator : aggregators) {
+            aggregator.startFile(file);
+        }
+    }
+
+    /**
+     * Pass a record to every aggregator
+     * @param record parsed record
+     */
+    @Override
+    public void record(PubMedRecord record) {
+        recordCount++;
+        for (PubMedAggregator aggregator : aggregators) {
+            aggregator.record(record);
+        }
+    }
+
+    /**
+     * Pass a deleted PMID to every aggregator
+     * @param pmid PMID of a deleted citation
+     */
+    @Override
+    public void delete(long pmid) {
+        for (PubMedAggregator aggregator : aggregators) {
+            aggregator.delete(pmid);
+        }
+    }
+
+    /**
+     * Return true if any of our aggregators uses the record's facets
+     * @return true to collect facets
+     */
+    @Override
+    public boolean wantsFacets() {
+        for (PubMedAggregator aggregator : aggregators) {
+            if (aggregator.wantsFacets()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merge the aggregators of another pipeline into ours, each into the one in the same place
+     * @param other pipeline with the same kinds of aggregators, in the same order
+     * @throws IllegalArgumentException if the other pipeline's aggregators are different
+     */
+    public void merge(PubMedPipeline other) {
+        if (other.aggregators.length != aggregators.length) {
+            throw new IllegalArgumentException(String.format("cannot merge a pipeline of %d aggregators into %d",
+                    other.aggregators.length, aggregators.length));
+        }
+        for (int i = 0; i < aggregators.length; i++) {
+            aggregators[i].merge(other.aggregators[i]);
+        }
+        recordCount += other.recordCount;
+    }
+
+    /**
+     * Return one of our aggregators
+     * @param index where it is in the pipeline
+     * @return aggregator
+     */
+    public PubMedAggregator get(int index) {
+        return aggregators[index];
+    }
+
+    /**
+     * Return our aggregators
+     * @return aggregators, in the order records are passed to them
+     */
+    public List<PubMedAggregator> getAggregators() {
+        return Collections.unmodifiableList(Arrays.asList(aggregators));
+    }
+
+    /**
+     * Return the number of records passed on
+     * @return number of records
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+}
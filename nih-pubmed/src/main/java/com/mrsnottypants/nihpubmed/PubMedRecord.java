@@ -0,0 +1,378 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.util.Arrays;
+
+/**
+ * The parts of one PubmedArticle we use: its PMID, the journal and year it was published in, and its authors.
+ * For listeners that want them, the record also holds its facets: the journal's ISO abbreviation, and the
+ * article's MeSH descriptors and publication types.  See PubMedRecordListener.wantsFacets.
+ *
+ * A PubMedRecordHandler reuses a single instance for every record it parses, so a record is only valid during
+ * the PubMedRecordListener call it is passed to - copy anything you need to keep.
+ * Author names and initials are kept in one shared character buffer, and can be read as ranges of it without
+ * allocating.
+ * MeSH descriptors and publication types are kept the same way, in a buffer of terms.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedRecord {
+
+    // ints we keep per author: first name, last name and initials offset and length
+    private static final int INTS_PER_AUTHOR = 6;
+
+    // ints we keep per term: offset and length
+    private static final int INTS_PER_TERM = 2;
+
+    // record's PMID, -1 if it has none
+    private long pmid;
+
+    // year the article was published, -1 if it has none
+    private int year;
+
+    // title of the journal the article was published in, empty if it has none
+    private char[] journal = new char[64];
+    private int journalLength;
+
+    // ISO abbreviation of the journal, empty if it has none or facets aren't collected
+    private char[] abbreviation = new char[32];
+    private int abbreviationLength;
+
+    // author names, one after the other
+    private char[] names = new char[256];
+    private int namesLength;
+
+    // name ranges of each author, INTS_PER_AUTHOR ints per author
+    private int[] authors = new int[16 * INTS_PER_AUTHOR];
+    private int authorCount;
+
+    // MeSH descriptors and publication types, one after the other
+    private char[] terms = new char[256];
+    private int termsLength;
+
+    // term ranges of each MeSH descriptor and publication type, INTS_PER_TERM ints per term
+    private int[] descriptors = new int[16 * INTS_PER_TERM];
+    private int descriptorCount;
+    private int[] publicationTypes = new int[4 * INTS_PER_TERM];
+    private int publicationTypeCount;
+
+    /**
+     * Construct an empty record
+     */
+    PubMedRecord() {
+        clear();
+    }
+
+    /**
+     * Get the record's PMID
+     * @return PMID, or -1 if the record has none
+     */
+    public long getPmid() {
+        return pmid;
+    }
+
+    /**
+     * Get the year the article was published, from its journal issue's PubDate
+     * @return year, or -1 if the record has none
+     */
+    public int getYear() {
+        return year;
+    }
+
+    /**
+     * Get the buffer holding the title of the journal the article was published in, read it with its length
+     * @return journal buffer, the title starts at zero
+     */
+    public char[] getJournal() {
+        return journal;
+    }
+
+    /**
+     * Get the length of the journal title
+     * @return length, zero if the record has none
+     */
+    public int getJournalLength() {
+        return journalLength;
+    }
+
+    /**
+     * Get the buffer holding the ISO abbreviation of the journal, read it with its length
+     * @return abbreviation buffer, the abbreviation starts at zero
+     */
+    public char[] getJournalAbbreviation() {
+        return abbreviation;
+    }
+
+    /**
+     * Get the length of the journal's ISO abbreviation
+     * @return length, zero if the record has none or facets aren't collected
+     */
+    public int getJournalAbbreviationLength() {
+        return abbreviationLength;
+    }
+
+    /**
+     * Get the number of authors in the record's author list
+     * @return number of authors
+     */
+    public int getAuthorCount() {
+        return authorCount;
+    }
+
+    /**
+     * Get the buffer holding the author names, read it with the offsets and lengths of each author
+     * @return names buffer
+     */
+    public char[] getNames() {
+        return names;
+    }
+
+    /**
+     * Get where an author's first name starts in the names buffer
+     * @param author author index, from 0 to getAuthorCount() - 1
+     * @return offset
+     */
+    public int getFirstNameOffset(int author) {
+        return authors[author * INTS_PER_AUTHOR];
+    }
+
+    /**
+     * Get the length of an author's first name, zero if there is none
+     * @param author author index
+     * @return length
+     */
+    public int getFirstNameLength(int author) {
+        return authors[author * INTS_PER_AUTHOR + 1];
+    }
+
+    /**
+     * Get where an author's last name starts in the names buffer
+     * @param author author index
+     * @return offset
+     */
+    public int getLastNameOffset(int author) {
+        return authors[author * INTS_PER_AUTHOR + 2];
+    }
+
+    /**
+     * Get the length of an author's last name, zero if there is none
+     * @param author author index
+     * @return length
+     */
+    public int getLastNameLength(int author) {
+        return authors[author * INTS_PER_AUTHOR + 3];
+    }
+
+    /**
+     * Get where an author's initials start in the names buffer
+     * @param author author index
+     * @return offset
+     */
+    public int getInitialsOffset(int author) {
+        return authors[author * INTS_PER_AUTHOR + 4];
+    }
+
+    /**
+     * Get the length of an author's initials, zero if there are none
+     * @param author author index
+     * @return length
+     */
+    public int getInitialsLength(int author) {
+        return authors[author * INTS_PER_AUTHOR + 5];
+    }
+
+    /**
+     * Return an author as an Author - this allocates, use the name ranges on hot paths
+     * @param author author index
+     * @return author
+     */
+    public Author getAuthor(int author) {
+        return Author.of(new String(names, getFirstNameOffset(author), getFirstNameLength(author)),
+                new String(names, getLastNameOffset(author), getLastNameLength(author)));
+    }
+
+    /**
+     * Get the number of MeSH descriptors in the record's MeSH heading list
+     * @return number of descriptors, zero if facets aren't collected
+     */
+    public int getDescriptorCount() {
+        return descriptorCount;
+    }
+
+    /**
+     * Get where a MeSH descriptor starts in the terms buffer
+     * @param descriptor descriptor index, from 0 to getDescriptorCount() - 1
+     * @return offset
+     */
+    public int getDescriptorOffset(int descriptor) {
+        return descriptors[descriptor * INTS_PER_TERM];
+    }
+
+    /**
+     * Get the length of a MeSH descriptor
+     * @param descriptor descriptor index
+     * @return length
+     */
+    public int getDescriptorLength(int descriptor) {
+        return descriptors[descriptor * INTS_PER_TERM + 1];
+    }
+
+    /**
+     * Get the number of the article's publication types
+     * @return number of publication types, zero if facets aren't collected
+     */
+    public int getPublicationTypeCount() {
+        return publicationTypeCount;
+    }
+
+    /**
+     * Get where a publication type starts in the terms buffer
+     * @param publicationType publication type index, from 0 to getPublicationTypeCount() - 1
+     * @return offset
+     */
+    public int getPublicationTypeOffset(int publicationType) {
+        return publicationTypes[publicationType * INTS_PER_TERM];
+    }
+
+    /**
+     * Get the length of a publication type
+     * @param publicationType publication type index
+     * @return length
+     */
+    public int getPublicationTypeLength(int publicationType) {
+        return publicationTypes[publicationType * INTS_PER_TERM + 1];
+    }
+
+    /**
+     * Get the buffer holding the MeSH descriptors and publication types, read it with the offset and length of each
+     * @return terms buffer
+     */
+    public char[] getTerms() {
+        return terms;
+    }
+
+    /**
+     * Empty the record, ready for the next one
+     */
+    void clear() {
+        pmid = -1;
+        year = -1;
+        journalLength = 0;
+        abbreviationLength = 0;
+        namesLength = 0;
+        authorCount = 0;
+        termsLength = 0;
+        descriptorCount = 0;
+        publicationTypeCount = 0;
+    }
+
+    /**
+     * Set the record's PMID
+     * @param pmid PMID
+     */
+    void setPmid(long pmid) {
+        this.pmid = pmid;
+    }
+
+    /**
+     * Set the year the article was published
+     * @param year year
+     */
+    void setYear(int year) {
+        this.year = year;
+    }
+
+    /**
+     * Set the title of the journal the article was published in, copying it
+     * @param title collected title
+     */
+    void setJournal(NameBuffer title) {
+        if (title.getLength() > journal.length) {
+            journal = new char[Math.max(title.getLength(), journal.length * 2)];
+        }
+        System.arraycopy(title.getChars(), title.getStart(), journal, 0, title.getLength());
+        journalLength = title.getLength();
+    }
+
+    /**
+     * Set the ISO abbreviation of the journal the article was published in, copying it
+     * @param iso collected abbreviation
+     */
+    void setJournalAbbreviation(NameBuffer iso) {
+        if (iso.getLength() > abbreviation.length) {
+            abbreviation = new char[Math.max(iso.getLength(), abbreviation.length * 2)];
+        }
+        System.arraycopy(iso.getChars(), iso.getStart(), abbreviation, 0, iso.getLength());
+        abbreviationLength = iso.getLength();
+    }
+
+    /**
+     * Add a MeSH descriptor, copying it
+     * @param descriptor collected descriptor
+     */
+    void addDescriptor(NameBuffer descriptor) {
+        if ((descriptorCount + 1) * INTS_PER_TERM > descriptors.length) {
+            descriptors = Arrays.copyOf(descriptors, descriptors.length * 2);
+        }
+        descriptors[descriptorCount * INTS_PER_TERM] = termsLength;
+        descriptors[descriptorCount * INTS_PER_TERM + 1] = descriptor.getLength();
+        appendTerm(descriptor);
+        descriptorCount++;
+    }
+
+    /**
+     * Add a publication type, copying it
+     * @param publicationType collected publication type
+     */
+    void addPublicationType(NameBuffer publicationType) {
+        if ((publicationTypeCount + 1) * INTS_PER_TERM > publicationTypes.length) {
+            publicationTypes = Arrays.copyOf(publicationTypes, publicationTypes.length * 2);
+        }
+        publicationTypes[publicationTypeCount * INTS_PER_TERM] = termsLength;
+        publicationTypes[publicationTypeCount * INTS_PER_TERM + 1] = publicationType.getLength();
+        appendTerm(publicationType);
+        publicationTypeCount++;
+    }
+
+    /**
+     * Add an author, copying the names
+     * @param first collected first name
+     * @param last collected last name
+     * @param initials collected initials
+     */
+    void addAuthor(NameBuffer first, NameBuffer last, NameBuffer initials) {
+        if ((authorCount + 1) * INTS_PER_AUTHOR > authors.length) {
+            authors = Arrays.copyOf(authors, authors.length * 2);
+        }
+        int index = authorCount * INTS_PER_AUTHOR;
+        authors[index] = namesLength;
+        authors[index + 1] = first.getLength();
+        append(first);
+        authors[index + 2] = namesLength;
+        authors[index + 3] = last.getLength();
+        append(last);
+        authors[index + 4] = namesLength;
+        authors[index + 5] = initials.getLength();
+        append(initials);
+        authorCount++;
+    }
+
+    // appends a name to the names buffer, growing it if needed
+    //
+    private void append(NameBuffer name) {
+        if (namesLength + name.getLength() > names.length) {
+            names = Arrays.copyOf(names, Math.max(namesLength + name.getLength(), names.length * 2));
+        }
+        System.arraycopy(name.getChars(), name.getStart(), names, namesLength, name.getLength());
+        namesLength += name.getLength();
+    }
+
+    // appends a term to the terms buffer, growing it if needed
+    //
+    private void appendTerm(NameBuffer term) {
+        if (termsLength + term.getLength() > terms.length) {
+            terms = Arrays.copyOf(terms, Math.max(termsLength + term.getLength(), terms.length * 2));
+        }
+        System.arraycopy(term.getChars(), term.getStart(), terms, termsLength, term.getLength());
+        termsLength += term.getLength();
+    }
+}
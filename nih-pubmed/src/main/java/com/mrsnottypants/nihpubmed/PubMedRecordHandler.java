@@ -0,0 +1,248 @@
+package com.mrsnottypants.nihpubmed;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * This handler parses each PubmedArticle into a PubMedRecord - its PMID, journal, year and authors - and passes it to a
+ * PubMedRecordListener.  Where PubMedAuthorCountHandler answers one question, counting authors, this handler
+ * lets a listener answer questions that need to know which authors appear together, and in which article.
+ *
+ * The fields of a record are declared as element paths, compiled once into a PathAutomaton - see the paths below.
+ * The automaton follows where we are in the document and collects the text of each field, and we only act as a
+ * field ends.  Paths name every element from the PubmedArticle down, so the PMIDs of comments and corrections,
+ * further down the MedlineCitation, are not the record's.  Text is collected in reusable buffers and copied into
+ * a single reused record, so in steady state nothing is allocated per event or per record.
+ * The PMIDs in a DeleteCitation, as found in PubMed update files, are passed to the listener's delete method.
+ * If the listener wants facets, the journal's ISO abbreviation, the MeSH descriptors and the publication types
+ * are extracted too, by an automaton with three more paths.
+ * Events per state, records and authors are counted for PubMedMetrics, as PubMedAuthorCountHandler counts them.
+ *
+ * This handler is also a SubtreeFilter: inside a record, anything no path leads into is skipped by engines that
+ * can skip ahead.  The SCAN engine only passes us author lists, so it can't be used with this handler.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedRecordHandler extends DefaultHandler implements SubtreeFilter {
+
+    /**
+     * Return a new handler that passes each record to the listener
+     * @param listener receives each record
+     * @return new instance
+     */
+    public static PubMedRecordHandler newInstance(PubMedRecordListener listener) {
+        return new PubMedRecordHandler(listener);
+    }
+
+    /**
+     * Return the number of records passed to the listener so far
+     * @return number of records
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Return the number of deleted PMIDs passed to the listener so far
+     * @return number of deletions
+     */
+    public long getDeletionCount() {
+        return deletionCount;
+    }
+
+    /**
+     * Return true if we have no use for the element that is starting, nor for anything inside it.
+     * @param element qualified name of the element that is starting
+     * @return true if the whole subtree can be skipped
+     */
+    @Override
+    public boolean skipsSubtree(String element) {
+        return cursor.skipsSubtree(element);
+    }
+
+    // fields we extract
+    private static final int RECORD = 0;
+    private static final int PMID = 1;
+    private static final int JOURNAL = 2;
+    private static final int YEAR = 3;
+    private static final int AUTHOR = 4;
+    private static final int FIRST_NAME = 5;
+    private static final int LAST_NAME = 6;
+    private static final int DELETED_PMID = 7;
+    private static final int JOURNAL_ABBREVIATION = 8;
+    private static final int PUBLICATION_TYPE = 9;
+    private static final int DESCRIPTOR = 10;
+    private static final int INITIALS = 11;
+
+    // where the fields of an article are
+    private static final String ARTICLE = "PubmedArticle/MedlineCitation/Article";
+    private static final String AUTHOR_PATH = ARTICLE + "/AuthorList/Author";
+
+    // the paths of every record, and of deletions - outside a record, we skip what the author count handler skips,
+    // but for deletions, which start a path of ours
+    private static final PathAutomaton.Builder PATHS = PathAutomaton.builder()
+            .path(RECORD, "PubmedArticle")
+            .text(PMID, "PubmedArticle/MedlineCitation/PMID")
+            .text(JOURNAL, ARTICLE + "/Journal/Title")
+            .text(YEAR, ARTICLE + "/Journal/JournalIssue/PubDate/Year")
+            .text(YEAR, ARTICLE + "/Journal/JournalIssue/PubDate/MedlineDate")
+            .path(AUTHOR, AUTHOR_PATH)
+            .text(FIRST_NAME, AUTHOR_PATH + "/ForeName")
+            .text(LAST_NAME, AUTHOR_PATH + "/LastName")
+            .text(INITIALS, AUTHOR_PATH + "/Initials")
+            .text(DELETED_PMID, "DeleteCitation/PMID")
+            .skipping(PubMedAuthorCountHandler.SKIP_OUTSIDE_ARTICLE);
+
+    // records without facets, and with them
+    private static final PathAutomaton RECORDS = PATHS.build();
+    private static final PathAutomaton RECORDS_WITH_FACETS = PATHS
+            .text(JOURNAL_ABBREVIATION, ARTICLE + "/Journal/ISOAbbreviation")
+            .text(PUBLICATION_TYPE, ARTICLE + "/PublicationTypeList/PublicationType")
+            .text(DESCRIPTOR, "PubmedArticle/MedlineCitation/MeshHeadingList/MeshHeading/DescriptorName")
+            .build();
+
+    /**
+     * Called each time an element starts.
+     * The cursor follows the element, and if it starts a record, we clear the record.
+     *
+     * @param uri not used
+     * @param localName not used
+     * @param qualifiedName element name
+     * @param attributes not used
+     */
+    @Override
+    public void startElement(String uri, String localName, String qualifiedName, Attributes attributes) {
+        eventCount++;
+        int state = cursor.getState();
+        if (cursor.start(qualifiedName) == RECORD) {
+            record.clear();
+        }
+        if (cursor.getState() != state) {
+            counters.leave(state, eventCount);
+        }
+    }
+
+    /**
+     * Called each time an element ends.
+     * The cursor follows the element, and if it ends a field, we set the field on the record - or pass on the
+     * record, or a deleted PMID.
+     *
+     * @param uri not used
+     * @param localName not used
+     * @param qualifiedName element name
+     */
+    @Override
+    public void endElement(String uri, String localName, String qualifiedName) {
+        eventCount++;
+        int state = cursor.getState();
+        int field = cursor.end();
+        if (cursor.getState() != state) {
+            counters.leave(state, eventCount);
+        }
+        switch (field) {
+            case RECORD:
+                recordCount++;
+                counters.article();
+                listener.record(record);
+                break;
+            case PMID:
+                record.setPmid(cursor.getText(PMID).parseLong());
+                break;
+            case JOURNAL:
+                cursor.getText(JOURNAL).trim();
+                record.setJournal(cursor.getText(JOURNAL));
+                break;
+            case YEAR:
+                record.setYear(cursor.getText(YEAR).parseYear());
+                break;
+            case AUTHOR:
+                cursor.getText(FIRST_NAME).trim();
+                cursor.getText(LAST_NAME).trim();
+                cursor.getText(INITIALS).trim();
+                record.addAuthor(cursor.getText(FIRST_NAME), cursor.getText(LAST_NAME), cursor.getText(INITIALS));
+                counters.author();
+                break;
+            case DELETED_PMID:
+                long pmid = cursor.getText(DELETED_PMID).parseLong();
+                if (pmid >= 0) {
+                    deletionCount++;
+                    listener.delete(pmid);
+                }
+                break;
+            case JOURNAL_ABBREVIATION:
+                cursor.getText(JOURNAL_ABBREVIATION).trim();
+                record.setJournalAbbreviation(cursor.getText(JOURNAL_ABBREVIATION));
+                break;
+            case PUBLICATION_TYPE:
+                cursor.getText(PUBLICATION_TYPE).trim();
+                record.addPublicationType(cursor.getText(PUBLICATION_TYPE));
+                break;
+            case DESCRIPTOR:
+                cursor.getText(DESCRIPTOR).trim();
+                record.addDescriptor(cursor.getText(DESCRIPTOR));
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Called when a document starts.
+     * Whatever the handler parsed before, the document starts outside every path.
+     */
+    @Override
+    public void startDocument() {
+        cursor.reset();
+    }
+
+    /**
+     * Called when the document ends.
+     * We publish whatever we counted since we last published, so metrics are complete at the end of a file.
+     */
+    @Override
+    public void endDocument() {
+        counters.leave(cursor.getState(), eventCount);
+        counters.publish();
+    }
+
+    /**
+     * Called when there is character data available.
+     * If we are in a text field, the cursor appends the character data to the field's text.
+     *
+     * @param chars character data
+     * @param start index within chars where our data starts
+     * @param length length of our data
+     */
+    @Override
+    public void characters(char[] chars, int start, int length) {
+        cursor.characters(chars, start, length);
+    }
+
+    // receives each record
+    private final PubMedRecordListener listener;
+
+    // follows where we are, and collects the text of each field
+    private final PathAutomaton.Cursor cursor;
+
+    // the record we are getting, reused for every record
+    private final PubMedRecord record = new PubMedRecord();
+
+    // number of records and deletions passed to the listener
+    private long recordCount;
+    private long deletionCount;
+
+    // events handled so far, settled into the counts of each state as we leave it
+    private long eventCount;
+
+    // counts events, records and authors for PubMedMetrics
+    private final PubMedMetrics.HandlerCounters counters;
+
+    // construct a new handler, extracting facets if the listener wants them
+    //
+    private PubMedRecordHandler(PubMedRecordListener listener) {
+        this.listener = listener;
+        PathAutomaton paths = listener.wantsFacets() ? RECORDS_WITH_FACETS : RECORDS;
+        cursor = paths.newCursor();
+        counters = new PubMedMetrics.HandlerCounters(PubMedRecordHandler.class, paths.getStateNames());
+    }
+}
@@ -0,0 +1,32 @@
+package com.mrsnottypants.nihpubmed;
+
+/**
+ * Receives each record a PubMedRecordHandler parses.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public interface PubMedRecordListener {
+
+    /**
+     * Called once for each PubmedArticle, in document order, when it ends.
+     * The record is reused for the next PubmedArticle, so copy anything you need to keep.
+     * @param record parsed record
+     */
+    void record(PubMedRecord record);
+
+    /**
+     * Called once for each PMID in a DeleteCitation, in document order.
+     * Update files list the citations they delete after the citations they add or revise.
+     * @param pmid PMID of a deleted citation
+     */
+    default void delete(long pmid) {}
+
+    /**
+     * Return true if we use the record's facets - its journal's ISO abbreviation, MeSH descriptors and publication
+     * types.  They are only collected for listeners that use them, as they cost a handler more of each record.
+     * @return true to collect facets
+     */
+    default boolean wantsFacets() {
+        return false;
+    }
+}
@@ -0,0 +1,906 @@
+package com.mrsnottypants.nihpubmed;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A fast-path engine for counting authors, that scans the raw UTF-8 bytes of a memory-mapped file instead of
+ * running a general XML parser.
+ *
+ * We only look for the 'Article', 'AuthorList', 'Author', 'ForeName', 'LastName' and 'Initials' elements.
+ * Each article is scanned in full before the handler sees any of it: the names are decoded (UTF-8, character
+ * references, the predefined entities and CDATA sections) into a reusable buffer, and then the handler is given
+ * the same start, end and character events for those six elements that a SAX parser would give it.
+ * Nothing else is passed to the handler, so this engine only suits handlers that care about nothing else -
+ * such as PubMedAuthorCountHandler.  Steady state, scanning allocates nothing per element or per author.
+ *
+ * If an article holds something we don't handle (an unknown entity, markup inside a name, bad UTF-8) we hand
+ * just that article to PubMedResult.parse, after the file's prolog, so entities its DTD declares still resolve.
+ * If the file is something we don't handle (not UTF-8, or a DOCTYPE with an internal subset that might declare
+ * entities) we hand the whole file, or the whole chunk after the file's prolog, to PubMedResult.parse.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedScanner {
+
+    // element names, as bytes for scanning and as strings for the handler
+    private static final byte[] ARTICLE = bytes(Element.ARTICLE);
+    private static final byte[] AUTHOR_LIST = bytes(Element.AUTHOR_LIST);
+    private static final byte[] AUTHOR = bytes(Element.AUTHOR);
+    private static final byte[] FIRST_NAME = bytes(Element.FIRST_NAME);
+    private static final byte[] LAST_NAME = bytes(Element.LAST_NAME);
+    private static final byte[] INITIALS = bytes(Element.INITIALS);
+
+    // markup we skip over
+    private static final byte[] COMMENT_START = ascii("<!--");
+    private static final byte[] COMMENT_END = ascii("-->");
+    private static final byte[] CDATA_START = ascii("<![CDATA[");
+    private static final byte[] CDATA_END = ascii("]]>");
+    private static final byte[] PI_END = ascii("?>");
+    private static final byte[] ARTICLE_END = ascii("</Article>");
+
+    // we never give the handler any attributes
+    private static final Attributes NO_ATTRIBUTES = new AttributesImpl();
+
+    // largest part of a file we map at a time, no article may be larger than this
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    // how much of the start of a file we look at for the prolog
+    private static final int PROLOG_SIZE = 4096;
+
+    // results of scanning an article, other than the index just past its end
+    private static final int INCOMPLETE = -1;
+    private static final int UNSUPPORTED = -2;
+
+    // a name element we haven't seen in an author
+    private static final int ABSENT = -1;
+
+    // ints we record per author, and where each name's start and length are among them
+    private static final int AUTHOR_INTS = 6;
+    private static final int FIRST_NAME_INDEX = 0;
+    private static final int LAST_NAME_INDEX = 2;
+    private static final int INITIALS_INDEX = 4;
+
+    /**
+     * Scan the whole file, passing author events to the handler
+     * @param path file to scan
+     * @param handler handler interested in authors only
+     * @throws IOException if the file cannot be read
+     */
+    public static void parse(Path path, DefaultHandler handler) throws IOException {
+        parse(path, -1, -1, handler, WINDOW_SIZE);
+    }
+
+    /**
+     * Scan part of a file, passing author events to the handler.
+     * The part must be a sequence of complete elements, such as a chunk from PubMedSplitter.
+     * @param path file to scan
+     * @param start offset of the first byte to scan
+     * @param end offset just past the last byte to scan
+     * @param handler handler interested in authors only
+     * @throws IOException if the file cannot be read
+     */
+    public static void parse(Path path, long start, long end, DefaultHandler handler) throws IOException {
+        parse(path, start, end, handler, WINDOW_SIZE);
+    }
+
+    /**
+     * Scan a file, or part of it, a window at a time
+     * @param path file to scan
+     * @param start offset of the first byte to scan, or -1 for the whole file
+     * @param end offset just past the last byte to scan, or -1 for the whole file
+     * @param handler handler interested in authors only
+     * @param windowSize largest part of the file we map at a time
+     * @throws IOException if the file cannot be read
+     */
+    static void parse(Path path, long start, long end, DefaultHandler handler, long windowSize)
+            throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            // the file's prolog tells us whether we can scan it at all, whether we scan all of it or a chunk
+            boolean wholeFile = start < 0;
+            long base = wholeFile ? 0 : start;
+            long limit = wholeFile ? channel.size() : end;
+            ByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), PROLOG_SIZE));
+            byte[] prolog = new byte[Math.max(0, indexOfRoot(head))];
+            head.duplicate().get(prolog);
+            if (!isSupported(head)) {
+                try (InputStream inputStream = wholeFile ? Files.newInputStream(path) :
+                        PubMedSplitter.wrap(prolog, PubMedSplitter.open(path, start, end))) {
+                    PubMedResult.parse(inputStream, handler);
+                }
+                return;
+            }
+
+            // map a window at a time, each window resumes where the last complete article ended
+            // the handler sees the windows as one document, as it would from a parser
+            PubMedScanner scanner = new PubMedScanner(handler, prolog);
+            scanner.document(true);
+            while (base < limit) {
+                long length = Math.min(windowSize, limit - base);
+                boolean lastWindow = base + length >= limit;
+                int resume = scanner.scan(channel.map(FileChannel.MapMode.READ_ONLY, base, length), lastWindow);
+                if (lastWindow) {
+                    break;
+                }
+                if (resume <= 0) {
+                    throw new PubMedResultException(String.format("record at %d too large to scan", base));
+                }
+                base += resume;
+            }
+            scanner.document(false);
+        }
+    }
+
+    /**
+     * Return true if we can scan a file with this prolog: UTF-8, and no internal DTD subset
+     * @param prolog the start of the file
+     * @return true if we can scan the file
+     */
+    static boolean isSupported(ByteBuffer prolog) {
+
+        // a byte order mark other than UTF-8's, or a zero byte, means UTF-16 or UTF-32
+        int limit = prolog.limit();
+        if (limit >= 2 && ((prolog.get(0) & 0xff) == 0xfe || (prolog.get(0) & 0xff) == 0xff ||
+                prolog.get(0) == 0 || prolog.get(1) == 0)) {
+            return false;
+        }
+
+        // look at the XML declaration and the DOCTYPE, stop at the first element
+        String text = latin1(prolog);
+        int root = indexOfRoot(prolog);
+        String head = root < 0 ? text : text.substring(0, root);
+
+        // the encoding must be UTF-8 (the default)
+        int declarationEnd = head.indexOf("?>");
+        String declaration = head.startsWith("<?xml") && declarationEnd > 0 ? head.substring(0, declarationEnd) : "";
+        int encoding = declaration.indexOf("encoding");
+        if (encoding >= 0) {
+            int quote = encoding + "encoding".length();
+            while (quote < declaration.length() && declaration.charAt(quote) != '"' &&
+                    declaration.charAt(quote) != '\'') {
+                quote++;
+            }
+            String value = declaration.substring(Math.min(declaration.length(), quote + 1)).toUpperCase();
+            if (!value.startsWith("UTF-8") && !value.startsWith("UTF8")) {
+                return false;
+            }
+        }
+
+        // an internal subset may declare entities we don't know about
+        int doctype = head.indexOf("<!DOCTYPE");
+        return doctype < 0 || head.indexOf('[', doctype) < 0;
+    }
+
+    /**
+     * Return the index of the root element's start tag, which ends the prolog
+     * @param head the start of the file
+     * @return index of the root's start tag, or -1 if it isn't in head
+     */
+    static int indexOfRoot(ByteBuffer head) {
+        String text = latin1(head);
+        int root = text.indexOf('<');
+        while (root >= 0 && root + 1 < text.length() &&
+                (text.charAt(root + 1) == '?' || text.charAt(root + 1) == '!')) {
+            root = text.indexOf('<', root + 1);
+        }
+        return root;
+    }
+
+    // bytes as ISO-8859-1 text, one char per byte
+    //
+    private static String latin1(ByteBuffer bytes) {
+        byte[] copy = new byte[bytes.limit()];
+        bytes.duplicate().get(copy);
+        return new String(copy, StandardCharsets.ISO_8859_1);
+    }
+
+    // handler we pass events to
+    private final DefaultHandler handler;
+
+    // the file's prolog, up to the root's start tag, parsed ahead of any article we fall back on
+    private final byte[] prolog;
+
+    // window we are scanning
+    private ByteBuffer buffer;
+    private int limit;
+
+    // decoded names of the current article
+    private char[] text = new char[1024];
+    private int textLength;
+
+    // six ints per author of the current article: first name, last name and initials, each a start and length
+    private int[] authors = new int[AUTHOR_INTS * 64];
+    private int authorCount;
+
+    // author count at the end of each author list of the current article
+    private int[] listEnds = new int[4];
+    private int listCount;
+
+    // construct a scanner
+    //
+    private PubMedScanner(DefaultHandler handler, byte[] prolog) {
+        this.handler = handler;
+        this.prolog = prolog;
+    }
+
+    /**
+     * Scan a window, passing each complete article to the handler
+     * @param window window to scan
+     * @param lastWindow true if nothing follows this window
+     * @return index to resume scanning from in the next window
+     */
+    private int scan(ByteBuffer window, boolean lastWindow) {
+
+        buffer = window;
+        limit = window.limit();
+        int i = 0;
+        while (true) {
+
+            // every '<' outside a comment, CDATA section or processing instruction starts a tag
+            int lt = indexOf((byte)'<', i);
+            if (lt < 0) {
+                return limit;
+            }
+            // too close to the end of the window to be an article
+            if (lt + ARTICLE.length + 2 > limit) {
+                return lastWindow ? limit : lt;
+            }
+
+            byte b = buffer.get(lt + 1);
+            int next;
+            if (b == '!' || b == '?') {
+                next = skipMarkup(lt);
+            } else if (b == 'A' && isStartTag(lt, ARTICLE)) {
+                next = scanArticle(lt);
+                if (next == UNSUPPORTED) {
+                    next = fallback(lt);
+                }
+            } else {
+                next = lt + 1;
+            }
+
+            if (next == INCOMPLETE) {
+                return incomplete(lt, lastWindow);
+            }
+            i = next;
+        }
+    }
+
+    /**
+     * Return where to resume when something doesn't fit in the window
+     * @param index start of what doesn't fit
+     * @param lastWindow true if nothing follows this window
+     * @return index to resume from
+     */
+    private int incomplete(int index, boolean lastWindow) {
+        if (lastWindow) {
+            throw new PubMedResultException(String.format("cannot parse, unexpected end of input after %d", index));
+        }
+        return index;
+    }
+
+    /**
+     * Scan an article, then pass its authors to the handler
+     * @param start index of the article's start tag
+     * @return index just past the article's end tag, INCOMPLETE or UNSUPPORTED
+     */
+    private int scanArticle(int start) {
+
+        int tagEnd = indexOfTagEnd(start + 1 + ARTICLE.length);
+        if (tagEnd < 0) {
+            return INCOMPLETE;
+        }
+        textLength = 0;
+        authorCount = 0;
+        listCount = 0;
+        if (buffer.get(tagEnd - 1) == '/') {
+            emitArticle();
+            return tagEnd + 1;
+        }
+
+        boolean inList = false;
+        boolean inAuthor = false;
+        int i = tagEnd + 1;
+        while (true) {
+
+            int lt = indexOf((byte)'<', i);
+            if (lt < 0 || lt + 1 >= limit) {
+                return INCOMPLETE;
+            }
+            byte b = buffer.get(lt + 1);
+
+            // end tags
+            if (b == '/') {
+                if (isEndTag(lt, ARTICLE)) {
+                    if (inList) {
+                        return UNSUPPORTED;
+                    }
+                    tagEnd = indexOfTagEnd(lt + 2);
+                    if (tagEnd < 0) {
+                        return INCOMPLETE;
+                    }
+                    emitArticle();
+                    return tagEnd + 1;
+                } else if (inAuthor && isEndTag(lt, AUTHOR)) {
+                    inAuthor = false;
+                } else if (inList && !inAuthor && isEndTag(lt, AUTHOR_LIST)) {
+                    inList = false;
+                    closeList();
+                }
+                i = lt + 2;
+                continue;
+            }
+
+            // comments, CDATA sections and processing instructions
+            if (b == '!' || b == '?') {
+                i = skipMarkup(lt);
+                if (i < 0) {
+                    return INCOMPLETE;
+                }
+                continue;
+            }
+
+            // start tags
+            int nameIndex = ABSENT;
+            if (!inList && isStartTag(lt, AUTHOR_LIST)) {
+                inList = true;
+                tagEnd = indexOfTagEnd(lt + 1 + AUTHOR_LIST.length);
+                if (tagEnd >= 0 && buffer.get(tagEnd - 1) == '/') {
+                    inList = false;
+                    closeList();
+                }
+            } else if (inList && !inAuthor && isStartTag(lt, AUTHOR)) {
+                inAuthor = true;
+                openAuthor();
+                tagEnd = indexOfTagEnd(lt + 1 + AUTHOR.length);
+                if (tagEnd >= 0 && buffer.get(tagEnd - 1) == '/') {
+                    inAuthor = false;
+                }
+            } else if (inAuthor && isStartTag(lt, FIRST_NAME)) {
+                nameIndex = AUTHOR_INTS * (authorCount - 1) + FIRST_NAME_INDEX;
+                tagEnd = indexOfTagEnd(lt + 1 + FIRST_NAME.length);
+            } else if (inAuthor && isStartTag(lt, LAST_NAME)) {
+                nameIndex = AUTHOR_INTS * (authorCount - 1) + LAST_NAME_INDEX;
+                tagEnd = indexOfTagEnd(lt + 1 + LAST_NAME.length);
+            } else if (inAuthor && isStartTag(lt, INITIALS)) {
+                nameIndex = AUTHOR_INTS * (authorCount - 1) + INITIALS_INDEX;
+                tagEnd = indexOfTagEnd(lt + 1 + INITIALS.length);
+            } else {
+                i = lt + 1;
+                continue;
+            }
+            if (tagEnd < 0) {
+                return INCOMPLETE;
+            }
+            i = tagEnd + 1;
+
+            // names
+            if (nameIndex != ABSENT) {
+                if (buffer.get(tagEnd - 1) == '/') {
+                    authors[nameIndex] = textLength;
+                    authors[nameIndex + 1] = 0;
+                } else {
+                    i = scanName(i, nameIndex, nameElement(nameIndex % AUTHOR_INTS));
+                    if (i < 0) {
+                        return i;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Decode the contents of a name element into our text buffer
+     * @param start index of the first content byte
+     * @param nameIndex where to record the name's start and length
+     * @param name the name element
+     * @return index just past the name's end tag, INCOMPLETE or UNSUPPORTED
+     */
+    private int scanName(int start, int nameIndex, byte[] name) {
+
+        int nameStart = textLength;
+        int i = start;
+        while (i < limit) {
+            byte b = buffer.get(i);
+
+            // markup - the end tag, a CDATA section or a comment, nothing else
+            if (b == '<') {
+                if (i + 1 < limit && buffer.get(i + 1) == '/') {
+                    if (!isEndTag(i, name)) {
+                        return UNSUPPORTED;
+                    }
+                    authors[nameIndex] = nameStart;
+                    authors[nameIndex + 1] = textLength - nameStart;
+                    int tagEnd = indexOfTagEnd(i + 2);
+                    return tagEnd < 0 ? INCOMPLETE : tagEnd + 1;
+                }
+                if (startsWith(i, CDATA_START)) {
+                    int end = indexOf(CDATA_END, i + CDATA_START.length);
+                    if (end < 0) {
+                        return INCOMPLETE;
+                    }
+                    for (int j = i + CDATA_START.length; j < end; ) {
+                        j = decode(j, end);
+                        if (j < 0) {
+                            return j;
+                        }
+                    }
+                    i = end + CDATA_END.length;
+                } else if (startsWith(i, COMMENT_START)) {
+                    int end = indexOf(COMMENT_END, i + COMMENT_START.length);
+                    if (end < 0) {
+                        return INCOMPLETE;
+                    }
+                    i = end + COMMENT_END.length;
+                } else {
+                    return i + 1 < limit ? UNSUPPORTED : INCOMPLETE;
+                }
+            }
+
+            // character and entity references
+            else if (b == '&') {
+                i = decodeReference(i);
+                if (i < 0) {
+                    return i;
+                }
+            }
+
+            // character data
+            else {
+                i = decode(i, limit);
+                if (i < 0) {
+                    return i;
+                }
+            }
+        }
+        return INCOMPLETE;
+    }
+
+    /**
+     * Decode one character of UTF-8 into our text buffer, normalizing line ends like an XML parser
+     * @param i index of the character's first byte
+     * @param end index we may not read past
+     * @return index of the next character, INCOMPLETE or UNSUPPORTED
+     */
+    private int decode(int i, int end) {
+
+        int b = buffer.get(i);
+
+        // ASCII, with \r\n and \r becoming \n
+        if (b >= 0) {
+            if (b == '\r') {
+                append('\n');
+                return i + 1 < end && buffer.get(i + 1) == '\n' ? i + 2 : i + 1;
+            }
+            append((char)b);
+            return i + 1;
+        }
+
+        // multi-byte sequence
+        int length;
+        int codePoint;
+        if ((b & 0xe0) == 0xc0) {
+            length = 2;
+            codePoint = b & 0x1f;
+        } else if ((b & 0xf0) == 0xe0) {
+            length = 3;
+            codePoint = b & 0x0f;
+        } else if ((b & 0xf8) == 0xf0) {
+            length = 4;
+            codePoint = b & 0x07;
+        } else {
+            return UNSUPPORTED;
+        }
+        if (i + length > end) {
+            return end == limit ? INCOMPLETE : UNSUPPORTED;
+        }
+        for (int j = 1; j < length; j++) {
+            int continuation = buffer.get(i + j);
+            if ((continuation & 0xc0) != 0x80) {
+                return UNSUPPORTED;
+            }
+            codePoint = (codePoint << 6) | (continuation & 0x3f);
+        }
+        if (!appendCodePoint(codePoint, length)) {
+            return UNSUPPORTED;
+        }
+        return i + length;
+    }
+
+    /**
+     * Decode a character reference or predefined entity into our text buffer
+     * @param i index of the '&'
+     * @return index just past the ';', INCOMPLETE or UNSUPPORTED
+     */
+    private int decodeReference(int i) {
+
+        int semicolon = -1;
+        for (int j = i + 1; j < limit && j < i + 12; j++) {
+            if (buffer.get(j) == ';') {
+                semicolon = j;
+                break;
+            }
+        }
+        if (semicolon < 0) {
+            return i + 12 > limit ? INCOMPLETE : UNSUPPORTED;
+        }
+
+        // character references
+        if (buffer.get(i + 1) == '#') {
+            boolean hex = buffer.get(i + 2) == 'x';
+            int codePoint = 0;
+            int digits = 0;
+            for (int j = hex ? i + 3 : i + 2; j < semicolon; j++) {
+                int digit = Character.digit(buffer.get(j), hex ? 16 : 10);
+                if (digit < 0) {
+                    return UNSUPPORTED;
+                }
+                codePoint = codePoint * (hex ? 16 : 10) + digit;
+                digits++;
+            }
+            if (digits == 0 || !appendCodePoint(codePoint, 0)) {
+                return UNSUPPORTED;
+            }
+            return semicolon + 1;
+        }
+
+        // the predefined entities, anything else needs a DTD
+        int length = semicolon - i - 1;
+        char c;
+        if (length == 3 && startsWith(i + 1, "amp")) {
+            c = '&';
+        } else if (length == 2 && startsWith(i + 1, "lt")) {
+            c = '<';
+        } else if (length == 2 && startsWith(i + 1, "gt")) {
+            c = '>';
+        } else if (length == 4 && startsWith(i + 1, "quot")) {
+            c = '"';
+        } else if (length == 4 && startsWith(i + 1, "apos")) {
+            c = '\'';
+        } else {
+            return UNSUPPORTED;
+        }
+        append(c);
+        return semicolon + 1;
+    }
+
+    /**
+     * Append a code point to our text buffer
+     * @param codePoint code point
+     * @param encodedLength number of UTF-8 bytes it was encoded in, 0 for a character reference
+     * @return false if it isn't a valid code point, or was not encoded in the shortest form
+     */
+    private boolean appendCodePoint(int codePoint, int encodedLength) {
+        if (codePoint > Character.MAX_CODE_POINT || (codePoint >= 0xd800 && codePoint <= 0xdfff) ||
+                (encodedLength == 2 && codePoint < 0x80) || (encodedLength == 3 && codePoint < 0x800) ||
+                (encodedLength == 4 && codePoint < 0x10000)) {
+            return false;
+        }
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            append((char)codePoint);
+        } else {
+            append(Character.highSurrogate(codePoint));
+            append(Character.lowSurrogate(codePoint));
+        }
+        return true;
+    }
+
+    /**
+     * Append a character to our text buffer, growing it if needed
+     * @param c character
+     */
+    private void append(char c) {
+        if (textLength == text.length) {
+            char[] larger = new char[text.length * 2];
+            System.arraycopy(text, 0, larger, 0, textLength);
+            text = larger;
+        }
+        text[textLength++] = c;
+    }
+
+    /**
+     * Start a new author, with no names yet
+     */
+    private void openAuthor() {
+        if (AUTHOR_INTS * (authorCount + 1) > authors.length) {
+            int[] larger = new int[authors.length * 2];
+            System.arraycopy(authors, 0, larger, 0, AUTHOR_INTS * authorCount);
+            authors = larger;
+        }
+        int index = AUTHOR_INTS * authorCount++;
+        for (int name = 0; name < AUTHOR_INTS; name += 2) {
+            authors[index + name] = 0;
+            authors[index + name + 1] = ABSENT;
+        }
+    }
+
+    /**
+     * Return the name element whose start and length are recorded at this offset within an author
+     * @param offset FIRST_NAME_INDEX, LAST_NAME_INDEX or INITIALS_INDEX
+     * @return name element, as bytes
+     */
+    private static byte[] nameElement(int offset) {
+        switch (offset) {
+            case FIRST_NAME_INDEX:
+                return FIRST_NAME;
+            case LAST_NAME_INDEX:
+                return LAST_NAME;
+            default:
+                return INITIALS;
+        }
+    }
+
+    /**
+     * Close the current author list
+     */
+    private void closeList() {
+        if (listCount == listEnds.length) {
+            int[] larger = new int[listEnds.length * 2];
+            System.arraycopy(listEnds, 0, larger, 0, listCount);
+            listEnds = larger;
+        }
+        listEnds[listCount++] = authorCount;
+    }
+
+    /**
+     * Tell the handler the document starts, or ends
+     * @param start true at the start, false at the end
+     */
+    private void document(boolean start) {
+        try {
+            if (start) {
+                handler.startDocument();
+            } else {
+                handler.endDocument();
+            }
+        } catch (SAXException ex) {
+            throw new PubMedResultException("cannot parse", ex);
+        }
+    }
+
+    /**
+     * Pass the article we just scanned to the handler, as SAX events
+     */
+    private void emitArticle() {
+        try {
+            handler.startElement("", "", Element.ARTICLE.getName(), NO_ATTRIBUTES);
+            int author = 0;
+            for (int list = 0; list < listCount; list++) {
+                handler.startElement("", "", Element.AUTHOR_LIST.getName(), NO_ATTRIBUTES);
+                for (; author < listEnds[list]; author++) {
+                    handler.startElement("", "", Element.AUTHOR.getName(), NO_ATTRIBUTES);
+                    emitName(Element.FIRST_NAME, AUTHOR_INTS * author + FIRST_NAME_INDEX);
+                    emitName(Element.LAST_NAME, AUTHOR_INTS * author + LAST_NAME_INDEX);
+                    emitName(Element.INITIALS, AUTHOR_INTS * author + INITIALS_INDEX);
+                    handler.endElement("", "", Element.AUTHOR.getName());
+                }
+                handler.endElement("", "", Element.AUTHOR_LIST.getName());
+            }
+            handler.endElement("", "", Element.ARTICLE.getName());
+        } catch (SAXException ex) {
+            throw new PubMedResultException("cannot parse", ex);
+        }
+    }
+
+    /**
+     * Pass a name to the handler, if the author had one
+     * @param element name element
+     * @param index where the name's start and length are recorded
+     * @throws SAXException if the handler fails
+     */
+    private void emitName(Element element, int index) throws SAXException {
+        if (authors[index + 1] == ABSENT) {
+            return;
+        }
+        handler.startElement("", "", element.getName(), NO_ATTRIBUTES);
+        if (authors[index + 1] > 0) {
+            handler.characters(text, authors[index], authors[index + 1]);
+        }
+        handler.endElement("", "", element.getName());
+    }
+
+    /**
+     * Hand an article we can't scan to PubMedResult.parse, after the file's prolog
+     * @param start index of the article's start tag
+     * @return index just past the article's end tag, or INCOMPLETE
+     */
+    private int fallback(int start) {
+        int end = indexOf(ARTICLE_END, start);
+        if (end < 0) {
+            return INCOMPLETE;
+        }
+        end += ARTICLE_END.length;
+        ByteBuffer article = buffer.duplicate();
+        article.limit(end).position(start);
+        PubMedResult.parse(PubMedSplitter.wrap(prolog, new ByteBufferInputStream(article)), handler);
+        return end;
+    }
+
+    /**
+     * Skip a comment, CDATA section, processing instruction or declaration
+     * @param start index of the '<'
+     * @return index just past its end, or INCOMPLETE
+     */
+    private int skipMarkup(int start) {
+        int end;
+        if (startsWith(start, COMMENT_START)) {
+            end = indexOf(COMMENT_END, start + COMMENT_START.length);
+            return end < 0 ? INCOMPLETE : end + COMMENT_END.length;
+        } else if (startsWith(start, CDATA_START)) {
+            end = indexOf(CDATA_END, start + CDATA_START.length);
+            return end < 0 ? INCOMPLETE : end + CDATA_END.length;
+        } else if (buffer.get(start + 1) == '?') {
+            end = indexOf(PI_END, start + 2);
+            return end < 0 ? INCOMPLETE : end + PI_END.length;
+        }
+        end = indexOfTagEnd(start + 2);
+        return end < 0 ? INCOMPLETE : end + 1;
+    }
+
+    /**
+     * Return true if a start tag for the element is at the index
+     * @param lt index of the '<'
+     * @param name element name
+     * @return true if it is a start tag for the element
+     */
+    private boolean isStartTag(int lt, byte[] name) {
+        int end = lt + 1 + name.length;
+        return end < limit && startsWith(lt + 1, name) && PubMedSplitter.isNameEnd(buffer.get(end));
+    }
+
+    /**
+     * Return true if an end tag for the element is at the index
+     * @param lt index of the '<'
+     * @param name element name
+     * @return true if it is an end tag for the element
+     */
+    private boolean isEndTag(int lt, byte[] name) {
+        int end = lt + 2 + name.length;
+        return end < limit && startsWith(lt + 2, name) && PubMedSplitter.isNameEnd(buffer.get(end));
+    }
+
+    /**
+     * Return the index of the '>' that ends a tag, skipping over quoted attribute values
+     * @param from index inside the tag
+     * @return index of the '>', or INCOMPLETE
+     */
+    private int indexOfTagEnd(int from) {
+        byte quote = 0;
+        for (int i = from; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return i;
+            }
+        }
+        return INCOMPLETE;
+    }
+
+    /**
+     * Return the index of the next occurrence of the byte
+     * @param b byte to find
+     * @param from index to search from
+     * @return index, or -1
+     */
+    private int indexOf(byte b, int from) {
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return the index of the next occurrence of the pattern
+     * @param pattern bytes to find
+     * @param from index to search from
+     * @return index, or -1
+     */
+    private int indexOf(byte[] pattern, int from) {
+        for (int i = from; i + pattern.length <= limit; i++) {
+            if (buffer.get(i) == pattern[0] && startsWith(i, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return true if the pattern is at the index
+     * @param i index
+     * @param pattern bytes to match
+     * @return true if they match
+     */
+    private boolean startsWith(int i, byte[] pattern) {
+        if (i + pattern.length > limit) {
+            return false;
+        }
+        for (int j = 0; j < pattern.length; j++) {
+            if (buffer.get(i + j) != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return true if the ASCII pattern is at the index
+     * @param i index
+     * @param pattern ASCII characters to match
+     * @return true if they match
+     */
+    private boolean startsWith(int i, String pattern) {
+        if (i + pattern.length() > limit) {
+            return false;
+        }
+        for (int j = 0; j < pattern.length(); j++) {
+            if (buffer.get(i + j) != pattern.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // element name as UTF-8 bytes
+    //
+    private static byte[] bytes(Element element) {
+        return element.getName().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // ASCII markup as bytes
+    //
+    private static byte[] ascii(String markup) {
+        return markup.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Stream over the remaining bytes of a buffer
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        // construct a stream over the buffer's remaining bytes
+        //
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+    }
+}
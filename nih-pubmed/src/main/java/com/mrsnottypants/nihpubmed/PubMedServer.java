@@ -0,0 +1,385 @@
+package com.mrsnottypants.nihpubmed;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A resident server that counts authors once, and answers author counts over HTTP on the loopback interface for
+ * as long as it runs, so a client pays neither JVM startup nor a parse per question.
+ *
+ * The counts are published as an immutable Snapshot held in an AtomicReference.  A request reads the current
+ * snapshot once and answers entirely from it, so readers take no locks and never see a half-applied file.
+ * Ingesting files builds their counts on the side, merges them into a copy of the current counts, and swaps the
+ * copy in - readers carry on with the old snapshot until the swap, and with the new one after it.  Ingests are
+ * serialized among themselves, and a file already ingested, by name, is skipped.  Counts may be kept off the heap,
+ * in an OffHeapAuthorCountTable, in which case a replaced snapshot's memory is freed once nothing refers to it.
+ *
+ * Endpoints, all plain UTF-8 text:
+ *   GET  /count?first=Amy&amp;last=Brown    the author's count
+ *   POST /counts                          one author per line, first and last name separated by a tab, as in a
+ *                                         watchlist file - answers each line with a tab and the author's count
+ *   POST /ingest?path=file|dir|glob       counts the files, and publishes a new snapshot
+ *   GET  /status                          the snapshot's version, number of authors and number of files
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedServer {
+
+    // HTTP status codes we answer with
+    private static final int OK = 200;
+    private static final int BAD_REQUEST = 400;
+    private static final int METHOD_NOT_ALLOWED = 405;
+
+    // separates the first and last name, and the count, of an author in a batch
+    private static final char SEPARATOR = '\t';
+
+    /**
+     * The counts of every author in the files ingested so far.  A snapshot never changes once published,
+     * so it can be read by any number of threads without locking.
+     */
+    public static final class Snapshot {
+
+        // number of ingests that published a snapshot before this one
+        private final long version;
+
+        // names of the files ingested so far, in the order they were ingested
+        private final List<String> files;
+
+        // counts of every author, a table on or off the heap, never changed once the snapshot is built
+        private final AuthorCounts counts;
+        private final int size;
+
+        // construct a snapshot
+        //
+        private Snapshot(long version, List<String> files, AuthorCounts counts, int size) {
+            this.version = version;
+            this.files = Collections.unmodifiableList(files);
+            this.counts = counts;
+            this.size = size;
+        }
+
+        /**
+         * Return the snapshot's version, zero for the empty snapshot a server starts with
+         * @return version
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Return the names of the files counted
+         * @return file names, in the order they were ingested
+         */
+        public List<String> getFiles() {
+            return files;
+        }
+
+        /**
+         * Return how often the author is listed in the files counted
+         * @param author author of interest
+         * @return count, zero if the author isn't listed
+         */
+        public int getAuthorCount(Author author) {
+            return counts.getAuthorCount(author);
+        }
+
+        /**
+         * Return the number of distinct authors
+         * @return number of authors
+         */
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Return a new server with no counts, that isn't listening yet
+     * @param threads maximum number of requests answered at the same time, and of files parsed at the same time
+     * @param engine parse engine for ingested files
+     * @return new instance
+     */
+    public static PubMedServer newInstance(int threads, PubMedEngine engine) {
+        return newInstance(threads, engine, false);
+    }
+
+    /**
+     * Return a new server with no counts, that isn't listening yet
+     * @param threads maximum number of requests answered at the same time, and of files parsed at the same time
+     * @param engine parse engine for ingested files
+     * @param offHeap true to keep the counts in an OffHeapAuthorCountTable, so the heap doesn't grow with them
+     * @return new instance
+     */
+    public static PubMedServer newInstance(int threads, PubMedEngine engine, boolean offHeap) {
+        return new PubMedServer(threads, engine, offHeap);
+    }
+
+    // maximum number of requests answered, and files parsed, at the same time
+    private final int threads;
+
+    // parse engine for ingested files
+    private final PubMedEngine engine;
+
+    // whether the counts are kept off the heap
+    private final boolean offHeap;
+
+    // the snapshot requests are answered from, swapped whole when files are ingested
+    private final AtomicReference<Snapshot> current;
+
+    // held while ingesting, so ingests run one at a time without holding up start, getPort or stop
+    private final Object ingestLock = new Object();
+
+    // the HTTP server and the threads that answer its requests, null until we start
+    private HttpServer server;
+    private ExecutorService executor;
+
+    // construct a server
+    //
+    private PubMedServer(int threads, PubMedEngine engine, boolean offHeap) {
+        this.threads = threads;
+        this.engine = engine;
+        this.offHeap = offHeap;
+        AuthorCounts counts = offHeap ? new OffHeapAuthorCountTable() : new AuthorCountTable();
+        current = new AtomicReference<>(new Snapshot(0, new ArrayList<>(), counts, 0));
+    }
+
+    /**
+     * Return the snapshot requests are currently answered from
+     * @return current snapshot
+     */
+    public Snapshot getSnapshot() {
+        return current.get();
+    }
+
+    /**
+     * Count the authors of the files not ingested before, and publish a snapshot of the counts with theirs added.
+     * Readers are answered from the previous snapshot until the new one is published.
+     * @param paths files to ingest
+     * @return the snapshot published, or the current one if every file was ingested before
+     * @throws PubMedResultException if a file cannot be parsed, in which case nothing is published
+     */
+    public Snapshot ingest(List<Path> paths) {
+        synchronized (ingestLock) {
+
+            // only files we haven't counted yet
+            Snapshot snapshot = current.get();
+            List<Path> newPaths = new ArrayList<>();
+            List<String> files = new ArrayList<>(snapshot.getFiles());
+            for (Path path : paths) {
+                String file = path.getFileName().toString();
+                if (!files.contains(file)) {
+                    files.add(file);
+                    newPaths.add(path);
+                }
+            }
+            if (newPaths.isEmpty()) {
+                return snapshot;
+            }
+
+            // count the new files on the side, then add them to a copy of the current counts
+            // the workers' tables are on the heap either way, they only live as long as the ingest
+            PubMedMetrics.expect(newPaths);
+            AuthorCounts added = PubMedBatch.countAuthors(newPaths, threads, engine).getCounts();
+            Snapshot next;
+            if (offHeap) {
+                OffHeapAuthorCountTable counts = new OffHeapAuthorCountTable(snapshot.size());
+                counts.merge(snapshot.counts);
+                counts.merge(added);
+                next = new Snapshot(snapshot.getVersion() + 1, files, counts, counts.size());
+            } else {
+                AuthorCountTable counts = new AuthorCountTable(snapshot.size());
+                counts.merge(snapshot.counts);
+                counts.merge(added);
+                next = new Snapshot(snapshot.getVersion() + 1, files, counts, counts.size());
+            }
+
+            // publish - we're the only writer, so nobody swapped a snapshot in since we read ours
+            current.set(next);
+            return next;
+        }
+    }
+
+    /**
+     * Start answering requests on the loopback interface
+     * @param port port to listen on, zero for any free port
+     * @throws IOException if we cannot listen on the port
+     * @throws IllegalStateException if the server was already started
+     */
+    public synchronized void start(int port) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("server already started");
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/count", exchange -> respond(exchange, "GET", () -> count(exchange)));
+        server.createContext("/counts", exchange -> respond(exchange, "POST", () -> counts(exchange)));
+        server.createContext("/ingest", exchange -> respond(exchange, "POST", () -> ingest(exchange)));
+        server.createContext("/status", exchange -> respond(exchange, "GET", this::status));
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Return the port we answer requests on
+     * @return port
+     * @throws IllegalStateException if the server hasn't been started
+     */
+    public synchronized int getPort() {
+        if (server == null) {
+            throw new IllegalStateException("server not started");
+        }
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop answering requests, giving requests in progress a moment to finish
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(1);
+            executor.shutdown();
+            server = null;
+            executor = null;
+        }
+    }
+
+    // an answer to a request, which may fail because of what was asked
+    //
+    private interface Answer {
+        String get() throws IOException;
+    }
+
+    /**
+     * Answer a request with the given method, or tell the client what was wrong with it
+     * @param exchange request and response
+     * @param method method the endpoint accepts
+     * @param answer builds the response body
+     * @throws IOException if the response cannot be sent
+     */
+    private static void respond(HttpExchange exchange, String method, Answer answer) throws IOException {
+        int status = OK;
+        String body;
+        if (!method.equals(exchange.getRequestMethod())) {
+            status = METHOD_NOT_ALLOWED;
+            body = String.format("%s expects %s\n", exchange.getRequestURI().getPath(), method);
+        } else {
+            try {
+                body = answer.get();
+            } catch (IOException | IllegalArgumentException | PubMedResultException ex) {
+                status = BAD_REQUEST;
+                body = ex.getMessage() + "\n";
+            }
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    /**
+     * Answer the count of the author named by the query
+     * @param exchange request
+     * @return count
+     */
+    private String count(HttpExchange exchange) {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        if (!query.containsKey("last")) {
+            throw new IllegalArgumentException("expected ?first=...&last=...");
+        }
+        Author author = Author.of(query.get("first"), query.get("last"));
+        return current.get().getAuthorCount(author) + "\n";
+    }
+
+    /**
+     * Answer the counts of the authors in the request body, all from the same snapshot
+     * @param exchange request
+     * @return a line per author, with their count
+     * @throws IOException if the request body cannot be read
+     */
+    private String counts(HttpExchange exchange) throws IOException {
+        Snapshot snapshot = current.get();
+        StringBuilder body = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                int separator = line.indexOf(SEPARATOR);
+                String firstName = separator < 0 ? "" : line.substring(0, separator).trim();
+                String lastName = line.substring(separator + 1).trim();
+                body.append(firstName).append(SEPARATOR).append(lastName).append(SEPARATOR)
+                        .append(snapshot.getAuthorCount(Author.of(firstName, lastName))).append('\n');
+            }
+        }
+        return body.toString();
+    }
+
+    /**
+     * Ingest the files named by the query, and answer the version of the snapshot that includes them
+     * @param exchange request
+     * @return version
+     * @throws IOException if the files cannot be listed or read
+     */
+    private String ingest(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        if (!query.containsKey("path")) {
+            throw new IllegalArgumentException("expected ?path=...");
+        }
+        return String.format("version\t%d\n", ingest(PubMedBatch.listFiles(query.get("path"))).getVersion());
+    }
+
+    /**
+     * Answer the current snapshot's version, number of authors and number of files
+     * @return status
+     */
+    private String status() {
+        Snapshot snapshot = current.get();
+        return String.format("version\t%d\nauthors\t%d\nfiles\t%d\n",
+                snapshot.getVersion(), snapshot.size(), snapshot.getFiles().size());
+    }
+
+    /**
+     * Parse a raw query string into its decoded parameters
+     * @param rawQuery query string, may be null
+     * @return parameters by name, the last value of each
+     */
+    static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        try {
+            for (String parameter : rawQuery.split("&")) {
+                int equals = parameter.indexOf('=');
+                String name = equals < 0 ? parameter : parameter.substring(0, equals);
+                String value = equals < 0 ? "" : parameter.substring(equals + 1);
+                parameters.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException("UTF-8 is always supported", ex);
+        }
+        return parameters;
+    }
+}
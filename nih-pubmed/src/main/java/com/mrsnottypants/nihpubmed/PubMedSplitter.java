@@ -0,0 +1,619 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Splits a large PubMed XML file into chunks that can be parsed independently, and in parallel.
+ *
+ * Chunks always start at the start tag of a record element - 'PubmedArticle', or 'Article' - that is a child of
+ * the root, so no record ever straddles two chunks.  Which one it is is decided by the first record element found
+ * directly under the root, so a MedlineCitationSet, where 'Article' is nested inside each 'MedlineCitation', is
+ * not split at all.  Since all the record elements are siblings, the bytes between two record start tags are a
+ * sequence of complete elements.  The last chunk ends right before the root's end tag, so it holds whatever
+ * follows the last record too, such as the DeleteCitation of an update file.
+ * Each chunk is parsed wrapped in a synthetic root element, so the parser sees a well-formed document.
+ *
+ * Anything before the first record (the XML declaration, the DOCTYPE, the opening root tag) and the closing root
+ * tag are not part of any chunk.  A file whose DOCTYPE has an internal
+ * subset is not split either, since its records may use entities only the subset declares.
+ * We assume UTF-8 and that record tags don't appear inside comments or CDATA sections, which holds for PubMed.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedSplitter {
+
+    // record elements we split on, in order of preference
+    private static final String[] RECORD_ELEMENTS = { Element.PUBMED_ARTICLE.getName(), Element.ARTICLE.getName() };
+
+    // synthetic root element each chunk is wrapped in
+    private static final byte[] CHUNK_START = "<PubMedChunk>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CHUNK_END = "</PubMedChunk>".getBytes(StandardCharsets.UTF_8);
+
+    // how much of the file we read at a time while searching for tags
+    private static final int WINDOW_SIZE = 64 * 1024;
+
+    /**
+     * A self-contained byte range of a file
+     */
+    public static final class Chunk {
+
+        private final Path path;
+        private final long start;
+        private final long end;
+        private final boolean wholeFile;
+
+        // construct a chunk
+        //
+        private Chunk(Path path, long start, long end, boolean wholeFile) {
+            this.path = path;
+            this.start = start;
+            this.end = end;
+            this.wholeFile = wholeFile;
+        }
+
+        /**
+         * Return true if the file wasn't split, and this chunk is the whole file.
+         * A whole-file chunk is a complete document and should be parsed directly, without opening it as a chunk.
+         * @return true if the chunk is the whole file
+         */
+        public boolean isWholeFile() {
+            return wholeFile;
+        }
+
+        /**
+         * Get the file this chunk belongs to
+         * @return file
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * Get the offset of the chunk's first byte
+         * @return start offset, inclusive
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * Get the offset just past the chunk's last byte
+         * @return end offset, exclusive
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * Open a stream on a chunk of a split file, wrapped in a synthetic root element.
+         * The caller is responsible for closing the stream.
+         * If metrics are on, the bytes read from the chunk, and the time spent waiting for them, are counted.
+         * @return well-formed XML stream
+         * @throws IOException if the file cannot be opened
+         */
+        public InputStream open() throws IOException {
+            return wrap(PubMedMetrics.meter(
+                    new FileRangeInputStream(FileChannel.open(path, StandardOpenOption.READ), start, end), true, true));
+        }
+    }
+
+    /**
+     * Split the file into at most maxChunks chunks of at least minChunkBytes each.
+     * If the file is too small, is compressed, or has no records we recognize, it is returned as a single chunk.
+     * @param path file to split
+     * @param maxChunks maximum number of chunks
+     * @param minChunkBytes minimum size of a chunk
+     * @return chunks, in file order
+     * @throws IOException if the file cannot be read
+     */
+    public static List<Chunk> split(Path path, int maxChunks, long minChunkBytes) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            // small files aren't worth splitting, and compressed files can't be split
+            long size = channel.size();
+            int chunks = (int)Math.min(maxChunks, size / Math.max(1, minChunkBytes));
+            if (chunks < 2 || PubMedInput.isCompressed(path)) {
+                return Collections.singletonList(new Chunk(path, 0, size, true));
+            }
+
+            // find where the first record starts, a child of the root, and which record element it is
+            ByteBuffer head = ByteBuffer.allocate((int)Math.min(WINDOW_SIZE, size));
+            int read = readFully(channel, head, 0);
+            int first = indexOfFirstRecord(head.array(), read);
+            if (first < 0) {
+                return Collections.singletonList(new Chunk(path, 0, size, true));
+            }
+            byte[] startTag = null;
+            for (String element : RECORD_ELEMENTS) {
+                startTag = ("<" + element).getBytes(StandardCharsets.UTF_8);
+                if (isStartTag(head.array(), first, startTag, read)) {
+                    break;
+                }
+            }
+
+            // find where the root ends, the root's children after the last record belong to the last chunk
+            byte[] rootName = rootName(head.array(), read);
+            long last = rootName == null ? -1 : lastIndexOf(channel, rootEndTag(rootName), first, size);
+            if (last < 0) {
+                return Collections.singletonList(new Chunk(path, 0, size, true));
+            }
+
+            // move each evenly-spaced split point forward to the next record start
+            List<Chunk> result = new ArrayList<>(chunks);
+            long chunkStart = first;
+            for (int i = 1; i < chunks; i++) {
+                long target = first + (last - first) * i / chunks;
+                if (target <= chunkStart) {
+                    continue;
+                }
+                long boundary = indexOfStartTag(channel, startTag, target, last);
+                if (boundary < 0) {
+                    break;
+                }
+                result.add(new Chunk(path, chunkStart, boundary, false));
+                chunkStart = boundary;
+            }
+            result.add(new Chunk(path, chunkStart, last, false));
+            return result;
+        }
+    }
+
+    /**
+     * Find the byte range of every PubmedArticle record in a stream of XML, in document order.
+     * The k-th range is the k-th record a parser sees, so ranges can be matched to parsed records by position.
+     * @param inputStream stream of XML, read to its end but not closed
+     * @return start and end (exclusive) offset of each record, as pairs
+     * @throws IOException if the stream cannot be read
+     */
+    static long[] findRecords(InputStream inputStream) throws IOException {
+
+        byte[] startTag = ("<" + Element.PUBMED_ARTICLE.getName()).getBytes(StandardCharsets.UTF_8);
+        byte[] endTag = ("</" + Element.PUBMED_ARTICLE.getName() + ">").getBytes(StandardCharsets.UTF_8);
+        int lookahead = Math.max(startTag.length + 1, endTag.length);
+
+        long[] ranges = new long[1024];
+        int count = 0;
+        long recordStart = -1;
+
+        // buffer[0, length) holds the bytes from offset base on that we haven't looked at yet
+        byte[] buffer = new byte[WINDOW_SIZE];
+        int length = 0;
+        long base = 0;
+        boolean done = false;
+        while (!done) {
+
+            int read = inputStream.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                done = true;
+            } else {
+                length += read;
+            }
+
+            // look at every '<' that is followed by enough bytes to tell which tag it is
+            int i = 0;
+            int limit = done ? length : length - lookahead;
+            for (; i < limit; i++) {
+                if (buffer[i] != '<') {
+                    continue;
+                }
+                if (i + startTag.length < length && matches(buffer, i, startTag) &&
+                        isNameEnd(buffer[i + startTag.length])) {
+                    recordStart = base + i;
+                }
+                else if (recordStart >= 0 && i + endTag.length <= length && matches(buffer, i, endTag)) {
+                    if (count + 2 > ranges.length) {
+                        ranges = Arrays.copyOf(ranges, ranges.length * 2);
+                    }
+                    ranges[count++] = recordStart;
+                    ranges[count++] = base + i + endTag.length;
+                    recordStart = -1;
+                }
+            }
+
+            // keep the bytes we haven't looked at
+            System.arraycopy(buffer, i, buffer, 0, length - i);
+            base += i;
+            length -= i;
+        }
+        return Arrays.copyOf(ranges, count);
+    }
+
+    /**
+     * Wrap a stream of sibling elements in a synthetic root element
+     * @param inputStream stream of sibling elements
+     * @return well-formed XML stream
+     */
+    static InputStream wrap(InputStream inputStream) {
+        return wrap(new byte[0], inputStream);
+    }
+
+    /**
+     * Wrap a stream of sibling elements in a synthetic root element, after a prolog.
+     * The prolog's XML declaration and DOCTYPE apply to the elements, so they are decoded, and their entities
+     * resolved, as they would be in the file they came from.
+     * @param prolog the prolog of the file the elements came from, up to its root element
+     * @param inputStream stream of sibling elements
+     * @return well-formed XML stream
+     */
+    static InputStream wrap(byte[] prolog, InputStream inputStream) {
+        Enumeration<InputStream> parts = Collections.enumeration(Arrays.asList(new ByteArrayInputStream(prolog),
+                new ByteArrayInputStream(CHUNK_START), inputStream, new ByteArrayInputStream(CHUNK_END)));
+        return new SequenceInputStream(parts);
+    }
+
+    /**
+     * Open a stream on a byte range of a file, without counting the bytes read for metrics.
+     * The caller is responsible for closing the stream.
+     * @param path file
+     * @param start offset of the first byte
+     * @param end offset just past the last byte
+     * @return stream over the range
+     * @throws IOException if the file cannot be opened
+     */
+    static InputStream open(Path path, long start, long end) throws IOException {
+        return new FileRangeInputStream(FileChannel.open(path, StandardOpenOption.READ), start, end);
+    }
+
+    /**
+     * Return the name of the root element, from the start of a file
+     * @param bytes the start of the file
+     * @param length number of bytes
+     * @return the root's name, or null if its start tag isn't in the bytes
+     */
+    private static byte[] rootName(byte[] bytes, int length) {
+        int i = 0;
+        while (true) {
+            int lt = indexOf(bytes, (byte)'<', i, length);
+            if (lt < 0 || lt + 1 >= length) {
+                return null;
+            }
+            if (bytes[lt + 1] == '?' || bytes[lt + 1] == '!') {
+                i = skipMarkup(bytes, lt, length);
+                if (i < 0) {
+                    return null;
+                }
+                continue;
+            }
+            int end = lt + 1;
+            while (end < length && !isNameEnd(bytes[end])) {
+                end++;
+            }
+            return end < length ? Arrays.copyOfRange(bytes, lt + 1, end) : null;
+        }
+    }
+
+    // the end tag of an element, with no room for whitespace before the '>', as written by PubMed
+    //
+    private static byte[] rootEndTag(byte[] name) {
+        byte[] endTag = new byte[name.length + 3];
+        endTag[0] = '<';
+        endTag[1] = '/';
+        System.arraycopy(name, 0, endTag, 2, name.length);
+        endTag[endTag.length - 1] = '>';
+        return endTag;
+    }
+
+    /**
+     * Return the offset of the first record element that is a child of the root, in the start of a file.
+     * Returns -1 if there is none, or if the DOCTYPE has an internal subset, which the chunks wouldn't see.
+     * @param bytes the start of the file
+     * @param length number of bytes
+     * @return offset of the record's start tag, or -1
+     */
+    static int indexOfFirstRecord(byte[] bytes, int length) {
+
+        // depth is 0 in the prolog, 1 directly inside the root
+        int depth = 0;
+        int i = 0;
+        while (true) {
+            int lt = indexOf(bytes, (byte)'<', i, length);
+            if (lt < 0 || lt + 1 >= length) {
+                return -1;
+            }
+            byte b = bytes[lt + 1];
+
+            // comments, processing instructions, CDATA sections and the DOCTYPE
+            if (b == '?' || b == '!') {
+                if (depth == 0 && startsWith(bytes, lt, ascii("<!DOCTYPE"), length)) {
+                    int subset = indexOf(bytes, (byte)'[', lt, length);
+                    int tagEnd = indexOf(bytes, (byte)'>', lt, length);
+                    if (tagEnd < 0 || (subset >= 0 && subset < tagEnd)) {
+                        return -1;
+                    }
+                }
+                i = skipMarkup(bytes, lt, length);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            }
+
+            // a record element directly inside the root
+            if (depth == 1) {
+                for (String element : RECORD_ELEMENTS) {
+                    if (isStartTag(bytes, lt, ("<" + element).getBytes(StandardCharsets.UTF_8), length)) {
+                        return lt;
+                    }
+                }
+            }
+
+            // other tags, an element that ends in its start tag doesn't change the depth
+            int tagEnd = indexOf(bytes, (byte)'>', lt, length);
+            if (tagEnd < 0) {
+                return -1;
+            }
+            if (b == '/') {
+                depth--;
+            } else if (bytes[tagEnd - 1] != '/') {
+                depth++;
+            }
+            if (depth <= 0) {
+                return -1;
+            }
+            i = tagEnd + 1;
+        }
+    }
+
+    /**
+     * Return the index just past a comment, processing instruction, CDATA section or DOCTYPE
+     * @param bytes bytes to look in
+     * @param lt index of the markup's '<'
+     * @param length index to search to
+     * @return index just past the markup, or -1 if it doesn't end before length
+     */
+    private static int skipMarkup(byte[] bytes, int lt, int length) {
+        byte[] end = ascii(bytes[lt + 1] == '?' ? "?>" : startsWith(bytes, lt, ascii("<!--"), length) ? "-->" :
+                startsWith(bytes, lt, ascii("<![CDATA["), length) ? "]]>" : ">");
+        return indexAfter(bytes, end, lt + 2, length);
+    }
+
+    /**
+     * Return the offset of the first start tag at or after from, or -1 if there is none before to.
+     * The tag name must be followed by '>', '/' or whitespace, so 'Article' doesn't match 'ArticleTitle'.
+     * @param channel file
+     * @param startTag '<' followed by the element name
+     * @param from offset to search from
+     * @param to offset to search to
+     * @return offset of the tag, or -1
+     * @throws IOException if the file cannot be read
+     */
+    private static long indexOfStartTag(FileChannel channel, byte[] startTag, long from, long to)
+            throws IOException {
+
+        ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+        long position = from;
+        while (position < to) {
+
+            // read a window, windows overlap by the tag length plus the character after it
+            window.clear();
+            window.limit((int)Math.min(WINDOW_SIZE, to - position));
+            int read = readFully(channel, window, position);
+            byte[] bytes = window.array();
+
+            for (int i = 0; i + startTag.length < read; i++) {
+                if (matches(bytes, i, startTag) && isNameEnd(bytes[i + startTag.length])) {
+                    return position + i;
+                }
+            }
+
+            // done if this was the last window
+            if (position + read >= to) {
+                break;
+            }
+            position += Math.max(1, read - startTag.length);
+        }
+        return -1;
+    }
+
+    /**
+     * Return the offset of the last occurrence of the pattern between from and to, or -1 if there is none
+     * @param channel file
+     * @param pattern bytes to search for
+     * @param from offset to search from
+     * @param to offset to search to
+     * @return offset of the pattern, or -1
+     * @throws IOException if the file cannot be read
+     */
+    private static long lastIndexOf(FileChannel channel, byte[] pattern, long from, long to) throws IOException {
+
+        ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+        long end = to;
+        while (end - from >= pattern.length) {
+
+            // read a window ending at end, windows overlap by the pattern length
+            long position = Math.max(from, end - WINDOW_SIZE);
+            window.clear();
+            window.limit((int)(end - position));
+            int read = readFully(channel, window, position);
+            byte[] bytes = window.array();
+
+            for (int i = read - pattern.length; i >= 0; i--) {
+                if (matches(bytes, i, pattern)) {
+                    return position + i;
+                }
+            }
+
+            // done if this was the first window
+            if (position == from) {
+                break;
+            }
+            end = position + pattern.length - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Read from the channel at the position until the buffer is full or we reach the end of the file
+     * @param channel file
+     * @param buffer buffer to fill
+     * @param position offset to read from
+     * @return number of bytes read
+     * @throws IOException if the file cannot be read
+     */
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Return the index of the first occurrence of a byte at or after from, or -1 if there is none before length
+     * @param bytes bytes to look in
+     * @param b byte to look for
+     * @param from index to search from
+     * @param length index to search to
+     * @return index, or -1
+     */
+    private static int indexOf(byte[] bytes, byte b, int from, int length) {
+        for (int i = from; i < length; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return the index just past the first occurrence of a pattern at or after from, or -1 if there is none
+     * @param bytes bytes to look in
+     * @param pattern bytes to look for
+     * @param from index to search from
+     * @param length index to search to
+     * @return index just past the pattern, or -1
+     */
+    private static int indexAfter(byte[] bytes, byte[] pattern, int from, int length) {
+        for (int i = from; i + pattern.length <= length; i++) {
+            if (matches(bytes, i, pattern)) {
+                return i + pattern.length;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return true if the pattern appears in the first length bytes at the offset
+     * @param bytes bytes to look in
+     * @param offset offset to look at
+     * @param pattern pattern to look for
+     * @param length number of bytes we may look at
+     * @return true if it matches
+     */
+    private static boolean startsWith(byte[] bytes, int offset, byte[] pattern, int length) {
+        return offset + pattern.length <= length && matches(bytes, offset, pattern);
+    }
+
+    /**
+     * Return true if a start tag is at the offset, followed by a byte that ends its name
+     * @param bytes bytes to look in
+     * @param offset offset to look at
+     * @param startTag '<' followed by the element name
+     * @param length number of bytes we may look at
+     * @return true if the tag is there
+     */
+    private static boolean isStartTag(byte[] bytes, int offset, byte[] startTag, int length) {
+        return startsWith(bytes, offset, startTag, length - 1) && isNameEnd(bytes[offset + startTag.length]);
+    }
+
+    // ASCII markup as bytes
+    //
+    private static byte[] ascii(String markup) {
+        return markup.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Return true if the pattern appears in bytes at the offset
+     * @param bytes bytes to look in
+     * @param offset offset to look at
+     * @param pattern pattern to look for
+     * @return true if it matches
+     */
+    static boolean matches(byte[] bytes, int offset, byte[] pattern) {
+        for (int i = 0; i < pattern.length; i++) {
+            if (bytes[offset + i] != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return true if the byte can follow an element name in a tag
+     * @param b byte following the name
+     * @return true if it ends the name
+     */
+    static boolean isNameEnd(byte b) {
+        return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    /**
+     * Stream over a byte range of a file, owns and closes the channel
+     */
+    private static final class FileRangeInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final ByteBuffer single = ByteBuffer.allocate(1);
+        private long position;
+        private final long end;
+
+        // construct a stream over [start, end)
+        //
+        private FileRangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            single.clear();
+            return read(single) < 0 ? -1 : single.get(0) & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            return length == 0 ? 0 : read(ByteBuffer.wrap(bytes, offset, length));
+        }
+
+        // reads into the buffer without passing the end of our range
+        //
+        private int read(ByteBuffer buffer) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            buffer.limit((int)Math.min(buffer.limit(), buffer.position() + (end - position)));
+            int read = channel.read(buffer, position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // no reason to instantiate this class
+    private PubMedSplitter() {}
+}
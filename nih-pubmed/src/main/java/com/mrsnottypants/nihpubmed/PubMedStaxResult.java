@@ -0,0 +1,170 @@
+package com.mrsnottypants.nihpubmed;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+
+/**
+ * Exposes the static parse method, for parsing the contents provided by an input stream with a StAX pull parser.
+ *
+ * Events are pulled from an XMLStreamReader and passed to the same DefaultHandler callbacks the SAX parser uses,
+ * so any handler works with either engine.
+ * If the handler is also a SubtreeFilter, we skip over every subtree it has no use for without calling it at all.
+ * Character data is passed straight from the reader's buffer, without copying.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedStaxResult {
+
+    // like the SAX parser we use, we aren't namespace aware and report character data as it comes
+    // the StAX API doesn't promise a factory is thread-safe, so each thread that parses has its own
+    private static final ThreadLocal<XMLInputFactory> FACTORY = ThreadLocal.withInitial(PubMedStaxResult::newFactory);
+
+    /**
+     * Use the given handler to parse the contents provided by the input stream
+     * @param inputStream provides contents to parse
+     * @param handler parses contents
+     */
+    public static void parse(InputStream inputStream, DefaultHandler handler) {
+        XMLStreamReader reader = getReader(inputStream);
+        try {
+            parse(reader, handler, handler instanceof SubtreeFilter ? (SubtreeFilter)handler : null);
+        } catch (SAXException | XMLStreamException ex) {
+            throw new PubMedResultException("cannot parse", ex);
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Returns a new XMLInputFactory, configured like our SAX parser
+     * @return XMLInputFactory
+     */
+    private static XMLInputFactory newFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+
+    /**
+     * Returns a new XMLStreamReader on the input stream
+     * @param inputStream provides contents to parse
+     * @return XMLStreamReader
+     */
+    private static XMLStreamReader getReader(InputStream inputStream) {
+        try {
+            return FACTORY.get().createXMLStreamReader(inputStream);
+        } catch (XMLStreamException ex) {
+            throw new PubMedResultException("cannot get a parser", ex);
+        }
+    }
+
+    /**
+     * Pulls every event from the reader and passes it to the handler, skipping subtrees the filter doesn't want
+     * @param reader reader
+     * @param handler parses the contents
+     * @param filter decides which subtrees to skip, may be null
+     * @throws SAXException if the handler fails
+     * @throws XMLStreamException if the reader fails
+     */
+    private static void parse(XMLStreamReader reader, DefaultHandler handler, SubtreeFilter filter)
+            throws SAXException, XMLStreamException {
+
+        // reused for every element, handlers must not keep attributes beyond the callback
+        AttributesImpl attributes = new AttributesImpl();
+
+        handler.startDocument();
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+
+                case XMLStreamConstants.START_ELEMENT:
+                    String element = getName(reader);
+                    if (filter != null && filter.skipsSubtree(element)) {
+                        skipSubtree(reader);
+                        break;
+                    }
+                    handler.startElement("", element, element, getAttributes(reader, attributes));
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    String name = getName(reader);
+                    handler.endElement("", name, name);
+                    break;
+
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    handler.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+
+                default:
+                    break;
+            }
+        }
+        handler.endDocument();
+    }
+
+    /**
+     * Advance the reader to the end of the element that just started
+     * @param reader reader, positioned on a start element
+     * @throws XMLStreamException if the reader fails
+     */
+    private static void skipSubtree(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Return the qualified name of the current element
+     * @param reader reader, positioned on a start or end element
+     * @return qualified name
+     */
+    private static String getName(XMLStreamReader reader) {
+        String prefix = reader.getPrefix();
+        return prefix == null || prefix.isEmpty() ? reader.getLocalName() : prefix + ":" + reader.getLocalName();
+    }
+
+    /**
+     * Fill the attributes with the current element's attributes
+     * @param reader reader, positioned on a start element
+     * @param attributes reusable attributes
+     * @return attributes
+     */
+    private static AttributesImpl getAttributes(XMLStreamReader reader, AttributesImpl attributes) {
+        attributes.clear();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String name = reader.getAttributeLocalName(i);
+            attributes.addAttribute("", name, name, reader.getAttributeType(i), reader.getAttributeValue(i));
+        }
+        return attributes;
+    }
+
+    /**
+     * Close the reader, the underlying stream belongs to the caller
+     * @param reader reader
+     */
+    private static void close(XMLStreamReader reader) {
+        try {
+            reader.close();
+        } catch (XMLStreamException ex) {
+            // nothing useful we can do
+        }
+    }
+
+    // no reason to instantiate this class
+    private PubMedStaxResult() {}
+}
@@ -0,0 +1,122 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Counts the articles published in each year, and so the range of years the records span.
+ * Years are four digits, so the counts are an array indexed by year, and counting allocates nothing.
+ * This class is not thread-safe, each thread needs counts of its own.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class PublicationYears implements PubMedAggregator {
+
+    // one more than the latest year a record can have
+    private static final int YEARS = 10000;
+
+    /**
+     * Return new, empty, counts
+     * @return new instance
+     */
+    public static PublicationYears newInstance() {
+        return new PublicationYears();
+    }
+
+    // articles per year, indexed by year
+    private final long[] counts = new long[YEARS];
+
+    // articles without a year
+    private long undated;
+
+    // earliest and latest years counted, latest is less than earliest if there are none
+    private int earliest = YEARS;
+    private int latest = -1;
+
+    // construct empty counts
+    //
+    private PublicationYears() {
+    }
+
+    /**
+     * Count a record's article against the year it was published
+     * @param record parsed record
+     */
+    @Override
+    public void record(PubMedRecord record) {
+        int year = record.getYear();
+        if (year < 0 || year >= YEARS) {
+            undated++;
+            return;
+        }
+        counts[year]++;
+        earliest = Math.min(earliest, year);
+        latest = Math.max(latest, year);
+    }
+
+    /**
+     * Return the number of articles published in a year
+     * @param year year
+     * @return number of articles
+     */
+    public long getCount(int year) {
+        return year < 0 || year >= YEARS ? 0 : counts[year];
+    }
+
+    /**
+     * Return the number of articles published in each year, from the earliest to the latest
+     * @return articles per year, only years with articles
+     */
+    public SortedMap<Integer, Long> getCounts() {
+        SortedMap<Integer, Long> years = new TreeMap<>();
+        for (int year = earliest; year <= latest; year++) {
+            if (counts[year] > 0) {
+                years.put(year, counts[year]);
+            }
+        }
+        return years;
+    }
+
+    /**
+     * Return the earliest year an article was published
+     * @return year, or -1 if no article had a year
+     */
+    public int getEarliest() {
+        return latest < 0 ? -1 : earliest;
+    }
+
+    /**
+     * Return the latest year an article was published
+     * @return year, or -1 if no article had a year
+     */
+    public int getLatest() {
+        return latest;
+    }
+
+    /**
+     * Return the number of articles without a year
+     * @return number of articles
+     */
+    public long getUndated() {
+        return undated;
+    }
+
+    /**
+     * Add the counts of another instance to ours
+     * @param other counts to add
+     * @throws IllegalArgumentException if the other isn't a PublicationYears
+     */
+    @Override
+    public void merge(PubMedAggregator other) {
+        if (!(other instanceof PublicationYears)) {
+            throw new IllegalArgumentException("can only merge another PublicationYears");
+        }
+        PublicationYears years = (PublicationYears)other;
+        for (int year = years.earliest; year <= years.latest; year++) {
+            counts[year] += years.counts[year];
+        }
+        undated += years.undated;
+        earliest = Math.min(earliest, years.earliest);
+        latest = Math.max(latest, years.latest);
+    }
+}
@@ -0,0 +1,422 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Counts every author, like AuthorCountTable, in a fixed amount of memory however many distinct authors there are.
+ *
+ * Authors are counted in an AuthorCountTable of at most maxAuthors authors.  When it is full, its counts are sorted
+ * by name and spilled to a run file in a directory on local disk, and the table starts again empty.  Runs are
+ * merged, k at a time, by streaming them side by side in name order and adding the counts of the same author,
+ * so merging reads each run once and holds one author per run in memory.  The counts are exactly those the table
+ * would have held, had it been big enough.
+ *
+ * A run is a sequence of records: a byte that is 1 if a record follows and 0 at the end, then the first name, the
+ * last name, both as DataOutputStream.writeUTF, and the count as an int.
+ *
+ * Each thread needs counts of its own.  Counts of different threads merge by taking over each other's runs, and
+ * PubMedBatch merges each thread's counts as soon as it is done, so with n threads up to n tables, and the table
+ * they are merged into, are in memory at once.  Close the counts to delete their runs.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class SpillingAuthorCounts implements AuthorCounts, Closeable {
+
+    /**
+     * Authors held in memory, per thread, unless told otherwise
+     */
+    public static final int DEFAULT_MAX_AUTHORS = 1000000;
+
+    // runs merged at the same time, and the number of runs we keep before merging them into one
+    static final int MERGE_WAYS = 64;
+
+    // bytes buffered per run while reading or writing it
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    // below this many ids, sort by insertion
+    private static final int INSERTION_SORT = 16;
+
+    // where runs are spilled
+    private final Path directory;
+
+    // authors counted in memory, and the most we hold before spilling
+    private final int maxAuthors;
+    private final AuthorCountTable table;
+
+    // runs spilled so far, or taken over from counts merged into ours
+    private final List<Path> runs = new ArrayList<>();
+
+    // number of times we spilled
+    private int spills;
+
+    /**
+     * Construct empty counts
+     * @param directory existing directory to spill runs to
+     * @param maxAuthors most authors held in memory before spilling
+     * @throws IllegalArgumentException if maxAuthors isn't positive
+     */
+    public SpillingAuthorCounts(Path directory, int maxAuthors) {
+        if (maxAuthors < 1) {
+            throw new IllegalArgumentException(String.format("maxAuthors must be positive: %d", maxAuthors));
+        }
+        this.directory = directory;
+        this.maxAuthors = maxAuthors;
+        table = new AuthorCountTable(Math.min(maxAuthors, 1024));
+    }
+
+    /**
+     * Add one to the author's count, spilling if the table is full
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     * @throws PubMedResultException if a run cannot be written
+     */
+    @Override
+    public void increment(char[] first, int firstOffset, int firstLength,
+                          char[] last, int lastOffset, int lastLength) {
+        table.add(first, firstOffset, firstLength, last, lastOffset, lastLength, 1);
+        if (table.size() >= maxAuthors) {
+            spill();
+        }
+    }
+
+    /**
+     * Return how often the author was counted.
+     * This reads every run, use forEach for the counts of many authors.
+     * @param author author of interest
+     * @return count, zero if we've never seen the author
+     * @throws PubMedResultException if a run cannot be read
+     */
+    @Override
+    public int getAuthorCount(Author author) {
+        int count = table.getAuthorCount(author);
+        for (Path run : runs) {
+            try (Run reader = new Run(run)) {
+                while (reader.next()) {
+                    int order = compare(reader.first, reader.last, author.getFirstName(), author.getLastName());
+                    if (order == 0) {
+                        count += reader.count;
+                    }
+                    if (order >= 0) {
+                        break;
+                    }
+                }
+            } catch (IOException ex) {
+                throw new PubMedResultException(String.format("cannot read %s", run), ex);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Add the counts of another instance to ours, taking over its runs.  The other counts are left empty.
+     * @param other counts to add
+     * @throws IllegalArgumentException if the other counts don't spill
+     * @throws PubMedResultException if a run cannot be written
+     */
+    @Override
+    public void merge(AuthorCounts other) {
+        if (!(other instanceof SpillingAuthorCounts)) {
+            throw new IllegalArgumentException("can only merge another SpillingAuthorCounts");
+        }
+        SpillingAuthorCounts counts = (SpillingAuthorCounts)other;
+        runs.addAll(counts.runs);
+        counts.runs.clear();
+        spills += counts.spills;
+        for (int id = 0; id < counts.table.size(); id++) {
+            table.add(counts.table, id);
+            if (table.size() >= maxAuthors) {
+                spill();
+            }
+        }
+        counts.table.clear();
+        compact();
+    }
+
+    /**
+     * Pass every author and their count, in name order, to an action.
+     * Whatever is in memory is spilled, and the runs merged into one, so doing this again costs one read of it.
+     * @param action takes each author and their count
+     * @throws PubMedResultException if a run cannot be read or written
+     */
+    public void forEach(ObjIntConsumer<Author> action) {
+        if (table.size() > 0) {
+            spill();
+        }
+        if (runs.size() > 1) {
+            mergeRuns();
+        }
+        for (Path run : runs) {
+            try (Run reader = new Run(run)) {
+                while (reader.next()) {
+                    action.accept(Author.of(reader.first, reader.last), reader.count);
+                }
+            } catch (IOException ex) {
+                throw new PubMedResultException(String.format("cannot read %s", run), ex);
+            }
+        }
+    }
+
+    /**
+     * Return the number of runs on disk
+     * @return runs
+     */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Return the number of times the table was spilled, here or in counts merged into ours
+     * @return spills
+     */
+    public int getSpillCount() {
+        return spills;
+    }
+
+    /**
+     * Delete the runs, and forget every count
+     */
+    @Override
+    public void close() {
+        for (Path run : runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException ex) {
+                run.toFile().deleteOnExit();
+            }
+        }
+        runs.clear();
+        table.clear();
+    }
+
+    /**
+     * Sort the table by name, write it as a run, and empty it
+     */
+    private void spill() {
+        int size = table.size();
+        int[] ids = new int[size];
+        for (int id = 0; id < size; id++) {
+            ids[id] = id;
+        }
+        sort(ids, new int[size], 0, size);
+
+        Path run = newRun();
+        try (DataOutputStream output = open(run)) {
+            for (int id : ids) {
+                write(output, table.getFirstName(id), table.getLastName(id), table.getCount(id));
+            }
+            output.writeBoolean(false);
+        } catch (IOException ex) {
+            throw new PubMedResultException(String.format("cannot spill to %s", run), ex);
+        }
+        runs.add(run);
+        table.clear();
+        spills++;
+        compact();
+    }
+
+    /**
+     * Merge the runs into one if there are too many of them to merge in a single pass
+     */
+    private void compact() {
+        if (runs.size() > MERGE_WAYS) {
+            mergeRuns();
+        }
+    }
+
+    /**
+     * Merge our runs, MERGE_WAYS at a time, until one is left, deleting the runs merged
+     */
+    private void mergeRuns() {
+        while (runs.size() > 1) {
+            List<Path> ways = new ArrayList<>(runs.subList(0, Math.min(MERGE_WAYS, runs.size())));
+            Path merged = newRun();
+            mergeRuns(ways, merged);
+            runs.subList(0, ways.size()).clear();
+            runs.add(merged);
+            for (Path run : ways) {
+                try {
+                    Files.deleteIfExists(run);
+                } catch (IOException ex) {
+                    run.toFile().deleteOnExit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge runs into one, by streaming them side by side in name order
+     * @param ways runs to merge
+     * @param merged run to write
+     */
+    private static void mergeRuns(List<Path> ways, Path merged) {
+        List<Run> readers = new ArrayList<>(ways.size());
+        try (DataOutputStream output = open(merged)) {
+
+            // the reader whose author sorts first is at the head of the queue
+            PriorityQueue<Run> queue = new PriorityQueue<>(ways.size(),
+                    (run, other) -> compare(run.first, run.last, other.first, other.last));
+            for (Path way : ways) {
+                Run reader = new Run(way);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+
+            // take the first author, add the counts of the same author from every other run, and write them once
+            while (!queue.isEmpty()) {
+                Run head = queue.poll();
+                String first = head.first;
+                String last = head.last;
+                int count = head.count;
+                if (head.next()) {
+                    queue.add(head);
+                }
+                while (!queue.isEmpty() && compare(queue.peek().first, queue.peek().last, first, last) == 0) {
+                    Run same = queue.poll();
+                    count += same.count;
+                    if (same.next()) {
+                        queue.add(same);
+                    }
+                }
+                write(output, first, last, count);
+            }
+            output.writeBoolean(false);
+
+        } catch (IOException ex) {
+            throw new PubMedResultException(String.format("cannot merge runs into %s", merged), ex);
+        } finally {
+            for (Run reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Sort ids by name, a merge sort so it takes no more than the scratch room it is given
+     * @param ids ids to sort
+     * @param scratch room for as many ids
+     * @param from first id to sort
+     * @param to one past the last id to sort
+     */
+    private void sort(int[] ids, int[] scratch, int from, int to) {
+        if (to - from <= INSERTION_SORT) {
+            for (int i = from + 1; i < to; i++) {
+                int id = ids[i];
+                int j = i;
+                while (j > from && table.compare(ids[j - 1], id) > 0) {
+                    ids[j] = ids[j - 1];
+                    j--;
+                }
+                ids[j] = id;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(ids, scratch, from, middle);
+        sort(ids, scratch, middle, to);
+        if (table.compare(ids[middle - 1], ids[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(ids, from, scratch, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && table.compare(scratch[left], scratch[right]) <= 0)) {
+                ids[i] = scratch[left++];
+            } else {
+                ids[i] = scratch[right++];
+            }
+        }
+    }
+
+    /**
+     * Return a new, empty, run file in the directory
+     */
+    private Path newRun() {
+        try {
+            return Files.createTempFile(directory, "authors-", ".run");
+        } catch (IOException ex) {
+            throw new PubMedResultException(String.format("cannot spill to %s", directory), ex);
+        }
+    }
+
+    /**
+     * Open a run for writing
+     */
+    private static DataOutputStream open(Path run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), BUFFER_BYTES));
+    }
+
+    /**
+     * Write an author's record
+     */
+    private static void write(DataOutputStream output, String first, String last, int count) throws IOException {
+        output.writeBoolean(true);
+        output.writeUTF(first);
+        output.writeUTF(last);
+        output.writeInt(count);
+    }
+
+    /**
+     * Compare authors by name, first names then last names
+     */
+    private static int compare(String first, String last, String otherFirst, String otherLast) {
+        int result = first.compareTo(otherFirst);
+        return result != 0 ? result : last.compareTo(otherLast);
+    }
+
+    // reads a run, an author at a time
+    //
+    private static class Run implements Closeable {
+
+        private final DataInputStream input;
+
+        // the author we're at, and their count
+        private String first;
+        private String last;
+        private int count;
+
+        // open a run
+        //
+        private Run(Path path) throws IOException {
+            input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_BYTES));
+        }
+
+        // move to the next author, return false at the end of the run
+        //
+        private boolean next() throws IOException {
+            if (!input.readBoolean()) {
+                return false;
+            }
+            first = input.readUTF();
+            last = input.readUTF();
+            count = input.readInt();
+            return true;
+        }
+
+        @Override
+        public void close() {
+            try {
+                input.close();
+            } catch (IOException ex) {
+                // nothing was written, nothing is lost
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.mrsnottypants.nihpubmed;
+
+/**
+ * Implemented by handlers that can tell, as an element starts, that they have no use for anything inside it.
+ * Parse engines that can skip ahead (such as the StAX engine) don't deliver the skipped element, its children,
+ * or its end to the handler.  Engines that can't skip ahead ignore the filter.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public interface SubtreeFilter {
+
+    /**
+     * Return true if the handler has no use for the element that is starting, nor for anything inside it.
+     * @param element qualified name of the element that is starting
+     * @return true if the whole subtree can be skipped
+     */
+    boolean skipsSubtree(String element);
+}
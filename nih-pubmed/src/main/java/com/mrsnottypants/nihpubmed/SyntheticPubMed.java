@@ -0,0 +1,412 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes PubMed-shaped XML from a seed, for tests and benchmarks that can't use licensed PubMed files.
+ *
+ * Each PubmedArticle has the parts of a real MEDLINE citation that matter to parsing: a journal, a title,
+ * a long structured abstract, an author list, MeSH headings and PubmedData.  Author popularity follows a Zipf
+ * distribution, so a few authors appear in many articles and most in one or two.  Some authors have no ForeName,
+ * some are a CollectiveName, and names use non-ASCII characters (María-Victoria) and apostrophes, written
+ * sometimes as they are and sometimes as character or entity references, the way PubMed files mix them.
+ *
+ * The same seed, and the same sequence of calls, always writes the same bytes.  Articles are written as they
+ * are generated, so the output can be anything from a few KB to tens of GB; memory is proportional to the
+ * number of distinct authors.  As articles are written, the author counts a correct parse would find are
+ * collected - see getAuthorCounts.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class SyntheticPubMed {
+
+    // a Zipf exponent of about one matches how often PubMed authors recur
+    private static final double ZIPF_EXPONENT = 1.0;
+
+    // one author in this many has no ForeName, and one in this many is a collective
+    private static final int NO_FORE_NAME = 20;
+    private static final int COLLECTIVE = 50;
+
+    // one article in this many has no abstract, one has no author list, and one comments on an earlier article
+    private static final int NO_ABSTRACT = 10;
+    private static final int NO_AUTHOR_LIST = 25;
+    private static final int COMMENTED = 10;
+
+    // one article in this many has a free-text MedlineDate instead of a publication Year
+    private static final int MEDLINE_DATED = 20;
+
+    // every article is a journal article, articles whose PMID is a multiple of these are also a review, or a trial
+    private static final int REVIEWED = 7;
+    private static final int TRIALED = 5;
+
+    // words in an abstract section, and sections in an abstract
+    private static final int ABSTRACT_SECTION_WORDS = 60;
+    private static final String[] ABSTRACT_LABELS = {"BACKGROUND", "METHODS", "RESULTS", "CONCLUSIONS"};
+
+    // most authors an article has
+    private static final int MAX_AUTHORS = 12;
+
+    // first and last publication years
+    static final int FIRST_YEAR = 1950;
+    static final int LAST_YEAR = 2016;
+
+    // syllables we build names out of, some of them non-ASCII
+    private static final String[] SYLLABLES = {
+            "an", "ber", "cal", "dor", "el", "fen", "gar", "hal", "is", "jon", "kel", "lor", "mar", "nel", "or",
+            "pet", "quin", "ros", "sal", "tor", "ul", "ven", "wil", "yor", "zel", "ía", "é", "ø", "ü", "ño"
+    };
+
+    // journals, their ISO abbreviations, MeSH descriptors and collectives we pick from
+    private static final String[] JOURNALS = {
+            "Blood", "The New England journal of medicine", "Leukemia", "Journal of clinical oncology",
+            "British journal of haematology", "Haematologica", "Lancet (London, England)", "Cancer"
+    };
+    private static final String[] JOURNAL_ABBREVIATIONS = {
+            "Blood", "N. Engl. J. Med.", "Leukemia", "J. Clin. Oncol.", "Br. J. Haematol.", "Haematologica",
+            "Lancet", "Cancer"
+    };
+    private static final String[] DESCRIPTORS = {
+            "Humans", "Multiple Myeloma", "Antineoplastic Agents", "Bortezomib", "Lenalidomide", "Female",
+            "Male", "Middle Aged", "Aged", "Stem Cell Transplantation", "Treatment Outcome", "Drug Resistance"
+    };
+    private static final String[] COLLECTIVES = {
+            "International Myeloma Working Group", "Nordic Myeloma Study Group", "HOVON-65 & GMMG-HD4 Trial"
+    };
+
+    /**
+     * Return a generator of the given number of distinct authors
+     * @param seed random seed, the same seed writes the same XML
+     * @param distinctAuthors number of distinct authors articles are written by
+     * @return generator
+     */
+    public static SyntheticPubMed newInstance(long seed, int distinctAuthors) {
+        return new SyntheticPubMed(seed, distinctAuthors);
+    }
+
+    // source of randomness
+    private final Random random;
+
+    // distinct first and last names, in order of popularity
+    private final String[] firstNames;
+    private final String[] lastNames;
+
+    // cumulative Zipf weights over the distinct authors
+    private final double[] cumulative;
+
+    // what a correct parse counts
+    private final AuthorCountTable authorCounts = new AuthorCountTable();
+
+    // PMID of the last article written
+    private long pmid;
+
+    // build the names, and the Zipf distribution over them
+    //
+    private SyntheticPubMed(long seed, int distinctAuthors) {
+
+        // sanity check
+        if (distinctAuthors < 1) {
+            throw new IllegalArgumentException(String.format("distinct authors must be positive: %d", distinctAuthors));
+        }
+
+        random = new Random(seed);
+        firstNames = new String[distinctAuthors];
+        lastNames = new String[distinctAuthors];
+        for (int i = 0; i < distinctAuthors; i++) {
+            firstNames[i] = random.nextInt(10) == 0 ? name(2) + "-" + name(2) : name(2);
+            lastNames[i] = random.nextInt(30) == 0 ? "O'" + name(2) : name(3);
+        }
+
+        cumulative = new double[distinctAuthors];
+        double total = 0;
+        for (int i = 0; i < distinctAuthors; i++) {
+            total += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < distinctAuthors; i++) {
+            cumulative[i] /= total;
+        }
+    }
+
+    /**
+     * Write a PubmedArticleSet of the given number of articles to a file, gzip-compressed if its name ends in .gz
+     * @param path file to write
+     * @param articles number of articles
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path path, long articles) throws IOException {
+        try (OutputStream outputStream = PubMedInput.isCompressed(path) ?
+                new GZIPOutputStream(Files.newOutputStream(path), 64 * 1024) : Files.newOutputStream(path)) {
+            write(outputStream, articles);
+        }
+    }
+
+    /**
+     * Write a PubmedArticleSet of the given number of articles, as UTF-8.
+     * The stream is flushed, but not closed.
+     * @param outputStream where we write
+     * @param articles number of articles
+     * @throws IOException if the articles cannot be written
+     */
+    public void write(OutputStream outputStream, long articles) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 64 * 1024);
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.write("<!DOCTYPE PubmedArticleSet>\n");
+        writer.write("<PubmedArticleSet>\n");
+        for (long i = 0; i < articles; i++) {
+            writeArticle(writer);
+        }
+        writer.write("</PubmedArticleSet>\n");
+        writer.flush();
+    }
+
+    /**
+     * Return the author counts a correct parse of everything written so far would find.
+     * A collective author, with no names, is counted as an author with empty names, as the handler counts it.
+     * @return author counts, not to be changed
+     */
+    public AuthorCountTable getAuthorCounts() {
+        return authorCounts;
+    }
+
+    /**
+     * Return the number of articles written so far
+     * @return number of articles
+     */
+    public long getArticleCount() {
+        return pmid;
+    }
+
+    /**
+     * Return the index of the next author, drawn from the Zipf distribution, the most popular author is 0
+     * @return author index
+     */
+    int nextAuthor() {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+    }
+
+    /**
+     * Return the first name of the author with the given index
+     * @param author author index
+     * @return first name
+     */
+    String getFirstName(int author) {
+        return firstNames[author];
+    }
+
+    /**
+     * Return the last name of the author with the given index
+     * @param author author index
+     * @return last name
+     */
+    String getLastName(int author) {
+        return lastNames[author];
+    }
+
+    /**
+     * Write one PubmedArticle, and count its authors
+     * @param writer where we write
+     * @throws IOException if the article cannot be written
+     */
+    private void writeArticle(Writer writer) throws IOException {
+
+        pmid++;
+        int year = FIRST_YEAR + random.nextInt(LAST_YEAR - FIRST_YEAR + 1);
+        writer.write("<PubmedArticle>\n");
+        writer.write("  <MedlineCitation Status=\"MEDLINE\" Owner=\"NLM\">\n");
+        writer.write("    <PMID Version=\"1\">" + pmid + "</PMID>\n");
+        writer.write("    <DateCompleted><Year>" + year + "</Year><Month>01</Month><Day>15</Day></DateCompleted>\n");
+        writer.write("    <Article PubModel=\"Print\">\n");
+        writer.write("      <Journal>\n");
+        writer.write("        <ISSN IssnType=\"Print\">0006-4971</ISSN>\n");
+        writer.write("        <JournalIssue CitedMedium=\"Print\">\n");
+        writer.write("          <Volume>" + (1 + random.nextInt(120)) + "</Volume>\n");
+        if (random.nextInt(MEDLINE_DATED) == 0) {
+            writer.write("          <PubDate><MedlineDate>" + year + " Nov-Dec</MedlineDate></PubDate>\n");
+        } else {
+            writer.write("          <PubDate><Year>" + year + "</Year><Month>Jan</Month></PubDate>\n");
+        }
+        writer.write("        </JournalIssue>\n");
+        int journal = random.nextInt(JOURNALS.length);
+        writer.write("        <Title>");
+        writeText(writer, JOURNALS[journal]);
+        writer.write("</Title>\n");
+        writer.write("        <ISOAbbreviation>" + JOURNAL_ABBREVIATIONS[journal] + "</ISOAbbreviation>\n");
+        writer.write("      </Journal>\n");
+        writer.write("      <ArticleTitle>" + sentence(12) + "</ArticleTitle>\n");
+        writer.write("      <Pagination><MedlinePgn>" + (1 + random.nextInt(900)) + "-10</MedlinePgn></Pagination>\n");
+        if (random.nextInt(NO_ABSTRACT) != 0) {
+            writer.write("      <Abstract>\n");
+            for (String label : ABSTRACT_LABELS) {
+                writer.write("        <AbstractText Label=\"" + label + "\">");
+                writer.write(sentence(ABSTRACT_SECTION_WORDS) + " P &lt; 0.05 &amp; " + sentence(5));
+                writer.write("</AbstractText>\n");
+            }
+            writer.write("      </Abstract>\n");
+        }
+        if (random.nextInt(NO_AUTHOR_LIST) != 0) {
+            writeAuthorList(writer);
+        }
+        writer.write("      <Language>eng</Language>\n");
+        writer.write("      <PublicationTypeList>\n");
+        writer.write("        <PublicationType UI=\"D016428\">Journal Article</PublicationType>\n");
+        if (pmid % REVIEWED == 0) {
+            writer.write("        <PublicationType UI=\"D016454\">Review</PublicationType>\n");
+        }
+        if (pmid % TRIALED == 0) {
+            writer.write("        <PublicationType UI=\"D016430\">Clinical Trial</PublicationType>\n");
+        }
+        writer.write("      </PublicationTypeList>\n");
+        writer.write("    </Article>\n");
+        writer.write("    <MedlineJournalInfo><Country>United States</Country></MedlineJournalInfo>\n");
+        if (pmid > 1 && random.nextInt(COMMENTED) == 0) {
+            writer.write("    <CommentsCorrectionsList>\n");
+            writer.write("      <CommentsCorrections RefType=\"CommentOn\"><RefSource>" + sentence(3) + "</RefSource>");
+            writer.write("<PMID Version=\"1\">" + (1 + random.nextInt((int)Math.min(pmid - 1, Integer.MAX_VALUE))));
+            writer.write("</PMID></CommentsCorrections>\n");
+            writer.write("    </CommentsCorrectionsList>\n");
+        }
+        writer.write("    <MeshHeadingList>\n");
+        for (int i = random.nextInt(4); i < DESCRIPTORS.length; i += 1 + random.nextInt(4)) {
+            writer.write("      <MeshHeading><DescriptorName UI=\"D" + (100000 + i) + "\" MajorTopicYN=\"N\">");
+            writer.write(DESCRIPTORS[i]);
+            writer.write("</DescriptorName></MeshHeading>\n");
+        }
+        writer.write("    </MeshHeadingList>\n");
+        writer.write("  </MedlineCitation>\n");
+        writer.write("  <PubmedData>\n");
+        writer.write("    <PublicationStatus>ppublish</PublicationStatus>\n");
+        writer.write("    <ArticleIdList><ArticleId IdType=\"pubmed\">" + pmid + "</ArticleId></ArticleIdList>\n");
+        writer.write("  </PubmedData>\n");
+        writer.write("</PubmedArticle>\n");
+    }
+
+    /**
+     * Write an author list, and count its authors
+     * @param writer where we write
+     * @throws IOException if the author list cannot be written
+     */
+    private void writeAuthorList(Writer writer) throws IOException {
+        writer.write("      <AuthorList CompleteYN=\"Y\">\n");
+        int authors = 1 + random.nextInt(MAX_AUTHORS);
+        for (int i = 0; i < authors; i++) {
+            writer.write("        <Author ValidYN=\"Y\">\n");
+            if (random.nextInt(COLLECTIVE) == 0) {
+                writer.write("          <CollectiveName>");
+                writeText(writer, COLLECTIVES[random.nextInt(COLLECTIVES.length)]);
+                writer.write("</CollectiveName>\n");
+                authorCounts.add("", "");
+            }
+            else {
+                int author = nextAuthor();
+                writer.write("          <LastName>");
+                writeText(writer, lastNames[author]);
+                writer.write("</LastName>\n");
+                if (random.nextInt(NO_FORE_NAME) == 0) {
+                    authorCounts.add("", lastNames[author]);
+                }
+                else {
+                    writer.write("          <ForeName>");
+                    writeText(writer, firstNames[author]);
+                    writer.write("</ForeName>\n");
+                    writer.write("          <Initials>" + firstNames[author].charAt(0) + "</Initials>\n");
+                    authorCounts.add(firstNames[author], lastNames[author]);
+                }
+                writer.write("          <AffiliationInfo><Affiliation>");
+                writer.write(sentence(10));
+                writer.write("</Affiliation></AffiliationInfo>\n");
+            }
+            writer.write("        </Author>\n");
+        }
+        writer.write("      </AuthorList>\n");
+    }
+
+    /**
+     * Write text as character data, escaping what must be escaped.
+     * Apostrophes and non-ASCII characters are written as references half the time.
+     * @param writer where we write
+     * @param text text to write
+     * @throws IOException if the text cannot be written
+     */
+    private void writeText(Writer writer, String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '&') {
+                writer.write("&amp;");
+            }
+            else if (c == '<') {
+                writer.write("&lt;");
+            }
+            else if (c == '\'' && random.nextBoolean()) {
+                writer.write("&apos;");
+            }
+            else if (c > 127 && random.nextBoolean()) {
+                writer.write("&#" + (int)c + ";");
+            }
+            else {
+                writer.write(c);
+            }
+        }
+    }
+
+    /**
+     * Return a capitalized name of the given number of syllables
+     * @param syllables number of syllables
+     * @return name
+     */
+    private String name(int syllables) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < syllables; i++) {
+            builder.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        builder.setCharAt(0, Character.toUpperCase(builder.charAt(0)));
+        return builder.toString();
+    }
+
+    /**
+     * Return a sentence of the given number of words, with nothing that needs escaping
+     * @param words number of words
+     * @return sentence
+     */
+    private String sentence(int words) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            builder.append(i == 0 ? "" : " ");
+            for (int j = random.nextInt(3); j >= 0; j--) {
+                builder.append(SYLLABLES[random.nextInt(15)]);
+            }
+        }
+        return builder.append('.').toString();
+    }
+
+    /**
+     * Usage: java -cp .\target\nih-pubmed-0.0.1-SNAPSHOT.jar com.mrsnottypants.nihpubmed.SyntheticPubMed
+     *     articles seed output.xml[.gz]
+     * @param args number of articles, random seed and output file
+     * @throws IOException if the file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+
+        // sanity check
+        if (args.length != 3) {
+            System.out.println("usage: SyntheticPubMed articles seed output.xml[.gz]");
+            return;
+        }
+
+        // about as many distinct authors as articles, as in PubMed
+        long articles = Long.parseLong(args[0]);
+        int distinctAuthors = (int)Math.max(1, Math.min(articles, 10 * 1000 * 1000));
+        SyntheticPubMed.newInstance(Long.parseLong(args[1]), distinctAuthors).write(Paths.get(args[2]), articles);
+    }
+}
@@ -0,0 +1,491 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds the most listed authors in a fixed amount of memory, using the Space-Saving algorithm.
+ *
+ * We keep a fixed number of counters, each monitoring one author.  An author we monitor has their counter
+ * incremented.  An author we don't monitor takes over the counter with the smallest count, and inherits that count
+ * as their error.  So a counter never under-counts, and over-counts by at most its error, which is at most the
+ * number of authors counted divided by the number of counters.  Every author listed more often than that is
+ * guaranteed to be monitored.
+ *
+ * Counters are kept in a min-heap by count, and found by name through an open-addressed table, so counting is
+ * a hash lookup and a short sift, and allocates nothing once the counters' name buffers have grown to fit.
+ * Instances counted in parallel can be merged, the merged counters keep the same guarantees.
+ *
+ * As AuthorCounts, the count of an author is their counter's count, an upper bound on how often they were listed.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class TopAuthors implements AuthorCounts {
+
+    // table slots hold counter + 1, so zero is an empty slot
+    private static final int EMPTY = 0;
+
+    // most listed first, then by name, so ties are reported the same way every time
+    static final Comparator<Entry> BY_COUNT = Comparator.comparingInt(Entry::getCount).reversed()
+            .thenComparing(entry -> entry.getAuthor().getLastName())
+            .thenComparing(entry -> entry.getAuthor().getFirstName());
+
+    /**
+     * An author, how often they were counted, and how much of that count may be someone else's
+     */
+    public static final class Entry {
+
+        private final Author author;
+        private final int count;
+        private final int error;
+
+        // construct an entry
+        //
+        Entry(Author author, int count, int error) {
+            this.author = author;
+            this.count = count;
+            this.error = error;
+        }
+
+        /**
+         * Get the author
+         * @return author
+         */
+        public Author getAuthor() {
+            return author;
+        }
+
+        /**
+         * Get the author's count, at least how often they were listed
+         * @return upper bound on the author's count
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Get how much the count may over-count by
+         * @return error, zero if the count is exact
+         */
+        public int getError() {
+            return error;
+        }
+
+        /**
+         * Get the least the author can have been listed
+         * @return lower bound on the author's count
+         */
+        public int getMinimum() {
+            return count - error;
+        }
+
+        /**
+         * Return a human-readable description
+         * @return author, count and error
+         */
+        @Override
+        public String toString() {
+            return String.format("%s : %d (+/- %d)", author, count, error);
+        }
+    }
+
+    /**
+     * Return a new instance with the given number of counters
+     * @param capacity number of counters, the more there are the smaller the error
+     * @return new instance
+     * @throws IllegalArgumentException if capacity isn't positive
+     */
+    public static TopAuthors newInstance(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(String.format("capacity must be positive: %d", capacity));
+        }
+        return new TopAuthors(capacity);
+    }
+
+    // open-addressed table of counters, size is a power of two at least twice the capacity
+    private final int[] slots;
+
+    // per counter: names, back to back, their lengths and hash, count and error
+    private final char[][] names;
+    private final int[] firstLengths;
+    private final int[] lastLengths;
+    private final int[] hashes;
+    private final int[] counts;
+    private final int[] errors;
+
+    // min-heap of counters by count, and where each counter is in it
+    private final int[] heap;
+    private final int[] positions;
+
+    // counters in use, and the number of authors counted
+    private int size;
+    private long total;
+
+    // construct an instance with every counter unused
+    //
+    private TopAuthors(int capacity) {
+        int tableSize = 16;
+        while (tableSize < capacity * 2) {
+            tableSize <<= 1;
+        }
+        slots = new int[tableSize];
+        names = new char[capacity][];
+        firstLengths = new int[capacity];
+        lastLengths = new int[capacity];
+        hashes = new int[capacity];
+        counts = new int[capacity];
+        errors = new int[capacity];
+        heap = new int[capacity];
+        positions = new int[capacity];
+    }
+
+    /**
+     * Count an author, taking over the smallest counter if the author isn't monitored and every counter is in use
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     */
+    @Override
+    public void increment(char[] first, int firstOffset, int firstLength,
+                          char[] last, int lastOffset, int lastLength) {
+        total++;
+        int hash = hash(first, firstOffset, firstLength, last, lastOffset, lastLength);
+        int counter = find(hash, first, firstOffset, firstLength, last, lastOffset, lastLength);
+        if (counter >= 0) {
+            counts[counter]++;
+            siftDown(positions[counter]);
+        } else {
+            monitor(hash, first, firstOffset, firstLength, last, lastOffset, lastLength, 1, 0);
+        }
+    }
+
+    /**
+     * Return the author's count, an upper bound on how often they were listed
+     * @param author author of interest
+     * @return count, zero if the author isn't monitored
+     */
+    @Override
+    public int getAuthorCount(Author author) {
+        int counter = find(author);
+        return counter < 0 ? 0 : counts[counter];
+    }
+
+    /**
+     * Add the counters of another instance to ours.
+     * An author only one instance monitors is given the other's smallest count, as both count and error,
+     * then the largest counters are kept.
+     * @param other counts to add, must be TopAuthors
+     * @throws IllegalArgumentException if the other counts aren't TopAuthors
+     */
+    @Override
+    public void merge(AuthorCounts other) {
+        if (!(other instanceof TopAuthors)) {
+            throw new IllegalArgumentException("can only merge another TopAuthors");
+        }
+        TopAuthors that = (TopAuthors)other;
+
+        // combine every author either instance monitors
+        int ourThreshold = getThreshold();
+        int theirThreshold = that.getThreshold();
+        List<Entry> combined = new ArrayList<>(size + that.size);
+        for (int counter = 0; counter < size; counter++) {
+            Author author = getAuthor(counter);
+            int theirs = that.find(author);
+            combined.add(theirs < 0 ?
+                    new Entry(author, counts[counter] + theirThreshold, errors[counter] + theirThreshold) :
+                    new Entry(author, counts[counter] + that.counts[theirs], errors[counter] + that.errors[theirs]));
+        }
+        for (int counter = 0; counter < that.size; counter++) {
+            Author author = that.getAuthor(counter);
+            if (find(author) < 0) {
+                combined.add(new Entry(author, that.counts[counter] + ourThreshold,
+                        that.errors[counter] + ourThreshold));
+            }
+        }
+
+        // keep the largest
+        combined.sort(BY_COUNT);
+        Arrays.fill(slots, EMPTY);
+        size = 0;
+        total += that.total;
+        for (Entry entry : combined.subList(0, Math.min(counts.length, combined.size()))) {
+            char[] first = entry.getAuthor().getFirstName().toCharArray();
+            char[] last = entry.getAuthor().getLastName().toCharArray();
+            monitor(hash(first, 0, first.length, last, 0, last.length), first, 0, first.length, last, 0, last.length,
+                    entry.getCount(), entry.getError());
+        }
+    }
+
+    /**
+     * Return the monitored authors with the largest counts
+     * @param k number of authors wanted
+     * @return up to k entries, largest count first
+     */
+    public List<Entry> getTop(int k) {
+        List<Entry> entries = getEntries();
+        return new ArrayList<>(entries.subList(0, Math.min(k, entries.size())));
+    }
+
+    /**
+     * Return the monitored authors that may be among the k most listed: those whose count is at least the k-th
+     * largest lower bound.  Counting just these exactly, in a second pass, gives the k most listed authors.
+     * @param k number of authors wanted
+     * @return candidates, largest count first
+     */
+    public List<Author> getCandidates(int k) {
+        List<Entry> entries = getEntries();
+        int[] minimums = new int[entries.size()];
+        for (int i = 0; i < minimums.length; i++) {
+            minimums[i] = entries.get(i).getMinimum();
+        }
+        Arrays.sort(minimums);
+        int least = k <= 0 || k > minimums.length ? 0 : minimums[minimums.length - k];
+
+        List<Author> candidates = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.getCount() >= least) {
+                candidates.add(entry.getAuthor());
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Return true if exact counts of our candidates prove they are the k most listed authors: the k-th exact count
+     * is larger than our threshold, or every author was monitored.  If not, an author we didn't monitor may have
+     * been listed as often as the k-th candidate, and more counters are needed.
+     * @param confirmed exact counts of the candidates, most listed first, at most k of them
+     * @param k number of authors wanted
+     * @return true if they are the k most listed authors
+     */
+    public boolean isConfirmedBy(List<Entry> confirmed, int k) {
+        int threshold = getThreshold();
+        return threshold == 0 || (confirmed.size() >= k && confirmed.get(k - 1).getCount() > threshold);
+    }
+
+    /**
+     * Return the most an author we don't monitor can have been listed: the smallest count once every counter
+     * is in use, zero before then
+     * @return threshold
+     */
+    public int getThreshold() {
+        return size < counts.length ? 0 : counts[heap[0]];
+    }
+
+    /**
+     * Return the number of authors counted, including every repeat
+     * @return number of authors counted
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Return the number of counters
+     * @return capacity
+     */
+    public int getCapacity() {
+        return counts.length;
+    }
+
+    /**
+     * Return every counter in use as an entry, largest count first
+     * @return entries
+     */
+    private List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<>(size);
+        for (int counter = 0; counter < size; counter++) {
+            entries.add(new Entry(getAuthor(counter), counts[counter], errors[counter]));
+        }
+        entries.sort(BY_COUNT);
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Return the author a counter monitors
+     * @param counter counter
+     * @return author
+     */
+    private Author getAuthor(int counter) {
+        return Author.of(new String(names[counter], 0, firstLengths[counter]),
+                new String(names[counter], firstLengths[counter], lastLengths[counter]));
+    }
+
+    /**
+     * Start monitoring an author, with an unused counter if there is one, otherwise the smallest counter
+     */
+    private void monitor(int hash, char[] first, int firstOffset, int firstLength,
+                         char[] last, int lastOffset, int lastLength, int count, int error) {
+        int counter;
+        if (size < counts.length) {
+            counter = size++;
+            heap[counter] = counter;
+            positions[counter] = counter;
+            counts[counter] = count;
+            errors[counter] = error;
+            siftUp(counter);
+        } else {
+            counter = heap[0];
+            remove(counter);
+            errors[counter] = counts[counter] + error;
+            counts[counter] += count;
+            siftDown(0);
+        }
+
+        // copy the names, growing the counter's buffer only if they don't fit
+        int length = firstLength + lastLength;
+        if (names[counter] == null || names[counter].length < length) {
+            names[counter] = new char[Math.max(32, length)];
+        }
+        System.arraycopy(first, firstOffset, names[counter], 0, firstLength);
+        System.arraycopy(last, lastOffset, names[counter], firstLength, lastLength);
+        firstLengths[counter] = firstLength;
+        lastLengths[counter] = lastLength;
+        hashes[counter] = hash;
+
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = counter + 1;
+    }
+
+    /**
+     * Remove a counter from the table, shifting back the counters that probed past it
+     * @param counter counter to remove
+     */
+    private void remove(int counter) {
+        int mask = slots.length - 1;
+        int slot = hashes[counter] & mask;
+        while (slots[slot] != counter + 1) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = EMPTY;
+        for (int next = (slot + 1) & mask; slots[next] != EMPTY; next = (next + 1) & mask) {
+            int home = hashes[slots[next] - 1] & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                slots[slot] = slots[next];
+                slots[next] = EMPTY;
+                slot = next;
+            }
+        }
+    }
+
+    /**
+     * Move a heap entry towards the root while it is smaller than its parent
+     * @param position heap position
+     */
+    private void siftUp(int position) {
+        int counter = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[counter]) {
+                break;
+            }
+            place(heap[parent], position);
+            position = parent;
+        }
+        place(counter, position);
+    }
+
+    /**
+     * Move a heap entry towards the leaves while it is larger than a child
+     * @param position heap position
+     */
+    private void siftDown(int position) {
+        int counter = heap[position];
+        while (true) {
+            int child = position * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+                child++;
+            }
+            if (counts[heap[child]] >= counts[counter]) {
+                break;
+            }
+            place(heap[child], position);
+            position = child;
+        }
+        place(counter, position);
+    }
+
+    /**
+     * Put a counter at a heap position
+     * @param counter counter
+     * @param position heap position
+     */
+    private void place(int counter, int position) {
+        heap[position] = counter;
+        positions[counter] = position;
+    }
+
+    /**
+     * Return the counter monitoring an author
+     * @param author author
+     * @return counter, or -1 if the author isn't monitored
+     */
+    private int find(Author author) {
+        char[] first = author.getFirstName().toCharArray();
+        char[] last = author.getLastName().toCharArray();
+        return find(hash(first, 0, first.length, last, 0, last.length),
+                first, 0, first.length, last, 0, last.length);
+    }
+
+    /**
+     * Return the counter monitoring names held in buffers, or -1 if they aren't monitored
+     */
+    private int find(int hash, char[] first, int firstOffset, int firstLength,
+                     char[] last, int lastOffset, int lastLength) {
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; slots[slot] != EMPTY; slot = (slot + 1) & mask) {
+            int counter = slots[slot] - 1;
+            if (hashes[counter] == hash && firstLengths[counter] == firstLength && lastLengths[counter] == lastLength
+                    && equals(names[counter], 0, first, firstOffset, firstLength)
+                    && equals(names[counter], firstLength, last, lastOffset, lastLength)) {
+                return counter;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return true if two ranges of chars are the same
+     */
+    private static boolean equals(char[] a, int aOffset, char[] b, int bOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hash names held in buffers
+     */
+    private static int hash(char[] first, int firstOffset, int firstLength,
+                            char[] last, int lastOffset, int lastLength) {
+        int hash = 17;
+        for (int i = 0; i < firstLength; i++) {
+            hash = 31 * hash + first[firstOffset + i];
+        }
+        hash = 31 * hash + firstLength;
+        for (int i = 0; i < lastLength; i++) {
+            hash = 31 * hash + last[lastOffset + i];
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+}
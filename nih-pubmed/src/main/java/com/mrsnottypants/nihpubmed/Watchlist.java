@@ -0,0 +1,168 @@
+package com.mrsnottypants.nihpubmed;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * A precompiled list of authors we are interested in, so we can count only them and ignore everyone else.
+ *
+ * The names are interned into an AuthorCountTable when the watchlist is built, and never change afterwards,
+ * so a watchlist can be shared by any number of threads.  Memory is proportional to the watchlist, not the corpus.
+ * In front of the table is a bit filter over the hash of each last name.  Most authors in PubMed are not on the
+ * watchlist, and for them the filter answers after hashing the last name, without touching the table.
+ *
+ * A watchlist file has one author per line, first name and last name separated by a tab.
+ * A line without a tab is a last name only.  Blank lines and lines starting with # are ignored.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class Watchlist {
+
+    // filter bits per watched author, gives a false positive rate of a few percent
+    private static final int FILTER_BITS_PER_AUTHOR = 16;
+
+    // marks a comment line in a watchlist file
+    private static final String COMMENT = "#";
+
+    // separates the first and last name in a watchlist file
+    private static final char SEPARATOR = '\t';
+
+    /**
+     * Return a watchlist of the given authors.
+     * Duplicates are watched once.  Ids are assigned in the order the authors are first given.
+     * @param authors authors to watch
+     * @return watchlist
+     */
+    public static Watchlist of(Collection<Author> authors) {
+        AuthorCountTable names = new AuthorCountTable(authors.size());
+        for (Author author : authors) {
+            names.add(author.getFirstName(), author.getLastName(), 0);
+        }
+        return new Watchlist(names);
+    }
+
+    /**
+     * Load a watchlist from a UTF-8 file, one author per line.
+     * @param path watchlist file
+     * @return watchlist
+     * @throws IOException if the file cannot be read
+     */
+    public static Watchlist load(Path path) throws IOException {
+        AuthorCountTable names = new AuthorCountTable();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith(COMMENT)) {
+                    continue;
+                }
+                int separator = line.indexOf(SEPARATOR);
+                String firstName = separator < 0 ? "" : line.substring(0, separator).trim();
+                String lastName = line.substring(separator + 1).trim();
+                names.add(firstName, lastName, 0);
+            }
+        }
+        return new Watchlist(names);
+    }
+
+    // the watched names, interned into ids, the counts in the table are not used
+    private final AuthorCountTable names;
+
+    // one bit per last name hash, set if a watched author has a last name with that hash
+    private final long[] lastNameFilter;
+    private final int filterMask;
+
+    // build the last name filter over the interned names
+    //
+    private Watchlist(AuthorCountTable names) {
+
+        this.names = names;
+
+        // power of two number of bits, at least one long's worth
+        int bits = Long.SIZE;
+        while (bits < names.size() * FILTER_BITS_PER_AUTHOR && bits < (1 << 30)) {
+            bits <<= 1;
+        }
+        lastNameFilter = new long[bits / Long.SIZE];
+        filterMask = bits - 1;
+
+        for (int id = 0; id < names.size(); id++) {
+            char[] lastName = names.getLastName(id).toCharArray();
+            int bit = lastNameHash(lastName, 0, lastName.length) & filterMask;
+            lastNameFilter[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Return the id of a watched author, passed as ranges of name buffers
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     * @return id, or -1 if the author isn't watched
+     */
+    public int find(char[] first, int firstOffset, int firstLength, char[] last, int lastOffset, int lastLength) {
+
+        // quick reject on the last name
+        int bit = lastNameHash(last, lastOffset, lastLength) & filterMask;
+        if ((lastNameFilter[bit >>> 6] & (1L << bit)) == 0) {
+            return -1;
+        }
+        return names.find(first, firstOffset, firstLength, last, lastOffset, lastLength);
+    }
+
+    /**
+     * Return the id of a watched author
+     * @param author author
+     * @return id, or -1 if the author isn't watched
+     */
+    public int find(Author author) {
+        return names.find(author);
+    }
+
+    /**
+     * Return the watched author with the given id
+     * @param id id from 0 to size() - 1
+     * @return author
+     */
+    public Author getAuthor(int id) {
+        return names.getAuthor(id);
+    }
+
+    /**
+     * Return the number of watched authors
+     * @return number of authors
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Return new, empty, counts for this watchlist.
+     * Each thread needs counts of its own, the watchlist itself can be shared.
+     * @return counts of watched authors only
+     */
+    public WatchlistCounts newCounts() {
+        return new WatchlistCounts(this);
+    }
+
+    /**
+     * Hash a last name for the filter, FNV-1a folded into the high bits
+     * @param chars buffer holding the name
+     * @param offset where the name starts
+     * @param length name length
+     * @return hash
+     */
+    private static int lastNameHash(char[] chars, int offset, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ chars[i]) * 0x01000193;
+        }
+        return hash ^ (hash >>> 15);
+    }
+}
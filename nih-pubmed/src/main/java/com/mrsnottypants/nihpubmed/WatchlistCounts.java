@@ -0,0 +1,87 @@
+package com.mrsnottypants.nihpubmed;
+
+/**
+ * Counts only the authors on a watchlist, everyone else is ignored.
+ * Counts are kept in an array indexed by watchlist id, so counting allocates nothing and memory is proportional
+ * to the watchlist.
+ * This class is not thread-safe, each thread needs counts of its own.  See Watchlist.newCounts.
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class WatchlistCounts implements AuthorCounts {
+
+    // the authors we count
+    private final Watchlist watchlist;
+
+    // count of each author, indexed by watchlist id
+    private final int[] counts;
+
+    // construct empty counts, use Watchlist.newCounts
+    //
+    WatchlistCounts(Watchlist watchlist) {
+        this.watchlist = watchlist;
+        counts = new int[watchlist.size()];
+    }
+
+    /**
+     * Add one to the author's count, if the author is on the watchlist
+     * @param first buffer holding the first name
+     * @param firstOffset where the first name starts
+     * @param firstLength first name length
+     * @param last buffer holding the last name
+     * @param lastOffset where the last name starts
+     * @param lastLength last name length
+     */
+    @Override
+    public void increment(char[] first, int firstOffset, int firstLength,
+                          char[] last, int lastOffset, int lastLength) {
+        int id = watchlist.find(first, firstOffset, firstLength, last, lastOffset, lastLength);
+        if (id >= 0) {
+            counts[id]++;
+        }
+    }
+
+    /**
+     * Return how often the author was counted
+     * @param author author of interest
+     * @return count, zero if the author isn't on the watchlist
+     */
+    @Override
+    public int getAuthorCount(Author author) {
+        int id = watchlist.find(author);
+        return id < 0 ? 0 : counts[id];
+    }
+
+    /**
+     * Return the count of the author with the given watchlist id
+     * @param id watchlist id
+     * @return count
+     */
+    public int getCount(int id) {
+        return counts[id];
+    }
+
+    /**
+     * Return the watchlist we count
+     * @return watchlist
+     */
+    public Watchlist getWatchlist() {
+        return watchlist;
+    }
+
+    /**
+     * Add the counts of another instance, for the same watchlist, to ours
+     * @param other counts to add
+     * @throws IllegalArgumentException if the other counts are not for the same watchlist
+     */
+    @Override
+    public void merge(AuthorCounts other) {
+        if (!(other instanceof WatchlistCounts) || ((WatchlistCounts)other).watchlist != watchlist) {
+            throw new IllegalArgumentException("can only merge counts of the same watchlist");
+        }
+        int[] otherCounts = ((WatchlistCounts)other).counts;
+        for (int id = 0; id < counts.length; id++) {
+            counts[id] += otherCounts[id];
+        }
+    }
+}
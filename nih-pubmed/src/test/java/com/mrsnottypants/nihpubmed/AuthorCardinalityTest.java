@@ -0,0 +1,84 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class AuthorCardinalityTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEstimates() throws Exception {
+
+        // two files, with different authors
+        File data = folder.newFolder("data");
+        Path first = data.toPath().resolve("a.xml");
+        Path second = data.toPath().resolve("b.xml.gz");
+        SyntheticPubMed.newInstance(31, 3000).write(first, 1500);
+        SyntheticPubMed.newInstance(32, 3000).write(second, 1500);
+        List<Path> paths = PubMedBatch.listFiles(data.getPath());
+
+        // the exact answers, the slow way
+        Set<Author> authors = new HashSet<>();
+        Set<Set<Author>> coauthors = new HashSet<>();
+        Map<Integer, Set<Author>> years = new HashMap<>();
+        Map<Path, Set<Author>> files = new HashMap<>();
+        for (Path path : paths) {
+            Set<Author> fileAuthors = files.computeIfAbsent(path, p -> new HashSet<>());
+            try (InputStream inputStream = PubMedInput.open(path)) {
+                PubMedEngine.STAX.parse(inputStream, PubMedRecordHandler.newInstance(record -> {
+                    for (int i = 0; i < record.getAuthorCount(); i++) {
+                        Author author = record.getAuthor(i);
+                        authors.add(author);
+                        fileAuthors.add(author);
+                        years.computeIfAbsent(record.getYear(), y -> new HashSet<>()).add(author);
+                        for (int j = i + 1; j < record.getAuthorCount(); j++) {
+                            if (!author.equals(record.getAuthor(j))) {
+                                coauthors.add(new HashSet<>(Arrays.asList(author, record.getAuthor(j))));
+                            }
+                        }
+                    }
+                }));
+            }
+        }
+
+        // each engine finds every year, from a PubDate's Year or its MedlineDate
+        for (PubMedEngine engine : new PubMedEngine[] { PubMedEngine.SAX, PubMedEngine.STAX }) {
+            AuthorCardinality cardinality = PubMedBatch.estimateDistinct(paths, 2, engine);
+            assertEquals(3000, cardinality.getRecordCount());
+            assertEstimate(authors.size(), cardinality.getDistinctAuthors());
+            assertEstimate(coauthors.size(), cardinality.getDistinctCoauthors());
+            assertEquals(years.keySet(), cardinality.getYears());
+            for (int year : years.keySet()) {
+                assertEstimate(years.get(year).size(), cardinality.getDistinctAuthors(year));
+            }
+            assertEquals(files.keySet(), cardinality.getFiles());
+            for (Path path : paths) {
+                assertEstimate(files.get(path).size(), cardinality.getDistinctAuthors(path));
+            }
+            assertEquals(0, cardinality.getDistinctAuthors(1900));
+        }
+    }
+
+    // within four standard errors of the default precision, or two for small counts
+    //
+    private static void assertEstimate(long expected, long estimate) {
+        assertEquals(expected, estimate, Math.max(2, expected * 0.065));
+    }
+}
@@ -0,0 +1,88 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class AuthorCountTableTest {
+
+    @Test
+    public void testAdd() {
+
+        AuthorCountTable table = new AuthorCountTable();
+        int amy = table.add("Amy", "Brown");
+        int bob = table.add("Bob", "Green");
+        assertEquals(amy, table.add("Amy", "Brown"));
+
+        // buffers and strings find the same author
+        char[] buffer = "xxBobGreenxx".toCharArray();
+        assertEquals(bob, table.add(buffer, 2, 3, buffer, 5, 5));
+
+        assertEquals(2, table.size());
+        assertEquals(2, table.getAuthorCount(Author.of("Amy", "Brown")));
+        assertEquals(2, table.getAuthorCount(Author.of("Bob", "Green")));
+        assertEquals(0, table.getAuthorCount(Author.of("Carol", "Grey")));
+
+        // names split differently are different authors
+        assertEquals(0, table.getAuthorCount(Author.of("AmyB", "rown")));
+
+        // ids
+        assertEquals("Amy", table.getFirstName(amy));
+        assertEquals("Brown", table.getLastName(amy));
+        assertEquals(Author.of("Bob", "Green"), table.getAuthor(bob));
+        assertEquals(-1, table.find("Carol", "Grey"));
+    }
+
+    @Test
+    public void testMissingNames() {
+
+        // a missing name is the same as an empty name
+        AuthorCountTable table = new AuthorCountTable();
+        table.add(null, "Brown");
+        table.add("", "Brown");
+        table.add(null, null);
+        assertEquals(2, table.getAuthorCount(Author.of(null, "Brown")));
+        assertEquals(1, table.getAuthorCount(Author.of(null, null)));
+        assertEquals(1, table.getAuthorCount(Author.of("", "")));
+    }
+
+    @Test
+    public void testGrowth() {
+
+        // many more authors than the initial capacity
+        AuthorCountTable table = new AuthorCountTable();
+        for (int i = 0; i < 10000; i++) {
+            for (int j = 0; j <= i % 3; j++) {
+                table.add("First" + i, "Last" + i);
+            }
+        }
+        assertEquals(10000, table.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i % 3 + 1, table.getAuthorCount(Author.of("First" + i, "Last" + i)));
+        }
+    }
+
+    @Test
+    public void testMerge() {
+
+        AuthorCountTable a = new AuthorCountTable();
+        a.add("Amy", "Brown");
+        a.add("Bob", "Green");
+        AuthorCountTable b = new AuthorCountTable();
+        b.add("Bob", "Green", 5);
+        b.add("Carol", "Grey");
+
+        a.merge(b);
+        assertEquals(1, a.getAuthorCount(Author.of("Amy", "Brown")));
+        assertEquals(6, a.getAuthorCount(Author.of("Bob", "Green")));
+        assertEquals(1, a.getAuthorCount(Author.of("Carol", "Grey")));
+
+        // a copy doesn't change with the original
+        AuthorCountTable copy = a.copy();
+        a.add("Amy", "Brown");
+        assertEquals(1, copy.getAuthorCount(Author.of("Amy", "Brown")));
+        assertEquals(2, a.getAuthorCount(Author.of("Amy", "Brown")));
+    }
+}
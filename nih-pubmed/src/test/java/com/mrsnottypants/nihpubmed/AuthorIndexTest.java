@@ -0,0 +1,109 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class AuthorIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIndex() throws Exception {
+
+        // a plain and a compressed file
+        SyntheticPubMed generator = SyntheticPubMed.newInstance(5, 200);
+        File data = folder.newFolder("data");
+        generator.write(data.toPath().resolve("a.xml"), 300);
+        generator.write(data.toPath().resolve("b.xml.gz"), 300);
+        Path directory = folder.getRoot().toPath().resolve("index");
+        AuthorIndexWriter.build(PubMedBatch.listFiles(data.getPath()), directory);
+        AuthorIndex index = AuthorIndex.open(directory);
+
+        // the PMIDs each author is listed in, the slow way
+        Map<Author, TreeSet<Long>> expected = new HashMap<>();
+        for (Path path : PubMedBatch.listFiles(data.getPath())) {
+            try (InputStream inputStream = PubMedInput.open(path)) {
+                PubMedEngine.STAX.parse(inputStream, PubMedRecordHandler.newInstance(record -> {
+                    for (int i = 0; i < record.getAuthorCount(); i++) {
+                        expected.computeIfAbsent(record.getAuthor(i), a -> new TreeSet<>()).add(record.getPmid());
+                    }
+                }));
+            }
+        }
+
+        // counts match the generator, PMIDs match the slow way
+        AuthorCountTable truth = generator.getAuthorCounts();
+        assertEquals(truth.size(), index.size());
+        assertEquals(600, index.getRecordCount());
+        for (int id = 0; id < truth.size(); id++) {
+            Author author = truth.getAuthor(id);
+            assertEquals(author.toString(), truth.getCount(id), index.getAuthorCount(author));
+            long[] pmids = expected.get(author).stream().mapToLong(Long::longValue).toArray();
+            assertTrue(author.toString(), Arrays.equals(pmids, index.getPmids(author)));
+            assertEquals(author, index.getAuthor(index.find(author)));
+        }
+        assertEquals(0, index.getAuthorCount(Author.of("Nobody", "Atall")));
+        assertEquals(0, index.getPmids(Author.of("Nobody", "Atall")).length);
+
+        // raw records, from the plain and the compressed file
+        for (long pmid : new long[] { 1, 300, 301, 600 }) {
+            String record = new String(index.getRecord(pmid).get(), StandardCharsets.UTF_8);
+            assertTrue(record.startsWith("<PubmedArticle>"));
+            assertTrue(record.endsWith("</PubmedArticle>"));
+            assertTrue(record.contains("<PMID Version=\"1\">" + pmid + "</PMID>"));
+        }
+        assertFalse(index.getRecord(601).isPresent());
+    }
+
+    @Test
+    public void testCompressedSource() throws Exception {
+
+        // a compressed file, and its records' bytes the slow way
+        SyntheticPubMed generator = SyntheticPubMed.newInstance(5, 200);
+        Path source = folder.newFolder("data").toPath().resolve("a.xml.gz");
+        generator.write(source, 300);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream inputStream = PubMedInput.open(source)) {
+            byte[] buffer = new byte[8 * 1024];
+            for (int read = inputStream.read(buffer); read >= 0; read = inputStream.read(buffer)) {
+                bytes.write(buffer, 0, read);
+            }
+        }
+        byte[] decompressed = bytes.toByteArray();
+        long[] ranges;
+        try (InputStream inputStream = PubMedInput.open(source)) {
+            ranges = PubMedSplitter.findRecords(inputStream);
+        }
+        Path directory = folder.getRoot().toPath().resolve("index");
+        AuthorIndexWriter.build(Arrays.asList(source), directory);
+
+        // records come from the index, not the source
+        Files.delete(source);
+        AuthorIndex index = AuthorIndex.open(directory);
+        assertEquals(300, index.getRecordCount());
+        for (int k = 0; k < 300; k++) {
+            long pmid = k + 1;
+            byte[] expected = Arrays.copyOfRange(decompressed, (int)ranges[k * 2], (int)ranges[k * 2 + 1]);
+            assertArrayEquals(expected, index.getRecord(pmid).get());
+            assertEquals(source, index.getSourceFile(pmid).get());
+        }
+        assertFalse(index.getSourceFile(301).isPresent());
+    }
+}
@@ -0,0 +1,126 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class AuthorSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // revises PMID 1, adds PMID 1000, then deletes PMID 2 and a PMID we've never seen
+    private static final String UPDATE =
+            "<PubmedArticleSet>" +
+            "<PubmedArticle><MedlineCitation><PMID Version=\"2\">1</PMID><Article><AuthorList>" +
+            "<Author><LastName>Newman</LastName><ForeName>Nora</ForeName></Author>" +
+            "<Author><LastName>Newman</LastName><ForeName>Nora</ForeName></Author>" +
+            "</AuthorList></Article></MedlineCitation></PubmedArticle>" +
+            "<PubmedArticle><MedlineCitation><PMID Version=\"1\">1000</PMID><Article><AuthorList>" +
+            "<Author><LastName>Newman</LastName><ForeName>Nora</ForeName></Author>" +
+            "</AuthorList></Article></MedlineCitation></PubmedArticle>" +
+            "<DeleteCitation><PMID Version=\"1\">2</PMID><PMID Version=\"1\">5000</PMID></DeleteCitation>" +
+            "</PubmedArticleSet>";
+
+    @Test
+    public void testApply() throws Exception {
+
+        // a baseline gives the generator's counts
+        SyntheticPubMed generator = SyntheticPubMed.newInstance(11, 100);
+        Path baseline = folder.getRoot().toPath().resolve("baseline.xml.gz");
+        generator.write(baseline, 200);
+        AuthorSnapshot snapshot = AuthorSnapshot.newInstance();
+        assertTrue(snapshot.apply(baseline));
+        AuthorCountTable expected = generator.getAuthorCounts();
+        assertCounts(expected, snapshot);
+        assertEquals(200, snapshot.getRecordCount());
+
+        // an update replaces the authors of revised and deleted citations
+        for (Author author : snapshot.getAuthors(1)) {
+            expected.add(author.getFirstName(), author.getLastName(), -1);
+        }
+        for (Author author : snapshot.getAuthors(2)) {
+            expected.add(author.getFirstName(), author.getLastName(), -1);
+        }
+        expected.add("Nora", "Newman", 3);
+        Path update = write("update0001.xml", UPDATE);
+        assertTrue(snapshot.apply(update));
+        assertCounts(expected, snapshot);
+        assertEquals(3, snapshot.getAuthorCount(Author.of("Nora", "Newman")));
+        assertEquals(200, snapshot.getRecordCount());
+        assertEquals(Collections.emptyList(), snapshot.getAuthors(2));
+        assertEquals(Arrays.asList(Author.of("Nora", "Newman"), Author.of("Nora", "Newman")), snapshot.getAuthors(1));
+
+        // a file is only applied once
+        assertFalse(snapshot.apply(update));
+        assertEquals(3, snapshot.getAuthorCount(Author.of("Nora", "Newman")));
+        assertEquals(Arrays.asList("baseline.xml.gz", "update0001.xml"), snapshot.getAppliedFiles());
+    }
+
+    @Test
+    public void testCheckpoint() throws Exception {
+
+        // no checkpoints yet
+        Path directory = folder.getRoot().toPath().resolve("snapshots");
+        AuthorSnapshot snapshot = AuthorSnapshot.load(directory);
+        assertEquals(0, snapshot.getVersion());
+        assertEquals(0, snapshot.getRecordCount());
+
+        // save, and load what we saved
+        SyntheticPubMed generator = SyntheticPubMed.newInstance(12, 100);
+        Path baseline = folder.getRoot().toPath().resolve("baseline.xml");
+        generator.write(baseline, 200);
+        snapshot.apply(baseline);
+        Path checkpoint = snapshot.save(directory);
+        assertEquals("snapshot-00000001.dat", checkpoint.getFileName().toString());
+        AuthorSnapshot loaded = AuthorSnapshot.load(directory);
+        assertEquals(1, loaded.getVersion());
+        assertEquals(snapshot.getAppliedFiles(), loaded.getAppliedFiles());
+        assertEquals(200, loaded.getRecordCount());
+        assertCounts(generator.getAuthorCounts(), loaded);
+
+        // an update to the loaded snapshot is saved as the next version, without the authors it removed
+        List<Author> removed = loaded.getAuthors(2);
+        loaded.apply(write("update0001.xml", UPDATE));
+        loaded.save(directory);
+        AuthorSnapshot latest = AuthorSnapshot.load(directory);
+        assertEquals(2, latest.getVersion());
+        assertEquals(3, latest.getAuthorCount(Author.of("Nora", "Newman")));
+        assertEquals(Collections.emptyList(), latest.getAuthors(2));
+        for (Author author : removed) {
+            assertEquals(author.toString(), loaded.getAuthorCount(author), latest.getAuthorCount(author));
+        }
+        assertEquals(loaded.getAuthors(17), latest.getAuthors(17));
+
+        // the first version is still there
+        assertEquals(1, AuthorSnapshot.read(checkpoint).getVersion());
+    }
+
+    // check every author's count
+    //
+    private static void assertCounts(AuthorCountTable expected, AuthorSnapshot snapshot) {
+        for (int id = 0; id < expected.size(); id++) {
+            Author author = expected.getAuthor(id);
+            assertEquals(author.toString(), expected.getCount(id), snapshot.getAuthorCount(author));
+        }
+    }
+
+    // write a file to the temporary folder
+    //
+    private Path write(String name, String contents) throws Exception {
+        Path path = folder.getRoot().toPath().resolve(name);
+        Files.write(path, contents.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+}
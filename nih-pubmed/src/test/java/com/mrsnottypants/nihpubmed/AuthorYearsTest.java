@@ -0,0 +1,146 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class AuthorYearsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testYears() {
+
+        // years in any order, some more than once
+        AuthorYears years = AuthorYears.newInstance();
+        int[] listed = { 2012, 2010, 2016, 2010, 1999, 2012, 2010 };
+        for (int year : listed) {
+            years.record(record(year, "Amy", "Brown", "Bob", "Green"));
+        }
+        years.record(record(2011, "Bob", "Green"));
+        Author amy = Author.of("Amy", "Brown");
+        Author bob = Author.of("Bob", "Green");
+        SortedMap<Integer, Integer> expected = new TreeMap<>();
+        expected.put(1999, 1);
+        expected.put(2010, 3);
+        expected.put(2012, 2);
+        expected.put(2016, 1);
+        assertEquals(expected, years.getYears(amy));
+        assertEquals(7, years.getCount(amy));
+        assertEquals(8, years.getCount(bob));
+
+        // ranges, inclusive, whether or not the author was listed in the years they start and end at
+        assertEquals(5, years.getCount(amy, 2010, 2012));
+        assertEquals(6, years.getCount(bob, 2010, 2012));
+        assertEquals(3, years.getCount(amy, 2000, 2011));
+        assertEquals(7, years.getCount(amy, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        assertEquals(0, years.getCount(amy, 2013, 2015));
+        assertEquals(0, years.getCount(amy, 2016, 2010));
+        assertEquals(0, years.getCount(Author.of("Carol", "Grey"), 2010, 2016));
+        assertTrue(years.getYears(Author.of("Carol", "Grey")).isEmpty());
+
+        // undated articles, and years out of range, count towards the total only
+        years.record(record(-1, "Amy", "Brown"));
+        years.record(record(AuthorYears.LAST_YEAR + 1, "Amy", "Brown"));
+        years.record(record(AuthorYears.LAST_YEAR, "Amy", "Brown"));
+        assertEquals(10, years.getCount(amy));
+        assertEquals(8, years.getCount(amy, AuthorYears.FIRST_YEAR, AuthorYears.LAST_YEAR));
+
+        // an author listed in every year, whose block moves as it grows
+        for (int year = AuthorYears.LAST_YEAR; year >= AuthorYears.FIRST_YEAR; year--) {
+            for (int i = 0; i <= year % 3; i++) {
+                years.record(record(year, "Carol", "Grey"));
+            }
+        }
+        Author carol = Author.of("Carol", "Grey");
+        assertEquals(AuthorYears.LAST_YEAR - AuthorYears.FIRST_YEAR + 1, years.getYears(carol).size());
+        assertEquals(1, years.getCount(carol, 2016, 2016));
+        assertEquals(3, years.getCount(carol, 2016, 2017));
+        assertEquals(6, years.getCount(carol, 2016, 2018));
+        assertEquals(expected.size() + 1, years.getYears(amy).size());
+        assertEquals(3, years.size());
+    }
+
+    @Test
+    public void testAggregate() throws Exception {
+
+        // two files
+        File data = folder.newFolder("data");
+        SyntheticPubMed.newInstance(51, 1500).write(data.toPath().resolve("a.xml"), 900);
+        SyntheticPubMed.newInstance(52, 1500).write(data.toPath().resolve("b.xml.gz"), 600);
+        List<Path> paths = PubMedBatch.listFiles(data.getPath());
+
+        // each author's years, the slow way
+        Map<Author, SortedMap<Integer, Integer>> expected = new HashMap<>();
+        for (Path path : paths) {
+            try (InputStream inputStream = PubMedInput.open(path)) {
+                PubMedEngine.STAX.parse(inputStream, PubMedRecordHandler.newInstance(record -> {
+                    for (int i = 0; i < record.getAuthorCount(); i++) {
+                        expected.computeIfAbsent(record.getAuthor(i), author -> new TreeMap<>())
+                                .merge(record.getYear(), 1, Integer::sum);
+                    }
+                }));
+            }
+        }
+
+        // the same years from one pass, on one thread or merged from several
+        for (int threads : new int[] { 1, 3 }) {
+            PubMedPipeline pipeline = PubMedBatch.aggregate(paths, threads, PubMedEngine.SAX,
+                    () -> PubMedPipeline.of(AuthorYears.newInstance()));
+            AuthorYears years = (AuthorYears)pipeline.get(0);
+            assertEquals(expected.size(), years.size());
+            for (Map.Entry<Author, SortedMap<Integer, Integer>> entry : expected.entrySet()) {
+                Author author = entry.getKey();
+                assertEquals(author.toString(), entry.getValue(), years.getYears(author));
+                int total = entry.getValue().values().stream().mapToInt(Integer::intValue).sum();
+                assertEquals(total, years.getCount(author));
+                int since2000 = entry.getValue().tailMap(2000).values().stream().mapToInt(Integer::intValue).sum();
+                assertEquals(since2000, years.getCount(author, 2000, SyntheticPubMed.LAST_YEAR));
+            }
+        }
+
+        // only years merge
+        try {
+            AuthorYears.newInstance().merge(PublicationYears.newInstance());
+            fail("merged publication years");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    /**
+     * Return a record of the given year, by the given authors
+     * @param year year, -1 for none
+     * @param names first and last names of each author
+     * @return record
+     */
+    private static PubMedRecord record(int year, String... names) {
+        PubMedRecord record = new PubMedRecord();
+        record.clear();
+        record.setYear(year);
+        NameBuffer first = new NameBuffer();
+        NameBuffer last = new NameBuffer();
+        for (int i = 0; i < names.length; i += 2) {
+            first.clear();
+            first.append(names[i].toCharArray(), 0, names[i].length());
+            last.clear();
+            last.append(names[i + 1].toCharArray(), 0, names[i + 1].length());
+            record.addAuthor(first, last, new NameBuffer());
+        }
+        return record;
+    }
+}
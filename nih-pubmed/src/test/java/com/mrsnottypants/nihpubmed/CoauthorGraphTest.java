@@ -0,0 +1,180 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class CoauthorGraphTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final Author AMY = Author.of("Amy", "Brown");
+    private static final Author BOB = Author.of("Bob", "Green");
+    private static final Author CAROL = Author.of("Carol", "Grey");
+    private static final Author DAVID = Author.of("David", "Blue");
+    private static final Author EVE = Author.of("Eve", "White");
+
+    @Test
+    public void testGraph() throws Exception {
+
+        // the last article has too many authors for edges, Amy is listed twice on the third
+        CoauthorGraphBuilder builder = CoauthorGraphBuilder.newInstance(3);
+        parse(builder, article(AMY, BOB, CAROL) + article(AMY, BOB) + article(AMY, AMY, DAVID) +
+                article(AMY, BOB, CAROL, EVE));
+        assertEquals(1, builder.getCappedCount());
+        CoauthorGraph graph = builder.toGraph();
+
+        // every author, with their article count
+        assertEquals(5, graph.size());
+        int amy = graph.find(AMY);
+        int bob = graph.find(BOB);
+        int carol = graph.find(CAROL);
+        int david = graph.find(DAVID);
+        int eve = graph.find(EVE);
+        assertEquals(-1, graph.find(Author.of("Nobody", "Atall")));
+        assertEquals(4, graph.getArticleCount(amy));
+        assertEquals(1, graph.getArticleCount(eve));
+
+        // edges, weighted by shared articles, with neighbours ascending
+        assertEquals(4, graph.getEdgeCount());
+        assertEquals(3, graph.getDegree(amy));
+        assertEquals(0, graph.getDegree(eve));
+        assertEquals(2, graph.getWeightBetween(amy, bob));
+        assertEquals(2, graph.getWeightBetween(bob, amy));
+        assertEquals(1, graph.getWeightBetween(amy, david));
+        assertEquals(0, graph.getWeightBetween(amy, eve));
+        assertEquals(0, graph.getWeightBetween(amy, amy));
+        for (int i = 1; i < graph.getDegree(amy); i++) {
+            assertTrue(graph.getNeighbor(amy, i - 1) < graph.getNeighbor(amy, i));
+        }
+        assertArrayEquals(new int[] { bob, Math.min(carol, david) }, graph.getTopNeighbors(amy, 2));
+
+        // the same graph back from a file
+        Path path = folder.getRoot().toPath().resolve("graph.dat");
+        graph.write(path);
+        CoauthorGraph read = CoauthorGraph.read(path);
+        assertGraphsEqual(graph, read);
+    }
+
+    @Test
+    public void testSynthetic() throws Exception {
+
+        // a small buffer, so pairs are folded many times
+        SyntheticPubMed generator = SyntheticPubMed.newInstance(41, 500);
+        Path path = folder.getRoot().toPath().resolve("pubmed.xml");
+        generator.write(path, 1000);
+        CoauthorGraphBuilder builder = CoauthorGraphBuilder.newInstance(CoauthorGraphBuilder.DEFAULT_MAX_AUTHORS, 64);
+        Map<Set<Author>, Integer> expected = new HashMap<>();
+        try (InputStream inputStream = PubMedInput.open(path)) {
+            PubMedEngine.STAX.parse(inputStream, PubMedRecordHandler.newInstance(record -> {
+                builder.record(record);
+
+                // the slow way, each distinct pair once per article
+                Set<Author> authors = new LinkedHashSet<>();
+                for (int i = 0; i < record.getAuthorCount(); i++) {
+                    authors.add(record.getAuthor(i));
+                }
+                Author[] distinct = authors.toArray(new Author[authors.size()]);
+                for (int i = 0; i < distinct.length; i++) {
+                    for (int j = i + 1; j < distinct.length; j++) {
+                        Set<Author> pair = new LinkedHashSet<>();
+                        pair.add(distinct[i]);
+                        pair.add(distinct[j]);
+                        expected.merge(pair, 1, Integer::sum);
+                    }
+                }
+            }));
+        }
+
+        CoauthorGraph graph = builder.toGraph();
+        assertEquals(expected.size(), graph.getEdgeCount());
+        for (Map.Entry<Set<Author>, Integer> entry : expected.entrySet()) {
+            Author[] pair = entry.getKey().toArray(new Author[2]);
+            assertEquals(entry.getKey().toString(), (int)entry.getValue(),
+                    graph.getWeightBetween(graph.find(pair[0]), graph.find(pair[1])));
+        }
+
+        // the same edges from several files parsed on several threads, each into a builder of its own
+        Path other = folder.getRoot().toPath().resolve("other.xml");
+        generator.write(other, 1000);
+        CoauthorGraph parallel = CoauthorGraphBuilder.build(Arrays.asList(path, other, path), 3, PubMedEngine.SAX,
+                CoauthorGraphBuilder.DEFAULT_MAX_AUTHORS);
+        CoauthorGraphBuilder sequential = CoauthorGraphBuilder.newInstance(CoauthorGraphBuilder.DEFAULT_MAX_AUTHORS);
+        for (Path file : Arrays.asList(path, other, path)) {
+            try (InputStream inputStream = PubMedInput.open(file)) {
+                PubMedEngine.STAX.parse(inputStream, PubMedRecordHandler.newInstance(sequential));
+            }
+        }
+        CoauthorGraph expectedGraph = sequential.toGraph();
+        assertEquals(expectedGraph.size(), parallel.size());
+        assertEquals(expectedGraph.getEdgeCount(), parallel.getEdgeCount());
+        for (int id = 0; id < expectedGraph.size(); id++) {
+            Author author = expectedGraph.getAuthor(id);
+            int parallelId = parallel.find(author);
+            assertEquals(author.toString(), expectedGraph.getArticleCount(id), parallel.getArticleCount(parallelId));
+            assertEquals(author.toString(), expectedGraph.getDegree(id), parallel.getDegree(parallelId));
+            for (int i = 0; i < expectedGraph.getDegree(id); i++) {
+                int neighbor = parallel.find(expectedGraph.getAuthor(expectedGraph.getNeighbor(id, i)));
+                assertEquals(expectedGraph.getWeight(id, i), parallel.getWeightBetween(parallelId, neighbor));
+            }
+        }
+        try {
+            CoauthorGraphBuilder.build(Collections.singletonList(path), 1, PubMedEngine.SCAN, 10);
+            fail("built a graph from author lists only");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    // same authors, counts and rows
+    //
+    private static void assertGraphsEqual(CoauthorGraph expected, CoauthorGraph actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getEdgeCount(), actual.getEdgeCount());
+        for (int id = 0; id < expected.size(); id++) {
+            assertEquals(expected.getAuthor(id), actual.getAuthor(id));
+            assertEquals(expected.getArticleCount(id), actual.getArticleCount(id));
+            assertEquals(expected.getDegree(id), actual.getDegree(id));
+            for (int i = 0; i < expected.getDegree(id); i++) {
+                assertEquals(expected.getNeighbor(id, i), actual.getNeighbor(id, i));
+                assertEquals(expected.getWeight(id, i), actual.getWeight(id, i));
+            }
+        }
+    }
+
+    // parse articles into the builder
+    //
+    private static void parse(CoauthorGraphBuilder builder, String articles) throws Exception {
+        String xml = "<PubmedArticleSet>" + articles + "</PubmedArticleSet>";
+        try (InputStream inputStream = new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))) {
+            PubMedEngine.STAX.parse(inputStream, PubMedRecordHandler.newInstance(builder));
+        }
+    }
+
+    // an article with the given authors
+    //
+    private static String article(Author... authors) {
+        StringBuilder xml = new StringBuilder("<PubmedArticle><MedlineCitation><Article><AuthorList>");
+        for (Author author : authors) {
+            xml.append("<Author><LastName>").append(author.getLastName()).append("</LastName><ForeName>")
+                    .append(author.getFirstName()).append("</ForeName></Author>");
+        }
+        return xml.append("</AuthorList></Article></MedlineCitation></PubmedArticle>").toString();
+    }
+}
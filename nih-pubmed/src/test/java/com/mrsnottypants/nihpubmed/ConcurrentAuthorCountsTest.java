@@ -0,0 +1,161 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class ConcurrentAuthorCountsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testThreads() throws Exception {
+
+        // threads counting the same authors, some through batches bigger than a flush, some straight into the store
+        ConcurrentAuthorCounts store = new ConcurrentAuthorCounts(8);
+        int authors = ConcurrentAuthorCounts.BATCH_AUTHORS * 2;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            boolean batched = thread % 2 == 0;
+            futures.add(executor.submit(() -> {
+                AuthorCounts counts = batched ? store.newBatch() : store;
+                for (int i = 0; i < authors; i++) {
+                    increment(counts, "First" + i, "Last" + (i % 100));
+                }
+                store.merge(counts);
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        AuthorCountTable snapshot = store.snapshot();
+        assertEquals(authors, snapshot.size());
+        assertEquals(4, snapshot.getAuthorCount(Author.of("First0", "Last0")));
+        assertEquals(4, store.getAuthorCount(Author.of("First" + (authors - 1), "Last" + ((authors - 1) % 100))));
+        assertEquals(0, store.getAuthorCount(Author.of("First0", "Last1")));
+    }
+
+    @Test
+    public void testBatch() {
+
+        // a batch counts what it holds, and flushes when it's full
+        ConcurrentAuthorCounts store = new ConcurrentAuthorCounts();
+        ConcurrentAuthorCounts.Batch batch = store.newBatch();
+        increment(batch, "Amy", "Brown");
+        assertEquals(1, batch.getAuthorCount(Author.of("Amy", "Brown")));
+        assertEquals(0, store.getAuthorCount(Author.of("Amy", "Brown")));
+        for (int i = 1; i < ConcurrentAuthorCounts.BATCH_AUTHORS; i++) {
+            increment(batch, "First" + i, "Last");
+        }
+        assertEquals(1, store.getAuthorCount(Author.of("Amy", "Brown")));
+        assertEquals(1, batch.getAuthorCount(Author.of("Amy", "Brown")));
+
+        // merging flushes both batches, tables are added, anything else is refused
+        ConcurrentAuthorCounts.Batch other = store.newBatch();
+        increment(other, "Amy", "Brown");
+        increment(batch, "Amy", "Brown");
+        batch.merge(other);
+        assertEquals(3, store.getAuthorCount(Author.of("Amy", "Brown")));
+        AuthorCountTable table = new AuthorCountTable();
+        table.add("Amy", "Brown", 2);
+        store.merge(table);
+        assertEquals(5, store.snapshot().getAuthorCount(Author.of("Amy", "Brown")));
+        try {
+            batch.merge(new ConcurrentAuthorCounts().newBatch());
+            fail("merged a batch of another store");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        try {
+            new ConcurrentAuthorCounts(12);
+            fail("shards not a power of two");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+
+        // every flush adds one to each of a hundred authors, spread over the shards
+        ConcurrentAuthorCounts store = new ConcurrentAuthorCounts(16);
+        AtomicBoolean counting = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int thread = 0; thread < 3; thread++) {
+            writers.add(executor.submit(() -> {
+                ConcurrentAuthorCounts.Batch batch = store.newBatch();
+                while (counting.get()) {
+                    for (int i = 0; i < 100; i++) {
+                        increment(batch, "First" + i, "Last" + i);
+                    }
+                    batch.flush();
+                }
+            }));
+        }
+
+        // a snapshot never sees part of a flush
+        try {
+            for (int read = 0; read < 200; read++) {
+                AuthorCountTable snapshot = store.snapshot();
+                int count = snapshot.getAuthorCount(Author.of("First0", "Last0"));
+                for (int i = 1; i < 100; i++) {
+                    assertEquals(count, snapshot.getAuthorCount(Author.of("First" + i, "Last" + i)));
+                }
+            }
+        } finally {
+            counting.set(false);
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCountAuthors() throws Exception {
+
+        // files counted into one store count the same as with a table per worker
+        Path first = folder.getRoot().toPath().resolve("a.xml");
+        Path second = folder.getRoot().toPath().resolve("b.xml");
+        SyntheticPubMed generator = SyntheticPubMed.newInstance(71, 5000);
+        generator.write(first, 800);
+        generator.write(second, 800);
+        List<Path> paths = Arrays.asList(first, second);
+
+        ConcurrentAuthorCounts store = new ConcurrentAuthorCounts();
+        PubMedAuthorCountHandler handler = PubMedBatch.countAuthors(paths, 4, PubMedEngine.SAX, store::newBatch);
+        AuthorCountTable expected = (AuthorCountTable)PubMedBatch.countAuthors(paths, 1).getCounts();
+        AuthorCountTable actual = store.snapshot();
+        assertEquals(expected.size(), actual.size());
+        for (int id = 0; id < expected.size(); id++) {
+            Author author = expected.getAuthor(id);
+            assertEquals(expected.getCount(id), actual.getAuthorCount(author));
+            assertEquals(expected.getCount(id), handler.getAuthorCount(author));
+        }
+    }
+
+    // count an author, as the handler passes them
+    //
+    private static void increment(AuthorCounts counts, String first, String last) {
+        char[] chars = (first + last).toCharArray();
+        counts.increment(chars, 0, first.length(), chars, first.length(), last.length());
+    }
+}
@@ -0,0 +1,232 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class FacetCountsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRecords() throws Exception {
+
+        // only watched authors are counted, and only records with one intern values
+        Author amy = Author.of("Amy", "Brown");
+        Author bob = Author.of("Bob", "Green");
+        FacetCounts facets = FacetCounts.of(Watchlist.of(Arrays.asList(amy, bob)));
+        facets.record(record("Blood", "Blood", new String[] { "Humans", "Aged" }, new String[] { "Review" },
+                "Amy", "Brown", "Carol", "Grey"));
+        facets.record(record("Lancet (London, England)", "Lancet", new String[] { "Humans" }, new String[0],
+                "Amy", "Brown", "Bob", "Green"));
+        facets.record(record("Lancet (London, England)", "", new String[] { "Male" }, new String[] { "Review" },
+                "Bob", "Green"));
+        facets.record(record("Cancer", "Cancer", new String[] { "Female" }, new String[] { "Letter" },
+                "Carol", "Grey"));
+        assertEquals(1, facets.getCount(amy, FacetCounts.Facet.JOURNAL, "Blood"));
+        assertEquals(2, facets.getCount(amy, FacetCounts.Facet.MESH, "Humans"));
+        assertEquals(1, facets.getCount(bob, FacetCounts.Facet.MESH, "Humans"));
+        assertEquals(0, facets.getCount(bob, FacetCounts.Facet.MESH, "Aged"));
+        assertEquals(0, facets.getCount(Author.of("Carol", "Grey"), FacetCounts.Facet.JOURNAL, "Cancer"));
+        assertEquals(1, facets.getValueCount(FacetCounts.Facet.PUBLICATION_TYPE));
+        assertEquals(0, facets.getCount(amy, FacetCounts.Facet.JOURNAL, "Cancer"));
+
+        // a journal without an abbreviation is counted under its title
+        assertEquals(1, facets.getCount(bob, FacetCounts.Facet.JOURNAL, "Lancet"));
+        assertEquals(1, facets.getCount(bob, FacetCounts.Facet.JOURNAL, "Lancet (London, England)"));
+
+        // an author's values, most often first, then by value
+        Map<String, Integer> expected = new LinkedHashMap<>();
+        expected.put("Humans", 2);
+        expected.put("Aged", 1);
+        assertEquals(expected, facets.getCounts(amy, FacetCounts.Facet.MESH));
+        assertEquals(new ArrayList<>(expected.keySet()),
+                new ArrayList<>(facets.getCounts(amy, FacetCounts.Facet.MESH).keySet()));
+        assertTrue(facets.getCounts(Author.of("Carol", "Grey"), FacetCounts.Facet.MESH).isEmpty());
+
+        // filtered by facet and count, in watchlist order
+        List<String> cells = new ArrayList<>();
+        facets.forEach(EnumSet.of(FacetCounts.Facet.MESH, FacetCounts.Facet.PUBLICATION_TYPE), 1,
+                (author, facet, value, count) -> cells.add(author.getLastName() + " " + value + " " + count));
+        assertEquals(Arrays.asList("Brown Humans 2", "Brown Aged 1", "Brown Review 1",
+                "Green Humans 1", "Green Male 1", "Green Review 1"), cells);
+        StringBuilder exported = new StringBuilder();
+        assertEquals(1, facets.export(exported, Collections.singletonList(FacetCounts.Facet.MESH), 2));
+        assertEquals("Amy\tBrown\tmesh\tHumans\t2\n", exported.toString());
+        assertEquals(0, facets.export(new StringBuilder(), Collections.emptyList(), 1));
+        assertEquals(10, facets.size());
+    }
+
+    @Test
+    public void testVariants() {
+
+        // with a matcher, facets count the variants of a watched author's names, as the author counts do
+        NameMatcher matcher = NameMatcher.of(Watchlist.of(NihPubmed.AUTHORS));
+        FacetCounts facets = FacetCounts.of(matcher);
+        FacetCounts exact = FacetCounts.of(matcher.getWatchlist());
+        PubMedRecord[] records = {
+                record("Blood", "Blood", new String[] { "Humans" }, new String[0],
+                        "S Vincent", "Rajkumar", "Maria Victoria", "Mateos"),
+                record("Blood", "Blood", new String[0], new String[0], "Vincent", "Rajkumar") };
+        for (PubMedRecord record : records) {
+            facets.record(record);
+            exact.record(record);
+        }
+        Author vincent = Author.of("Vincent", "Rajkumar");
+        Author maria = Author.of("María-Victoria", "Mateos");
+        assertEquals(2, facets.getCount(vincent, FacetCounts.Facet.JOURNAL, "Blood"));
+        assertEquals(1, facets.getCount(maria, FacetCounts.Facet.MESH, "Humans"));
+        assertEquals(1, exact.getCount(vincent, FacetCounts.Facet.JOURNAL, "Blood"));
+        assertEquals(0, exact.getCount(maria, FacetCounts.Facet.MESH, "Humans"));
+
+        // counts of another matcher, or none, don't merge
+        try {
+            facets.merge(exact);
+            fail("merged exact counts into variant counts");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAggregate() throws Exception {
+
+        // two files, watching some of the most listed authors
+        File data = folder.newFolder("data");
+        SyntheticPubMed generator = SyntheticPubMed.newInstance(61, 1500);
+        generator.write(data.toPath().resolve("a.xml"), 900);
+        generator.write(data.toPath().resolve("b.xml.gz"), 600);
+        List<Path> paths = PubMedBatch.listFiles(data.getPath());
+        List<Author> authors = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            authors.add(Author.of(generator.getFirstName(i), generator.getLastName(i)));
+        }
+        Watchlist watchlist = Watchlist.of(authors);
+
+        // each watched author's facets, the slow way - facets are only collected for listeners that want them
+        Map<String, Integer> expected = new HashMap<>();
+        long[] without = new long[1];
+        for (Path path : paths) {
+            try (InputStream inputStream = PubMedInput.open(path)) {
+                PubMedEngine.STAX.parse(inputStream, PubMedRecordHandler.newInstance(record -> {
+                    without[0] += record.getJournalAbbreviationLength() + record.getDescriptorCount() +
+                            record.getPublicationTypeCount();
+                }));
+            }
+            try (InputStream inputStream = PubMedInput.open(path)) {
+                PubMedEngine.STAX.parse(inputStream, PubMedRecordHandler.newInstance(new PubMedRecordListener() {
+                    @Override
+                    public void record(PubMedRecord record) {
+                        assertTrue(record.getJournalAbbreviationLength() > 0);
+                        assertTrue(record.getPublicationTypeCount() > 0);
+                        for (int i = 0; i < record.getAuthorCount(); i++) {
+                            Author author = record.getAuthor(i);
+                            if (watchlist.find(author) < 0) {
+                                continue;
+                            }
+                            expected.merge(author + "/journal/" + new String(record.getJournalAbbreviation(), 0,
+                                    record.getJournalAbbreviationLength()), 1, Integer::sum);
+                            for (int j = 0; j < record.getDescriptorCount(); j++) {
+                                expected.merge(author + "/mesh/" + new String(record.getTerms(),
+                                        record.getDescriptorOffset(j), record.getDescriptorLength(j)),
+                                        1, Integer::sum);
+                            }
+                            for (int j = 0; j < record.getPublicationTypeCount(); j++) {
+                                expected.merge(author + "/type/" + new String(record.getTerms(),
+                                        record.getPublicationTypeOffset(j), record.getPublicationTypeLength(j)),
+                                        1, Integer::sum);
+                            }
+                        }
+                    }
+                    @Override
+                    public boolean wantsFacets() {
+                        return true;
+                    }
+                }));
+            }
+        }
+        assertEquals(0, without[0]);
+        assertTrue(expected.containsKey(authors.get(0) + "/type/Review"));
+
+        // the same cells from one pass, on one thread or merged from several, with either engine
+        for (PubMedEngine engine : new PubMedEngine[] { PubMedEngine.SAX, PubMedEngine.STAX }) {
+            for (int threads : new int[] { 1, 3 }) {
+                PubMedPipeline pipeline = PubMedBatch.aggregate(paths, threads, engine,
+                        () -> PubMedPipeline.of(PublicationYears.newInstance(), FacetCounts.of(watchlist)));
+                assertTrue(pipeline.wantsFacets());
+                FacetCounts facets = (FacetCounts)pipeline.get(1);
+                Map<String, Integer> counted = new HashMap<>();
+                facets.forEach(EnumSet.allOf(FacetCounts.Facet.class), 1, (author, facet, value, count) ->
+                        counted.put(author + "/" + facet.getName() + "/" + value, count));
+                assertEquals(expected, counted);
+                assertEquals(expected.size(), facets.size());
+            }
+        }
+
+        // only facets of the same watchlist merge
+        try {
+            FacetCounts.of(watchlist).merge(FacetCounts.of(Watchlist.of(authors)));
+            fail("merged another watchlist's facets");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        assertFalse(PubMedPipeline.of(PublicationYears.newInstance()).wantsFacets());
+    }
+
+    /**
+     * Return a record of the given facets, by the given authors
+     * @param journal journal title
+     * @param abbreviation journal's ISO abbreviation, empty for none
+     * @param descriptors MeSH descriptors
+     * @param publicationTypes publication types
+     * @param names first and last names of each author
+     * @return record
+     */
+    private static PubMedRecord record(String journal, String abbreviation, String[] descriptors,
+                                       String[] publicationTypes, String... names) {
+        PubMedRecord record = new PubMedRecord();
+        record.clear();
+        record.setJournal(buffer(journal));
+        if (!abbreviation.isEmpty()) {
+            record.setJournalAbbreviation(buffer(abbreviation));
+        }
+        for (String descriptor : descriptors) {
+            record.addDescriptor(buffer(descriptor));
+        }
+        for (String publicationType : publicationTypes) {
+            record.addPublicationType(buffer(publicationType));
+        }
+        for (int i = 0; i < names.length; i += 2) {
+            record.addAuthor(buffer(names[i]), buffer(names[i + 1]), buffer(""));
+        }
+        return record;
+    }
+
+    /**
+     * Return a buffer holding some text
+     * @param text text
+     * @return buffer
+     */
+    private static NameBuffer buffer(String text) {
+        NameBuffer buffer = new NameBuffer();
+        buffer.append(text.toCharArray(), 0, text.length());
+        return buffer;
+    }
+}
@@ -0,0 +1,62 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class HyperLogLogTest {
+
+    @Test
+    public void testEstimate() {
+
+        // empty, then small cardinalities are nearly exact
+        HyperLogLog estimator = HyperLogLog.newInstance();
+        assertEquals(0, estimator.estimate());
+        for (long i = 0; i < 100; i++) {
+            estimator.add(HyperLogLog.mix(i));
+        }
+        assertEquals(100, estimator.estimate(), 2);
+
+        // repeats don't count
+        for (long i = 0; i < 100; i++) {
+            estimator.add(HyperLogLog.mix(i));
+        }
+        assertEquals(100, estimator.estimate(), 2);
+
+        // large cardinalities are within a few standard errors
+        for (long i = 100; i < 200000; i++) {
+            estimator.add(HyperLogLog.mix(i));
+        }
+        assertEquals(200000, estimator.estimate(), 200000 * 0.05);
+    }
+
+    @Test
+    public void testMerge() {
+
+        // two halves merge into the estimate of the whole
+        HyperLogLog whole = HyperLogLog.newInstance(10);
+        HyperLogLog first = HyperLogLog.newInstance(10);
+        HyperLogLog second = HyperLogLog.newInstance(10);
+        for (long i = 0; i < 50000; i++) {
+            whole.add(HyperLogLog.mix(i));
+            (i < 30000 ? first : second).add(HyperLogLog.mix(i));
+        }
+        first.merge(second);
+        assertEquals(whole.estimate(), first.estimate());
+
+        // only with the same precision
+        try {
+            first.merge(HyperLogLog.newInstance(11));
+            fail("merged a different precision");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrecision() {
+        HyperLogLog.newInstance(HyperLogLog.MAX_PRECISION + 1);
+    }
+}
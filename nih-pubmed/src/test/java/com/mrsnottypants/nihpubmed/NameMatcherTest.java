@@ -0,0 +1,158 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class NameMatcherTest {
+
+    @Test
+    public void testFold() {
+
+        // case, accents, ligatures, apostrophes and separators
+        assertEquals("maria victoria", NameMatcher.fold("María-Victoria"));
+        assertEquals("maria victoria", NameMatcher.fold(" Maria  Victoria "));
+        assertEquals("maria victoria", NameMatcher.fold("MARIA‐VICTORIA"));
+        assertEquals("s vincent", NameMatcher.fold("S. Vincent"));
+        assertEquals("obrien", NameMatcher.fold("O’Brien"));
+        assertEquals("strasser", NameMatcher.fold("Straßer"));
+        assertEquals("soren", NameMatcher.fold("Søren"));
+        assertEquals("zolkiewski", NameMatcher.fold("Żółkiewski"));
+
+        // accents given as combining marks
+        assertEquals("jose", NameMatcher.fold("José"));
+        assertEquals("", NameMatcher.fold(""));
+    }
+
+    @Test
+    public void testMatch() {
+
+        NameMatcher matcher = NameMatcher.of(Watchlist.of(Arrays.asList(
+                Author.of("Vincent", "Rajkumar"),
+                Author.of("María-Victoria", "Mateos"),
+                Author.of("S Paul", "Richardson"),
+                Author.of(null, "Plato"))));
+        NameMatchCounts counts = matcher.newCounts();
+
+        // exact, and folded alike
+        increment(counts, "Vincent", "Rajkumar", "");
+        increment(counts, "Maria Victoria", "MATEOS", "");
+        increment(counts, "maría victoria", "Mateos", "MV");
+        increment(counts, "", "Plato", "");
+
+        // leading initials on either side
+        increment(counts, "S Vincent", "Rajkumar", "SV");
+        increment(counts, "Paul", "Richardson", "P");
+
+        // initials alone, as given or taken from the first name
+        increment(counts, "", "Rajkumar", "V");
+        increment(counts, "V", "Rajkumar", "");
+        increment(counts, "M.-V.", "Mateos", "");
+        increment(counts, "", "Richardson", "S. P.");
+
+        assertEquals(4, counts.getAuthorCount(Author.of("Vincent", "Rajkumar")));
+        assertEquals(3, counts.getAuthorCount(Author.of("María-Victoria", "Mateos")));
+        assertEquals(2, counts.getAuthorCount(Author.of("S Paul", "Richardson")));
+        assertEquals(1, counts.getAuthorCount(Author.of(null, "Plato")));
+
+        // another first name, other initials, another middle initial, or someone nobody watches
+        increment(counts, "Victor", "Rajkumar", "V");
+        increment(counts, "", "Rajkumar", "SR");
+        increment(counts, "A Paul", "Richardson", "AP");
+        increment(counts, "Vincent", "Rajkumari", "");
+        assertEquals(4, counts.getAuthorCount(Author.of("Vincent", "Rajkumar")));
+        assertEquals(2, counts.getAuthorCount(Author.of("S Paul", "Richardson")));
+        assertEquals(0, counts.getAuthorCount(Author.of("Vincent", "Rajkumari")));
+    }
+
+    @Test
+    public void testAmbiguous() {
+
+        // the same initials, and names that fold alike
+        NameMatcher matcher = NameMatcher.of(Watchlist.of(Arrays.asList(
+                Author.of("Amy", "Brown"),
+                Author.of("Anne", "Brown"),
+                Author.of("Zoë", "Green"),
+                Author.of("Zoe", "Green"))));
+        NameMatchCounts counts = matcher.newCounts();
+
+        // initials shared by two watched authors count for neither, exact names still count
+        increment(counts, "A", "Brown", "");
+        increment(counts, "Amy", "Brown", "");
+        assertEquals(1, counts.getAuthorCount(Author.of("Amy", "Brown")));
+        assertEquals(0, counts.getAuthorCount(Author.of("Anne", "Brown")));
+
+        // names that fold alike are one author
+        increment(counts, "Zoe", "Green", "");
+        increment(counts, "ZOË", "Green", "");
+        assertEquals(2, counts.getAuthorCount(Author.of("Zoë", "Green")));
+        assertEquals(2, counts.getAuthorCount(Author.of("Zoe", "Green")));
+
+        // counts for the same matcher merge, others don't
+        NameMatchCounts other = matcher.newCounts();
+        increment(other, "Anne", "Brown", "");
+        counts.merge(other);
+        assertEquals(1, counts.getAuthorCount(Author.of("Anne", "Brown")));
+        try {
+            counts.merge(NameMatcher.of(matcher.getWatchlist()).newCounts());
+            fail("merged counts of another matcher");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testHandler() throws Exception {
+
+        // the handler passes initials along, so an author without a first name still counts
+        String xml = "<Test><Article><AuthorList>" +
+                "<Author><LastName>Rajkumar</LastName><ForeName>S Vincent</ForeName><Initials>SV</Initials></Author>" +
+                "<Author><LastName>Rajkumar</LastName><Initials>V</Initials></Author>" +
+                "<Author><LastName>Mateos</LastName><ForeName>Maria Victoria</ForeName></Author>" +
+                "</AuthorList></Article></Test>";
+        Watchlist watchlist = Watchlist.of(NihPubmed.AUTHORS);
+        for (PubMedEngine engine : new PubMedEngine[] {PubMedEngine.SAX, PubMedEngine.STAX}) {
+            PubMedAuthorCountHandler handler = PubMedAuthorCountHandler.newInstance(
+                    NameMatcher.of(watchlist).newCounts());
+            try (InputStream inputStream = new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))) {
+                engine.parse(inputStream, handler);
+            }
+            assertEquals(2, handler.getAuthorCount(Author.of("Vincent", "Rajkumar")));
+            assertEquals(1, handler.getAuthorCount(Author.of("María-Victoria", "Mateos")));
+        }
+    }
+
+    @Test
+    public void testAggregator() throws Exception {
+
+        // records carry initials too, so reports count the same variants as the handler
+        String xml = "<PubmedArticleSet><PubmedArticle><MedlineCitation><Article><AuthorList>" +
+                "<Author><LastName>Rajkumar</LastName><ForeName>S Vincent</ForeName><Initials>SV</Initials></Author>" +
+                "<Author><LastName>Rajkumar</LastName><Initials>V</Initials></Author>" +
+                "</AuthorList></Article></MedlineCitation></PubmedArticle></PubmedArticleSet>";
+        Watchlist watchlist = Watchlist.of(NihPubmed.AUTHORS);
+        for (PubMedEngine engine : new PubMedEngine[] {PubMedEngine.SAX, PubMedEngine.STAX}) {
+            AuthorCountAggregator aggregator = AuthorCountAggregator.of(NameMatcher.of(watchlist).newCounts());
+            try (InputStream inputStream = new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))) {
+                engine.parse(inputStream, PubMedRecordHandler.newInstance(aggregator));
+            }
+            assertEquals(2, aggregator.getAuthorCount(Author.of("Vincent", "Rajkumar")));
+        }
+    }
+
+    // count an author, as the handler passes them
+    //
+    private static void increment(NameMatchCounts counts, String first, String last, String initials) {
+        String names = first + last + initials;
+        char[] chars = names.toCharArray();
+        counts.increment(chars, 0, first.length(), chars, first.length(), last.length(),
+                chars, first.length() + last.length(), initials.length());
+    }
+}
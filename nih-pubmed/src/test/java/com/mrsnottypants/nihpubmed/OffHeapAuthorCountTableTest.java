@@ -0,0 +1,126 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class OffHeapAuthorCountTableTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAdd() {
+
+        OffHeapAuthorCountTable table = new OffHeapAuthorCountTable();
+        int amy = table.add("Amy", "Brown");
+        int bob = table.add("Bob", "Green");
+        assertEquals(amy, table.add("Amy", "Brown"));
+
+        // buffers and strings find the same author, whatever the chars encode to
+        char[] buffer = "xxBobGreenxx".toCharArray();
+        assertEquals(bob, table.add(buffer, 2, 3, buffer, 5, 5));
+        String first = "Zoë 𝒜";
+        String last = "Łukasiewicz-Θ";
+        int zoe = table.add(first, last);
+        char[] names = (first + last).toCharArray();
+        assertEquals(zoe, table.add(names, 0, first.length(), names, first.length(), last.length()));
+
+        assertEquals(3, table.size());
+        assertEquals(2, table.getAuthorCount(Author.of("Amy", "Brown")));
+        assertEquals(2, table.getAuthorCount(Author.of("Bob", "Green")));
+        assertEquals(2, table.getAuthorCount(Author.of(first, last)));
+        assertEquals(0, table.getAuthorCount(Author.of("Carol", "Grey")));
+
+        // names split differently are different authors, a missing name is an empty name
+        assertEquals(0, table.getAuthorCount(Author.of("AmyB", "rown")));
+        table.add(null, "Brown");
+        table.add("", "Brown");
+        assertEquals(2, table.getAuthorCount(Author.of(null, "Brown")));
+
+        // ids
+        assertEquals("Amy", table.getFirstName(amy));
+        assertEquals("Brown", table.getLastName(amy));
+        assertEquals(Author.of(first, last), table.getAuthor(zoe));
+        assertEquals(-1, table.find("Carol", "Grey"));
+        table.addCount(bob, -1);
+        assertEquals(1, table.getCount(bob));
+    }
+
+    @Test
+    public void testGrowth() throws Exception {
+
+        // many more authors than the initial capacity, in direct buffers and in mapped files
+        Path directory = folder.newFolder().toPath();
+        OffHeapAuthorCountTable direct = new OffHeapAuthorCountTable();
+        OffHeapAuthorCountTable mapped = new OffHeapAuthorCountTable(16, directory);
+        AuthorCountTable expected = new AuthorCountTable();
+        for (int i = 0; i < 20000; i++) {
+            for (int j = 0; j <= i % 3; j++) {
+                String first = "First" + i;
+                String last = i % 7 == 0 ? "Þórsdóttir" + i : "Last" + i;
+                direct.add(first, last);
+                mapped.add(first, last);
+                expected.add(first, last);
+            }
+        }
+        assertTrue(Files.size(directory.resolve(OffHeapAuthorCountTable.NAMES_FILE)) > 20000 * 8);
+        for (OffHeapAuthorCountTable table : new OffHeapAuthorCountTable[] {direct, mapped, mapped.copy()}) {
+            assertEquals(expected.size(), table.size());
+            for (int id = 0; id < expected.size(); id++) {
+                assertEquals(expected.getCount(id), table.getAuthorCount(expected.getAuthor(id)));
+                assertEquals(expected.getAuthor(id), table.getAuthor(id));
+            }
+        }
+
+        // closing deletes the mapped files
+        mapped.close();
+        assertFalse(Files.exists(directory.resolve(OffHeapAuthorCountTable.SLOTS_FILE)));
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+
+        // either kind of table merges, with the counts of authors both have added
+        OffHeapAuthorCountTable table = new OffHeapAuthorCountTable();
+        table.add("Amy", "Brown", 2);
+        OffHeapAuthorCountTable other = new OffHeapAuthorCountTable();
+        other.add("Amy", "Brown", 3);
+        other.add("Søren", "Kierkegaard");
+        AuthorCountTable heap = new AuthorCountTable();
+        heap.add("Bob", "Green", 4);
+        heap.add("Søren", "Kierkegaard");
+        table.merge(other);
+        table.merge(heap);
+        assertEquals(5, table.getAuthorCount(Author.of("Amy", "Brown")));
+        assertEquals(4, table.getAuthorCount(Author.of("Bob", "Green")));
+        assertEquals(2, table.getAuthorCount(Author.of("Søren", "Kierkegaard")));
+        assertEquals(3, table.size());
+        try {
+            table.merge(Watchlist.of(NihPubmed.AUTHORS).newCounts());
+            fail("merged a watchlist's counts");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+
+        // files counted into off-heap tables count the same as on the heap
+        Path path = folder.getRoot().toPath().resolve("a.xml");
+        SyntheticPubMed.newInstance(81, 2000).write(path, 500);
+        AuthorCountTable expected = (AuthorCountTable)PubMedBatch.countAuthors(
+                Collections.singletonList(path), 1).getCounts();
+        PubMedAuthorCountHandler handler = PubMedBatch.countAuthors(Collections.singletonList(path), 2,
+                PubMedEngine.SAX, OffHeapAuthorCountTable::new);
+        assertEquals(expected.size(), ((OffHeapAuthorCountTable)handler.getCounts()).size());
+        for (int id = 0; id < expected.size(); id++) {
+            assertEquals(expected.getCount(id), handler.getAuthorCount(expected.getAuthor(id)));
+        }
+    }
+}
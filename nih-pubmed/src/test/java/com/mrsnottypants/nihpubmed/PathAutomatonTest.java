@@ -0,0 +1,135 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class PathAutomatonTest {
+
+    private static final int ARTICLE = 0;
+    private static final int TITLE = 1;
+    private static final int NAME = 2;
+    private static final int AUTHOR = 3;
+
+    @Test
+    public void testPaths() {
+
+        // two paths share a field, and prefixes nobody declared report nothing
+        PathAutomaton paths = PathAutomaton.builder()
+                .path(ARTICLE, "Article")
+                .text(TITLE, "Article/ArticleTitle")
+                .path(AUTHOR, "Article/AuthorList/Author")
+                .text(NAME, "Article/AuthorList/Author/LastName")
+                .text(NAME, "Article/AuthorList/Author/CollectiveName")
+                .skipping(Arrays.asList("MeshHeadingList", "Article"))
+                .build();
+        assertEquals(4, paths.getFieldCount());
+        assertEquals(Arrays.asList("/", "Article", "Article/ArticleTitle", "Article/AuthorList",
+                "Article/AuthorList/Author", "Article/AuthorList/Author/LastName",
+                "Article/AuthorList/Author/CollectiveName"), Arrays.asList(paths.getStateNames()));
+        PathAutomaton.Cursor cursor = paths.newCursor();
+
+        // a path starts at any depth outside every path, but not inside subtrees we were told to skip
+        assertEquals(-1, cursor.start("PubmedArticleSet"));
+        assertTrue(cursor.skipsSubtree("MeshHeadingList"));
+        assertFalse(cursor.skipsSubtree("Article"));
+        assertFalse(cursor.skipsSubtree("MedlineCitation"));
+        assertEquals(-1, cursor.start("MedlineCitation"));
+        assertEquals(ARTICLE, cursor.start("Article"));
+
+        // inside a path, anything no path leads into is skipped, and followed if it isn't
+        assertTrue(cursor.skipsSubtree("Abstract"));
+        assertFalse(cursor.skipsSubtree("AuthorList"));
+        assertEquals(-1, cursor.start("Abstract"));
+        assertEquals(-1, cursor.start("AuthorList"));
+        assertEquals(-1, cursor.end());
+        assertEquals(-1, cursor.end());
+
+        // text is collected in pieces, including inside markup, and only in text fields
+        char[] chars = "Grey <i>Green</i>".toCharArray();
+        assertEquals(-1, cursor.start("AuthorList"));
+        assertEquals(AUTHOR, cursor.start("Author"));
+        cursor.characters(chars, 0, 4);
+        assertEquals(NAME, cursor.start("LastName"));
+        cursor.characters(chars, 0, 2);
+        cursor.characters(chars, 2, 3);
+        assertFalse(cursor.skipsSubtree("i"));
+        assertEquals(-1, cursor.start("i"));
+        cursor.characters(chars, 8, 5);
+        assertEquals(-1, cursor.end());
+        assertEquals(NAME, cursor.end());
+        assertEquals("Grey Green", text(cursor.getText(NAME)));
+        assertEquals(AUTHOR, cursor.end());
+
+        // an author starting clears its names, whether or not it has any
+        assertEquals(AUTHOR, cursor.start("Author"));
+        assertEquals("", text(cursor.getText(NAME)));
+        assertEquals(-1, cursor.start("AffiliationInfo"));
+        assertEquals(-1, cursor.start("LastName"));
+        cursor.characters(chars, 0, 4);
+        assertEquals(-1, cursor.end());
+        assertEquals(-1, cursor.end());
+        assertEquals("", text(cursor.getText(NAME)));
+        assertEquals(AUTHOR, cursor.end());
+        assertEquals(-1, cursor.end());
+        assertEquals(ARTICLE, cursor.end());
+        assertEquals(-1, cursor.end());
+        assertEquals(-1, cursor.end());
+        assertEquals("/", paths.getStateNames()[cursor.getState()]);
+
+        // a new document starts at the root, wherever the last one left us
+        cursor.start("Article");
+        cursor.start("Abstract");
+        cursor.reset();
+        assertEquals(ARTICLE, cursor.start("Article"));
+    }
+
+    @Test
+    public void testBuilder() {
+
+        // a builder goes on after building, and what it built doesn't change
+        PathAutomaton.Builder builder = PathAutomaton.builder().path(ARTICLE, "Article");
+        PathAutomaton articles = builder.build();
+        PathAutomaton titles = builder.text(TITLE, "Article/ArticleTitle").build();
+        assertEquals(1, articles.getFieldCount());
+        assertEquals(2, titles.getFieldCount());
+        PathAutomaton.Cursor cursor = articles.newCursor();
+        cursor.start("Article");
+        assertTrue(cursor.skipsSubtree("ArticleTitle"));
+        assertEquals(-1, cursor.start("ArticleTitle"));
+        cursor = titles.newCursor();
+        cursor.start("Article");
+        assertEquals(TITLE, cursor.start("ArticleTitle"));
+
+        // paths are declared once, with a field
+        for (String path : new String[] { "", "Article//Author", "/Article", "Article" }) {
+            try {
+                builder.path(AUTHOR, path);
+                fail(path);
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+        }
+        try {
+            builder.path(-1, "Article/AuthorList");
+            fail("negative field");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        assertEquals(0, PathAutomaton.builder().skipping(Collections.singleton("Article")).build().getFieldCount());
+    }
+
+    /**
+     * Return a buffer's text
+     * @param buffer buffer
+     * @return text
+     */
+    private static String text(NameBuffer buffer) {
+        return new String(buffer.getChars(), buffer.getStart(), buffer.getLength());
+    }
+}
@@ -0,0 +1,114 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class PipelinedGzipInputStreamTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(outputStream)) {
+            gzip.write(bytes);
+        }
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    public void testInflate() throws Exception {
+
+        // much more data than fits in the blocks, so the inflater has to wait for the reader
+        byte[] expected = new byte[1000 * 1000];
+        new Random(7).nextBytes(expected);
+        byte[] compressed = gzip(expected);
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (InputStream inputStream = new PipelinedGzipInputStream(new ByteArrayInputStream(compressed), 1000, 3)) {
+            byte[] buffer = new byte[777];
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0) {
+                actual.write(buffer, 0, read);
+            }
+            assertEquals(-1, inputStream.read());
+        }
+        assertTrue(Arrays.equals(expected, actual.toByteArray()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotGzip() throws Exception {
+        new PipelinedGzipInputStream(new ByteArrayInputStream("<Test/>".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+
+        // the reader sees the inflater's failure
+        byte[] compressed = gzip(new byte[100 * 1000]);
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+        try (InputStream inputStream = new PipelinedGzipInputStream(new ByteArrayInputStream(truncated), 1000, 2)) {
+            byte[] buffer = new byte[4096];
+            while (inputStream.read(buffer) >= 0) {
+                // keep reading until the failure
+            }
+            fail("expected an exception");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCloseEarly() throws Exception {
+
+        // closing before the end stops the inflater, even though it is waiting on full blocks
+        byte[] compressed = gzip(new byte[1000 * 1000]);
+        InputStream inputStream = new PipelinedGzipInputStream(new ByteArrayInputStream(compressed), 1000, 2);
+        assertEquals(0, inputStream.read());
+        inputStream.close();
+        try {
+            inputStream.read();
+            fail("expected an exception");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCountAuthors() throws Exception {
+
+        String xml = "<Test><Article><AuthorList>" +
+                "<Author><ForeName>Amy</ForeName><LastName>Brown</LastName></Author>" +
+                "<Author><ForeName>Bob</ForeName><LastName>Green</LastName></Author>" +
+                "</AuthorList></Article></Test>";
+        File plain = folder.newFile("a.xml");
+        Files.write(plain.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+        File compressed = folder.newFile("b.xml.gz");
+        Files.write(compressed.toPath(), gzip(xml.getBytes(StandardCharsets.UTF_8)));
+
+        // a directory picks up plain and compressed files, with any engine
+        for (PubMedEngine engine : PubMedEngine.values()) {
+            PubMedAuthorCountHandler handler =
+                    PubMedBatch.countAuthors(PubMedBatch.listFiles(folder.getRoot().getPath()), 2, engine);
+            assertEquals(engine.name(), 2, handler.getAuthorCount(Author.of("Amy", "Brown")));
+            assertEquals(engine.name(), 2, handler.getAuthorCount(Author.of("Bob", "Green")));
+        }
+    }
+}
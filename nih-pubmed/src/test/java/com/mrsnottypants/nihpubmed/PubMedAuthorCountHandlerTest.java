@@ -0,0 +1,129 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedAuthorCountHandlerTest {
+
+    // test xml, with some elements we don't care about thrown in
+    private final String INPUT =
+            "<Test>" +
+            "<Article>" +
+            "<DateCreated>not important</DateCreated>" +
+            "<AuthorList>" +
+            "<Author>" +
+            "<ForeName>Amy</ForeName>" +
+            "<LastName>Brown</LastName>" +
+            "</Author>" +
+            "<Author>" +
+            "<ForeName>Bob</ForeName>" +
+            "<LastName>Green</LastName>" +
+            "<Initials>BG</Initials>" +
+            "</Author>" +
+            "</AuthorList>" +
+            "</Article>" +
+            "<Article>" +
+            "<AuthorList>" +
+            "<Author>" +
+            "<ForeName>Carol</ForeName>" +
+            "<LastName>Grey</LastName>" +
+            "</Author>" +
+            "<Author>" +
+            "<ForeName>Bob</ForeName>" +
+            "<LastName>Green</LastName>" +
+            "</Author>" +
+            "</AuthorList>" +
+            "</Article>" +
+            "</Test>";
+
+    @Test
+    public void testPubMedResult() throws Exception {
+
+        // turn the test XML into an auto-closing stream
+        try (InputStream inputStream = new ByteArrayInputStream(INPUT.getBytes())) {
+
+            // get a handler for counting authors
+            PubMedAuthorCountHandler handler = PubMedAuthorCountHandler.newInstance();
+
+            // parse!
+            PubMedResult.parse(inputStream, handler);
+
+            // confirm Amy Brown, Bob Green and Carol Grey
+            assertEquals(1, handler.getAuthorCount(Author.of("Amy", "Brown")));
+            assertEquals(2, handler.getAuthorCount(Author.of("Bob", "Green")));
+            assertEquals(1, handler.getAuthorCount(Author.of("Carol", "Grey")));
+
+            // confirm an unknown author doesn't bust anything
+            assertEquals(0, handler.getAuthorCount(Author.of("David", "Blue")));
+        }
+    }
+
+    @Test
+    public void testEngines() throws Exception {
+
+        // every engine produces the same counts - stax skips DateCreated along the way
+        for (PubMedEngine engine : PubMedEngine.values()) {
+            try (InputStream inputStream = new ByteArrayInputStream(INPUT.getBytes())) {
+
+                PubMedAuthorCountHandler handler = PubMedAuthorCountHandler.newInstance();
+                engine.parse(inputStream, handler);
+
+                assertEquals(engine.name(), 1, handler.getAuthorCount(Author.of("Amy", "Brown")));
+                assertEquals(engine.name(), 2, handler.getAuthorCount(Author.of("Bob", "Green")));
+                assertEquals(engine.name(), 1, handler.getAuthorCount(Author.of("Carol", "Grey")));
+                assertEquals(engine.name(), 0, handler.getAuthorCount(Author.of("David", "Blue")));
+            }
+        }
+    }
+
+    @Test
+    public void testSkipsSubtree() {
+
+        PubMedAuthorCountHandler handler = PubMedAuthorCountHandler.newInstance();
+
+        // outside an article we never skip an article, or anything that might hold one
+        assertFalse(handler.skipsSubtree("Article"));
+        assertFalse(handler.skipsSubtree("MedlineCitation"));
+        assertTrue(handler.skipsSubtree("MeshHeadingList"));
+
+        // inside an article we skip the abstract, but not the author list
+        handler.startElement("", "", "Article", null);
+        assertTrue(handler.skipsSubtree("Abstract"));
+        assertFalse(handler.skipsSubtree("AuthorList"));
+    }
+
+    @Test
+    public void testSplitCharacters() throws Exception {
+
+        // a parser may hand us one name in several pieces, with whitespace around it
+        PubMedAuthorCountHandler handler = PubMedAuthorCountHandler.newInstance();
+        char[] chars = " María-Victoria  Mateos ".toCharArray();
+        handler.startElement("", "", "Article", null);
+        handler.startElement("", "", "AuthorList", null);
+        handler.startElement("", "", "Author", null);
+        handler.startElement("", "", "ForeName", null);
+        handler.characters(chars, 0, 4);
+        handler.characters(chars, 4, 11);
+        handler.endElement("", "", "ForeName");
+        handler.startElement("", "", "LastName", null);
+        handler.characters(chars, 15, 9);
+        handler.endElement("", "", "LastName");
+        handler.endElement("", "", "Author");
+        assertEquals(1, handler.getAuthorCount(Author.of("María-Victoria", "Mateos")));
+
+        // entities split a name across characters() calls too
+        String xml = "<Test><Article><AuthorList><Author>" +
+                "<ForeName>Mar&#237;a-Victoria</ForeName><LastName>Mat&amp;eos</LastName>" +
+                "</Author></AuthorList></Article></Test>";
+        try (InputStream inputStream = new ByteArrayInputStream(xml.getBytes())) {
+            PubMedResult.parse(inputStream, handler);
+        }
+        assertEquals(1, handler.getAuthorCount(Author.of("María-Victoria", "Mat&eos")));
+    }
+}
@@ -0,0 +1,104 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedBatchTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // one article per file, with the given authors
+    private static String article(String... names) {
+        StringBuilder builder = new StringBuilder("<Test><Article><AuthorList>");
+        for (int i = 0; i < names.length; i += 2) {
+            builder.append(String.format(
+                    "<Author><ForeName>%s</ForeName><LastName>%s</LastName></Author>", names[i], names[i + 1]));
+        }
+        return builder.append("</AuthorList></Article></Test>").toString();
+    }
+
+    private Path write(String name, String contents) throws Exception {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file.toPath();
+    }
+
+    @Test
+    public void testListFiles() throws Exception {
+
+        Path a = write("a.xml", article("Amy", "Brown"));
+        Path b = write("b.xml", article("Bob", "Green"));
+        write("notes.txt", "not xml");
+
+        // directory - xml files only, in name order
+        List<Path> paths = PubMedBatch.listFiles(folder.getRoot().getPath());
+        assertEquals(2, paths.size());
+        assertEquals(a, paths.get(0));
+        assertEquals(b, paths.get(1));
+
+        // glob
+        paths = PubMedBatch.listFiles(folder.getRoot().getPath() + File.separator + "b*.xml");
+        assertEquals(1, paths.size());
+        assertEquals(b, paths.get(0));
+
+        // single file
+        paths = PubMedBatch.listFiles(a.toString());
+        assertEquals(1, paths.size());
+        assertEquals(a, paths.get(0));
+    }
+
+    @Test
+    public void testCountAuthors() throws Exception {
+
+        write("a.xml", article("Amy", "Brown", "Bob", "Green"));
+        write("b.xml", article("Bob", "Green"));
+        write("c.xml", article("Carol", "Grey", "Bob", "Green"));
+
+        // more files than threads, so some workers parse more than one file
+        List<Path> paths = PubMedBatch.listFiles(folder.getRoot().getPath());
+        PubMedAuthorCountHandler handler = PubMedBatch.countAuthors(paths, 2);
+
+        // counts are merged across files
+        assertEquals(1, handler.getAuthorCount(Author.of("Amy", "Brown")));
+        assertEquals(3, handler.getAuthorCount(Author.of("Bob", "Green")));
+        assertEquals(1, handler.getAuthorCount(Author.of("Carol", "Grey")));
+        assertEquals(0, handler.getAuthorCount(Author.of("David", "Blue")));
+    }
+
+    @Test
+    public void testCompletionOrder() {
+
+        // the first task waits until a later task's result is merged, which only happens in completion order
+        CountDownLatch merged = new CountDownLatch(1);
+        List<Callable<List<String>>> tasks = Arrays.asList(
+                () -> Arrays.asList(merged.await(10, TimeUnit.SECONDS) ? "slow" : "timed out"),
+                () -> Arrays.asList("fast"));
+        List<String> result = PubMedBatch.run(tasks, 2, ArrayList::new, (into, from) -> {
+            into.addAll(from);
+            merged.countDown();
+        });
+        assertEquals(Arrays.asList("fast", "slow"), result);
+    }
+
+    @Test(expected = PubMedResultException.class)
+    public void testMissingFile() throws Exception {
+        PubMedBatch.countAuthors(PubMedBatch.listFiles(folder.getRoot().getPath() + "/missing.xml"), 1);
+    }
+}
@@ -0,0 +1,151 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        PubMedMetrics metrics = PubMedMetrics.current();
+        if (metrics != null) {
+            metrics.stop();
+        }
+    }
+
+    @Test
+    public void testCounts() throws Exception {
+
+        Path plain = folder.getRoot().toPath().resolve("a.xml");
+        Path compressed = folder.getRoot().toPath().resolve("b.xml.gz");
+        SyntheticPubMed generator = SyntheticPubMed.newInstance(17, 500);
+        generator.write(plain, 300);
+        generator.write(compressed, 200);
+        List<Path> paths = Arrays.asList(plain, compressed);
+        long size = Files.size(plain) + Files.size(compressed);
+
+        // nothing is counted while metrics are off
+        assertNull(PubMedMetrics.current());
+        PubMedAuthorCountHandler expected = PubMedBatch.countAuthors(paths, 1);
+
+        // every byte, article and author, whichever engine reads them
+        for (PubMedEngine engine : PubMedEngine.values()) {
+            PubMedMetrics metrics = PubMedMetrics.start();
+            assertSame(metrics, PubMedMetrics.current());
+            PubMedMetrics.expect(paths);
+            PubMedBatch.countAuthors(paths, 1, engine);
+            metrics.sample();
+            assertEquals(size, metrics.getExpectedBytes());
+            assertEquals(size, metrics.getBytesRead());
+            assertEquals(500, metrics.getArticles());
+            assertTrue(metrics.getAuthors() > 500);
+            Map<String, Long> events = metrics.getStateEvents();
+            assertTrue(events.get("PubMedAuthorCountHandler.Article/AuthorList/Author") >= 2 * metrics.getAuthors());
+            assertTrue(metrics.getParseSeconds() > 0);
+            assertEquals(0, metrics.getEtaSeconds());
+            assertTrue(metrics.getProgressLine().contains("500 articles"));
+            metrics.stop();
+            assertNull(PubMedMetrics.current());
+        }
+
+        // records are counted too, and a chunk counts its own bytes
+        PubMedMetrics metrics = PubMedMetrics.start();
+        PubMedRecordHandler handler = PubMedRecordHandler.newInstance(record -> { });
+        PubMedSplitter.Chunk chunk = PubMedSplitter.split(plain, 1, 1).get(0);
+        PubMedEngine.STAX.parse(chunk, handler);
+        assertEquals(300, metrics.getArticles());
+        assertEquals(Files.size(plain), metrics.getBytesRead());
+        assertTrue(metrics.getStateEvents().containsKey("PubMedRecordHandler.PubmedArticle"));
+        assertTrue(metrics.getIoSeconds() > 0);
+        assertEquals(-1, metrics.getEtaSeconds());
+
+        // and counting didn't change the counts
+        AuthorCountTable table = (AuthorCountTable)expected.getCounts();
+        AuthorCountTable counted = (AuthorCountTable)PubMedBatch.countAuthors(paths, 2).getCounts();
+        assertEquals(table.size(), counted.size());
+        for (int id = 0; id < table.size(); id++) {
+            assertEquals(table.getCount(id), counted.getAuthorCount(table.getAuthor(id)));
+        }
+    }
+
+    @Test
+    public void testPasses() throws Exception {
+
+        // a mode that reads the files twice expects them twice, so progress ends at 100%
+        Path path = folder.getRoot().toPath().resolve("a.xml");
+        SyntheticPubMed.newInstance(23, 200).write(path, 100);
+        List<Path> paths = Collections.singletonList(path);
+        PubMedMetrics metrics = PubMedMetrics.start();
+        PubMedMetrics.expect(paths);
+        PubMedBatch.findTopAuthorsExactly(paths, 1, PubMedEngine.SAX, 1000, 3);
+        assertEquals(2 * Files.size(path), metrics.getExpectedBytes());
+        assertEquals(metrics.getExpectedBytes(), metrics.getBytesRead());
+    }
+
+    @Test
+    public void testMeter() throws Exception {
+
+        // streams are wrapped only while metrics are on
+        Path path = folder.getRoot().toPath().resolve("a.xml.gz");
+        SyntheticPubMed.newInstance(5, 100).write(path, 50);
+        try (InputStream inputStream = PubMedInput.open(path)) {
+            assertFalse(inputStream.getClass().getName().contains("Metered"));
+        }
+
+        // compressed bytes are counted as stored, not as inflated
+        PubMedMetrics metrics = PubMedMetrics.start();
+        long inflated = 0;
+        try (InputStream inputStream = PubMedInput.open(path)) {
+            byte[] buffer = new byte[4096];
+            for (int length = inputStream.read(buffer); length >= 0; length = inputStream.read(buffer)) {
+                inflated += length;
+            }
+        }
+        assertEquals(Files.size(path), metrics.getBytesRead());
+        assertTrue(inflated > metrics.getBytesRead());
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+
+        // registered metrics answer over JMX, until they are stopped
+        PubMedMetrics metrics = PubMedMetrics.start();
+        metrics.register();
+        Path path = folder.getRoot().toPath().resolve("a.xml");
+        SyntheticPubMed.newInstance(3, 100).write(path, 40);
+        PubMedBatch.countAuthors(Collections.singletonList(path), 1);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(PubMedMetrics.OBJECT_NAME);
+        assertEquals(40L, server.getAttribute(name, "Articles"));
+        assertEquals(Files.size(path), server.getAttribute(name, "BytesRead"));
+        assertNotNull(server.getAttribute(name, "StateEvents"));
+
+        // starting again replaces the metrics, and the registration goes with them
+        PubMedMetrics.start().register();
+        assertEquals(0L, server.getAttribute(name, "Articles"));
+        PubMedMetrics.current().stop();
+        assertFalse(server.isRegistered(name));
+        metrics.stop();
+    }
+}
@@ -0,0 +1,104 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedPipelineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPipeline() throws Exception {
+
+        // two files
+        File data = folder.newFolder("data");
+        SyntheticPubMed generator = SyntheticPubMed.newInstance(41, 2000);
+        generator.write(data.toPath().resolve("a.xml"), 1200);
+        SyntheticPubMed.newInstance(42, 2000).write(data.toPath().resolve("b.xml.gz"), 800);
+        List<Path> paths = PubMedBatch.listFiles(data.getPath());
+
+        // the exact journal and year counts, the slow way
+        Map<String, Integer> journals = new HashMap<>();
+        Map<Integer, Long> years = new TreeMap<>();
+        for (Path path : paths) {
+            try (InputStream inputStream = PubMedInput.open(path)) {
+                PubMedEngine.STAX.parse(inputStream, PubMedRecordHandler.newInstance(record -> {
+                    journals.merge(new String(record.getJournal(), 0, record.getJournalLength()), 1, Integer::sum);
+                    years.merge(record.getYear(), 1L, Long::sum);
+                }));
+            }
+        }
+        PubMedAuthorCountHandler handler = PubMedBatch.countAuthors(paths, 1, PubMedEngine.SAX);
+
+        // every report from one pass, on one thread or several
+        for (PubMedEngine engine : new PubMedEngine[] { PubMedEngine.SAX, PubMedEngine.STAX }) {
+            for (int threads : new int[] { 1, 3 }) {
+                PubMedPipeline pipeline = PubMedBatch.aggregate(paths, threads, engine, () -> PubMedPipeline.of(
+                        AuthorCountAggregator.of(new AuthorCountTable()), JournalCounts.newInstance(),
+                        PublicationYears.newInstance(), AuthorCardinality.newInstance()));
+                assertEquals(2000, pipeline.getRecordCount());
+
+                AuthorCountAggregator authors = (AuthorCountAggregator)pipeline.get(0);
+                AuthorCountTable expected = generator.getAuthorCounts();
+                for (int id = 0; id < expected.size(); id++) {
+                    Author author = expected.getAuthor(id);
+                    assertEquals(author.toString(), handler.getAuthorCount(author), authors.getAuthorCount(author));
+                }
+
+                JournalCounts journalCounts = (JournalCounts)pipeline.get(1);
+                assertEquals(journals.size(), journalCounts.size());
+                for (Map.Entry<String, Integer> entry : journals.entrySet()) {
+                    assertEquals(entry.getKey(), (int)entry.getValue(), journalCounts.getCount(entry.getKey()));
+                }
+                String top = journalCounts.getTop(1).get(0);
+                for (int count : journals.values()) {
+                    assertTrue(journalCounts.getCount(top) >= count);
+                }
+
+                PublicationYears publicationYears = (PublicationYears)pipeline.get(2);
+                assertEquals(0, publicationYears.getUndated());
+                assertEquals(years, publicationYears.getCounts());
+                assertTrue(publicationYears.getEarliest() >= SyntheticPubMed.FIRST_YEAR);
+                assertTrue(publicationYears.getLatest() <= SyntheticPubMed.LAST_YEAR);
+
+                // each aggregator was told which file its records came from
+                AuthorCardinality cardinality = (AuthorCardinality)pipeline.get(3);
+                assertEquals(2, cardinality.getFiles().size());
+            }
+        }
+    }
+
+    @Test
+    public void testMerge() {
+
+        // pipelines merge aggregator by aggregator, so they must hold the same kinds in the same order
+        PubMedPipeline pipeline = PubMedPipeline.of(JournalCounts.newInstance(), PublicationYears.newInstance());
+        pipeline.merge(PubMedPipeline.of(JournalCounts.newInstance(), PublicationYears.newInstance()));
+        try {
+            pipeline.merge(PubMedPipeline.of(PublicationYears.newInstance(), JournalCounts.newInstance()));
+            fail("merged a pipeline of other aggregators");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        try {
+            pipeline.merge(PubMedPipeline.of(JournalCounts.newInstance()));
+            fail("merged a shorter pipeline");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+}
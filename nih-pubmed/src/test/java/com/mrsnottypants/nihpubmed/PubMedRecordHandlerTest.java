@@ -0,0 +1,107 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedRecordHandlerTest {
+
+    // two records, the first comments on another article, the second has no authors
+    private final String INPUT =
+            "<PubmedArticleSet>" +
+            "<PubmedArticle><MedlineCitation>" +
+            "<PMID Version=\"1\"> 101 </PMID>" +
+            "<DateCompleted><Year>2001</Year></DateCompleted>" +
+            "<Article><Journal><JournalIssue><PubDate><MedlineDate>1998 Dec-1999 Jan</MedlineDate></PubDate>" +
+            "</JournalIssue><Title> Blood </Title></Journal><AuthorList>" +
+            "<Author><LastName>Brown</LastName><ForeName>Amy</ForeName><Initials>A</Initials></Author>" +
+            "<Author><LastName>Green</LastName></Author>" +
+            "<Author><CollectiveName>Myeloma Group</CollectiveName></Author>" +
+            "</AuthorList></Article>" +
+            "<CommentsCorrectionsList><CommentsCorrections><PMID>99</PMID></CommentsCorrections>" +
+            "</CommentsCorrectionsList>" +
+            "</MedlineCitation><PubmedData><ArticleIdList><ArticleId>101</ArticleId></ArticleIdList></PubmedData>" +
+            "</PubmedArticle>" +
+            "<PubmedArticle><MedlineCitation><PMID>102</PMID><Article><Journal><JournalIssue><PubDate>" +
+            "<Year>2016</Year><Month>Jul</Month></PubDate></JournalIssue></Journal><ArticleTitle>Title</ArticleTitle>" +
+            "</Article></MedlineCitation></PubmedArticle>" +
+            "</PubmedArticleSet>";
+
+    @Test
+    public void testRecords() throws Exception {
+
+        // with every engine that passes us whole records
+        for (PubMedEngine engine : new PubMedEngine[] { PubMedEngine.SAX, PubMedEngine.STAX }) {
+
+            // copy what we need, the record is reused
+            List<Long> pmids = new ArrayList<>();
+            List<Integer> years = new ArrayList<>();
+            List<String> journals = new ArrayList<>();
+            List<List<Author>> authors = new ArrayList<>();
+            PubMedRecordHandler handler = PubMedRecordHandler.newInstance(record -> {
+                pmids.add(record.getPmid());
+                years.add(record.getYear());
+                journals.add(new String(record.getJournal(), 0, record.getJournalLength()));
+                List<Author> list = new ArrayList<>();
+                for (int i = 0; i < record.getAuthorCount(); i++) {
+                    list.add(record.getAuthor(i));
+                }
+                authors.add(list);
+            });
+            try (InputStream inputStream = new ByteArrayInputStream(INPUT.getBytes(StandardCharsets.UTF_8))) {
+                engine.parse(inputStream, handler);
+            }
+
+            // the comment's PMID isn't the record's, a year is the PubDate's, an ArticleTitle isn't a journal title,
+            // a collective is an author without names
+            assertEquals(engine.name(), 2, handler.getRecordCount());
+            assertEquals(engine.name(), Long.valueOf(101), pmids.get(0));
+            assertEquals(engine.name(), Long.valueOf(102), pmids.get(1));
+            assertEquals(engine.name(), Arrays.asList(1998, 2016), years);
+            assertEquals(engine.name(), Arrays.asList("Blood", ""), journals);
+            assertEquals(engine.name(), 3, authors.get(0).size());
+            assertEquals(engine.name(), Author.of("Amy", "Brown"), authors.get(0).get(0));
+            assertEquals(engine.name(), Author.of(null, "Green"), authors.get(0).get(1));
+            assertEquals(engine.name(), Author.of(null, null), authors.get(0).get(2));
+            assertEquals(engine.name(), 0, authors.get(1).size());
+        }
+    }
+
+    @Test
+    public void testDeletions() throws Exception {
+
+        // deletions come after the records of an update file
+        String input = "<PubmedArticleSet>" +
+                "<PubmedArticle><MedlineCitation><PMID>7</PMID></MedlineCitation></PubmedArticle>" +
+                "<DeleteCitation><PMID Version=\"1\">3</PMID><PMID Version=\"2\"> 5 </PMID></DeleteCitation>" +
+                "</PubmedArticleSet>";
+        for (PubMedEngine engine : new PubMedEngine[] { PubMedEngine.SAX, PubMedEngine.STAX }) {
+            List<Long> events = new ArrayList<>();
+            PubMedRecordHandler handler = PubMedRecordHandler.newInstance(new PubMedRecordListener() {
+                @Override
+                public void record(PubMedRecord record) {
+                    events.add(record.getPmid());
+                }
+                @Override
+                public void delete(long pmid) {
+                    events.add(-pmid);
+                }
+            });
+            try (InputStream inputStream = new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))) {
+                engine.parse(inputStream, handler);
+            }
+            assertEquals(engine.name(), Arrays.asList(7L, -3L, -5L), events);
+            assertEquals(engine.name(), 1, handler.getRecordCount());
+            assertEquals(engine.name(), 2, handler.getDeletionCount());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parses a synthetic corpus with every engine, checks the counts against the generator's ground truth,
+ * and fails if an engine is slower than it should be.
+ *
+ * SAX is the baseline, timed in the same run on the same machine: the StAX and scan engines exist to be faster
+ * than SAX, so each must parse at least a given fraction of SAX's throughput.  Each engine's best of a few timed
+ * parses is compared, since a single parse on a busy machine says little.  An absolute floor for every engine is
+ * only worth setting on hardware that is known.
+ *
+ * Sized by system properties, so a CI job can run it at a larger scale than the default:
+ *   pubmed.scale.articles    articles in the corpus, default 5000 (about 25 MB)
+ *   pubmed.scale.threads     worker threads, default 1
+ *   pubmed.scale.minSpeedup  minimum throughput of every other engine relative to SAX's, default 0.75
+ *   pubmed.scale.minMBps     minimum megabytes per second for every engine, default 0 for none
+ * For example: mvn test -Dtest=PubMedScaleTest -Dpubmed.scale.articles=2000000 -Dpubmed.scale.minMBps=80
+ *
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedScaleTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // timed parses of each engine, the fastest counts
+    private static final int TIMED_RUNS = 3;
+
+    @Test
+    public void testThroughput() throws Exception {
+
+        long articles = Long.getLong("pubmed.scale.articles", 5000);
+        int threads = Integer.getInteger("pubmed.scale.threads", 1);
+        double minSpeedup = Double.parseDouble(System.getProperty("pubmed.scale.minSpeedup", "0.75"));
+        double minMBps = Double.parseDouble(System.getProperty("pubmed.scale.minMBps", "0"));
+
+        // about as many distinct authors as articles, as in PubMed
+        SyntheticPubMed generator = SyntheticPubMed.newInstance(42, (int)Math.min(articles, 10 * 1000 * 1000));
+        File file = folder.newFile("scale.xml");
+        generator.write(file.toPath(), articles);
+        List<Path> paths = Collections.singletonList(file.toPath());
+        double megabytes = Files.size(file.toPath()) / (1024.0 * 1024.0);
+        AuthorCountTable truth = generator.getAuthorCounts();
+
+        // one untimed parse with each engine to warm up, then timed parses taking turns, so a busy spell on the
+        // machine doesn't fall on one engine only - each engine's best counts
+        PubMedEngine[] engines = PubMedEngine.values();
+        PubMedAuthorCountHandler[] handlers = new PubMedAuthorCountHandler[engines.length];
+        double[] seconds = new double[engines.length];
+        for (int i = 0; i < engines.length; i++) {
+            handlers[i] = PubMedBatch.countAuthors(paths, threads, engines[i]);
+            seconds[i] = Double.MAX_VALUE;
+        }
+        for (int run = 0; run < TIMED_RUNS; run++) {
+            for (int i = 0; i < engines.length; i++) {
+                long start = System.nanoTime();
+                handlers[i] = PubMedBatch.countAuthors(paths, threads, engines[i]);
+                seconds[i] = Math.min(seconds[i], (System.nanoTime() - start) / 1e9);
+            }
+        }
+
+        double baseline = megabytes / seconds[PubMedEngine.SAX.ordinal()];
+        for (int i = 0; i < engines.length; i++) {
+            PubMedEngine engine = engines[i];
+
+            // counts match the ground truth
+            for (int id = 0; id < truth.size(); id++) {
+                Author author = truth.getAuthor(id);
+                assertEquals(engine + " " + author, truth.getCount(id), handlers[i].getAuthorCount(author));
+            }
+
+            // throughput hasn't regressed, against SAX's and against the floor
+            double mbps = megabytes / seconds[i];
+            if (engine != PubMedEngine.SAX) {
+                assertTrue(String.format("%s parsed %.1f MB/s, below %.2f of SAX's %.1f MB/s", engine, mbps,
+                        minSpeedup, baseline), mbps >= minSpeedup * baseline);
+            }
+            assertTrue(String.format("%s parsed %.1f MB/s, below the minimum of %.1f MB/s", engine, mbps, minMBps),
+                    mbps >= minMBps);
+        }
+    }
+}
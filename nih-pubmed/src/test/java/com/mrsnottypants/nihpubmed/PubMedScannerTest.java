@@ -0,0 +1,229 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedScannerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // articles with attributes, comments, elements we don't care about, and an author with no names
+    private static final String ARTICLES =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<!DOCTYPE PubmedArticleSet>\n" +
+            "<PubmedArticleSet>\n" +
+            "<!-- <Article><AuthorList><Author><LastName>Commented</LastName></Author></AuthorList></Article> -->\n" +
+            "<PubmedArticle><MedlineCitation><Article PubModel=\"Print\">" +
+            "<ArticleTitle>Authors &amp; articles</ArticleTitle>" +
+            "<AuthorList CompleteYN=\"Y\">" +
+            "<Author ValidYN=\"Y\"><LastName>Brown</LastName><ForeName>Amy</ForeName><Initials>A</Initials></Author>" +
+            "<Author ValidYN=\"Y\"><ForeName>Bob</ForeName><LastName>Green</LastName>" +
+            "<AffiliationInfo><Affiliation>a > b</Affiliation></AffiliationInfo></Author>" +
+            "<Author ValidYN=\"Y\"><CollectiveName>Study Group</CollectiveName></Author>" +
+            "</AuthorList></Article></MedlineCitation></PubmedArticle>\n" +
+            "<PubmedArticle><MedlineCitation><Article>" +
+            "<Abstract><AbstractText>Text <b>with</b> markup</AbstractText></Abstract>" +
+            "<AuthorList><Author><ForeName>María-Victoria</ForeName><LastName>Mateos</LastName></Author>" +
+            "<Author><ForeName>Bob</ForeName><LastName>Green</LastName></Author></AuthorList>" +
+            "</Article></MedlineCitation></PubmedArticle>\n" +
+            "</PubmedArticleSet>\n";
+
+    private Path write(String contents) throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file.toPath();
+    }
+
+    private PubMedAuthorCountHandler sax(Path path) throws Exception {
+        PubMedAuthorCountHandler handler = PubMedAuthorCountHandler.newInstance();
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            PubMedResult.parse(inputStream, handler);
+        }
+        return handler;
+    }
+
+    private PubMedAuthorCountHandler scan(Path path, long windowSize) throws Exception {
+        PubMedAuthorCountHandler handler = PubMedAuthorCountHandler.newInstance();
+        PubMedScanner.parse(path, -1, -1, handler, windowSize);
+        return handler;
+    }
+
+    private static void assertSameCounts(PubMedAuthorCountHandler expected, PubMedAuthorCountHandler actual) {
+        for (Author author : new Author[] {
+                Author.of("Amy", "Brown"), Author.of("Bob", "Green"), Author.of(null, null),
+                Author.of("María-Victoria", "Mateos"), Author.of(null, "Commented") }) {
+            assertEquals(author.toString(), expected.getAuthorCount(author), actual.getAuthorCount(author));
+        }
+    }
+
+    @Test
+    public void testMatchesSax() throws Exception {
+
+        Path path = write(ARTICLES);
+        PubMedAuthorCountHandler sax = sax(path);
+        PubMedAuthorCountHandler scan = scan(path, 1L << 30);
+        assertSameCounts(sax, scan);
+
+        assertEquals(1, scan.getAuthorCount(Author.of("Amy", "Brown")));
+        assertEquals(2, scan.getAuthorCount(Author.of("Bob", "Green")));
+        assertEquals(1, scan.getAuthorCount(Author.of(null, null)));
+        assertEquals(1, scan.getAuthorCount(Author.of("María-Victoria", "Mateos")));
+        assertEquals(0, scan.getAuthorCount(Author.of(null, "Commented")));
+    }
+
+    @Test
+    public void testInitials() throws Exception {
+
+        // initials are passed along, so name variants count as they do under a parser
+        Path path = write("<PubmedArticleSet><PubmedArticle><MedlineCitation><Article><AuthorList>" +
+                "<Author><LastName>Rajkumar</LastName><ForeName>S Vincent</ForeName><Initials>SV</Initials></Author>" +
+                "<Author><LastName>Rajkumar</LastName><Initials>V</Initials></Author>" +
+                "</AuthorList></Article></MedlineCitation></PubmedArticle></PubmedArticleSet>");
+        NameMatcher matcher = NameMatcher.of(Watchlist.of(NihPubmed.AUTHORS));
+        PubMedAuthorCountHandler sax = PubMedAuthorCountHandler.newInstance(matcher.newCounts());
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            PubMedResult.parse(inputStream, sax);
+        }
+        PubMedAuthorCountHandler scan = PubMedAuthorCountHandler.newInstance(matcher.newCounts());
+        PubMedScanner.parse(path, scan);
+        assertEquals(2, sax.getAuthorCount(Author.of("Vincent", "Rajkumar")));
+        assertEquals(2, scan.getAuthorCount(Author.of("Vincent", "Rajkumar")));
+    }
+
+    @Test
+    public void testSmallWindows() throws Exception {
+
+        // windows much smaller than the file, so articles straddle windows
+        Path path = write(ARTICLES);
+        PubMedAuthorCountHandler sax = sax(path);
+        for (long windowSize = 500; windowSize < ARTICLES.length() + 10; windowSize += 37) {
+            assertSameCounts(sax, scan(path, windowSize));
+        }
+    }
+
+    @Test
+    public void testChunks() throws Exception {
+
+        // scan each chunk of a split file
+        StringBuilder builder = new StringBuilder("<PubmedArticleSet>");
+        for (int i = 0; i < 40; i++) {
+            builder.append("<PubmedArticle><MedlineCitation><Article><AuthorList><Author><ForeName>Amy</ForeName>")
+                    .append("<LastName>Brown</LastName></Author></AuthorList></Article></MedlineCitation>")
+                    .append("</PubmedArticle>");
+        }
+        builder.append("</PubmedArticleSet>");
+        Path path = write(builder.toString());
+
+        PubMedAuthorCountHandler handler = PubMedAuthorCountHandler.newInstance();
+        List<PubMedSplitter.Chunk> chunks = PubMedSplitter.split(path, 4, 100);
+        assertEquals(4, chunks.size());
+        for (PubMedSplitter.Chunk chunk : chunks) {
+            PubMedEngine.SCAN.parse(chunk, handler);
+        }
+        assertEquals(40, handler.getAuthorCount(Author.of("Amy", "Brown")));
+    }
+
+    @Test
+    public void testDecoding() throws Exception {
+
+        // entities, character references, CDATA and comments in names
+        Path path = write("<Test><Article><AuthorList>" +
+                "<Author><ForeName>Ana&#239;s</ForeName><LastName>O&apos;Brien</LastName></Author>" +
+                "<Author><ForeName><![CDATA[Jean]]>-Luc</ForeName>" +
+                "<LastName>Pi<!-- comment -->card</LastName></Author>" +
+                "<Author><ForeName>&#x1F600;</ForeName><LastName>Smile</LastName></Author>" +
+                "</AuthorList></Article></Test>");
+
+        PubMedAuthorCountHandler scan = scan(path, 1L << 30);
+        assertEquals(1, scan.getAuthorCount(Author.of("Anaïs", "O'Brien")));
+        assertEquals(1, scan.getAuthorCount(Author.of("Jean-Luc", "Picard")));
+        assertEquals(1, scan.getAuthorCount(Author.of(new String(Character.toChars(0x1F600)), "Smile")));
+    }
+
+    @Test
+    public void testFallback() throws Exception {
+
+        // markup inside a name is handed to the SAX parser, for just that article
+        Path path = write("<Test>" +
+                "<Article><AuthorList><Author><ForeName>Amy</ForeName><LastName>Brown</LastName></Author>" +
+                "</AuthorList></Article>" +
+                "<Article><AuthorList><Author><ForeName>B<i>o</i>b</ForeName><LastName>Green</LastName></Author>" +
+                "</AuthorList></Article>" +
+                "</Test>");
+        PubMedAuthorCountHandler sax = sax(path);
+        PubMedAuthorCountHandler scan = scan(path, 1L << 30);
+        assertEquals(1, scan.getAuthorCount(Author.of("Amy", "Brown")));
+        for (String firstName : new String[] { "B", "o", "b", "Bob" }) {
+            Author author = Author.of(firstName, "Green");
+            assertEquals(author.toString(), sax.getAuthorCount(author), scan.getAuthorCount(author));
+        }
+    }
+
+    @Test
+    public void testFallbackProlog() throws Exception {
+
+        // an entity only the external DTD declares, in a file we scan whole and in chunks
+        File dtd = folder.newFile();
+        Files.write(dtd.toPath(), "<!ENTITY amy \"Amy\">".getBytes(StandardCharsets.UTF_8));
+        StringBuilder builder = new StringBuilder("<?xml version=\"1.0\"?>\n<!DOCTYPE PubmedArticleSet SYSTEM \"")
+                .append(dtd.toURI()).append("\">\n<PubmedArticleSet>");
+        for (int i = 0; i < 40; i++) {
+            builder.append("<PubmedArticle><MedlineCitation><Article><AuthorList><Author><ForeName>")
+                    .append(i % 2 == 0 ? "&amy;" : "Amy").append("</ForeName><LastName>Brown</LastName></Author>")
+                    .append("</AuthorList></Article></MedlineCitation></PubmedArticle>");
+        }
+        builder.append("</PubmedArticleSet>");
+        Path path = write(builder.toString());
+        assertEquals(40, scan(path, 1L << 30).getAuthorCount(Author.of("Amy", "Brown")));
+        PubMedAuthorCountHandler handler = PubMedAuthorCountHandler.newInstance();
+        for (PubMedSplitter.Chunk chunk : PubMedSplitter.split(path, 4, 100)) {
+            assertFalse(chunk.isWholeFile());
+            PubMedEngine.SCAN.parse(chunk, handler);
+        }
+        assertEquals(40, handler.getAuthorCount(Author.of("Amy", "Brown")));
+
+        // chunks of a file we can't scan are parsed after its prolog, which says how they are encoded
+        builder = new StringBuilder("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<PubmedArticleSet>");
+        for (int i = 0; i < 40; i++) {
+            builder.append("<PubmedArticle><MedlineCitation><Article><AuthorList><Author><ForeName>Anaïs")
+                    .append("</ForeName><LastName>Brown</LastName></Author></AuthorList></Article>")
+                    .append("</MedlineCitation></PubmedArticle>");
+        }
+        builder.append("</PubmedArticleSet>");
+        File file = folder.newFile();
+        Files.write(file.toPath(), builder.toString().getBytes(StandardCharsets.ISO_8859_1));
+        handler = PubMedAuthorCountHandler.newInstance();
+        for (PubMedSplitter.Chunk chunk : PubMedSplitter.split(file.toPath(), 4, 100)) {
+            assertFalse(chunk.isWholeFile());
+            PubMedEngine.SCAN.parse(chunk, handler);
+        }
+        assertEquals(40, handler.getAuthorCount(Author.of("Anaïs", "Brown")));
+    }
+
+    @Test
+    public void testSupported() {
+        assertTrue(PubMedScanner.isSupported(ascii("<?xml version=\"1.0\" encoding=\"UTF-8\"?><A/>")));
+        assertTrue(PubMedScanner.isSupported(ascii("<!DOCTYPE A PUBLIC \"x\" \"y\"><A/>")));
+        assertFalse(PubMedScanner.isSupported(ascii("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><A/>")));
+        assertFalse(PubMedScanner.isSupported(ascii("<!DOCTYPE A [<!ENTITY e \"x\">]><A/>")));
+        assertEquals(21, PubMedScanner.indexOfRoot(ascii("<?xml version=\"1.0\"?><A><B/></A>")));
+    }
+
+    private static ByteBuffer ascii(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,210 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedServerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PubMedServer server;
+
+    @After
+    public void stopServer() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testServer() throws Exception {
+
+        // two files, the second ingested while serving
+        Path first = folder.getRoot().toPath().resolve("a.xml");
+        Path second = folder.getRoot().toPath().resolve("b.xml");
+        SyntheticPubMed generator = SyntheticPubMed.newInstance(51, 500);
+        generator.write(first, 600);
+        SyntheticPubMed.newInstance(51, 500).write(second, 400);
+        Author author = generator.getAuthorCounts().getAuthor(0);
+        int firstCount = PubMedBatch.countAuthors(Collections.singletonList(first), 1).getAuthorCount(author);
+        int bothCount = PubMedBatch.countAuthors(Arrays.asList(first, second), 1).getAuthorCount(author);
+        assertTrue(bothCount > firstCount);
+
+        server = PubMedServer.newInstance(4, PubMedEngine.SAX);
+        server.ingest(Collections.singletonList(first));
+        server.start(0);
+
+        // one author, and a batch answered from the same snapshot
+        assertEquals(firstCount + "\n", get(countPath(author)));
+        assertEquals("0\n", get("/count?first=Nobody&last=Known"));
+        String batch = author.getFirstName() + "\t" + author.getLastName() + "\nKnown\n";
+        assertEquals(author.getFirstName() + "\t" + author.getLastName() + "\t" + firstCount + "\n\tKnown\t0\n",
+                post("/counts", batch));
+
+        // ingesting publishes a new snapshot, a file ingested before is skipped
+        assertEquals("version\t2\n", post("/ingest?path=" + URLEncoder.encode(second.toString(), "UTF-8"), ""));
+        assertEquals(bothCount + "\n", get(countPath(author)));
+        assertEquals(2, server.ingest(Collections.singletonList(second)).getVersion());
+        assertTrue(get("/status").startsWith("version\t2\n"));
+
+        // bad requests
+        assertEquals(HttpURLConnection.HTTP_BAD_METHOD, status("/ingest", "GET"));
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, status("/count?first=Amy", "GET"));
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, status("/ingest?path=missing.xml", "POST"));
+        assertEquals(2, server.getSnapshot().getVersion());
+    }
+
+    @Test
+    public void testOffHeap() throws Exception {
+
+        // counts kept off the heap answer the same
+        Path path = folder.getRoot().toPath().resolve("a.xml");
+        SyntheticPubMed.newInstance(53, 500).write(path, 400);
+        AuthorCountTable expected = (AuthorCountTable)PubMedBatch.countAuthors(
+                Collections.singletonList(path), 1).getCounts();
+        server = PubMedServer.newInstance(2, PubMedEngine.SAX, true);
+        server.ingest(Collections.singletonList(path));
+        server.start(0);
+        assertEquals(expected.size(), server.getSnapshot().size());
+        assertEquals(expected.getCount(0) + "\n", get(countPath(expected.getAuthor(0))));
+        assertTrue(get("/status").contains("authors\t" + expected.size() + "\n"));
+    }
+
+    @Test
+    public void testSnapshotSwaps() throws Exception {
+
+        // files that each add to the same author
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Path path = folder.getRoot().toPath().resolve(String.format("update-%d.xml", i));
+            SyntheticPubMed.newInstance(61, 200).write(path, 300);
+            paths.add(path);
+        }
+        Author author = SyntheticPubMed.newInstance(61, 200).getAuthorCounts().getAuthor(0);
+        server = PubMedServer.newInstance(4, PubMedEngine.SAX);
+        server.start(0);
+
+        // readers only ever see whole snapshots, whose counts never go down, while files are ingested
+        AtomicBoolean ingesting = new AtomicBoolean(true);
+        ExecutorService readers = Executors.newFixedThreadPool(3);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int reader = 0; reader < 3; reader++) {
+            results.add(readers.submit(() -> {
+                int reads = 0;
+                long version = 0;
+                int count = 0;
+                while (ingesting.get() || reads == 0) {
+                    PubMedServer.Snapshot snapshot = server.getSnapshot();
+                    assertTrue(snapshot.getVersion() >= version);
+                    assertEquals(snapshot.getVersion(), snapshot.getFiles().size());
+                    assertTrue(snapshot.getAuthorCount(author) >= count);
+                    version = snapshot.getVersion();
+                    count = snapshot.getAuthorCount(author);
+                    assertTrue(Integer.parseInt(get(countPath(author)).trim()) >= count);
+                    reads++;
+                }
+                return reads;
+            }));
+        }
+        for (Path path : paths) {
+            server.ingest(Collections.singletonList(path));
+        }
+        ingesting.set(false);
+        for (Future<Integer> result : results) {
+            assertTrue(result.get() > 0);
+        }
+        readers.shutdown();
+
+        int expected = PubMedBatch.countAuthors(paths, 1).getAuthorCount(author);
+        assertEquals(paths.size(), server.getSnapshot().getVersion());
+        assertEquals(expected + "\n", get(countPath(author)));
+    }
+
+    // query path for an author's count
+    //
+    private static String countPath(Author author) throws IOException {
+        return String.format("/count?first=%s&last=%s",
+                URLEncoder.encode(author.getFirstName(), "UTF-8"), URLEncoder.encode(author.getLastName(), "UTF-8"));
+    }
+
+    // GET a path, expecting success
+    //
+    private String get(String path) throws IOException {
+        HttpURLConnection connection = connect(path, "GET");
+        assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+        return read(connection.getInputStream());
+    }
+
+    // POST a body to a path, expecting success
+    //
+    private String post(String path, String body) throws IOException {
+        HttpURLConnection connection = connect(path, "POST");
+        connection.setDoOutput(true);
+        try (OutputStream outputStream = connection.getOutputStream()) {
+            outputStream.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+        return read(connection.getInputStream());
+    }
+
+    // the status of a request without a body
+    //
+    private int status(String path, String method) throws IOException {
+        HttpURLConnection connection = connect(path, method);
+        if (method.equals("POST")) {
+            connection.setDoOutput(true);
+            connection.getOutputStream().close();
+        }
+        int status = connection.getResponseCode();
+        read(connection.getErrorStream());
+        return status;
+    }
+
+    // open a connection to the server
+    //
+    private HttpURLConnection connect(String path, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL(String.format("http://localhost:%d%s", server.getPort(), path)).openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    // read a response body
+    //
+    private static String read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream input = inputStream) {
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = input.read(buffer)) > 0) {
+                bytes.write(buffer, 0, length);
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
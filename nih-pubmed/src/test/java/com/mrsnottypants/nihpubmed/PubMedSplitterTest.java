@@ -0,0 +1,230 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class PubMedSplitterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String[] FIRST_NAMES = { "Amy", "Bob", "Carol", "David", "María-Victoria" };
+    private static final String[] LAST_NAMES = { "Brown", "Green", "Grey", "Blue", "Mateos" };
+
+    // a PubMed-shaped file, with articles of varying size so split points land inside articles
+    private Path writePubMed(int articles) throws Exception {
+        StringBuilder builder = new StringBuilder();
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        builder.append("<!DOCTYPE PubmedArticleSet>\n");
+        builder.append("<PubmedArticleSet>\n");
+        for (int i = 0; i < articles; i++) {
+            builder.append("<PubmedArticle><MedlineCitation><PMID>").append(i).append("</PMID><Article>");
+            builder.append("<ArticleTitle>Title &amp; more</ArticleTitle><AuthorList CompleteYN=\"Y\">");
+            for (int j = 0; j <= i % 4; j++) {
+                builder.append("<Author ValidYN=\"Y\"><ForeName>").append(FIRST_NAMES[(i + j) % FIRST_NAMES.length])
+                        .append("</ForeName><LastName>").append(LAST_NAMES[(i * j) % LAST_NAMES.length])
+                        .append("</LastName></Author>");
+            }
+            builder.append("</AuthorList></Article></MedlineCitation></PubmedArticle>\n");
+        }
+        builder.append("</PubmedArticleSet>\n");
+
+        File file = folder.newFile();
+        Files.write(file.toPath(), builder.toString().getBytes(StandardCharsets.UTF_8));
+        return file.toPath();
+    }
+
+    @Test
+    public void testSplit() throws Exception {
+
+        Path path = writePubMed(100);
+        List<PubMedSplitter.Chunk> chunks = PubMedSplitter.split(path, 8, 256);
+        assertEquals(8, chunks.size());
+
+        // chunks are contiguous, and each starts at a record
+        byte[] bytes = Files.readAllBytes(path);
+        for (int i = 0; i < chunks.size(); i++) {
+            PubMedSplitter.Chunk chunk = chunks.get(i);
+            assertFalse(chunk.isWholeFile());
+            assertTrue(new String(bytes, (int)chunk.getStart(), 15, StandardCharsets.UTF_8)
+                    .startsWith("<PubmedArticle>"));
+            if (i > 0) {
+                assertEquals(chunks.get(i - 1).getEnd(), chunk.getStart());
+            }
+        }
+
+        // the last chunk ends right before the root's end tag
+        assertTrue(new String(bytes, (int)chunks.get(chunks.size() - 1).getEnd(), 19, StandardCharsets.UTF_8)
+                .startsWith("</PubmedArticleSet>"));
+    }
+
+    @Test
+    public void testSmallFile() throws Exception {
+
+        // too small to split
+        Path path = writePubMed(3);
+        List<PubMedSplitter.Chunk> chunks = PubMedSplitter.split(path, 8, 1024 * 1024);
+        assertEquals(1, chunks.size());
+        assertTrue(chunks.get(0).isWholeFile());
+        assertEquals(Files.size(path), chunks.get(0).getEnd());
+    }
+
+    @Test
+    public void testChunksMatchSequential() throws Exception {
+
+        Path path = writePubMed(250);
+
+        // sequential
+        PubMedAuthorCountHandler sequential = PubMedAuthorCountHandler.newInstance();
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            PubMedResult.parse(inputStream, sequential);
+        }
+
+        // chunked, in parallel, with every engine
+        for (PubMedEngine engine : PubMedEngine.values()) {
+            PubMedAuthorCountHandler chunked =
+                    PubMedBatch.countAuthors(Collections.singletonList(path), 4, engine, 512);
+
+            for (String firstName : FIRST_NAMES) {
+                for (String lastName : LAST_NAMES) {
+                    Author author = Author.of(firstName, lastName);
+                    assertEquals(String.format("%s %s", engine, author),
+                            sequential.getAuthorCount(author), chunked.getAuthorCount(author));
+                }
+            }
+            assertTrue(chunked.getAuthorCount(Author.of("Amy", "Brown")) > 0);
+        }
+    }
+
+    @Test
+    public void testArticleRecords() throws Exception {
+
+        // no PubmedArticle elements, so we split on Article - and don't mistake ArticleTitle for Article
+        StringBuilder builder = new StringBuilder("<Test>");
+        for (int i = 0; i < 50; i++) {
+            builder.append("<Article><ArticleTitle>t</ArticleTitle><AuthorList><Author><ForeName>Amy</ForeName>")
+                    .append("<LastName>Brown</LastName></Author></AuthorList></Article>");
+        }
+        builder.append("</Test>");
+        File file = folder.newFile();
+        Files.write(file.toPath(), builder.toString().getBytes(StandardCharsets.UTF_8));
+
+        List<PubMedSplitter.Chunk> chunks = PubMedSplitter.split(file.toPath(), 5, 100);
+        assertEquals(5, chunks.size());
+        PubMedAuthorCountHandler chunked =
+                PubMedBatch.countAuthors(Collections.singletonList(file.toPath()), 5, PubMedEngine.SAX, 100);
+        assertEquals(50, chunked.getAuthorCount(Author.of("Amy", "Brown")));
+    }
+
+    @Test
+    public void testUnsplittable() throws Exception {
+
+        // a MedlineCitationSet nests each Article in a MedlineCitation, which isn't a record we split on
+        StringBuilder citations = new StringBuilder("<MedlineCitationSet>");
+        for (int i = 0; i < 50; i++) {
+            citations.append("<MedlineCitation><PMID>").append(i).append("</PMID><Article><AuthorList><Author>")
+                    .append("<ForeName>Amy</ForeName><LastName>Brown</LastName></Author></AuthorList></Article>")
+                    .append("</MedlineCitation>");
+        }
+        citations.append("</MedlineCitationSet>");
+
+        // a DOCTYPE with an internal subset may declare entities the records use
+        StringBuilder entities = new StringBuilder("<?xml version=\"1.0\"?>\n<!DOCTYPE PubmedArticleSet [\n")
+                .append("<!ENTITY amy \"Amy\">\n]>\n<PubmedArticleSet>");
+        for (int i = 0; i < 50; i++) {
+            entities.append("<PubmedArticle><MedlineCitation><Article><AuthorList><Author><ForeName>&amy;")
+                    .append("</ForeName><LastName>Brown</LastName></Author></AuthorList></Article>")
+                    .append("</MedlineCitation></PubmedArticle>");
+        }
+        entities.append("</PubmedArticleSet>");
+
+        // either is one chunk, the whole file, and counts the same with every engine
+        for (String xml : new String[] { citations.toString(), entities.toString() }) {
+            File file = folder.newFile();
+            Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+            List<PubMedSplitter.Chunk> chunks = PubMedSplitter.split(file.toPath(), 4, 1);
+            assertEquals(1, chunks.size());
+            assertTrue(chunks.get(0).isWholeFile());
+            for (PubMedEngine engine : PubMedEngine.values()) {
+                PubMedAuthorCountHandler counted =
+                        PubMedBatch.countAuthors(Collections.singletonList(file.toPath()), 4, engine, 1);
+                assertEquals(engine.toString(), 50, counted.getAuthorCount(Author.of("Amy", "Brown")));
+            }
+        }
+    }
+
+    @Test
+    public void testTrailingDeletion() throws Exception {
+
+        // an update file lists the citations it deletes after its records, they belong to the last chunk
+        StringBuilder builder = new StringBuilder("<?xml version=\"1.0\"?>\n<PubmedArticleSet>\n");
+        for (int i = 0; i < 50; i++) {
+            builder.append("<PubmedArticle><MedlineCitation><PMID>").append(i).append("</PMID><Article>")
+                    .append("<AuthorList><Author><ForeName>Amy</ForeName><LastName>Brown</LastName></Author>")
+                    .append("</AuthorList></Article></MedlineCitation></PubmedArticle>\n");
+        }
+        builder.append("<DeleteCitation><PMID>1001</PMID><PMID>1002</PMID></DeleteCitation>\n</PubmedArticleSet>\n");
+        File file = folder.newFile();
+        Files.write(file.toPath(), builder.toString().getBytes(StandardCharsets.UTF_8));
+
+        List<PubMedSplitter.Chunk> chunks = PubMedSplitter.split(file.toPath(), 4, 100);
+        assertEquals(4, chunks.size());
+        for (PubMedEngine engine : new PubMedEngine[] {PubMedEngine.SAX, PubMedEngine.STAX}) {
+            List<Long> records = new ArrayList<>();
+            List<Long> deleted = new ArrayList<>();
+            PubMedRecordHandler handler = PubMedRecordHandler.newInstance(new PubMedRecordListener() {
+                @Override
+                public void record(PubMedRecord record) {
+                    records.add(record.getPmid());
+                }
+
+                @Override
+                public void delete(long pmid) {
+                    deleted.add(pmid);
+                }
+            });
+            for (PubMedSplitter.Chunk chunk : chunks) {
+                engine.parse(chunk, handler);
+            }
+            assertEquals(engine.toString(), 50, records.size());
+            assertEquals(engine.toString(), Arrays.asList(1001L, 1002L), deleted);
+        }
+    }
+
+    @Test
+    public void testFindRecords() throws Exception {
+
+        // the set's start tag isn't a record, a tiny read size makes tags straddle reads
+        String xml = "<PubmedArticleSet><PubmedArticle>a</PubmedArticle>\n<PubmedArticle x=\"1\">b</PubmedArticle>" +
+                "</PubmedArticleSet>";
+        byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+        InputStream inputStream = new FilterInputStream(new ByteArrayInputStream(bytes)) {
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 3));
+            }
+        };
+        long[] ranges = PubMedSplitter.findRecords(inputStream);
+        assertEquals(4, ranges.length);
+        assertEquals("<PubmedArticle>a</PubmedArticle>", xml.substring((int)ranges[0], (int)ranges[1]));
+        assertEquals("<PubmedArticle x=\"1\">b</PubmedArticle>", xml.substring((int)ranges[2], (int)ranges[3]));
+    }
+}
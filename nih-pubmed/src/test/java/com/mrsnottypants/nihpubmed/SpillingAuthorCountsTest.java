@@ -0,0 +1,103 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class SpillingAuthorCountsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSpill() throws Exception {
+
+        // many more authors than fit in memory, in no order, so there are more runs than are merged at once
+        Path directory = folder.newFolder().toPath();
+        SpillingAuthorCounts counts = new SpillingAuthorCounts(directory, 50);
+        AuthorCountTable expected = new AuthorCountTable();
+        Random random = new Random(5);
+        for (int i = 0; i < 30000; i++) {
+            int author = random.nextInt(4000);
+            String first = author % 11 == 0 ? "Zoë" : "First" + author;
+            String last = author % 3 == 0 ? "Ørsted" + author : "Last" + (author % 500);
+            char[] names = (first + last).toCharArray();
+            counts.increment(names, 0, first.length(), names, first.length(), last.length());
+            expected.add(first, last);
+        }
+        assertTrue(counts.getSpillCount() > SpillingAuthorCounts.MERGE_WAYS);
+        assertTrue(counts.getRunCount() <= SpillingAuthorCounts.MERGE_WAYS);
+
+        // the same counts as in memory, in name order
+        Author someone = expected.getAuthor(7);
+        assertEquals(expected.getCount(7), counts.getAuthorCount(someone));
+        assertEquals(0, counts.getAuthorCount(Author.of("Nobody", "Known")));
+        List<Author> authors = new ArrayList<>();
+        counts.forEach((author, count) -> {
+            assertEquals(expected.getAuthorCount(author), count);
+            authors.add(author);
+        });
+        assertEquals(expected.size(), authors.size());
+        for (int i = 1; i < authors.size(); i++) {
+            Author previous = authors.get(i - 1);
+            Author author = authors.get(i);
+            int order = previous.getFirstName().compareTo(author.getFirstName());
+            assertTrue(order < 0 || order == 0 && previous.getLastName().compareTo(author.getLastName()) < 0);
+        }
+        assertEquals(1, counts.getRunCount());
+        assertEquals(expected.getCount(7), counts.getAuthorCount(someone));
+
+        // closing deletes the runs
+        counts.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testCountAuthors() throws Exception {
+
+        // counted in fixed memory by several threads, exactly the same as in memory
+        Path first = folder.getRoot().toPath().resolve("a.xml");
+        Path second = folder.getRoot().toPath().resolve("b.xml");
+        SyntheticPubMed generator = SyntheticPubMed.newInstance(91, 3000);
+        generator.write(first, 600);
+        generator.write(second, 600);
+        List<Path> paths = Arrays.asList(first, second);
+        AuthorCountTable expected = (AuthorCountTable)PubMedBatch.countAuthors(paths, 1).getCounts();
+
+        Path directory = folder.newFolder().toPath();
+        int[] authors = new int[1];
+        try (SpillingAuthorCounts counts = PubMedBatch.countAuthors(paths, 4, PubMedEngine.SAX, directory, 100)) {
+            assertTrue(counts.getSpillCount() > 0);
+            counts.forEach((author, count) -> {
+                assertEquals(expected.getAuthorCount(author), count);
+                authors[0]++;
+            });
+        }
+        assertEquals(expected.size(), authors[0]);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+
+        // only counts that spill merge
+        try (SpillingAuthorCounts counts = new SpillingAuthorCounts(directory, 10)) {
+            counts.merge(new AuthorCountTable());
+            fail("merged a table");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class SyntheticPubMedTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDeterministic() throws Exception {
+
+        // the same seed writes the same bytes, another seed doesn't
+        ByteArrayOutputStream a = new ByteArrayOutputStream();
+        SyntheticPubMed.newInstance(7, 100).write(a, 50);
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        SyntheticPubMed.newInstance(7, 100).write(b, 50);
+        ByteArrayOutputStream c = new ByteArrayOutputStream();
+        SyntheticPubMed.newInstance(8, 100).write(c, 50);
+        assertTrue(Arrays.equals(a.toByteArray(), b.toByteArray()));
+        assertFalse(Arrays.equals(a.toByteArray(), c.toByteArray()));
+
+        // the awkward parts of real PubMed files are there
+        String xml = new String(a.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(xml.contains("<CollectiveName>"));
+        assertTrue(xml.contains("&#"));
+        assertTrue(xml.contains("&amp;"));
+    }
+
+    @Test
+    public void testGroundTruth() throws Exception {
+
+        // a plain and a compressed file, split into chunks, with every engine
+        SyntheticPubMed generator = SyntheticPubMed.newInstance(11, 300);
+        File plain = folder.newFile("a.xml");
+        generator.write(plain.toPath(), 500);
+        File compressed = folder.newFile("b.xml.gz");
+        generator.write(compressed.toPath(), 500);
+        assertEquals(1000, generator.getArticleCount());
+
+        AuthorCountTable truth = generator.getAuthorCounts();
+        assertTrue(truth.getAuthorCount(Author.of(null, null)) > 0);
+        for (PubMedEngine engine : PubMedEngine.values()) {
+            PubMedAuthorCountHandler handler = PubMedBatch.countAuthors(
+                    PubMedBatch.listFiles(folder.getRoot().getPath()), 3, engine, 64 * 1024);
+            for (int id = 0; id < truth.size(); id++) {
+                Author author = truth.getAuthor(id);
+                assertEquals(engine + " " + author, truth.getCount(id), handler.getAuthorCount(author));
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class TopAuthorsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEviction() {
+
+        // two counters, the third author takes over the smallest
+        TopAuthors top = TopAuthors.newInstance(2);
+        increment(top, "Amy", "Brown");
+        increment(top, "Amy", "Brown");
+        increment(top, "Bob", "Green");
+        assertEquals(1, top.getThreshold());
+        increment(top, "Carol", "Grey");
+        assertEquals(2, top.getAuthorCount(Author.of("Amy", "Brown")));
+        assertEquals(0, top.getAuthorCount(Author.of("Bob", "Green")));
+        assertEquals(2, top.getAuthorCount(Author.of("Carol", "Grey")));
+        assertEquals(4, top.getTotal());
+
+        // ties by name, an inherited count is an error
+        List<TopAuthors.Entry> entries = top.getTop(5);
+        assertEquals(2, entries.size());
+        assertEquals(Author.of("Amy", "Brown"), entries.get(0).getAuthor());
+        assertEquals(0, entries.get(0).getError());
+        assertEquals(Author.of("Carol", "Grey"), entries.get(1).getAuthor());
+        assertEquals(1, entries.get(1).getError());
+        assertEquals(1, entries.get(1).getMinimum());
+
+        // Amy is certain to be first, Carol might be
+        assertEquals(Arrays.asList(Author.of("Amy", "Brown"), Author.of("Carol", "Grey")), top.getCandidates(1));
+    }
+
+    @Test
+    public void testGuarantees() {
+
+        // Zipf-distributed authors, counted exactly and by the sketch
+        SyntheticPubMed generator = SyntheticPubMed.newInstance(21, 5000);
+        AuthorCountTable exact = new AuthorCountTable();
+        TopAuthors top = TopAuthors.newInstance(200);
+        for (int i = 0; i < 50000; i++) {
+            int author = generator.nextAuthor();
+            exact.add(generator.getFirstName(author), generator.getLastName(author));
+            increment(top, generator.getFirstName(author), generator.getLastName(author));
+        }
+        assertBounds(exact, top);
+
+        // the most listed authors stand out from the noise
+        assertTopCounts(exact, top.getTop(10));
+    }
+
+    @Test
+    public void testMerge() {
+
+        // half the authors in each, merged
+        SyntheticPubMed generator = SyntheticPubMed.newInstance(22, 5000);
+        AuthorCountTable exact = new AuthorCountTable();
+        TopAuthors first = TopAuthors.newInstance(200);
+        TopAuthors second = TopAuthors.newInstance(200);
+        for (int i = 0; i < 50000; i++) {
+            int author = generator.nextAuthor();
+            exact.add(generator.getFirstName(author), generator.getLastName(author));
+            increment(i % 2 == 0 ? first : second, generator.getFirstName(author), generator.getLastName(author));
+        }
+        first.merge(second);
+        assertEquals(50000, first.getTotal());
+        assertBounds(exact, first);
+        assertTopCounts(exact, first.getTop(10));
+
+        // only the same kind of counts
+        try {
+            first.merge(new AuthorCountTable());
+            fail("merged a table");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConfirm() throws Exception {
+
+        // enough counters for the first pass to catch the top ten, the second pass counts them exactly
+        SyntheticPubMed generator = SyntheticPubMed.newInstance(23, 2000);
+        Path path = folder.getRoot().toPath().resolve("pubmed.xml");
+        generator.write(path, 2000);
+        List<Path> paths = PubMedBatch.listFiles(path.toString());
+        TopAuthors top = PubMedBatch.findTopAuthors(paths, 2, PubMedEngine.STAX, 200);
+        List<TopAuthors.Entry> entries = PubMedBatch.confirmTopAuthors(paths, 2, PubMedEngine.STAX, top, 10);
+        assertEquals(10, entries.size());
+        AuthorCountTable exact = generator.getAuthorCounts();
+        for (TopAuthors.Entry entry : entries) {
+            assertEquals(0, entry.getError());
+            assertEquals(entry.getAuthor().toString(), exact.getAuthorCount(entry.getAuthor()), entry.getCount());
+        }
+        assertTopCounts(exact, entries);
+        assertTrue(entries.get(9).getCount() > top.getThreshold());
+        assertTrue(top.isConfirmedBy(entries, 10));
+
+        // too few counters for the first pass to be sure of the top ten, so both passes run again with more
+        TopAuthors few = PubMedBatch.findTopAuthors(paths, 2, PubMedEngine.STAX, 12);
+        assertFalse(few.isConfirmedBy(PubMedBatch.confirmTopAuthors(paths, 2, PubMedEngine.STAX, few, 10), 10));
+        assertEquals(entries.toString(),
+                PubMedBatch.findTopAuthorsExactly(paths, 2, PubMedEngine.STAX, 12, 10).toString());
+
+        // every author monitored, nothing else can have been listed
+        TopAuthors all = TopAuthors.newInstance(4);
+        increment(all, "Amy", "Brown");
+        assertTrue(all.isConfirmedBy(Collections.singletonList(new TopAuthors.Entry(Author.of("Amy", "Brown"), 1, 0)),
+                10));
+    }
+
+    // every monitored count is an upper bound, every author listed often enough is monitored
+    //
+    private static void assertBounds(AuthorCountTable exact, TopAuthors top) {
+        long guaranteed = top.getTotal() / top.getCapacity();
+        for (int id = 0; id < exact.size(); id++) {
+            Author author = exact.getAuthor(id);
+            int count = top.getAuthorCount(author);
+            if (count > 0) {
+                assertTrue(author.toString(), count >= exact.getCount(id));
+            }
+            if (exact.getCount(id) > guaranteed) {
+                assertTrue(author.toString(), count > 0);
+            }
+        }
+        for (TopAuthors.Entry entry : top.getTop(top.getCapacity())) {
+            assertTrue(entry.toString(), entry.getMinimum() <= exact.getAuthorCount(entry.getAuthor()));
+        }
+    }
+
+    // the entries have the largest exact counts
+    //
+    private static void assertTopCounts(AuthorCountTable exact, List<TopAuthors.Entry> entries) {
+        int[] counts = new int[exact.size()];
+        for (int id = 0; id < exact.size(); id++) {
+            counts[id] = exact.getCount(id);
+        }
+        Arrays.sort(counts);
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(counts[counts.length - 1 - i], exact.getAuthorCount(entries.get(i).getAuthor()));
+        }
+    }
+
+    // count an author held in strings
+    //
+    private static void increment(TopAuthors top, String first, String last) {
+        top.increment(first.toCharArray(), 0, first.length(), last.toCharArray(), 0, last.length());
+    }
+}
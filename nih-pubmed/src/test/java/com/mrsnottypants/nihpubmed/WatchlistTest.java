@@ -0,0 +1,112 @@
+package com.mrsnottypants.nihpubmed;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Created by Eric on 7/11/2016.
+ */
+public class WatchlistTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLoad() throws Exception {
+
+        File file = folder.newFile("authors.tsv");
+        Files.write(file.toPath(), Arrays.asList(
+                "# first and last name",
+                "Amy\tBrown",
+                "",
+                "María-Victoria\tMateos",
+                "Plato",
+                "Amy\tBrown"), StandardCharsets.UTF_8);
+
+        // comments and blank lines are skipped, duplicates are watched once, in file order
+        Watchlist watchlist = Watchlist.load(file.toPath());
+        assertEquals(3, watchlist.size());
+        assertEquals(Author.of("Amy", "Brown"), watchlist.getAuthor(0));
+        assertEquals(Author.of("María-Victoria", "Mateos"), watchlist.getAuthor(1));
+        assertEquals(Author.of(null, "Plato"), watchlist.getAuthor(2));
+    }
+
+    @Test
+    public void testFind() {
+
+        Watchlist watchlist = Watchlist.of(Arrays.asList(Author.of("Amy", "Brown"), Author.of("Bob", "Green")));
+        char[] buffer = "AmyBrownBobGreenAmyGreen".toCharArray();
+        assertEquals(0, watchlist.find(buffer, 0, 3, buffer, 3, 5));
+        assertEquals(1, watchlist.find(buffer, 8, 3, buffer, 11, 5));
+
+        // a watched last name with another first name, and a last name nobody on the list has
+        assertEquals(-1, watchlist.find(buffer, 16, 3, buffer, 19, 5));
+        assertEquals(-1, watchlist.find(buffer, 0, 3, buffer, 0, 0));
+        assertEquals(-1, watchlist.find(Author.of("Carol", "Grey")));
+    }
+
+    @Test
+    public void testManyAuthors() {
+
+        // far more authors than fit in the smallest filter
+        Author[] authors = new Author[20000];
+        for (int i = 0; i < authors.length; i++) {
+            authors[i] = Author.of("First" + i, "Last" + i);
+        }
+        Watchlist watchlist = Watchlist.of(Arrays.asList(authors));
+        for (int i = 0; i < authors.length; i++) {
+            char[] first = authors[i].getFirstName().toCharArray();
+            char[] last = authors[i].getLastName().toCharArray();
+            assertEquals(i, watchlist.find(first, 0, first.length, last, 0, last.length));
+        }
+    }
+
+    @Test
+    public void testCountAuthors() throws Exception {
+
+        File file = folder.newFile("a.xml");
+        Files.write(file.toPath(), ("<Test><Article><AuthorList>" +
+                "<Author><ForeName>Amy</ForeName><LastName>Brown</LastName></Author>" +
+                "<Author><ForeName>Bob</ForeName><LastName>Green</LastName></Author>" +
+                "<Author><ForeName> Amy </ForeName><LastName>Brown</LastName></Author>" +
+                "</AuthorList></Article></Test>").getBytes(StandardCharsets.UTF_8));
+
+        // only watched authors are counted, with every engine
+        Watchlist watchlist = Watchlist.of(Arrays.asList(Author.of("Amy", "Brown"), Author.of("Carol", "Grey")));
+        for (PubMedEngine engine : PubMedEngine.values()) {
+            PubMedAuthorCountHandler handler = PubMedBatch.countAuthors(
+                    PubMedBatch.listFiles(folder.getRoot().getPath()), 2, engine, watchlist::newCounts);
+            assertEquals(engine.name(), 2, handler.getAuthorCount(Author.of("Amy", "Brown")));
+            assertEquals(engine.name(), 0, handler.getAuthorCount(Author.of("Bob", "Green")));
+            assertEquals(engine.name(), 0, handler.getAuthorCount(Author.of("Carol", "Grey")));
+        }
+    }
+
+    @Test
+    public void testMerge() {
+
+        Watchlist watchlist = Watchlist.of(Arrays.asList(Author.of("Amy", "Brown")));
+        char[] buffer = "AmyBrown".toCharArray();
+        WatchlistCounts a = watchlist.newCounts();
+        a.increment(buffer, 0, 3, buffer, 3, 5);
+        WatchlistCounts b = watchlist.newCounts();
+        b.increment(buffer, 0, 3, buffer, 3, 5);
+        a.merge(b);
+        assertEquals(2, a.getCount(0));
+
+        // counts of another watchlist can't be merged
+        try {
+            a.merge(Watchlist.of(Arrays.asList(Author.of("Amy", "Brown"))).newCounts());
+            fail("expected an exception");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+}